@@ -9,6 +9,9 @@ import com.ntak.pearlzip.archive.pub.profile.component.GeneralComponent;
 import com.ntak.pearlzip.archive.pub.profile.component.ReadServiceComponent;
 import com.ntak.pearlzip.archive.pub.profile.component.WriteServiceComponent;
 import com.ntak.pearlzip.archive.zip4j.pub.Zip4jPasswordValidator;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jHeaderCache;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jInflateIndexCache;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -26,16 +29,37 @@ public class Zip4jConstants {
     public static final String CNS_DEFAULT_ENCRYPTION_METHOD = "configuration.zip4j.default-encryption-method";
     public static final String CNS_DEFAULT_ENCRYPTION_STRENGTH = "configuration.zip4j.default-encryption-strength";
     public static final String CNS_DEFAULT_SPLIT_ARCHIVE_SIZE = "configuration.zip4j.default-split-archive-size";
+    public static final String CNS_HEADER_CACHE_CAPACITY = "configuration.zip4j.header-cache-capacity";
+    public static final String CNS_PARALLELISM = "configuration.zip4j.parallelism";
+    public static final String CNS_DEEP_TEST = "configuration.zip4j.deep-test";
+    public static final String CNS_CHUNKED_DEFLATE_THRESHOLD = "configuration.zip4j.chunked-deflate-threshold";
+    public static final String CNS_ADAPTIVE_COMPRESSION = "configuration.zip4j.adaptive-compression";
+    public static final String CNS_COMPRESSION_POLICY = "configuration.zip4j.compression-policy";
+    public static final String CNS_VERIFY_EXTRACTED_CRC = "configuration.zip4j.verify-extracted-crc";
+    public static final String CNS_WRITE_COALESCING_WINDOW = "configuration.zip4j.write-coalescing-window";
+    public static final String CNS_WRITE_COALESCING_MAX_DELAY = "configuration.zip4j.write-coalescing-max-delay";
+    public static final String CNS_INFLATE_CHECKPOINT_INTERVAL = "configuration.zip4j.inflate-checkpoint-interval";
+    public static final String CNS_INFLATE_INDEX_CACHE_CAPACITY = "configuration.zip4j.inflate-index-cache-capacity";
+    public static final String CNS_CHANNEL_POOL_CAPACITY = "configuration.zip4j.channel-pool-capacity";
+    public static final String CNS_CHANNEL_POOL_IDLE_TIMEOUT = "configuration.zip4j.channel-pool-idle-timeout";
+    public static final String CNS_CHANNEL_POOL_ACQUIRE_TIMEOUT = "configuration.zip4j.channel-pool-acquire-timeout";
 
     /////////////////////////////
     ///// ArchiveInfo Keys //////
     /////////////////////////////
 
     public static final String KEY_COMPRESSION_METHOD = "COMPRESSION_METHOD";
+    public static final String KEY_CHUNKED_DEFLATE_THRESHOLD = "CHUNKED_DEFLATE_THRESHOLD";
+    public static final String KEY_ADAPTIVE_COMPRESSION = "ADAPTIVE_COMPRESSION";
+    public static final String KEY_COMPRESSION_POLICY = "COMPRESSION_POLICY";
+    public static final String KEY_VERIFY_EXTRACTED_CRC = "VERIFY_EXTRACTED_CRC";
+    public static final String KEY_SYNC_COMPARE_CRC = "SYNC_COMPARE_CRC";
+    public static final String KEY_SYNC_REMOVE_VANISHED = "SYNC_REMOVE_VANISHED";
 
     public static final String KEY_ENCRYPTION_ENABLE = "ENCRYPTION_ENABLE";
     public static final String KEY_ENCRYPTION_METHOD = "ENCRYPTION_METHOD";
     public static final String KEY_ENCRYPTION_STRENGTH = "ENCRYPTION_STRENGTH";
+    public static final String KEY_ENTRY_METADATA = "ENTRY_METADATA";
 
     public static final String KEY_ENCRYPTION_PW = "ENCRYPTION_PW";
 
@@ -51,6 +75,27 @@ public class Zip4jConstants {
     public static final long DEFAULT_SPLIT_ARCHIVE_SIZE = 52428800; // 50 MB archive size
     public static final String PATTERN_FOLDER = "%s/";
     public static final Pattern SSV = Pattern.compile(Pattern.quote("/"));
+    public static final long DEFAULT_HEADER_CACHE_CAPACITY = 500000; // Total headers held across cached archives
+    public static final int DEFAULT_LISTING_BATCH_SIZE = 1000;
+    public static final int SIG_LOCAL_FILE_HEADER = 0x04034B50;
+    public static final int LOCAL_HEADER_LENGTH = 30;
+    public static final int VERIFICATION_BUFFER_SIZE = 65536;
+    public static final int WRITE_BUFFER_SIZE = 65536;
+    public static final int SPILL_THRESHOLD = 8 * 1024 * 1024;
+    public static final long DEFAULT_CHUNKED_DEFLATE_THRESHOLD = 64 * 1024 * 1024; // 64 MB minimum entry size
+    public static final int CHUNKED_DEFLATE_BLOCK_SIZE = 1024 * 1024;
+    public static final int DEFLATE_DICTIONARY_SIZE = 32768;
+    public static final int COMPRESSION_SAMPLE_SIZE = 16384; // Bytes sampled from each of the head and middle
+    public static final double MAX_COMPRESSION_SAMPLE_RATIO = 0.95; // Entries deflating to more are stored
+    public static final long MAPPED_CRC_REGION_SIZE = 64 * 1024 * 1024;
+    public static final int ENTRY_PUBLISHER_CHUNK_SIZE = 65536;
+    public static final long DEFAULT_WRITE_COALESCING_WINDOW = 200; // ms without operations before writing
+    public static final long DEFAULT_WRITE_COALESCING_MAX_DELAY = 2000; // ms an operation is held at most
+    public static final long DEFAULT_INFLATE_CHECKPOINT_INTERVAL = 1024 * 1024; // Inflated bytes between checkpoints
+    public static final long DEFAULT_INFLATE_INDEX_CACHE_CAPACITY = 256; // Entries whose inflate index is held
+    public static final long DEFAULT_CHANNEL_POOL_CAPACITY = 64; // Archive channels open at once
+    public static final long DEFAULT_CHANNEL_POOL_IDLE_TIMEOUT = 30000; // ms a channel is kept open without leases
+    public static final long DEFAULT_CHANNEL_POOL_ACQUIRE_TIMEOUT = 30000; // ms waited for a channel at the cap
 
     // Logging keys...
     public static final String LOG_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE = "logging.ntak.pearl-zip.zip4j.issue-listing-archive";
@@ -73,11 +118,26 @@ public class Zip4jConstants {
     public static final String HEADER_ARCHIVE_Z4J_ISSUE_ADDING_FILE = "header.ntak.pearl-zip.zip4j.issue-adding-file";
     public static final String BODY_ARCHIVE_Z4J_ISSUE_ADDING_FILE = "body.ntak.pearl-zip.zip4j.issue-adding-file";
 
+    public static final String LOG_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE = "logging.ntak.pearl-zip.zip4j.issue-transcoding-archive";
+    public static final String TITLE_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE = "title.ntak.pearl-zip.zip4j.issue-transcoding-archive";
+    public static final String HEADER_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE = "header.ntak.pearl-zip.zip4j.issue-transcoding-archive";
+    public static final String BODY_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE = "body.ntak.pearl-zip.zip4j.issue-transcoding-archive";
+
     public static final String LOG_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE = "logging.ntak.pearl-zip.zip4j.issue-extracting-file";
     public static final String TITLE_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE = "title.ntak.pearl-zip.zip4j.issue-extracting-file";
     public static final String HEADER_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE = "header.ntak.pearl-zip.zip4j.issue-extracting-file";
     public static final String BODY_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE = "body.ntak.pearl-zip.zip4j.issue-extracting-file";
 
+    public static final String LOG_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD = "logging.ntak.pearl-zip.zip4j.issue-verifying-password";
+    public static final String TITLE_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD = "title.ntak.pearl-zip.zip4j.issue-verifying-password";
+    public static final String HEADER_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD = "header.ntak.pearl-zip.zip4j.issue-verifying-password";
+    public static final String BODY_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD = "body.ntak.pearl-zip.zip4j.issue-verifying-password";
+
+    public static final String LOG_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE = "logging.ntak.pearl-zip.zip4j.issue-testing-archive";
+    public static final String TITLE_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE = "title.ntak.pearl-zip.zip4j.issue-testing-archive";
+    public static final String HEADER_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE = "header.ntak.pearl-zip.zip4j.issue-testing-archive";
+    public static final String BODY_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE = "body.ntak.pearl-zip.zip4j.issue-testing-archive";
+
     public static final String TITLE_Z4J_VALIDATION_ISSUE = "title.ntak.pearl-zip.zip4j.validation-issue";
     public static final String BODY_Z4J_VALIDATION_ISSUE = "body.ntak.pearl-zip.zip4j.validation-issue";
     public static final String LOG_Z4J_PW_LENGTH = "logging.ntak.pearl-zip.zip4j.pw-length";
@@ -96,7 +156,22 @@ public class Zip4jConstants {
     public static final String BODY_ARCHIVE_Z4J_INCOMPATIBLE_SPLIT = "body.ntak.pearl-zip.zip4j.incompatible-split";
 
     public static final String LOG_ARCHIVE_Z4J_DELETING_FILE = "logging.ntak.pearl-zip.zip4j.deleting-file";
+    public static final String LOG_ARCHIVE_Z4J_DELETING_FILES = "logging.ntak.pearl-zip.zip4j.deleting-files";
+    public static final String LOG_ARCHIVE_Z4J_TRANSCODING_ENTRY = "logging.ntak.pearl-zip.zip4j.transcoding-entry";
     public static final String LOG_ARCHIVE_Z4J_ADDING_FILE = "logging.ntak.pearl-zip.zip4j.adding-file";
+    public static final String LOG_ARCHIVE_Z4J_SYNCHRONISING_ARCHIVE = "logging.ntak.pearl-zip.zip4j.synchronising-archive";
+    public static final String LOG_ARCHIVE_Z4J_SYNC_SUMMARY = "logging.ntak.pearl-zip.zip4j.sync-summary";
+    public static final String LOG_ARCHIVE_Z4J_LISTING_ENTRIES = "logging.ntak.pearl-zip.zip4j.listing-entries";
+    public static final String LOG_ARCHIVE_Z4J_BATCH_THROUGHPUT = "logging.ntak.pearl-zip.zip4j.batch-throughput";
+    public static final String LOG_ARCHIVE_Z4J_COMPRESSION_DECISION = "logging.ntak.pearl-zip.zip4j.compression-decision";
+    public static final String LOG_ARCHIVE_Z4J_ADAPTIVE_COMPRESSION = "logging.ntak.pearl-zip.zip4j.adaptive-compression";
+    public static final String LOG_ARCHIVE_Z4J_VERIFYING_ENTRY = "logging.ntak.pearl-zip.zip4j.verifying-entry";
+
+    public static final String LOG_ARCHIVE_Z4J_ENTRY_VERIFICATION_FAILED = "logging.ntak.pearl-zip.zip4j.entry-verification-failed";
+    public static final String LOG_ARCHIVE_Z4J_ENTRY_PASSWORD_REQUIRED = "logging.ntak.pearl-zip.zip4j.entry-password-required";
+    public static final String TITLE_ARCHIVE_Z4J_VERIFICATION_FAILED = "title.ntak.pearl-zip.zip4j.verification-failed";
+    public static final String HEADER_ARCHIVE_Z4J_VERIFICATION_FAILED = "header.ntak.pearl-zip.zip4j.verification-failed";
+    public static final String BODY_ARCHIVE_Z4J_VERIFICATION_FAILED = "body.ntak.pearl-zip.zip4j.verification-failed";
 
     public static final String LOG_ARCHIVE_Z4J_ISSUE_GENERATING_METADATA =
             "logging.ntak.pearl-zip.zip4j.issue-generating-metadata";
@@ -125,4 +200,7 @@ public class Zip4jConstants {
     }
 
     public static final Zip4jPasswordValidator ZIP_4J_VALIDATOR = new Zip4jPasswordValidator();
+    public static final Zip4jHeaderCache HEADER_CACHE = new Zip4jHeaderCache();
+    public static final Zip4jInflateIndexCache INFLATE_INDEX_CACHE = new Zip4jInflateIndexCache();
+    public static final Zip4jChannelPool CHANNEL_POOL = new Zip4jChannelPool();
 }
@@ -4,11 +4,8 @@
 
 package com.ntak.pearlzip.archive.zip4j.pub;
 
-import com.ntak.pearlzip.archive.pub.ErrorMessage;
 import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
-import com.ntak.pearlzip.ui.constants.ZipConstants;
 import com.ntak.pearlzip.ui.model.FXArchiveInfo;
-import com.ntak.pearlzip.ui.util.ArchiveUtil;
 import com.ntak.pearlzip.ui.util.JFXUtil;
 import javafx.animation.PauseTransition;
 import javafx.fxml.FXML;
@@ -24,24 +21,14 @@ import net.lingala.zip4j.model.enums.EncryptionMethod;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
-import static com.ntak.pearlzip.archive.pub.ArchiveService.DEFAULT_BUS;
 import static com.ntak.pearlzip.archive.util.LoggingUtil.resolveTextKey;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
-import static com.ntak.pearlzip.ui.constants.ZipConstants.CK_LOCAL_TEMP;
-import static com.ntak.pearlzip.ui.util.ArchiveUtil.*;
+import static com.ntak.pearlzip.ui.util.ArchiveUtil.launchMainStage;
 import static com.ntak.pearlzip.ui.util.JFXUtil.executeBackgroundProcess;
 
 public class FrmZip4jEncryptController {
@@ -73,9 +60,6 @@ public class FrmZip4jEncryptController {
 
     @FXML
     public void initialize() {
-        final Path LOCAL_TEMP = ZipConstants.GLOBAL_INTERNAL_CACHE
-                                      .<Path>getAdditionalConfig(CK_LOCAL_TEMP)
-                                      .get();
         // BODY: The archive %s can be encrypted by Zip4J. \nPlease enter a password below to encrypt the archive with:
         lblPasswordDescription.setText(resolveTextKey(BODY_ENCRYPT_PROMPT, fxArchiveInfo.getArchivePath()));
 
@@ -88,27 +72,8 @@ public class FrmZip4jEncryptController {
             fxArchiveInfo.getArchiveInfo()
                          .addProperty(KEY_ENCRYPTION_ENABLE, true);
             if (ZIP_4J_VALIDATOR.test(fxArchiveInfo.getArchiveInfo())) {
-                Path backupArchive = null;
                 Optional<Stage> optStage = JFXUtil.getMainStageByArchivePath(fxArchiveInfo.getArchivePath());
                 try {
-                    // Extract archive
-                    long sessionId = System.currentTimeMillis();
-                    Path tempDir = Paths.get(LOCAL_TEMP.toAbsolutePath()
-                                                                    .toString(),
-                                             String.format("pz%d", sessionId));
-                    Files.createDirectories(tempDir);
-                    extractToDirectory(sessionId, fxArchiveInfo, tempDir.toFile());
-
-                    // Backup (Move) unencrypted archive
-                    sessionId = System.currentTimeMillis();
-                    Path backupDir = Paths.get(LOCAL_TEMP.toAbsolutePath()
-                                                                      .toString(),
-                                               String.format("pz%d", sessionId));
-                    Files.createDirectories(backupDir);
-                    backupArchive = createBackupArchive(fxArchiveInfo, backupDir);
-
-                    // Delete archive and create new encrypted archive
-                    Files.deleteIfExists(Paths.get(fxArchiveInfo.getArchivePath()));
                     synchronized(CURRENT_SETTINGS) {
                         try {
                             fxArchiveInfo.getArchiveInfo()
@@ -130,62 +95,32 @@ public class FrmZip4jEncryptController {
                                                       AesKeyStrength.KEY_STRENGTH_256);
                         }
                     }
-                    writeService.createArchive(sessionId, fxArchiveInfo.getArchiveInfo());
-                    Map<Boolean,List<Path>> mapContents =
-                            Files.list(tempDir)
-                                 .collect(Collectors.partitioningBy(Files::isDirectory));
-                    AtomicReference<Exception> capturedException = new AtomicReference<>();
 
+                    // Encrypt the compressed data of each entry in a single pass. The archive is only replaced once
+                    // all entries are encrypted, so no extraction or back up is required.
+                    long sessionId = System.currentTimeMillis();
                     Stage stage = (Stage)btnContinue.getScene().getWindow();
-
-                    for (Path d : mapContents.get(true)) {
-                        long dirSessionId = System.currentTimeMillis();
-                        final CountDownLatch addDirLatch = new CountDownLatch(1);
-
-                        executeBackgroundProcess(dirSessionId,
-                                                 stage,
-                                                 ()-> {
-                                                     try {
-                                                         addDirectory(dirSessionId,
-                                                                      fxArchiveInfo,
-                                                                      d.toFile());
-                                                     } catch(Exception ex) {
-                                                         capturedException.set(ex);
-                                                     } finally {
-                                                         addDirLatch.countDown();
-                                                     }
-                                                 },
-                                                 (s)->{}
-                                             );
-                        addDirLatch.await();
-                    }
-
-                    for (Path f : mapContents.get(false)) {
-                        long fileSessionId = System.currentTimeMillis();
-                        final CountDownLatch addFileLatch = new CountDownLatch(1);
-                        executeBackgroundProcess(fileSessionId,
-                                                 stage,
-                                                 () -> {
-                                                     try {
-                                                         addFile(fileSessionId,
-                                                                 fxArchiveInfo,
-                                                                 f.toFile(),
-                                                                 f.getFileName()
-                                                                  .toString());
-                                                     } catch(Exception ex) {
-                                                         capturedException.set(ex);
-                                                     } finally {
-                                                         addFileLatch.countDown();
-                                                     }
-                                                 },
-                                                 (s) -> {}
-                        );
-                        addFileLatch.await();
-                    }
-
-                    // Rethrow Exception
-                    if (Objects.nonNull(capturedException.get())) {
-                        throw capturedException.get();
+                    final CountDownLatch encryptLatch = new CountDownLatch(1);
+                    final AtomicBoolean isEncrypted = new AtomicBoolean(false);
+                    executeBackgroundProcess(sessionId,
+                                             stage,
+                                             () -> {
+                                                 try {
+                                                     isEncrypted.set(writeService.encryptArchive(sessionId,
+                                                                                                 fxArchiveInfo.getArchiveInfo()));
+                                                 } finally {
+                                                     encryptLatch.countDown();
+                                                 }
+                                             },
+                                             (s) -> {}
+                    );
+                    encryptLatch.await();
+
+                    // Errors are reported by the write service and the archive is left unencrypted
+                    if (!isEncrypted.get()) {
+                        fxArchiveInfo.getArchiveInfo()
+                                     .addProperty(KEY_ENCRYPTION_ENABLE, false);
+                        return;
                     }
 
                     // Launch archive...
@@ -202,34 +137,9 @@ public class FrmZip4jEncryptController {
                     while (JFXUtil.getMainStageInstances().size() == 0) {
                         Thread.sleep(100L);
                     }
-                } catch(IOException ioe) {
-                    // LOG: Issue backing up archive %s
-                    LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_BACK_UP, fxArchiveInfo.getArchivePath()));
-                    // TITLE: Issue backing up archive %s
-                    // HEADER: Archive could not be backed up
-                    // BODY: The encryption process could not complete due to an issue on the pre-requisite back up step.
-                    // Please see stack trace for details.
-                    long sessionId = System.currentTimeMillis();
-                    DEFAULT_BUS.post(new ErrorMessage(sessionId,
-                                                      resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_BACK_UP),
-                                                      resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_BACK_UP,
-                                                                     fxArchiveInfo.getArchivePath()),
-                                                      resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_BACK_UP,
-                                                                     e.getClass().getCanonicalName()),
-                                                      ioe,
-                                                      fxArchiveInfo.getArchiveInfo()));
-                    ArchiveUtil.restoreBackupArchive(backupArchive, Paths.get(fxArchiveInfo.getArchivePath()));
                 } catch (Exception exc) {
                     // Ignore interrupted exception
-                    ArchiveUtil.restoreBackupArchive(backupArchive, Paths.get(fxArchiveInfo.getArchivePath()));
-                }finally {
-                    if (Objects.nonNull(backupArchive)) {
-                        try {
-                            Files.deleteIfExists(backupArchive);
-                        } catch(IOException ex) {
-                        }
-                    }
-
+                } finally {
                     PauseTransition delay = new PauseTransition(Duration.millis(300));
                     delay.setOnFinished((ev) -> btnCancel.getOnAction()
                                                          .handle(null));
@@ -6,7 +6,6 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 
 import com.ntak.pearlzip.archive.pub.ArchiveInfo;
 import com.ntak.pearlzip.archive.pub.ArchiveService;
-import com.ntak.pearlzip.archive.pub.FileInfo;
 import com.ntak.pearlzip.ui.constants.ZipConstants;
 import com.ntak.pearlzip.ui.model.FXArchiveInfo;
 import com.ntak.pearlzip.ui.util.JFXUtil;
@@ -22,21 +21,15 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.util.Collections;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CountDownLatch;
 
 import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
-import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.KEY_FILE_PATH;
 import static com.ntak.pearlzip.archive.util.LoggingUtil.resolveTextKey;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
 import static com.ntak.pearlzip.ui.constants.ZipConstants.*;
-import static com.ntak.pearlzip.ui.util.ArchiveUtil.extractToDirectory;
 
 public class FrmZip4jMenuController {
     private static final Logger LOGGER = LoggerContext.getContext()
@@ -102,66 +95,18 @@ public class FrmZip4jMenuController {
                                                                    .toString();
                                 archiveInfo.setArchivePath(newArchivePath);
 
-                                // Extract archive
-                                long backupSessionId = System.currentTimeMillis();
-                                Path tempDir = Paths.get(LOCAL_TEMP.toAbsolutePath()
-                                                                   .toString(),
-                                                         String.format("pz%d", backupSessionId),
-                                                         Paths.get(archivePath)
-                                                              .getFileName()
-                                                              .toString());
-                                Files.createDirectories(tempDir);
-                                CountDownLatch latch = new CountDownLatch(1);
+                                // Create Split archive, copying the raw entries of the archive into volumes
                                 final Stage stage = (Stage) fxArchiveInfo.getController()
                                                                          .get()
                                                                          .getFileContentsView()
                                                                          .getScene()
                                                                          .getWindow();
-                                JFXUtil.executeBackgroundProcess(backupSessionId,
-                                                                 stage,
-                                                                 () -> {
-                                                                     try {
-                                                                         extractToDirectory(backupSessionId,
-                                                                                            fxArchiveInfo,
-                                                                                            tempDir.toFile());
-                                                                     } finally {
-                                                                         latch.countDown();
-                                                                     }
-                                                                 },
-                                                                 (s) -> {});
-                                latch.await();
-
-                                // Create FileInfo for extracted files...
-                                FileInfo[] files = new FileInfo[]{new FileInfo(0,
-                                                                               0,
-                                                                               tempDir.getFileName()
-                                                                                      .toString(),
-                                                                               0,
-                                                                               0,
-                                                                               0
-                                        ,
-                                                                               LocalDateTime.now(),
-                                                                               LocalDateTime.now(),
-                                                                               LocalDateTime.now(),
-                                                                               null,
-                                                                               null,
-                                                                               0,
-                                                                               ""
-                                        ,
-                                                                               true,
-                                                                               false,
-                                                                               Collections.singletonMap(KEY_FILE_PATH,
-                                                                                                        tempDir.toAbsolutePath()
-                                                                                                               .toString()))
-                                };
-
-                                // Create Split archive
                                 long splitSessionId = System.currentTimeMillis();
                                 JFXUtil.executeBackgroundProcess(splitSessionId,
                                                                  stage,
-                                                                 () -> writeService.createArchive(splitSessionId,
-                                                                                                  archiveInfo,
-                                                                                                  files),
+                                                                 () -> writeService.createSplitArchive(splitSessionId,
+                                                                                                       oneFileArchiveInfo,
+                                                                                                       archiveInfo),
                                                                  (s) -> {}
                                 );
                             }
@@ -5,7 +5,6 @@
 package com.ntak.pearlzip.archive.zip4j.pub;
 
 import com.ntak.pearlzip.archive.pub.ArchiveInfo;
-import com.ntak.pearlzip.archive.pub.FileInfo;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.PasswordField;
@@ -13,10 +12,6 @@ import javafx.scene.layout.AnchorPane;
 import javafx.stage.WindowEvent;
 import javafx.util.Pair;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.ntak.pearlzip.archive.util.LoggingUtil.resolveTextKey;
@@ -50,29 +45,21 @@ public class FrmZip4jPasswordController {
 
         btnContinue.setOnAction(e->{
             long sessionId = System.currentTimeMillis();
-            // Assumption: All files are encrypted uniformly in archive. So an arbitrary file can be taken to test
-            // password...
-            Optional<FileInfo> encFile = service.listFiles(sessionId, archiveInfo)
-                                              .stream()
-                                              .filter(f -> !f.isFolder())
-                                              .findFirst();
-            if (encFile.isPresent()) {
-                try {
-                    Path path = Files.createTempFile("tmp", "");
-                    isValid.set(service.extractFile(sessionId, path, archiveInfo, encFile.get()));
-                    Files.deleteIfExists(path);
+            try {
+                // Assumption: All files are encrypted uniformly in archive. So an arbitrary file can be taken to test
+                // password...
+                isValid.set(service.verifyPassword(sessionId, archiveInfo,
+                                                   archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
+                                                              .orElse(new char[0])));
 
-                    if (isValid.get()) {
-                        panePassword.setUserData(new Pair<>(isValid, resolveTextKey(LOG_ARCHIVE_Z4J_PASSWORD_SUCCESS)));
-                    } else {
-                        panePassword.setUserData(new Pair<>(isValid, resolveTextKey(LOG_ARCHIVE_Z4J_PASSWORD_FAIL)));
-                    }
-                } catch (IOException exc) {
+                if (isValid.get()) {
+                    panePassword.setUserData(new Pair<>(isValid, resolveTextKey(LOG_ARCHIVE_Z4J_PASSWORD_SUCCESS)));
+                } else {
                     panePassword.setUserData(new Pair<>(isValid, resolveTextKey(LOG_ARCHIVE_Z4J_PASSWORD_FAIL)));
-                } finally {
-                    btnContinue.getScene().getWindow().fireEvent(new WindowEvent(btnContinue.getScene().getWindow(),
-                                                                                 WindowEvent.WINDOW_CLOSE_REQUEST));
                 }
+            } finally {
+                btnContinue.getScene().getWindow().fireEvent(new WindowEvent(btnContinue.getScene().getWindow(),
+                                                                             WindowEvent.WINDOW_CLOSE_REQUEST));
             }
         });
     }
@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ *  Per-entry compression and encryption metadata of an archive, along with archive level histograms. Entries are
+ *  held column-wise in primitive arrays, aligned with the order of the central directory (and so with the index of
+ *  the listed entries), keeping the table compact on archives with millions of entries. Histograms are accumulated
+ *  as the table is built, so no further pass over the entries is required.
+ *  <br/><br/>
+ *  For AES entries the compression method recorded is the actual method held in the AES extra data record.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jArchiveMetadata {
+
+    /**
+     *  Upper bounds (exclusive) of the compression ratio buckets, where the ratio is the packed size over the raw size.
+     *  The final bucket holds the remaining entries, including those larger once packed. Empty entries are not
+     *  counted.
+     */
+    public static final double[] RATIO_BUCKETS = {0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
+
+    private static final CompressionMethod[] COMPRESSION_METHODS = CompressionMethod.values();
+    private static final EncryptionMethod[] ENCRYPTION_METHODS = EncryptionMethod.values();
+    private static final byte NO_AES_KEY_STRENGTH = 0;
+
+    private final int size;
+    private final short[] compressionMethods;
+    private final byte[] encryptionMethods;
+    private final byte[] aesKeyStrengths;
+    private final long[] packedSizes;
+    private final long[] rawSizes;
+
+    private final Map<CompressionMethod,Integer> compressionMethodHistogram;
+    private final Map<EncryptionMethod,Integer> encryptionMethodHistogram;
+    private final Map<AesKeyStrength,Integer> aesKeyStrengthHistogram;
+    private final int[] ratioHistogram;
+    private final int unknownCompressionMethodCount;
+    private final long totalPackedSize;
+    private final long totalRawSize;
+
+    private Zip4jArchiveMetadata(Builder builder) {
+        this.size = builder.size;
+        this.compressionMethods = Arrays.copyOf(builder.compressionMethods, size);
+        this.encryptionMethods = Arrays.copyOf(builder.encryptionMethods, size);
+        this.aesKeyStrengths = Arrays.copyOf(builder.aesKeyStrengths, size);
+        this.packedSizes = Arrays.copyOf(builder.packedSizes, size);
+        this.rawSizes = Arrays.copyOf(builder.rawSizes, size);
+
+        this.compressionMethodHistogram = new EnumMap<>(CompressionMethod.class);
+        for (CompressionMethod method : COMPRESSION_METHODS) {
+            if (builder.compressionMethodCounts[method.ordinal()] > 0) {
+                compressionMethodHistogram.put(method, builder.compressionMethodCounts[method.ordinal()]);
+            }
+        }
+        this.unknownCompressionMethodCount = builder.unknownCompressionMethodCount;
+
+        this.encryptionMethodHistogram = new EnumMap<>(EncryptionMethod.class);
+        for (EncryptionMethod method : ENCRYPTION_METHODS) {
+            if (builder.encryptionMethodCounts[method.ordinal()] > 0) {
+                encryptionMethodHistogram.put(method, builder.encryptionMethodCounts[method.ordinal()]);
+            }
+        }
+
+        this.aesKeyStrengthHistogram = new EnumMap<>(AesKeyStrength.class);
+        for (AesKeyStrength strength : AesKeyStrength.values()) {
+            if (builder.aesKeyStrengthCounts[strength.getRawCode()] > 0) {
+                aesKeyStrengthHistogram.put(strength, builder.aesKeyStrengthCounts[strength.getRawCode()]);
+            }
+        }
+
+        this.ratioHistogram = builder.ratioCounts.clone();
+        this.totalPackedSize = builder.totalPackedSize;
+        this.totalRawSize = builder.totalRawSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     *  @return the compression method of the entry, or null if it is not one supported by Zip4j
+     */
+    public CompressionMethod getCompressionMethod(int index) {
+        final int ordinal = compressionOrdinal(getCompressionMethodCode(index));
+        return ordinal < 0 ? null : COMPRESSION_METHODS[ordinal];
+    }
+
+    public int getCompressionMethodCode(int index) {
+        return Short.toUnsignedInt(compressionMethods[Objects.checkIndex(index, size)]);
+    }
+
+    public EncryptionMethod getEncryptionMethod(int index) {
+        return ENCRYPTION_METHODS[encryptionMethods[Objects.checkIndex(index, size)]];
+    }
+
+    /**
+     *  @return the AES key strength of the entry, or null if the entry is not AES encrypted
+     */
+    public AesKeyStrength getAesKeyStrength(int index) {
+        final byte strength = aesKeyStrengths[Objects.checkIndex(index, size)];
+        return strength == NO_AES_KEY_STRENGTH ? null : AesKeyStrength.getAesKeyStrengthFromRawCode(strength);
+    }
+
+    public long getPackedSize(int index) {
+        return packedSizes[Objects.checkIndex(index, size)];
+    }
+
+    public long getRawSize(int index) {
+        return rawSizes[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     *  @return the packed size over the raw size of the entry, 1 for empty entries
+     */
+    public double getCompressionRatio(int index) {
+        return ratio(getPackedSize(index), getRawSize(index));
+    }
+
+    public Map<CompressionMethod,Integer> getCompressionMethodHistogram() {
+        return Collections.unmodifiableMap(compressionMethodHistogram);
+    }
+
+    public int getUnknownCompressionMethodCount() {
+        return unknownCompressionMethodCount;
+    }
+
+    public Map<EncryptionMethod,Integer> getEncryptionMethodHistogram() {
+        return Collections.unmodifiableMap(encryptionMethodHistogram);
+    }
+
+    public Map<AesKeyStrength,Integer> getAesKeyStrengthHistogram() {
+        return Collections.unmodifiableMap(aesKeyStrengthHistogram);
+    }
+
+    /**
+     *  @return the number of entries in each compression ratio bucket, as bounded by {@link #RATIO_BUCKETS}
+     */
+    public int[] getCompressionRatioHistogram() {
+        return ratioHistogram.clone();
+    }
+
+    public long getTotalPackedSize() {
+        return totalPackedSize;
+    }
+
+    public long getTotalRawSize() {
+        return totalRawSize;
+    }
+
+    public double getCompressionRatio() {
+        return ratio(totalPackedSize, totalRawSize);
+    }
+
+    public boolean hasEncryptionMethod(EncryptionMethod method) {
+        return encryptionMethodHistogram.containsKey(method);
+    }
+
+    public boolean hasCompressionMethod(CompressionMethod method) {
+        return compressionMethodHistogram.containsKey(method);
+    }
+
+    /**
+     *  @return the AES key strength used by most AES entries (the strongest, if tied), or null if no entry is AES
+     *  encrypted
+     */
+    public AesKeyStrength getPredominantAesKeyStrength() {
+        AesKeyStrength predominant = null;
+        int maxCount = 0;
+        for (Map.Entry<AesKeyStrength,Integer> entry : aesKeyStrengthHistogram.entrySet()) {
+            // Iteration is in ascending order of strength, so ties resolve to the strongest
+            if (entry.getValue() >= maxCount) {
+                predominant = entry.getKey();
+                maxCount = entry.getValue();
+            }
+        }
+        return predominant;
+    }
+
+    private static int compressionOrdinal(int code) {
+        for (CompressionMethod method : COMPRESSION_METHODS) {
+            if (method.getCode() == code) {
+                return method.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    private static double ratio(long packedSize, long rawSize) {
+        return rawSize == 0 ? 1 : (double)packedSize / rawSize;
+    }
+
+    /**
+     *  Accumulates the table one entry at a time, in central directory order.
+     */
+    static class Builder {
+        private int size;
+        private short[] compressionMethods;
+        private byte[] encryptionMethods;
+        private byte[] aesKeyStrengths;
+        private long[] packedSizes;
+        private long[] rawSizes;
+
+        private final int[] compressionMethodCounts = new int[COMPRESSION_METHODS.length];
+        private int unknownCompressionMethodCount;
+        private final int[] encryptionMethodCounts = new int[ENCRYPTION_METHODS.length];
+        private final int[] aesKeyStrengthCounts = new int[4];
+        private final int[] ratioCounts = new int[RATIO_BUCKETS.length + 1];
+        private long totalPackedSize;
+        private long totalRawSize;
+
+        Builder(int expectedSize) {
+            final int capacity = Math.max(expectedSize, 16);
+            compressionMethods = new short[capacity];
+            encryptionMethods = new byte[capacity];
+            aesKeyStrengths = new byte[capacity];
+            packedSizes = new long[capacity];
+            rawSizes = new long[capacity];
+        }
+
+        /**
+         *  @param aesKeyStrength the raw code of the AES key strength, or 0 if the entry is not AES encrypted
+         */
+        Builder add(int compressionMethod, EncryptionMethod encryptionMethod, int aesKeyStrength, long packedSize,
+                    long rawSize) {
+            if (size == compressionMethods.length) {
+                final int capacity = size + (size >> 1);
+                compressionMethods = Arrays.copyOf(compressionMethods, capacity);
+                encryptionMethods = Arrays.copyOf(encryptionMethods, capacity);
+                aesKeyStrengths = Arrays.copyOf(aesKeyStrengths, capacity);
+                packedSizes = Arrays.copyOf(packedSizes, capacity);
+                rawSizes = Arrays.copyOf(rawSizes, capacity);
+            }
+
+            compressionMethods[size] = (short)compressionMethod;
+            encryptionMethods[size] = (byte)encryptionMethod.ordinal();
+            aesKeyStrengths[size] = (byte)(aesKeyStrength >= 1 && aesKeyStrength <= 3 ? aesKeyStrength :
+                    NO_AES_KEY_STRENGTH);
+            packedSizes[size] = packedSize;
+            rawSizes[size] = rawSize;
+            size++;
+
+            final int compressionOrdinal = compressionOrdinal(compressionMethod);
+            if (compressionOrdinal < 0) {
+                unknownCompressionMethodCount++;
+            } else {
+                compressionMethodCounts[compressionOrdinal]++;
+            }
+            encryptionMethodCounts[encryptionMethod.ordinal()]++;
+            aesKeyStrengthCounts[aesKeyStrengths[size - 1]]++;
+            if (rawSize > 0) {
+                ratioCounts[ratioBucket(ratio(packedSize, rawSize))]++;
+            }
+            totalPackedSize += packedSize;
+            totalRawSize += rawSize;
+            return this;
+        }
+
+        Zip4jArchiveMetadata build() {
+            return new Zip4jArchiveMetadata(this);
+        }
+
+        private static int ratioBucket(double ratio) {
+            for (int i = 0; i < RATIO_BUCKETS.length; i++) {
+                if (ratio < RATIO_BUCKETS[i]) {
+                    return i;
+                }
+            }
+            return RATIO_BUCKETS.length;
+        }
+    }
+}
@@ -7,24 +7,52 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 import com.ntak.pearlzip.archive.constants.ConfigurationConstants;
 import com.ntak.pearlzip.archive.pub.*;
 import com.ntak.pearlzip.archive.util.LoggingUtil;
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.CentralDirectory;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jHeaderCache.CachedArchive;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jEntryChannel;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jNameIndex;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.layout.AnchorPane;
 import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.AESExtraDataRecord;
 import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.UnzipParameters;
 import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.AesVersion;
 import net.lingala.zip4j.model.enums.CompressionMethod;
 import net.lingala.zip4j.model.enums.EncryptionMethod;
 import net.lingala.zip4j.progress.ProgressMonitor;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
 
 import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
 import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.CNS_NTAK_PEARL_ZIP_ICON_FOLDER;
@@ -45,38 +73,52 @@ public class Zip4jArchiveReadService implements ArchiveReadService  {
     @Override
     public ArchiveInfo generateArchiveMetaData(String archivePath) {
         ArchiveInfo archiveInfo = new ArchiveInfo();
-        // Assumption 1: Uniform setup of each Zip entry in the archive. Same encryption and same compression format
-        // throughout etc.
-        // Assumption 2: All files to be added will be performed on a uniform basis and will not be different
-        // entry-to-entry
-        // TODO: Will need to modify this to store metadata for individual file entries. Adding files to zip archive
-        //  would involve custom settings for Compression, Encryption. It maybe safe to assume a uniform password
-        //  across encrypted entries. Extraction will be affected by this also. List and Test involve header usage
-        //  and should be ok.
+        // Archive level settings are derived from the predominant setup of the entries, as a default for further
+        // entries added to the archive. The setup of each individual entry is retained in the per-entry metadata
+        // table, which is gathered in the same single pass over the central directory as the listing.
+        // Entries added later may deviate from these defaults by the compression policy (see Zip4jCompressionPolicy).
+        // A single password is assumed across encrypted entries: it is held once in the archive info and verified
+        // against the first encrypted entry alone (see verifyPassword).
         try {
-            ZipFile archive = new ZipFile(archivePath);
             archiveInfo.setArchivePath(archivePath);
             archiveInfo.setArchiveFormat("zip");
-            List<FileHeader> headers = archive.getFileHeaders();
+            Zip4jArchiveMetadata metadata;
+            Optional<CentralDirectory> centralDirectory = Zip4jCentralDirectoryReader.read(Paths.get(archivePath));
+            if (centralDirectory.isPresent()) {
+                metadata = centralDirectory.get().metadata();
+            } else {
+                List<FileHeader> headers = HEADER_CACHE.getFileHeaders(archivePath);
+                Zip4jArchiveMetadata.Builder builder = new Zip4jArchiveMetadata.Builder(headers.size());
+                for (FileHeader header : headers) {
+                    AESExtraDataRecord aesRecord = header.getAesExtraDataRecord();
+                    EncryptionMethod encryptionMethod = header.isEncrypted() ? header.getEncryptionMethod() :
+                            EncryptionMethod.NONE;
+                    if (Objects.nonNull(aesRecord) && encryptionMethod == EncryptionMethod.AES) {
+                        builder.add(aesRecord.getCompressionMethod().getCode(), encryptionMethod,
+                                    aesRecord.getAesKeyStrength().getRawCode(), header.getCompressedSize(),
+                                    header.getUncompressedSize());
+                    } else {
+                        builder.add(header.getCompressionMethod().getCode(), encryptionMethod, 0,
+                                    header.getCompressedSize(), header.getUncompressedSize());
+                    }
+                }
+                metadata = builder.build();
+            }
+            archiveInfo.addProperty(KEY_ENTRY_METADATA, metadata);
 
             // Encryption checks...
-            if (headers.stream()
-                       .anyMatch(f -> f.isEncrypted() && f.getEncryptionMethod()
-                                                          .equals(EncryptionMethod.AES))) {
+            if (metadata.hasEncryptionMethod(EncryptionMethod.AES)) {
                 archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
                 archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, EncryptionMethod.AES);
-                archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, AesKeyStrength.KEY_STRENGTH_256);
-            } else if (headers.stream()
-                              .anyMatch(f -> f.isEncrypted() && f.getEncryptionMethod()
-                                                                 .equals(EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG))) {
+                archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, metadata.getPredominantAesKeyStrength());
+            } else if (metadata.hasEncryptionMethod(EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG)) {
                 archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
                 archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG);
             }
 
             archiveInfo.addProperty(KEY_COMPRESSION_METHOD, CompressionMethod.DEFLATE);
-            if (headers.stream().anyMatch(f->f.getCompressionMethod().equals(CompressionMethod.STORE))
-                && headers.stream().noneMatch(f->f.getCompressionMethod().equals(CompressionMethod.DEFLATE))
-            ) {
+            if (metadata.hasCompressionMethod(CompressionMethod.STORE)
+                    && !metadata.hasCompressionMethod(CompressionMethod.DEFLATE)) {
                 archiveInfo.addProperty(KEY_COMPRESSION_METHOD, CompressionMethod.STORE);
             }
 
@@ -98,83 +140,102 @@ public class Zip4jArchiveReadService implements ArchiveReadService  {
 
     @Override
     public List<FileInfo> listFiles(long sessionId, ArchiveInfo archiveInfo) {
-        List<FileInfo> files = new LinkedList<>();
+        List<FileInfo> files = new ArrayList<>();
         Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
         try {
             ZipParameters parameters = new ZipParameters();
             initializeZipParameters(parameters, archiveInfo);
 
-            ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
-                                          archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
-                                                     .orElse(null));
-
-            for (FileHeader header : archive.getFileHeaders()) {
-                FileInfo fileInfo = transform.transform(header).orElse(null);
-
-                if (Objects.nonNull(fileInfo)) {
-                    files.add(fileInfo);
-                }
+            Optional<CentralDirectory> centralDirectory =
+                    Zip4jCentralDirectoryReader.read(Paths.get(archiveInfo.getArchivePath()));
+            if (centralDirectory.isPresent()) {
+                files = centralDirectory.get().entries();
+            } else {
+                files = transform.transformAll(HEADER_CACHE.getFileHeaders(archiveInfo.getArchivePath()));
             }
 
             // Handle directory creation
-            HashSet<FileInfo> setFiles =
-                    files.stream()
-                         .filter(f -> !f.isFolder() || (f.isFolder() && files.stream()
-                                                                             .noneMatch(g -> g.getFileName()
-                                                                                              .contains(f.getFileName()) && g.getLevel() > f.getLevel())))
-                         .collect(Collectors.toCollection(HashSet::new));
-            for (FileInfo file : files) {
-                final int level = file.getLevel();
-                Path parent = Paths.get(file.getFileName());
-                for (int j = 1; j <= level; j++) {
-                    parent = parent.getParent();
-                    final FileInfo fileInfo = new FileInfo(setFiles.size(),
-                                                           level - j,
-                                                           parent.toString(),
-                                                           -1,
-                                                           0,
-                                                           0,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           0,
-                                                           null,
-                                                           true,
-                                                           false,
-                                                           Collections.singletonMap(
-                                                                   ConfigurationConstants.KEY_ICON_REF,
-                                                                   System.getProperty(
-                                                                           CNS_NTAK_PEARL_ZIP_ICON_FOLDER, "")));
-                    setFiles.add(fileInfo);
-                }
+            return Zip4jDirectoryIndex.resolve(files);
+        } catch (Exception e) {
+            // LOG: Issue listing entries from zip archive.\nException thrown: %s\nException message: %s\nStack
+            // trace:\n%s
+            // TITLE: Issue listing entries from archive
+            // HEADER: The archive %s could not be interrogated for contents
+            // BODY: Exception %s was thrown on the attempt to list contents of the archive. Further details can be
+            // found below.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE,
+                                        e.getClass().getCanonicalName(),
+                                        e.getMessage(),
+                                        LoggingUtil.getStackTraceFromException(e)
+            ));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE, archiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE, e.getClass().getCanonicalName()),
+                                              e,
+                                              archiveInfo));
+        }
+        return Collections.emptyList();
+    }
 
-                if (file.isFolder()) {
-                    final FileInfo fileInfo = new FileInfo(setFiles.size(),
-                                                           level,
-                                                           file.getFileName(),
-                                                           -1,
-                                                           0,
-                                                           0,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           null,
-                                                           0,
-                                                           null,
-                                                           true,
-                                                           false,
-                                                           Collections.singletonMap(
-                                                                   ConfigurationConstants.KEY_ICON_REF,
-                                                                   System.getProperty(
-                                                                           CNS_NTAK_PEARL_ZIP_ICON_FOLDER, "")));
-                    setFiles.add(fileInfo);
+    public Stream<List<FileInfo>> streamFiles(long sessionId, ArchiveInfo archiveInfo) {
+        return streamFiles(sessionId, archiveInfo, DEFAULT_LISTING_BATCH_SIZE);
+    }
+
+    /**
+     *  Lists the entries of an archive lazily, in batches of at most batchSize entries, synthesised folders included.
+     *  Implicit folders are yielded ahead of the first entry beneath them. Progress is reported as each batch is
+     *  decoded. The central directory is read through the header cache, so it is held in full whilst streamed.
+     */
+    public Stream<List<FileInfo>> streamFiles(long sessionId, ArchiveInfo archiveInfo, int batchSize) {
+        try {
+            List<FileHeader> headers = HEADER_CACHE.getFileHeaders(archiveInfo.getArchivePath());
+            return StreamSupport.stream(new Zip4jFileInfoSpliterator(sessionId, headers, batchSize), false);
+        } catch (IOException e) {
+            // LOG: Issue listing entries from zip archive.\nException thrown: %s\nException message: %s\nStack
+            // trace:\n%s
+            // TITLE: Issue listing entries from archive
+            // HEADER: The archive %s could not be interrogated for contents
+            // BODY: Exception %s was thrown on the attempt to list contents of the archive. Further details can be
+            // found below.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE,
+                                        e.getClass().getCanonicalName(),
+                                        e.getMessage(),
+                                        LoggingUtil.getStackTraceFromException(e)
+            ));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE, archiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_LISTING_ARCHIVE, e.getClass().getCanonicalName()),
+                                              e,
+                                              archiveInfo));
+        }
+        return Stream.empty();
+    }
+
+    /**
+     *  Lists the direct contents of a folder (the root, if empty), for the lazy expansion of an archive tree. The
+     *  children are found through the name index of the archive, so only their headers are transformed. Subfolders are
+     *  resolved as for {@link #listFiles(long, ArchiveInfo)}, synthesised where holding contents.
+     */
+    public List<FileInfo> listChildren(long sessionId, ArchiveInfo archiveInfo, String folder) {
+        try {
+            final CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+            final Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+            final Map<String,Object> folderInfo = Collections.singletonMap(ConfigurationConstants.KEY_ICON_REF,
+                                                                           System.getProperty(
+                                                                                   CNS_NTAK_PEARL_ZIP_ICON_FOLDER,
+                                                                                   ""));
+            final List<FileInfo> files = new ArrayList<>();
+            for (Zip4jNameIndex.Child child : cachedArchive.nameIndex().children(folder)) {
+                if (child.isImplicitFolder()) {
+                    files.add(Zip4jDirectoryIndex.createFolder(files.size(), Zip4jUtil.getLevel(child.name()),
+                                                               child.name(), folderInfo));
+                } else {
+                    files.add(transform.transform(cachedArchive.headers().get(child.ordinal()), files.size()));
                 }
             }
-
-            return new ArrayList<>(setFiles);
+            return files;
         } catch (Exception e) {
             // LOG: Issue listing entries from zip archive.\nException thrown: %s\nException message: %s\nStack
             // trace:\n%s
@@ -209,24 +270,36 @@ public class Zip4jArchiveReadService implements ArchiveReadService  {
             ZipParameters parameters = new ZipParameters();
             initializeZipParameters(parameters, archiveInfo);
 
-            ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
-                                          archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
-                                                     .orElse(null));
-
-            FileHeader header = archive.getFileHeader(fileInfo.getFileName());
+            char[] password = archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
+                                         .orElse(null);
+            CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+            FileHeader header = cachedArchive.getFileHeader(fileInfo.getFileName());
             Path parent = path.toAbsolutePath().getParent();
+            String fileName = Paths.get(fileInfo.getFileName()).getFileName().toString();
 
             if (Objects.nonNull(header)) {
-                ProgressMonitor monitor = archive.getProgressMonitor();
                 DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
                                                      resolveTextKey(LBL_PROGRESS_EXTRACT_ENTRY,
                                                                     fileInfo.getFileName()),
                                                      -1,
                                                      1)
                 );
-                archive.extractFile(header, parent.toString(),
-                                    Paths.get(fileInfo.getFileName()).getFileName().toString(), new UnzipParameters());
-                return monitor.getResult().equals(ProgressMonitor.Result.SUCCESS);
+
+                // Entries of split archives may span volumes, which is resolved by Zip4j itself
+                if (cachedArchive.splitArchive()) {
+                    try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(), password)) {
+                        ProgressMonitor monitor = archive.getProgressMonitor();
+                        archive.extractFile(getZip4jHeader(archive, header), parent.toString(), fileName,
+                                            new UnzipParameters());
+                        return monitor.getResult().equals(ProgressMonitor.Result.SUCCESS);
+                    }
+                }
+
+                try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(Paths.get(archiveInfo.getArchivePath()))) {
+                    extractEntry(lease.channel(), header, password, parent.resolve(fileName),
+                                 Zip4jUtil.isVerifyingExtractedCrc(archiveInfo));
+                    return true;
+                }
             }
         } catch(Exception e) {
             // LOG: Issue extracting from zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
@@ -247,15 +320,577 @@ public class Zip4jArchiveReadService implements ArchiveReadService  {
         return false;
     }
 
+    /**
+     *  Extracts many entries into a target directory, preserving their paths within the archive. The central
+     *  directory is read once and entries are decompressed in parallel. The workers share the pooled channel over the
+     *  archive, taking entries in local header order so that reads progress through the archive.
+     *  Folders are created as required. The success of each entry and the aggregate throughput are reported in the
+     *  result.
+     */
+    public Zip4jBatchResult extractFiles(long sessionId, Path targetDirectory, ArchiveInfo archiveInfo,
+                                         List<FileInfo> files) {
+        final Map<String,Boolean> entryResults = new ConcurrentHashMap<>();
+        final Map<String,Exception> failures = new ConcurrentHashMap<>();
+        final AtomicLong bytesExtracted = new AtomicLong();
+        final long startTime = System.nanoTime();
+        final Path root = targetDirectory.toAbsolutePath().normalize();
+        final char[] password = archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
+                                           .orElse(null);
+        final boolean isVerifyingCrc = Zip4jUtil.isVerifyingExtractedCrc(archiveInfo);
+
+        try {
+            CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+            Map<String,FileHeader> headersByName = new HashMap<>();
+            for (FileHeader header : cachedArchive.headers()) {
+                headersByName.putIfAbsent(header.getFileName(), header);
+            }
+
+            List<FileHeader> entries = new ArrayList<>(files.size());
+            for (FileInfo file : files) {
+                if (file.isFolder()) {
+                    Files.createDirectories(resolveEntryPath(root, file.getFileName()));
+                    entryResults.put(file.getFileName(), true);
+                    continue;
+                }
+
+                FileHeader header = headersByName.get(file.getFileName());
+                if (Objects.isNull(header)) {
+                    entryResults.put(file.getFileName(), false);
+                    failures.put(file.getFileName(),
+                                 new ZipException(String.format("Entry %s not found", file.getFileName())));
+                    continue;
+                }
+                entries.add(header);
+            }
+
+            if (cachedArchive.splitArchive()) {
+                // Entries of split archives may span volumes, which is resolved by Zip4j itself
+                try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(), password)) {
+                    for (FileHeader header : entries) {
+                        try {
+                            resolveEntryPath(root, header.getFileName());
+                            archive.extractFile(getZip4jHeader(archive, header), root.toString(),
+                                                header.getFileName());
+                            bytesExtracted.addAndGet(header.getUncompressedSize());
+                            entryResults.put(header.getFileName(), true);
+                        } catch(Exception e) {
+                            entryResults.put(header.getFileName(), false);
+                            failures.put(header.getFileName(), e);
+                        }
+                        postEntryProgress(sessionId, header, entries.size());
+                    }
+                }
+            } else {
+                processInParallel(Paths.get(archiveInfo.getArchivePath()), entries,
+                                  (channel, header, buffer) -> extractEntry(channel, header, password,
+                                                                            resolveEntryPath(root,
+                                                                                             header.getFileName()),
+                                                                            isVerifyingCrc),
+                                  entryResults, failures, bytesExtracted,
+                                  header -> postEntryProgress(sessionId, header, entries.size()));
+            }
+        } catch(Exception e) {
+            // LOG: Issue extracting from zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
+            // TITLE: Issue extracting archive
+            // HEADER: The archive %s could not be extracted
+            // BODY: Exception %s was thrown on the attempt to extract from the archive. Further details can be found
+            // below.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE, e.getClass().getCanonicalName(),
+                                        e.getMessage(), getStackTraceFromException(e)));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE, archiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_EXTRACTING_FILE, e.getClass().getCanonicalName()),
+                                              e,
+                                              archiveInfo));
+            for (FileInfo file : files) {
+                entryResults.putIfAbsent(file.getFileName(), false);
+            }
+        } finally {
+            DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED, 1, 1));
+        }
+
+        Zip4jBatchResult result = new Zip4jBatchResult(entryResults, failures, bytesExtracted.get(),
+                                                       System.nanoTime() - startTime);
+        // LOG: Processed %d entries (%d bytes) in %d ms at %.2f MB/s
+        LOGGER.info(resolveTextKey(LOG_ARCHIVE_Z4J_BATCH_THROUGHPUT, entryResults.size(), result.bytesProcessed(),
+                                   TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos()),
+                                   result.getBytesPerSecond() / (1024 * 1024)));
+        return result;
+    }
+
+    /**
+     *  Verifies the integrity of every entry of an archive. Each entry is decompressed (and decrypted, if a password
+     *  is held in the archive info) in parallel into a discarding sink, with its CRC-32 and size checked against the
+     *  central directory. For AES entries that do not store a CRC (AE-2), the authentication code checked by Zip4j
+     *  is relied upon instead. No temporary files are written and each worker holds a single buffer.
+     *  <br/><br/>
+     *  Progress, including the running throughput, is reported as each entry is verified. Failures are reported per
+     *  entry in the result. Where no password is held, encrypted entries are not verified, but reported as requiring
+     *  a password rather than as failures.
+     */
+    public Zip4jBatchResult deepTestArchive(long sessionId, ArchiveInfo archiveInfo) {
+        final Map<String,Boolean> entryResults = new ConcurrentHashMap<>();
+        final Map<String,Exception> failures = new ConcurrentHashMap<>();
+        final Set<String> passwordRequired = new TreeSet<>();
+        final AtomicLong bytesVerified = new AtomicLong();
+        final long startTime = System.nanoTime();
+        final char[] password = archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
+                                           .orElse(null);
+
+        try {
+            CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+            List<FileHeader> entries = new ArrayList<>(cachedArchive.headers().size());
+            for (FileHeader header : cachedArchive.headers()) {
+                if (header.isDirectory()) {
+                    entryResults.put(header.getFileName(), true);
+                } else if (header.isEncrypted() && (Objects.isNull(password) || password.length == 0)) {
+                    // LOG: Entry %s is encrypted and was not verified, as no password was given
+                    LOGGER.warn(resolveTextKey(LOG_ARCHIVE_Z4J_ENTRY_PASSWORD_REQUIRED, header.getFileName()));
+                    passwordRequired.add(header.getFileName());
+                } else {
+                    entries.add(header);
+                }
+            }
+
+            final Consumer<FileHeader> progress = header -> {
+                final double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000d;
+                // LOG: Verifying entry %s (%.2f MB/s)...
+                DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                                     resolveTextKey(LOG_ARCHIVE_Z4J_VERIFYING_ENTRY,
+                                                                    header.getFileName(),
+                                                                    elapsedSeconds > 0 ?
+                                                                            bytesVerified.get() / elapsedSeconds / (1024 * 1024) : 0d),
+                                                     1,
+                                                     entries.size()));
+            };
+
+            if (cachedArchive.splitArchive()) {
+                // Entries of split archives may span volumes, which is resolved by Zip4j itself
+                try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(), password)) {
+                    byte[] buffer = new byte[VERIFICATION_BUFFER_SIZE];
+                    for (FileHeader header : entries) {
+                        try (ZipInputStream entryStream = archive.getInputStream(header)) {
+                            bytesVerified.addAndGet(verifyEntry(entryStream, header, buffer));
+                            entryResults.put(header.getFileName(), true);
+                        } catch(Exception e) {
+                            entryResults.put(header.getFileName(), false);
+                            failures.put(header.getFileName(), e);
+                        }
+                        progress.accept(header);
+                    }
+                }
+            } else {
+                processInParallel(Paths.get(archiveInfo.getArchivePath()), entries,
+                                  (channel, header, buffer) -> {
+                                      try (ZipInputStream entryStream = Zip4jUtil.openEntryStream(channel, header,
+                                                                                                  password)) {
+                                          return verifyEntry(entryStream, header, buffer);
+                                      }
+                                  },
+                                  entryResults, failures, bytesVerified, progress);
+            }
+
+            for (Map.Entry<String,Exception> failure : failures.entrySet()) {
+                // LOG: Entry %s failed verification: %s
+                LOGGER.warn(resolveTextKey(LOG_ARCHIVE_Z4J_ENTRY_VERIFICATION_FAILED, failure.getKey(),
+                                           failure.getValue().getMessage()));
+            }
+            if (!failures.isEmpty()) {
+                // TITLE: Archive integrity check failed
+                // HEADER: %d entries of the archive %s failed verification
+                // BODY: The archive is corrupt or the password is incorrect. Details of each failed entry can be found
+                // in the log.
+                DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                                  resolveTextKey(TITLE_ARCHIVE_Z4J_VERIFICATION_FAILED),
+                                                  resolveTextKey(HEADER_ARCHIVE_Z4J_VERIFICATION_FAILED,
+                                                                 failures.size(), archiveInfo.getArchivePath()),
+                                                  resolveTextKey(BODY_ARCHIVE_Z4J_VERIFICATION_FAILED),
+                                                  failures.values().iterator().next(),
+                                                  archiveInfo));
+            }
+        } catch(Exception e) {
+            // LOG: Issue testing zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
+            // TITLE: Issue testing archive
+            // HEADER: The integrity of archive %s could not be tested
+            // BODY: Exception %s was thrown on the attempt to test the integrity of the archive. Further details can be
+            // found below.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE, e.getClass().getCanonicalName(),
+                                        e.getMessage(), getStackTraceFromException(e)));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE, archiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_TESTING_ARCHIVE, e.getClass().getCanonicalName()),
+                                              e,
+                                              archiveInfo));
+            failures.putIfAbsent(archiveInfo.getArchivePath(), e);
+        }
+
+        Zip4jBatchResult result = new Zip4jBatchResult(entryResults, failures, bytesVerified.get(),
+                                                       System.nanoTime() - startTime, passwordRequired);
+        // LOG: Processed %d entries (%d bytes) in %d ms at %.2f MB/s
+        LOGGER.info(resolveTextKey(LOG_ARCHIVE_Z4J_BATCH_THROUGHPUT, entryResults.size(), result.bytesProcessed(),
+                                   TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos()),
+                                   result.getBytesPerSecond() / (1024 * 1024)));
+        return result;
+    }
+
+    private static long verifyEntry(InputStream entryStream, FileHeader header, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        int read;
+        while ((read = entryStream.read(buffer)) != -1) {
+            crc.update(buffer, 0, read);
+            size += read;
+        }
+
+        if (size != header.getUncompressedSize()) {
+            throw new ZipException(String.format("Size mismatch for entry %s: expected %d bytes, read %d bytes",
+                                                 header.getFileName(), header.getUncompressedSize(), size));
+        }
+
+        final boolean isCrcStored = header.getEncryptionMethod() != EncryptionMethod.AES
+                || header.getAesExtraDataRecord().getAesVersion() != AesVersion.TWO;
+        if (isCrcStored && crc.getValue() != header.getCrc()) {
+            throw new ZipException(String.format("CRC mismatch for entry %s: expected %08x, computed %08x",
+                                                 header.getFileName(), header.getCrc(), crc.getValue()),
+                                   ZipException.Type.CHECKSUM_MISMATCH);
+        }
+
+        return size;
+    }
+
+    /**
+     *  Applies an operation to each of the given entries of a non-split archive, using a fixed pool of workers. The
+     *  workers share the pooled channel over the archive through positional reads, each holding a single buffer and
+     *  taking entries in local header order so that reads progress through the archive. The failure of an entry does
+     *  not affect the processing of the others.
+     */
+    private static void processInParallel(Path archivePath, List<FileHeader> entries, EntryOperation operation,
+                                          Map<String,Boolean> entryResults, Map<String,Exception> failures,
+                                          AtomicLong bytesProcessed, Consumer<FileHeader> onProcessed) throws Exception {
+        entries.sort(Comparator.comparingLong(FileHeader::getOffsetLocalHeader));
+        final AtomicInteger cursor = new AtomicInteger();
+        final int parallelism = Math.max(1, Math.min(Zip4jUtil.getParallelism(), entries.size()));
+        List<Future<Void>> workers = new ArrayList<>(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executor.submit(() -> {
+                    byte[] buffer = new byte[VERIFICATION_BUFFER_SIZE];
+                    Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath);
+                    try {
+                        int next;
+                        while ((next = cursor.getAndIncrement()) < entries.size()) {
+                            FileHeader header = entries.get(next);
+                            try {
+                                long processed;
+                                try {
+                                    processed = operation.apply(lease.channel(), header, buffer);
+                                } catch(Exception e) {
+                                    // The channel is shared, so may have been closed by the interruption of another
+                                    // reader: retry once over a fresh channel, unless this reader was interrupted
+                                    if (lease.channel().isOpen() || Thread.currentThread().isInterrupted()) {
+                                        throw e;
+                                    }
+                                    lease.close();
+                                    lease = CHANNEL_POOL.acquire(archivePath);
+                                    processed = operation.apply(lease.channel(), header, buffer);
+                                }
+                                bytesProcessed.addAndGet(processed);
+                                entryResults.put(header.getFileName(), true);
+                            } catch(Exception e) {
+                                entryResults.put(header.getFileName(), false);
+                                failures.put(header.getFileName(), e);
+                            }
+                            onProcessed.accept(header);
+                        }
+                    } finally {
+                        lease.close();
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            // Readers are left to finish their current entry rather than interrupted, which would close the channel
+            // shared with the other readers of the archive
+            cursor.set(entries.size());
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     *  @return the header of the entry as read by Zip4j, which is matched by its location, as its name differs from
+     *  that of the cached header where not UTF-8 encoded (Zip4j decodes all names as UTF-8)
+     */
+    private static FileHeader getZip4jHeader(ZipFile archive, FileHeader header) throws ZipException {
+        return archive.getFileHeaders()
+                      .stream()
+                      .filter(h -> h.getOffsetLocalHeader() == header.getOffsetLocalHeader()
+                              && h.getDiskNumberStart() == header.getDiskNumberStart())
+                      .findFirst()
+                      .orElseThrow(() -> new ZipException(String.format("Entry %s not found", header.getFileName())));
+    }
+
+    @FunctionalInterface
+    private interface EntryOperation {
+        long apply(FileChannel channel, FileHeader header, byte[] buffer) throws Exception;
+    }
+
+    private static void postEntryProgress(long sessionId, FileHeader header, int total) {
+        DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                             resolveTextKey(LBL_PROGRESS_EXTRACT_ENTRY, header.getFileName()),
+                                             1,
+                                             total));
+    }
+
+    private static Path resolveEntryPath(Path root, String entryName) throws ZipException {
+        Path target = root.resolve(entryName).normalize();
+        if (!target.startsWith(root)) {
+            throw new ZipException(String.format("Entry %s resolves outside of the target directory", entryName));
+        }
+        return target;
+    }
+
+    /**
+     *  Extracts an entry of a non-split archive. Stored, unencrypted entries are copied by the kernel from the archive
+     *  to the target without passing through the heap, their CRC-32 being verified optionally. All other entries are
+     *  decompressed (and decrypted) through a stream, which always verifies the CRC-32.
+     */
+    private static long extractEntry(FileChannel channel, FileHeader header, char[] password, Path target,
+            boolean isVerifyingCrc) throws IOException {
+        if (header.isDirectory()) {
+            Files.createDirectories(target);
+            return 0;
+        }
+
+        long bytes;
+        Files.createDirectories(target.getParent());
+        if (Zip4jUtil.isStoredUnencrypted(header)) {
+            bytes = Zip4jUtil.transferStoredEntry(channel, header, target, isVerifyingCrc);
+        } else {
+            try (ZipInputStream entryStream = Zip4jUtil.openEntryStream(channel, header, password)) {
+                bytes = Files.copy(entryStream, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.setLastModifiedTime(target, FileTime.fromMillis(header.getLastModifiedTimeEpoch()));
+
+        return bytes;
+    }
+
+    /**
+     *  Opens a stream over the decompressed (and decrypted) contents of an entry, so that it may be read without being
+     *  extracted to disk. The header of the entry is taken from the cached central directory, and the stream reads the
+     *  archive through the pooled channel, whose lease is released along with the stream. The CRC-32 of the entry is
+     *  verified once the stream has been read to the end.
+     *  @throws ZipException if the entry is not found or is a folder, or the password is incorrect
+     */
+    public InputStream openEntry(ArchiveInfo archiveInfo, String fileName) throws IOException {
+        final CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+        final FileHeader header = getEntryHeader(cachedArchive, archiveInfo, fileName);
+        final char[] password = archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW)
+                                           .orElse(null);
+
+        if (cachedArchive.splitArchive()) {
+            // Entries of split archives may span volumes, which is resolved by Zip4j itself
+            final ZipFile archive = new ZipFile(archiveInfo.getArchivePath(), password);
+            try {
+                return new FilterInputStream(archive.getInputStream(getZip4jHeader(archive, header))) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            archive.close();
+                        }
+                    }
+                };
+            } catch(IOException | RuntimeException e) {
+                archive.close();
+                throw e;
+            }
+        }
+
+        return Zip4jUtil.openEntryStream(Paths.get(archiveInfo.getArchivePath()), header, password);
+    }
+
+    /**
+     *  Opens a channel over the decompressed contents of an entry, as {@link #openEntry(ArchiveInfo, String)}.
+     */
+    public ReadableByteChannel openEntryChannel(ArchiveInfo archiveInfo, String fileName) throws IOException {
+        return Channels.newChannel(openEntry(archiveInfo, fileName));
+    }
+
+    /**
+     *  Opens a read-only, seekable channel over the contents of an entry, so that parts of it (such as a trailing
+     *  index) may be read without decompressing all that precedes them. Stored entries are read directly from the
+     *  archive. Deflated entries are inflated from the nearest checkpoint of their inflate index, which is cached per
+     *  entry and filled in as the entry is read, so later seeks (through this or another channel) inflate at most the
+     *  checkpoint interval. Encrypted entries and those of split archives are read through
+     *  {@link #openEntry(ArchiveInfo, String)}, which is reopened to seek backwards.
+     *  @throws ZipException if the entry is not found or is a folder
+     */
+    public SeekableByteChannel openSeekableEntry(ArchiveInfo archiveInfo, String fileName) throws IOException {
+        final CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+        final FileHeader header = getEntryHeader(cachedArchive, archiveInfo, fileName);
+        final CompressionMethod method = header.getCompressionMethod();
+        if (cachedArchive.splitArchive() || header.isEncrypted()
+                || method != CompressionMethod.STORE && method != CompressionMethod.DEFLATE) {
+            return Zip4jEntryChannel.ofStream(() -> openEntry(archiveInfo, fileName), header.getUncompressedSize());
+        }
+
+        final Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(Paths.get(archiveInfo.getArchivePath()));
+        try {
+            final long dataOffset = Zip4jUtil.getDataOffset(lease.channel(), header);
+            if (method == CompressionMethod.STORE) {
+                return Zip4jEntryChannel.ofStored(lease, dataOffset, header.getUncompressedSize());
+            }
+            return Zip4jEntryChannel.ofDeflated(lease, dataOffset, header.getCompressedSize(),
+                                                header.getUncompressedSize(),
+                                                INFLATE_INDEX_CACHE.getIndex(cachedArchive.key(),
+                                                                             header.getOffsetLocalHeader(),
+                                                                             Zip4jUtil.getInflateCheckpointInterval()));
+        } catch(IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    private static FileHeader getEntryHeader(CachedArchive cachedArchive, ArchiveInfo archiveInfo, String fileName)
+            throws ZipException {
+        final FileHeader header = cachedArchive.getFileHeader(fileName);
+        if (Objects.isNull(header) || header.isDirectory()) {
+            throw new ZipException(String.format("Entry %s not found in archive %s", fileName,
+                                                 archiveInfo.getArchivePath()), ZipException.Type.FILE_NOT_FOUND);
+        }
+        return header;
+    }
+
+    /**
+     *  Publishes the decompressed contents of an entry, reading each buffer on the executor only once it has been
+     *  requested. Each subscriber reads the entry through its own stream, as {@link #openEntry(ArchiveInfo, String)},
+     *  and is signalled onError should the entry not be found or fail to read.
+     */
+    public Flow.Publisher<ByteBuffer> publishEntry(ArchiveInfo archiveInfo, String fileName, Executor executor) {
+        return new Zip4jEntryPublisher(() -> openEntry(archiveInfo, fileName), executor, ENTRY_PUBLISHER_CHUNK_SIZE);
+    }
+
+    /**
+     *  Verifies a password against the first encrypted entry of an archive, without decrypting its contents. For AES
+     *  entries the key is derived from the password and compared against the stored 2-byte password verifier. For
+     *  ZipCrypto entries the 12-byte encryption header is decrypted and its check byte compared. Only the encryption
+     *  header of a single entry is read, so the cost does not depend on the size of the archive.
+     *  <br/><br/>
+     *  An archive without encrypted entries accepts any password.
+     */
+    public boolean verifyPassword(long sessionId, ArchiveInfo archiveInfo, char[] password) {
+        try {
+            CachedArchive cachedArchive = HEADER_CACHE.getArchive(archiveInfo.getArchivePath());
+            FileHeader header = cachedArchive.headers()
+                                             .stream()
+                                             .filter(h -> h.isEncrypted() && !h.isDirectory())
+                                             .findFirst()
+                                             .orElse(null);
+            if (Objects.isNull(header)) {
+                return true;
+            }
+
+            if (cachedArchive.splitArchive()) {
+                // The entry may reside in another volume. Zip4j validates the password on opening the entry.
+                try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(), password);
+                     ZipInputStream entryStream = archive.getInputStream(header)) {
+                    return true;
+                } catch(ZipException e) {
+                    if (e.getType() == ZipException.Type.WRONG_PASSWORD) {
+                        return false;
+                    }
+                    throw e;
+                }
+            }
+
+            try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(Paths.get(archiveInfo.getArchivePath()))) {
+                final FileChannel channel = lease.channel();
+                final long dataOffset = Zip4jUtil.getDataOffset(channel, header);
+
+                if (header.getEncryptionMethod() == EncryptionMethod.AES) {
+                    AesKeyStrength strength = header.getAesExtraDataRecord()
+                                                    .getAesKeyStrength();
+                    ByteBuffer encryptionHeader = ByteBuffer.allocate(strength.getSaltLength()
+                                                                              + Zip4jCryptoUtil.AES_PASSWORD_VERIFIER_LENGTH);
+                    readFully(channel, encryptionHeader, dataOffset);
+                    byte[] salt = Arrays.copyOf(encryptionHeader.array(), strength.getSaltLength());
+                    byte[] verifier = Arrays.copyOfRange(encryptionHeader.array(), strength.getSaltLength(),
+                                                         encryptionHeader.capacity());
+                    return Zip4jCryptoUtil.isAesPasswordValid(password, salt, verifier, strength);
+                }
+
+                ByteBuffer encryptionHeader = ByteBuffer.allocate(Zip4jCryptoUtil.ZIP_CRYPTO_HEADER_LENGTH);
+                readFully(channel, encryptionHeader, dataOffset);
+                return Zip4jCryptoUtil.isZipCryptoPasswordValid(password, encryptionHeader.array(), header.getCrc(),
+                                                                header.getLastModifiedTime());
+            }
+        } catch(Exception e) {
+            // LOG: Issue verifying the password of zip archive.\nException thrown: %s\nException message: %s\nStack
+            // trace:\n%s
+            // TITLE: Issue verifying archive password
+            // HEADER: The password of archive %s could not be verified
+            // BODY: Exception %s was thrown on the attempt to verify the password of the archive. Further details can
+            // be found below.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD, e.getClass().getCanonicalName(),
+                                        e.getMessage(), getStackTraceFromException(e)));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD, archiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_VERIFYING_PASSWORD, e.getClass().getCanonicalName()),
+                                              e,
+                                              archiveInfo));
+        }
+
+        return false;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+    }
+
     @Override
     public boolean testArchive(long sessionId, String archivePath) {
+        return testArchive(sessionId, ArchiveService.generateDefaultArchiveInfo(archivePath));
+    }
+
+    /**
+     *  Tests the integrity of an archive, deep testing every entry where so configured. Encrypted entries are deep
+     *  tested with the password held in the archive info, and are otherwise reported as requiring a password rather
+     *  than as corrupt. Completion is reported however the test ends.
+     */
+    public boolean testArchive(long sessionId, ArchiveInfo archiveInfo) {
         try {
-            ZipFile archive = new ZipFile(archivePath);
-            return archive.isValidZipFile();
+            if (Boolean.parseBoolean(CURRENT_SETTINGS.getProperty(CNS_DEEP_TEST, "false"))) {
+                return deepTestArchive(sessionId, archiveInfo).isSuccessful();
+            }
+
+            try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath())) {
+                return archive.isValidZipFile();
+            } catch(IOException e) {
+                return false;
+            }
         } finally {
-            ArchiveService.DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED, 1, 1));
+            postCompletion(sessionId);
         }
+    }
 
+    void postCompletion(long sessionId) {
+        ArchiveService.DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED, 1, 1));
     }
 
     private Optional<Node> getOpenArchiveOptionsPane(ArchiveInfo archiveInfo) {
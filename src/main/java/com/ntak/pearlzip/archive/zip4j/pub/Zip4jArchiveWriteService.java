@@ -5,7 +5,16 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 
 import com.ntak.pearlzip.archive.pub.*;
 import com.ntak.pearlzip.archive.util.LoggingUtil;
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.Location;
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.RawCentralDirectory;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCentralDirectoryJournal;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline.Decision;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline.Source;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPolicy;
 import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
 import com.ntak.pearlzip.ui.model.FXArchiveInfo;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -15,27 +24,40 @@ import javafx.scene.layout.AnchorPane;
 import javafx.util.Pair;
 import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.AESExtraDataRecord;
 import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.AesVersion;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.LoggerContext;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.KEY_FILE_PATH;
 import static com.ntak.pearlzip.archive.constants.LoggingConstants.COMPLETED;
 import static com.ntak.pearlzip.archive.constants.LoggingConstants.PROGRESS;
 import static com.ntak.pearlzip.archive.util.LoggingUtil.resolveTextKey;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+import static net.lingala.zip4j.model.enums.AesKeyStrength.KEY_STRENGTH_256;
 import static net.lingala.zip4j.model.enums.CompressionMethod.DEFLATE;
+import static net.lingala.zip4j.model.enums.EncryptionMethod.AES;
 
 /**
  *  Implementation of the Archive Service for writing zip archives using the Zip4j library underneath.
@@ -56,46 +78,46 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
             long splitSize = archiveInfo.<Long>getProperty(KEY_SPLIT_ARCHIVE_SIZE).orElse(DEFAULT_SPLIT_ARCHIVE_SIZE);
 
             Zip4jUtil.initializeZipParameters(parameters, archiveInfo);
-            ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
-                                          archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null));
-
-            // Split archive only works with a non-empty archive.
-            if (isSplitArchiveRequest) {
-                final Path tempDir = Files.createTempDirectory("pz");
-                final Path tempFile = Paths.get(tempDir.toAbsolutePath().toString(), ".pz-archive");
-                Files.createFile(tempFile);
-
-                LocalDateTime creationTime = LocalDateTime.now();
-                if (files.length == 0) {
-                    FileInfo fileInfo = new FileInfo(0,0,".pz-archive",0L,0L,0L,
-                                                     creationTime, creationTime, creationTime,
-                                                     null, null, 0,
-                                                     "Created by PearlZip", false, parameters.isEncryptFiles(),
-                                                     Collections.singletonMap(KEY_FILE_PATH,
-                                                                              tempFile.toAbsolutePath().toString()));
-                    files = new FileInfo[]{fileInfo};
+            try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
+                                               archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null))) {
+                // Split archive only works with a non-empty archive.
+                if (isSplitArchiveRequest) {
+                    final Path tempDir = Files.createTempDirectory("pz");
+                    final Path tempFile = Paths.get(tempDir.toAbsolutePath().toString(), ".pz-archive");
+                    Files.createFile(tempFile);
+
+                    LocalDateTime creationTime = LocalDateTime.now();
+                    if (files.length == 0) {
+                        FileInfo fileInfo = new FileInfo(0,0,".pz-archive",0L,0L,0L,
+                                                         creationTime, creationTime, creationTime,
+                                                         null, null, 0,
+                                                         "Created by PearlZip", false, parameters.isEncryptFiles(),
+                                                         Collections.singletonMap(KEY_FILE_PATH,
+                                                                                  tempFile.toAbsolutePath().toString()));
+                        files = new FileInfo[]{fileInfo};
+                    }
+                    archive.createSplitZipFileFromFolder(Arrays.stream(files)
+                                                               .filter(FileInfo::isFolder)
+                                                               .map(f -> (String)f.getAdditionalInfoMap().get(KEY_FILE_PATH))
+                                                               .filter(Objects::nonNull)
+                                                               .map(File::new)
+                                                               .findFirst()
+                                                               .get(),
+                                               parameters,
+                                               isSplitArchiveRequest,
+                                               splitSize);
+                    Files.deleteIfExists(tempFile);
+                } else {
+                    // Create stub file to ensure archive is created
+                    final Path tempFile = Files.createTempFile(".tmp", "");
+                    archive.addFile(tempFile.toFile());
+                    archive.removeFile(tempFile.toFile()
+                                               .getName());
+                    Files.deleteIfExists(tempFile);
+
+                    // Adding subsequent archive files, if any...
+                    addFile(sessionId, archiveInfo, files);
                 }
-                archive.createSplitZipFileFromFolder(Arrays.stream(files)
-                                                           .filter(FileInfo::isFolder)
-                                                           .map(f -> (String)f.getAdditionalInfoMap().get(KEY_FILE_PATH))
-                                                           .filter(Objects::nonNull)
-                                                           .map(File::new)
-                                                           .findFirst()
-                                                           .get(),
-                                           parameters,
-                                           isSplitArchiveRequest,
-                                           splitSize);
-                Files.deleteIfExists(tempFile);
-            } else {
-                // Create stub file to ensure archive is created
-                final Path tempFile = Files.createTempFile(".tmp", "");
-                archive.addFile(tempFile.toFile());
-                archive.removeFile(tempFile.toFile()
-                                           .getName());
-                Files.deleteIfExists(tempFile);
-
-                // Adding subsequent archive files, if any...
-                addFile(sessionId, archiveInfo, files);
             }
         } catch(Exception e) {
             // LOG: Issue creating zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
@@ -115,6 +137,7 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
                                               e,
                                               archiveInfo));
         } finally {
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
             DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
         }
     }
@@ -134,27 +157,12 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
 
     @Override
     public boolean addFile(long sessionId, ArchiveInfo archiveInfo, FileInfo... files) {
-        try {
-            ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
-                                          archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null));
-
-            // Add files...
-            addFilesInPlace(sessionId, archive, archiveInfo,
-                            Arrays.stream(files).filter(f-> {
-                                try {
-                                    // All files and empty folders
-                                    return !f.isFolder() || Files.list(Paths.get(f.getAdditionalInfoMap()
-                                                                                  .getOrDefault(KEY_FILE_PATH,"").toString()))
-                                                                                  .filter(p->!Objects.equals(
-                                                                                             p.toAbsolutePath(),
-                                                                                             Paths.get(archiveInfo.getArchivePath()))
-                                                                                  ).count() == 0;
-                                } catch(IOException e) {
-                                    return false;
-                                }
-                            }).collect(Collectors.toList()));
-
-            return true;
+        // Held across recovery and the append, so that neither runs whilst another writer is appending
+        try (Zip4jCentralDirectoryJournal.ArchiveLock lock =
+                     Zip4jCentralDirectoryJournal.lock(Paths.get(archiveInfo.getArchivePath()))) {
+            // Roll back any append interrupted previously
+            Zip4jCentralDirectoryJournal.recover(Paths.get(archiveInfo.getArchivePath()));
+            return addFiles(sessionId, archiveInfo, Arrays.asList(files), n -> false);
         } catch(Exception e) {
             // LOG: Issue adding to zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
             // TITLE: Issue adding to archive
@@ -170,12 +178,151 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
                                               e,
                                               archiveInfo));
         } finally {
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
             DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
         }
         return false;
     }
 
-    private void addFilesInPlace(long sessionId, ZipFile archive, ArchiveInfo archiveInfo, List<FileInfo> files) throws ZipException {
+    /**
+     *  Brings the archive up to date with the given files, as when refreshing it from a working directory. Only files
+     *  which are new, or which differ from their entry, are added; unchanged files are not compressed again.
+     *  A file is unchanged if its size and last modified time (to the 2 second resolution of the archive) match those
+     *  of its entry or, where the {@code KEY_SYNC_COMPARE_CRC} property is set, if its size and CRC-32 match those of
+     *  its entry, regardless of its last modified time. The CRC-32 of AES (AE-2) entries is not held in the archive,
+     *  so these are compared by size and time alone.
+     *  <br/><br/>
+     *  Where the {@code KEY_SYNC_REMOVE_VANISHED} property is set, entries matching none of the files (other than
+     *  the folders holding them) are removed too. The removal of vanished and changed entries is a single rewrite,
+     *  followed by a single append of the changed and new files.
+     *  @return true, if all changed and new files were added
+     */
+    public boolean syncFiles(long sessionId, ArchiveInfo archiveInfo, FileInfo... files) {
+        try (Zip4jCentralDirectoryJournal.ArchiveLock lock =
+                     Zip4jCentralDirectoryJournal.lock(Paths.get(archiveInfo.getArchivePath()))) {
+            final Path archivePath = Paths.get(archiveInfo.getArchivePath());
+            Zip4jCentralDirectoryJournal.recover(archivePath);
+            if (Files.exists(archivePath) && isSplitArchive(archivePath)) {
+                throw new ZipException("Zip file format does not allow updating split/spanned files");
+            }
+
+            // LOG: Synchronising archive %s...
+            DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                                 resolveTextKey(LOG_ARCHIVE_Z4J_SYNCHRONISING_ARCHIVE,
+                                                                archiveInfo.getArchivePath()), 1, 1));
+            final boolean isComparingCrc = archiveInfo.<Boolean>getProperty(KEY_SYNC_COMPARE_CRC).orElse(false);
+            final boolean isRemovingVanished =
+                    archiveInfo.<Boolean>getProperty(KEY_SYNC_REMOVE_VANISHED).orElse(false);
+            final Map<String,FileHeader> headers = new HashMap<>();
+            for (FileHeader header : HEADER_CACHE.getFileHeaders(archiveInfo.getArchivePath())) {
+                headers.put(header.getFileName(), header);
+            }
+
+            final List<FileInfo> changedFiles = new ArrayList<>();
+            final Set<String> retainedNames = new HashSet<>();
+            for (FileInfo file : files) {
+                final String name = file.isFolder() ? String.format(PATTERN_FOLDER, file.getFileName()) :
+                        file.getFileName();
+                // The entry along with the folders holding it
+                for (int separator = name.indexOf('/'); separator >= 0; separator = name.indexOf('/', separator + 1)) {
+                    retainedNames.add(name.substring(0, separator + 1));
+                }
+                retainedNames.add(name);
+
+                if (!isUnchanged(headers.get(name), file, isComparingCrc)) {
+                    changedFiles.add(file);
+                }
+            }
+
+            final Predicate<String> isVanished = isRemovingVanished ? n -> !retainedNames.contains(n) : n -> false;
+            final long vanishedCount = headers.keySet()
+                                              .stream()
+                                              .filter(isVanished)
+                                              .count();
+            boolean isSuccessful = true;
+            if (!changedFiles.isEmpty() || vanishedCount > 0) {
+                isSuccessful = addFiles(sessionId, archiveInfo, changedFiles, isVanished);
+            }
+
+            // LOG: Synchronised archive %s: %d entries added or updated, %d unchanged and %d removed
+            LOGGER.info(resolveTextKey(LOG_ARCHIVE_Z4J_SYNC_SUMMARY, archiveInfo.getArchivePath(), changedFiles.size(),
+                                       files.length - changedFiles.size(), vanishedCount));
+            return isSuccessful;
+        } catch(Exception e) {
+            postAddFailure(sessionId, archiveInfo, e);
+        } finally {
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
+            DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
+        }
+        return false;
+    }
+
+    private static boolean isUnchanged(FileHeader header, FileInfo file, boolean isComparingCrc) throws IOException {
+        if (Objects.isNull(header)) {
+            return false;
+        }
+        if (file.isFolder()) {
+            return true;
+        }
+
+        final File source = Paths.get(String.valueOf(file.getAdditionalInfoMap().get(KEY_FILE_PATH)))
+                                 .toAbsolutePath()
+                                 .toFile();
+        if (!source.isFile() || source.length() != header.getUncompressedSize()) {
+            return false;
+        }
+
+        final AESExtraDataRecord aesRecord = header.getAesExtraDataRecord();
+        if (isComparingCrc && (Objects.isNull(aesRecord) || aesRecord.getAesVersion() != AesVersion.TWO)) {
+            return computeCrc(source) == header.getCrc();
+        }
+        // Only the standard MS-DOS date and time is held in the header
+        return (Zip4jUtil.toDosTime(source.lastModified()) & 0xFFFFFFFFL) == header.getLastModifiedTime();
+    }
+
+    private static long computeCrc(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     *  @param isRemoved the existing entries to be removed alongside those replaced (only for non-split archives)
+     */
+    private boolean addFiles(long sessionId, ArchiveInfo archiveInfo, List<FileInfo> files,
+            Predicate<String> isRemoved) throws IOException {
+        try (ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
+                                           archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null))) {
+            // Add files...
+            return addFilesInPlace(sessionId, archive, archiveInfo,
+                            files.stream().filter(f-> {
+                                try {
+                                    // All files and empty folders
+                                    return !f.isFolder() || Files.list(Paths.get(f.getAdditionalInfoMap()
+                                                                                  .getOrDefault(KEY_FILE_PATH,"").toString()))
+                                                                                  .filter(p->!Objects.equals(
+                                                                                             p.toAbsolutePath(),
+                                                                                             Paths.get(archiveInfo.getArchivePath()))
+                                                                                  ).count() == 0;
+                                } catch(IOException e) {
+                                    return false;
+                                }
+                            }).collect(Collectors.toList()), isRemoved);
+        }
+    }
+
+    private boolean addFilesInPlace(long sessionId, ZipFile archive, ArchiveInfo archiveInfo, List<FileInfo> files,
+            Predicate<String> isRemoved) throws IOException {
+        final Zip4jCompressionPolicy policy = Zip4jUtil.getCompressionPolicy(archiveInfo);
+        if (archive.getFile().exists() && !isSplitArchive(archive.getFile().toPath())) {
+            return addFilesInSinglePass(sessionId, archive, archiveInfo, policy, files, isRemoved);
+        }
+
         for (FileInfo file : files) {
             // LOG: Adding file %s...
             DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
@@ -193,12 +340,164 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
                                        .toAbsolutePath()
                                        .toFile(), fileParam);
             } else {
+                final File source = Paths.get(file.getAdditionalInfoMap().get(KEY_FILE_PATH).toString())
+                                         .toAbsolutePath()
+                                         .toFile();
                 fileParam.setFileNameInZip(fileName);
-                archive.addFile(Paths.get(file.getAdditionalInfoMap().get(KEY_FILE_PATH).toString())
-                                     .toAbsolutePath()
-                                     .toFile(), fileParam);
+                policy.apply(fileParam, fileName, source.length());
+                archive.addFile(source, fileParam);
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  Adds all entries by appending them to the archive. Zip4j rewrites the central directory on each call to
+     *  addFile/addFolder, so adding entries one at a time is quadratic in the number of entries. Here, the new entries
+     *  are compressed in parallel by the {@link Zip4jCompressionPipeline} and written from the start of the existing
+     *  central directory, which is then written once along with the new records, so that the cost is proportional to
+     *  the size of the central directory and new entries rather than the archive. Entries replaced by the batch are
+     *  first removed in a single rewrite, along with any other entries to be removed. Sources that cannot be read or
+     *  compressed are reported individually and skipped. The compression and encryption of each entry is as set by the
+     *  compression policy, where a rule matches.
+     *  <br/><br/>
+     *  The original central directory is journalled for the duration of the append (see
+     *  {@link Zip4jCentralDirectoryJournal}), so that an interrupted append leaves the archive as it was.
+     *  @return true, if all entries were added
+     */
+    private boolean addFilesInSinglePass(long sessionId, ZipFile archive, ArchiveInfo archiveInfo,
+            Zip4jCompressionPolicy policy, List<FileInfo> files, Predicate<String> isRemoved) throws IOException {
+        final Map<String,Source> sources = new LinkedHashMap<>();
+        boolean isSuccessful = true;
+        for (FileInfo file : files) {
+            File source = Paths.get(String.valueOf(file.getAdditionalInfoMap().get(KEY_FILE_PATH)))
+                               .toAbsolutePath()
+                               .toFile();
+            if (!source.exists() || !source.canRead()) {
+                isSuccessful = false;
+                postAddFailure(sessionId, archiveInfo,
+                               new ZipException(String.format("File does not exist or cannot be read: %s", source)));
+                continue;
+            }
+
+            ZipParameters fileParam = new ZipParameters();
+            Zip4jUtil.initializeZipParameters(fileParam, archiveInfo);
+            fileParam.setFileComment(file.getComments());
+            fileParam.setLastModifiedFileTime(source.lastModified());
+            fileParam.setFileNameInZip(file.isFolder() ? String.format(PATTERN_FOLDER, file.getFileName()) :
+                                               file.getFileName());
+            if (!file.isFolder()) {
+                policy.apply(fileParam, fileParam.getFileNameInZip(), source.length());
             }
+            sources.put(fileParam.getFileNameInZip(), new Source(source, fileParam));
         }
+        final Path archivePath = archive.getFile().toPath();
+        if (sources.isEmpty()) {
+            // Nothing to append, though entries may yet be removed (the archive is untouched if none match)
+            Zip4jEntryRemover.remove(archivePath, isRemoved, false);
+            return isSuccessful;
+        }
+
+        final Predicate<String> isReplacedOrRemoved = n -> sources.containsKey(n) || isRemoved.test(n);
+        try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final RawCentralDirectory centralDirectory = Zip4jCentralDirectoryReader.readRaw(channel);
+            if (Arrays.stream(centralDirectory.names()).noneMatch(isReplacedOrRemoved)) {
+                return appendEntries(sessionId, archivePath, channel, centralDirectory, archiveInfo, sources,
+                                     files.size()) && isSuccessful;
+            }
+        }
+
+        // Overwrite files action is default
+        Zip4jEntryRemover.remove(archivePath, isReplacedOrRemoved, false);
+        try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return appendEntries(sessionId, archivePath, channel, Zip4jCentralDirectoryReader.readRaw(channel),
+                                 archiveInfo, sources, files.size()) && isSuccessful;
+        }
+    }
+
+    /**
+     *  @return true, if all sources were written
+     */
+    private static boolean appendEntries(long sessionId, Path archivePath, FileChannel channel,
+            RawCentralDirectory centralDirectory, ArchiveInfo archiveInfo, Map<String,Source> sources,
+            int fileCount) throws IOException {
+        final AtomicBoolean isPipelineSuccessful = new AtomicBoolean(true);
+        final Location location = centralDirectory.location();
+        try (Zip4jCentralDirectoryJournal journal = Zip4jCentralDirectoryJournal.begin(archivePath, channel,
+                                                                                        location.offset())) {
+            Zip4jZipWriter writer = new Zip4jZipWriter(channel, location.offset(), centralDirectory.data(),
+                                                       location.entryCount(), location.comment());
+            final Zip4jCompressionPipeline pipeline =
+                    new Zip4jCompressionPipeline(archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null),
+                                                 Zip4jUtil.getParallelism(),
+                                                 Zip4jUtil.getChunkedDeflateThreshold(archiveInfo),
+                                                 Zip4jUtil.isAdaptiveCompression(archiveInfo));
+            pipeline.write(writer, new ArrayList<>(sources.values()), new Zip4jCompressionPipeline.Listener() {
+                        @Override
+                        public void onWritten(Source source, Zip4jZipWriter.Entry entry) {
+                            // LOG: Adding file %s...
+                            DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                                                 resolveTextKey(LOG_ARCHIVE_Z4J_ADDING_FILE,
+                                                                                entry.getName()),
+                                                                 1, fileCount));
+                        }
+
+                        @Override
+                        public void onFailed(Source source, Exception exception) {
+                            isPipelineSuccessful.set(false);
+                            postAddFailure(sessionId, archiveInfo, exception);
+                        }
+                    });
+            writer.finish();
+            journal.commit();
+            logDecisions(pipeline.getDecisions());
+        }
+        return isPipelineSuccessful.get();
+    }
+
+    private static void logDecisions(List<Decision> decisions) {
+        if (decisions.isEmpty()) {
+            return;
+        }
+
+        int storedCount = 0;
+        long storedSize = 0;
+        for (Decision decision : decisions) {
+            // LOG: Entry %s sampled to %.1f%% of its size by deflate, written with method %s
+            LOGGER.debug(resolveTextKey(LOG_ARCHIVE_Z4J_COMPRESSION_DECISION, decision.name(),
+                                        decision.getSampleRatio() * 100,
+                                        decision.isStored() ? CompressionMethod.STORE : DEFLATE));
+            if (decision.isStored()) {
+                storedCount++;
+                storedSize += decision.size();
+            }
+        }
+        // LOG: Adaptive compression stored %d of %d sampled entries, skipping the deflate of %d bytes
+        LOGGER.info(resolveTextKey(LOG_ARCHIVE_Z4J_ADAPTIVE_COMPRESSION, storedCount, decisions.size(), storedSize));
+    }
+
+    private static boolean isSplitArchive(Path archivePath) throws IOException {
+        try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath)) {
+            return Zip4jCentralDirectoryReader.locate(lease.channel()).isSplitArchive();
+        }
+    }
+
+    private static void postAddFailure(long sessionId, ArchiveInfo archiveInfo, Exception e) {
+        // LOG: Issue adding to zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
+        // TITLE: Issue adding to archive
+        // HEADER: An entry could not be added to archive %s
+        // BODY: Exception %s was thrown on the attempt to add an entry to archive. Further details can be
+        // found below.
+        LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_ADDING_FILE, e.getClass().getCanonicalName(),
+                                    e.getMessage(), LoggingUtil.getStackTraceFromException(e)));
+        DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                          resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_ADDING_FILE),
+                                          resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_ADDING_FILE,
+                                                         archiveInfo.getArchivePath()),
+                                          resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_ADDING_FILE,
+                                                         e.getClass().getCanonicalName()),
+                                          e,
+                                          archiveInfo));
     }
 
     @Override
@@ -209,66 +508,85 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
 
     @Override
     public boolean deleteFile(long sessionId, ArchiveInfo archiveInfo, FileInfo file) {
-        try {
-            Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
-            ZipFile archive = new ZipFile(archiveInfo.getArchivePath(),
-                                          archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null));
+        // LOG: Deleting file %s...
+        DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                             resolveTextKey(LOG_ARCHIVE_Z4J_DELETING_FILE, file.getFileName()), 1, 1));
+
+        if (file.isFolder()) {
+            // The folder along with all of its descendants
+            final String folder = String.format(PATTERN_FOLDER, file.getFileName());
+            return deleteEntries(sessionId, archiveInfo, n -> n.startsWith(folder), file.getFileName());
+        }
+        return deleteEntries(sessionId, archiveInfo, file.getFileName()::equals, file.getFileName());
+    }
 
-            // Overwrite files action is default
-            // LOG: Deleting file %s...
-            DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
-                                                 resolveTextKey(LOG_ARCHIVE_Z4J_DELETING_FILE, file.getFileName()), 1, 1));
+    /**
+     *  Deletes the named entries from the archive with a single rewrite. A name matches the entry of that name and,
+     *  where it names a folder (with or without the trailing separator), all entries within the folder. Immediate
+     *  parent folders left empty by the deletion are retained.
+     *  @return true, if at least one entry was deleted
+     */
+    public boolean deleteFiles(long sessionId, ArchiveInfo archiveInfo, Collection<String> names) {
+        final Set<String> exactNames = new HashSet<>();
+        final Set<String> folders = new HashSet<>();
+        for (String name : names) {
+            final String trimmed = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+            exactNames.add(trimmed);
+            folders.add(String.format(PATTERN_FOLDER, trimmed));
+        }
 
-            if (file.isFolder()) {
-                final List<FileHeader> fileHeaders = new ArrayList(archive.getFileHeaders());
-                Collections.sort(fileHeaders,
-                                 (a,b) -> (b.getFileName().length() - b.getFileName().replaceAll("/", "").length()) - (a.getFileName().length() - a.getFileName().replaceAll("/", "").length()));
-                for (FileHeader h : fileHeaders) {
-                    FileInfo hFile = transform.transform(h).orElse(null);
-                    if (Objects.nonNull(hFile) && hFile.getFileName()
-                                      .startsWith(file.getFileName()) && hFile.getLevel() > file.getLevel()) {
-                        try {
-                            archive.removeFile(h.getFileName());
-                        } catch(ZipException e) {
-                        }
-                    }
-                }
-                archive.removeFile(String.format(PATTERN_FOLDER, file.getFileName()));
-            } else {
-                archive.removeFile(file.getFileName());
-
-                // Keep immediate parent if last file is deleted...
-                Path parent = Paths.get(file.getFileName()).getParent();
-
-                if (Objects.nonNull(parent) && archive.getFileHeaders()
-                                                      .stream()
-                                                      .noneMatch(f -> f.getFileName()
-                                                                       .startsWith(parent.toString()))) {
-                    try {
-                        // Create temp directory structure to persist...
-                        Path tempDirectory = Files.createTempDirectory("pz");
-                        Path actualFile = Paths.get(tempDirectory.toAbsolutePath()
-                                                             .toString(), parent.toString());
-                        Files.createDirectories(actualFile);
-
-                        // Set up attributes with current archive settings
-                        Map<String,Object> attributes = new HashMap<>(file.getAdditionalInfoMap());
-                        attributes.put(KEY_FILE_PATH, actualFile.toAbsolutePath().toString());
-
-                        // Add file as necessary...
-                        FileInfo fileInfo = new FileInfo(archive.getFileHeaders().size(), file.getLevel(),
-                                                         parent.toString(), 0, 0, 0, LocalDateTime.now(),
-                                                         LocalDateTime.now(), LocalDateTime.now(), "", "", 0, "",
-                                                         true, file.isEncrypted(), attributes);
-                        addFilesInPlace(sessionId, archive, archiveInfo, Arrays.asList(fileInfo));
-                    } catch (IOException e) {
-                        return false;
-                    }
+        return deleteFiles(sessionId, archiveInfo, n -> {
+            if (exactNames.contains(n) || folders.contains(n)) {
+                return true;
+            }
+            // Check each enclosing folder of the entry
+            for (int separator = n.indexOf('/'); separator >= 0 && separator < n.length() - 1;
+                 separator = n.indexOf('/', separator + 1)) {
+                if (folders.contains(n.substring(0, separator + 1))) {
+                    return true;
                 }
             }
+            return false;
+        });
+    }
 
-            return true;
-        } catch(ZipException e) {
+    /**
+     *  Deletes the entries whose names match the glob (see {@link Zip4jUtil#toGlobPattern(String)}) from the archive
+     *  with a single rewrite. Immediate parent folders left empty by the deletion are retained.
+     *  @return true, if at least one entry was deleted
+     */
+    public boolean deleteFiles(long sessionId, ArchiveInfo archiveInfo, String glob) {
+        return deleteFiles(sessionId, archiveInfo, Zip4jUtil.toGlobPattern(glob).asMatchPredicate());
+    }
+
+    /**
+     *  Deletes the entries whose names (as held in the archive, with a trailing separator on folders) match the
+     *  predicate, e.g. n -> n.startsWith(prefix), with a single rewrite. Immediate parent folders left empty by the
+     *  deletion are retained.
+     *  @return true, if at least one entry was deleted
+     */
+    public boolean deleteFiles(long sessionId, ArchiveInfo archiveInfo, Predicate<String> predicate) {
+        // LOG: Deleting entries from archive %s...
+        DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                             resolveTextKey(LOG_ARCHIVE_Z4J_DELETING_FILES,
+                                                            archiveInfo.getArchivePath()), 1, 1));
+        return deleteEntries(sessionId, archiveInfo, predicate, null);
+    }
+
+    /**
+     *  @param description the name of the file being deleted, which must match at least one entry, or null
+     */
+    private boolean deleteEntries(long sessionId, ArchiveInfo archiveInfo, Predicate<String> predicate,
+            String description) {
+        try (Zip4jCentralDirectoryJournal.ArchiveLock lock =
+                     Zip4jCentralDirectoryJournal.lock(Paths.get(archiveInfo.getArchivePath()))) {
+            Zip4jCentralDirectoryJournal.recover(Paths.get(archiveInfo.getArchivePath()));
+            List<String> removed = Zip4jEntryRemover.remove(Paths.get(archiveInfo.getArchivePath()), predicate);
+            if (Objects.nonNull(description) && removed.isEmpty()) {
+                throw new ZipException(String.format("could not find file header for file: %s", description));
+            }
+            return !removed.isEmpty();
+        } catch(IOException e) {
             // LOG: Issue deleting from zip archive.\nException thrown: %s\nException message: %s\nStack trace:\n%s
             // TITLE: Issue deleting archive
             // HEADER: An entry could not be removed from archive %s
@@ -286,11 +604,163 @@ public class Zip4jArchiveWriteService implements ArchiveWriteService {
                                               e,
                                               archiveInfo));
         } finally {
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
+            DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
+        }
+        return false;
+    }
+
+    /**
+     *  Creates a split archive holding the entries of an existing archive. The raw data of each entry is copied into
+     *  the volumes as is, so the entries are neither decompressed nor decrypted.
+     *  @param archiveInfo the split archive to be created, along with its split size
+     *  @return true, if the split archive was created
+     */
+    public boolean createSplitArchive(long sessionId, ArchiveInfo sourceArchiveInfo, ArchiveInfo archiveInfo) {
+        // The source is held so that it is not appended to whilst being split
+        try (Zip4jCentralDirectoryJournal.ArchiveLock lock =
+                     Zip4jCentralDirectoryJournal.lock(Paths.get(sourceArchiveInfo.getArchivePath()))) {
+            final Path sourcePath = Paths.get(sourceArchiveInfo.getArchivePath());
+            Zip4jCentralDirectoryJournal.recover(sourcePath);
+            final long total;
+            try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(sourcePath)) {
+                total = Zip4jCentralDirectoryReader.locate(lease.channel()).entryCount();
+            }
+
+            Zip4jSplitArchiveWriter.split(sourcePath, Paths.get(archiveInfo.getArchivePath()),
+                                          archiveInfo.<Long>getProperty(KEY_SPLIT_ARCHIVE_SIZE)
+                                                     .orElse(DEFAULT_SPLIT_ARCHIVE_SIZE),
+                                          name ->
+                // LOG: Adding file %s...
+                DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                                     resolveTextKey(LOG_ARCHIVE_Z4J_ADDING_FILE, name), 1, total))
+            );
+            return true;
+        } catch(IOException e) {
+            // LOG: Archive %s could not be split. Exception message: %s.
+            // TITLE: ERROR: Issue splitting archive
+            // HEADER: Archive %s could not be split
+            // BODY: An exception was raised when trying to split archive %s. The process did not complete. Please
+            // see details below for more information.
+            LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_SPLIT_ARCHIVE_FAILED, sourceArchiveInfo.getArchivePath(),
+                                        e.getMessage()));
+            DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                              resolveTextKey(TITLE_ARCHIVE_Z4J_SPLIT_ARCHIVE_FAILED),
+                                              resolveTextKey(HEADER_ARCHIVE_Z4J_SPLIT_ARCHIVE_FAILED,
+                                                             sourceArchiveInfo.getArchivePath()),
+                                              resolveTextKey(BODY_ARCHIVE_Z4J_SPLIT_ARCHIVE_FAILED,
+                                                             sourceArchiveInfo.getArchivePath()),
+                                              e,
+                                              archiveInfo));
+        } finally {
+            HEADER_CACHE.invalidate(sourceArchiveInfo.getArchivePath());
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
+            DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
+        }
+        return false;
+    }
+
+    /**
+     *  Encrypts the unencrypted entries of the archive with the password, encryption method and key strength held by
+     *  the archive info. The compressed data of each entry is encrypted as is, without being decompressed and
+     *  recompressed, in a single pass over the archive.
+     *  @return true, if the archive was encrypted
+     */
+    public boolean encryptArchive(long sessionId, ArchiveInfo archiveInfo) {
+        boolean isSuccessful = transcodeArchive(sessionId, archiveInfo, () -> Zip4jEntryTranscoder.encrypting(
+                archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null),
+                archiveInfo.<EncryptionMethod>getProperty(KEY_ENCRYPTION_METHOD).orElse(AES),
+                archiveInfo.<AesKeyStrength>getProperty(KEY_ENCRYPTION_STRENGTH).orElse(KEY_STRENGTH_256)));
+        if (isSuccessful) {
+            archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        }
+        return isSuccessful;
+    }
+
+    /**
+     *  Re-encrypts the encrypted entries of the archive under a new password, retaining their encryption method. The
+     *  current password is that held by the archive info, which is updated to the new password on success.
+     *  @return true, if the password was changed
+     */
+    public boolean changePassword(long sessionId, ArchiveInfo archiveInfo, char[] newPassword) {
+        boolean isSuccessful = transcodeArchive(sessionId, archiveInfo, () -> Zip4jEntryTranscoder.changingPassword(
+                archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null), newPassword));
+        if (isSuccessful) {
+            archiveInfo.addProperty(KEY_ENCRYPTION_PW, newPassword);
+        }
+        return isSuccessful;
+    }
+
+    /**
+     *  Decrypts the encrypted entries of the archive with the password held by the archive info.
+     *  @return true, if the archive was decrypted
+     */
+    public boolean decryptArchive(long sessionId, ArchiveInfo archiveInfo) {
+        boolean isSuccessful = transcodeArchive(sessionId, archiveInfo, () -> Zip4jEntryTranscoder.decrypting(
+                archiveInfo.<char[]>getProperty(KEY_ENCRYPTION_PW).orElse(null)));
+        if (isSuccessful) {
+            archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, false);
+        }
+        return isSuccessful;
+    }
+
+    /**
+     *  @param transcoderFactory creates the transcoder, validating the passwords and encryption scheme given
+     */
+    private boolean transcodeArchive(long sessionId, ArchiveInfo archiveInfo, TranscoderFactory transcoderFactory) {
+        try (Zip4jCentralDirectoryJournal.ArchiveLock lock =
+                     Zip4jCentralDirectoryJournal.lock(Paths.get(archiveInfo.getArchivePath()))) {
+            final Zip4jEntryTranscoder transcoder = transcoderFactory.create();
+            final Path archivePath = Paths.get(archiveInfo.getArchivePath());
+            Zip4jCentralDirectoryJournal.recover(archivePath);
+            final long total;
+            try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath)) {
+                total = Zip4jCentralDirectoryReader.locate(lease.channel()).entryCount();
+            }
+
+            transcoder.transcode(archivePath, name ->
+                // LOG: Updating encryption of entry %s...
+                DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                                     resolveTextKey(LOG_ARCHIVE_Z4J_TRANSCODING_ENTRY, name), 1,
+                                                     total))
+            );
+            return true;
+        } catch(IOException e) {
+            postTranscodingFailure(sessionId, archiveInfo, e);
+        } finally {
+            HEADER_CACHE.invalidate(archiveInfo.getArchivePath());
             DEFAULT_BUS.post(new ProgressMessage(sessionId, COMPLETED, COMPLETED,1,1));
         }
         return false;
     }
 
+    private static void postTranscodingFailure(long sessionId, ArchiveInfo archiveInfo, Exception e) {
+        // LOG: Issue changing the encryption of zip archive.\nException thrown: %s\nException message: %s\nStack
+        // trace:\n%s
+        // TITLE: Issue changing archive encryption
+        // HEADER: The encryption of archive %s could not be changed
+        // BODY: Exception %s was thrown on the attempt to change the encryption of the archive. The archive has been
+        // left unchanged. Further details can be found below.
+        LOGGER.error(resolveTextKey(LOG_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE,
+                                    e.getClass().getCanonicalName(),
+                                    e.getMessage(),
+                                    LoggingUtil.getStackTraceFromException(e)
+        ));
+        DEFAULT_BUS.post(new ErrorMessage(sessionId,
+                                          resolveTextKey(TITLE_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE),
+                                          resolveTextKey(HEADER_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE,
+                                                         archiveInfo.getArchivePath()),
+                                          resolveTextKey(BODY_ARCHIVE_Z4J_ISSUE_TRANSCODING_ARCHIVE,
+                                                         e.getClass().getCanonicalName()),
+                                          e,
+                                          archiveInfo));
+    }
+
+    @FunctionalInterface
+    private interface TranscoderFactory {
+        Zip4jEntryTranscoder create() throws ZipException;
+    }
+
     private static ArchiveInfo generateDefaultArchiveInfo(String archivePath) {
         ArchiveInfo archiveInfo = new ArchiveInfo();
         archiveInfo.setArchivePath(archivePath);
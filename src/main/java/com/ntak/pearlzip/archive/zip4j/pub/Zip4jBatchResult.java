@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Outcome of an operation applied to many archive entries at once. Holds the success of each entry keyed by entry
+ *  name, the exception raised for each failed entry and the aggregate volume of data processed. Encrypted entries
+ *  that could not be processed for want of a password are held apart, being neither successes nor failures.
+ *  @author Aashutos Kakshepati
+ */
+public record Zip4jBatchResult(Map<String,Boolean> entryResults, Map<String,Exception> failures, long bytesProcessed,
+                               long elapsedNanos, Set<String> passwordRequired) {
+
+    public Zip4jBatchResult(Map<String,Boolean> entryResults, Map<String,Exception> failures, long bytesProcessed,
+            long elapsedNanos) {
+        this(entryResults, failures, bytesProcessed, elapsedNanos, Collections.emptySet());
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty() && !entryResults.containsValue(Boolean.FALSE);
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytesProcessed * 1_000_000_000d / elapsedNanos;
+    }
+}
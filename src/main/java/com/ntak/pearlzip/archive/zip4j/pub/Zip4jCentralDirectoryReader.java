@@ -0,0 +1,359 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.CHANNEL_POOL;
+
+/**
+ *  Lightweight reader of the central directory of a zip archive, used where only the listing and metadata of an
+ *  archive is required. The end of central directory record (and its Zip64 counterpart) and the central directory
+ *  itself are memory mapped and decoded straight into {@link FileInfo}, without the intermediate header model built
+ *  by Zip4j. Zip64 extended information (0x0001) and AES (0x9901) extra fields are interpreted; any other extra
+ *  field is skipped.
+ *  <br/><br/>
+ *  The decoded listing matches that produced by {@link Zip4jFileHeaderTransform}. Archives whose central directory
+ *  does not start on the last volume, or which exceed the size of a single mapping, are not handled and an empty
+ *  result is returned, so that the caller may fall back to Zip4j.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jCentralDirectoryReader {
+
+    static final int SIG_CENTRAL_DIRECTORY = 0x02014B50;
+    static final int SIG_END_OF_CENTRAL_DIRECTORY = 0x06054B50;
+    static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064B50;
+    static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064B50;
+
+    static final int EXTRA_ZIP64 = 0x0001;
+    static final int EXTRA_AES = 0x9901;
+
+    private static final int EOCD_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+    private Zip4jCentralDirectoryReader() {}
+
+    /**
+     *  Reads the central directory of the archive at the given path. A non-existent archive is read as empty.
+     *  @throws ZipException if the archive is not a valid zip archive
+     */
+    static Optional<CentralDirectory> read(Path archivePath) throws IOException {
+        if (!Files.exists(archivePath)) {
+            return Optional.of(new CentralDirectory(Collections.emptyList(), new Zip4jArchiveMetadata.Builder(0).build(),
+                                                    false));
+        }
+
+        try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath)) {
+            final FileChannel channel = lease.channel();
+            final Location location = locate(channel);
+            if (location.thisDisk() != location.centralDirectoryDisk() || location.size() > Integer.MAX_VALUE
+                    || location.entryCount() > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+
+            MappedByteBuffer centralDirectory = channel.map(FileChannel.MapMode.READ_ONLY, location.offset(),
+                                                            location.size());
+            centralDirectory.order(ByteOrder.LITTLE_ENDIAN);
+            return Optional.of(decode(centralDirectory, (int)location.entryCount(), location.isSplitArchive()));
+        }
+    }
+
+    /**
+     *  Locates the central directory of the archive from its end of central directory record, and its Zip64
+     *  counterpart where present.
+     *  @throws ZipException if the archive is not a valid zip archive
+     */
+    static Location locate(FileChannel channel) throws IOException {
+        final long archiveSize = channel.size();
+        if (archiveSize < EOCD_LENGTH) {
+            throw new ZipException("Zip file size less than minimum expected zip file size. Probably not a zip " +
+                                           "file or a corrupted zip file");
+        }
+
+        // The end of central directory record sits behind a comment of up to 64 KB, preceded by the Zip64 locator
+        final long tailOffset = Math.max(0, archiveSize - EOCD_LENGTH - MAX_COMMENT_LENGTH - ZIP64_LOCATOR_LENGTH);
+        MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailOffset, archiveSize - tailOffset);
+        tail.order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = -1;
+        for (int i = tail.limit() - EOCD_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == SIG_END_OF_CENTRAL_DIRECTORY) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("Zip headers not found. Probably not a zip file");
+        }
+
+        long thisDisk = Short.toUnsignedInt(tail.getShort(eocd + 4));
+        long centralDirectoryDisk = Short.toUnsignedInt(tail.getShort(eocd + 6));
+        long entryCount = Short.toUnsignedInt(tail.getShort(eocd + 10));
+        long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        final int commentLength = Math.min(Short.toUnsignedInt(tail.getShort(eocd + 20)),
+                                           tail.limit() - eocd - EOCD_LENGTH);
+        final byte[] comment = new byte[commentLength];
+        tail.get(eocd + EOCD_LENGTH, comment);
+
+        final int locator = eocd - ZIP64_LOCATOR_LENGTH;
+        if (locator >= 0 && tail.getInt(locator) == SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+            final long zip64EocdOffset = tail.getLong(locator + 8);
+            MappedByteBuffer zip64Eocd = channel.map(FileChannel.MapMode.READ_ONLY, zip64EocdOffset, 56);
+            zip64Eocd.order(ByteOrder.LITTLE_ENDIAN);
+            if (zip64Eocd.getInt(0) != SIG_ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid signature for zip64 end of central directory record");
+            }
+            thisDisk = Integer.toUnsignedLong(zip64Eocd.getInt(16));
+            centralDirectoryDisk = Integer.toUnsignedLong(zip64Eocd.getInt(20));
+            entryCount = zip64Eocd.getLong(32);
+            centralDirectorySize = zip64Eocd.getLong(40);
+            centralDirectoryOffset = zip64Eocd.getLong(48);
+        }
+
+        if (thisDisk == centralDirectoryDisk && centralDirectoryOffset + centralDirectorySize > archiveSize) {
+            throw new ZipException("Central directory extends beyond the end of the archive");
+        }
+        return new Location(centralDirectoryOffset, centralDirectorySize, entryCount, thisDisk, centralDirectoryDisk,
+                            comment);
+    }
+
+    /**
+     *  Reads the raw central directory records of the archive, along with the name and local header offset of each
+     *  entry, so that entries may be copied verbatim into another archive.
+     *  @throws ZipException if the archive is not a valid zip archive
+     */
+    static RawCentralDirectory readRaw(FileChannel channel) throws IOException {
+        final Location location = locate(channel);
+        if (location.size() > Integer.MAX_VALUE || location.entryCount() > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory is too large to be rewritten");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int)location.size())
+                                            .order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, location.offset() + buffer.position()) < 0) {
+                throw new ZipException("Central directory extends beyond the end of the archive");
+            }
+        }
+
+        final int entryCount = (int)location.entryCount();
+        final int[] recordOffsets = new int[entryCount + 1];
+        final String[] names = new String[entryCount];
+        final long[] localHeaderOffsets = new long[entryCount];
+        int position = 0;
+        for (int index = 0; index < entryCount; index++) {
+            if (position + CENTRAL_HEADER_LENGTH > buffer.limit() || buffer.getInt(position) != SIG_CENTRAL_DIRECTORY) {
+                throw new ZipException(String.format("Expected central directory entry not found (#%d)", index + 1));
+            }
+
+            final int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+            final long packedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            final long rawSize = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            final int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            final int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            final int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+
+            final int nameOffset = position + CENTRAL_HEADER_LENGTH;
+            final int extraOffset = nameOffset + nameLength;
+            final int commentOffset = extraOffset + extraLength;
+            if (commentOffset + commentLength > buffer.limit()) {
+                throw new ZipException(String.format("Central directory entry #%d is truncated", index + 1));
+            }
+
+            int extra = extraOffset;
+            while (localHeaderOffset == ZIP64_LIMIT && extra + 4 <= commentOffset) {
+                final int dataSize = Short.toUnsignedInt(buffer.getShort(extra + 2));
+                if (Short.toUnsignedInt(buffer.getShort(extra)) == EXTRA_ZIP64) {
+                    final int field = extra + 4 + (rawSize == ZIP64_LIMIT ? 8 : 0) + (packedSize == ZIP64_LIMIT ? 8 : 0);
+                    if (field + 8 <= extra + 4 + dataSize) {
+                        localHeaderOffset = buffer.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + dataSize;
+            }
+
+            recordOffsets[index] = position;
+            names[index] = new String(buffer.array(), nameOffset, nameLength, Zip4jUtil.getEntryCharset(flags));
+            localHeaderOffsets[index] = localHeaderOffset;
+            position = commentOffset + commentLength;
+        }
+        recordOffsets[entryCount] = position;
+
+        return new RawCentralDirectory(location, buffer.array(), recordOffsets, names, localHeaderOffsets);
+    }
+
+    private static CentralDirectory decode(MappedByteBuffer buffer, int entryCount, boolean splitArchive) throws ZipException {
+        final List<FileInfo> entries = new ArrayList<>(entryCount);
+        final Zip4jArchiveMetadata.Builder metadata = new Zip4jArchiveMetadata.Builder(entryCount);
+        byte[] text = new byte[256];
+
+        int position = 0;
+        for (int index = 0; index < entryCount; index++) {
+            if (position + CENTRAL_HEADER_LENGTH > buffer.limit() || buffer.getInt(position) != SIG_CENTRAL_DIRECTORY) {
+                throw new ZipException(String.format("Expected central directory entry not found (#%d)", index + 1));
+            }
+
+            final int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+            int compressionMethod = Short.toUnsignedInt(buffer.getShort(position + 10));
+            final long dosTime = Integer.toUnsignedLong(buffer.getInt(position + 12));
+            final long crc = Integer.toUnsignedLong(buffer.getInt(position + 16));
+            long packedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            long rawSize = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            final int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            final int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            final int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            final int externalAttributes = buffer.getInt(position + 38);
+
+            final int nameOffset = position + CENTRAL_HEADER_LENGTH;
+            final int extraOffset = nameOffset + nameLength;
+            final int commentOffset = extraOffset + extraLength;
+            position = commentOffset + commentLength;
+            if (position > buffer.limit()) {
+                throw new ZipException(String.format("Central directory entry #%d is truncated", index + 1));
+            }
+
+            if (nameLength > text.length || commentLength > text.length) {
+                text = new byte[Math.max(nameLength, commentLength)];
+            }
+            buffer.get(nameOffset, text, 0, nameLength);
+            final Charset charset = Zip4jUtil.getEntryCharset(flags);
+            String fileName = new String(text, 0, nameLength, charset);
+            if (fileName.isEmpty()) {
+                throw new ZipException("Invalid entry name in file header");
+            }
+
+            String comment = null;
+            if (commentLength > 0) {
+                buffer.get(commentOffset, text, 0, commentLength);
+                comment = new String(text, 0, commentLength, charset);
+            }
+
+            // Extra fields
+            boolean isAes = false;
+            int aesKeyStrength = 0;
+            int extra = extraOffset;
+            while (extra + 4 <= commentOffset) {
+                final int headerId = Short.toUnsignedInt(buffer.getShort(extra));
+                final int dataSize = Short.toUnsignedInt(buffer.getShort(extra + 2));
+                final int data = extra + 4;
+                if (data + dataSize > commentOffset) {
+                    break;
+                }
+
+                if (headerId == EXTRA_ZIP64) {
+                    // Values are only present for the fields saturated in the fixed length header, in this order
+                    int field = data;
+                    if (rawSize == ZIP64_LIMIT && field + 8 <= data + dataSize) {
+                        rawSize = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (packedSize == ZIP64_LIMIT && field + 8 <= data + dataSize) {
+                        packedSize = buffer.getLong(field);
+                    }
+                } else if (headerId == EXTRA_AES && dataSize >= 7) {
+                    isAes = true;
+                    aesKeyStrength = buffer.get(data + 4);
+                    compressionMethod = Short.toUnsignedInt(buffer.getShort(data + 5));
+                }
+                extra = data + dataSize;
+            }
+
+            final boolean isEncrypted = (flags & 0x1) != 0;
+            final boolean isFolder = isDirectory(externalAttributes, fileName);
+            final EncryptionMethod encryptionMethod;
+            if (!isEncrypted) {
+                encryptionMethod = EncryptionMethod.NONE;
+            } else if (isAes) {
+                encryptionMethod = EncryptionMethod.AES;
+            } else if ((flags & 0x40) != 0) {
+                encryptionMethod = EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG;
+            } else {
+                encryptionMethod = EncryptionMethod.ZIP_STANDARD;
+            }
+            metadata.add(compressionMethod, encryptionMethod, aesKeyStrength, packedSize, rawSize);
+
+            final int level = Zip4jUtil.getLevel(fileName);
+            // Removal of postfix slash
+            if (isFolder && fileName.endsWith("/")) {
+                fileName = fileName.substring(0, fileName.length() - 1);
+            }
+
+            final LocalDateTime lastModifiedTime = Zip4jUtil.toLocalDateTime(dosTime);
+            entries.add(new FileInfo(index, level, fileName, crc, packedSize, rawSize, lastModifiedTime,
+                                     lastModifiedTime, lastModifiedTime, "", "",
+                                     Integer.reverseBytes(externalAttributes), comment, isFolder, isEncrypted,
+                                     Collections.emptyMap()));
+        }
+
+        return new CentralDirectory(entries, metadata.build(), splitArchive);
+    }
+
+    /**
+     *  Folder detection consistent with Zip4j: the MS-DOS directory attribute, the Unix directory mode or a trailing
+     *  separator on the entry name.
+     */
+    private static boolean isDirectory(int externalAttributes, String fileName) {
+        return (externalAttributes & 0x10) != 0
+                || (externalAttributes & 0x40000000) != 0
+                || fileName.endsWith("/")
+                || fileName.endsWith("\\");
+    }
+
+    /**
+     *  Decoded central directory, with the per-entry metadata table aligned with the index of the entries.
+     */
+    record CentralDirectory(List<FileInfo> entries, Zip4jArchiveMetadata metadata, boolean splitArchive) {
+    }
+
+    /**
+     *  Raw central directory records, delimited by the record offsets (which hold a final entry for the end of the
+     *  last record), with the name and local header offset of each entry.
+     */
+    record RawCentralDirectory(Location location, byte[] data, int[] recordOffsets, String[] names,
+                               long[] localHeaderOffsets) {
+        int size() {
+            return names.length;
+        }
+
+        byte[] getRecord(int index) {
+            return Arrays.copyOfRange(data, recordOffsets[index], recordOffsets[index + 1]);
+        }
+    }
+
+    /**
+     *  Position of the central directory within its volume, along with the archive comment.
+     */
+    record Location(long offset, long size, long entryCount, long thisDisk, long centralDirectoryDisk,
+                    byte[] comment) {
+        boolean isSplitArchive() {
+            return thisDisk > 0;
+        }
+    }
+}
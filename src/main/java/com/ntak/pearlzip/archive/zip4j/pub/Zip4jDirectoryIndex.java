@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.constants.ConfigurationConstants;
+import com.ntak.pearlzip.archive.pub.FileInfo;
+
+import java.util.*;
+
+import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.CNS_NTAK_PEARL_ZIP_ICON_FOLDER;
+
+/**
+ *  Resolves the folder structure of an archive listing in linear time. Zip archives need not hold an entry for
+ *  every folder, so implicit folders are synthesised from the paths of the entries beneath them. Each folder path
+ *  is registered once, walking up from the immediate parent of an entry and stopping at the first ancestor
+ *  already known.
+ *  <br/><br/>
+ *  Explicit folder entries with contents are replaced by a synthesised folder, whilst empty explicit folders are
+ *  retained as read from the archive. Synthesised folders are indexed after the retained entries, in the order they
+ *  are first encountered.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jDirectoryIndex {
+
+    private final Map<String,FolderNode> folders = new LinkedHashMap<>();
+
+    /**
+     *  Registers an entry, along with any of its parent folders not yet seen.
+     */
+    void add(FileInfo file) {
+        final String fileName = file.getFileName();
+        final int level = file.getLevel();
+
+        int separator = fileName.lastIndexOf('/');
+        for (int j = 1; j <= level && separator >= 0; j++) {
+            final String parent = fileName.substring(0, separator);
+            FolderNode node = folders.get(parent);
+            if (Objects.nonNull(node)) {
+                // Ancestors of a registered folder have been registered already
+                node.hasContents = true;
+                break;
+            }
+            folders.put(parent, new FolderNode(level - j, true));
+            separator = fileName.lastIndexOf('/', separator - 1);
+        }
+
+        if (file.isFolder()) {
+            folders.putIfAbsent(fileName, new FolderNode(level, false));
+        }
+    }
+
+    boolean hasContents(String folderName) {
+        FolderNode node = folders.get(folderName);
+        return Objects.nonNull(node) && node.hasContents;
+    }
+
+    /**
+     *  Generates the normalised listing of the given entries, synthesising each implicit folder exactly once.
+     */
+    static List<FileInfo> resolve(List<FileInfo> files) {
+        Zip4jDirectoryIndex index = new Zip4jDirectoryIndex();
+        for (FileInfo file : files) {
+            index.add(file);
+        }
+
+        List<FileInfo> resolvedFiles = new ArrayList<>(files.size() + index.folders.size());
+        for (FileInfo file : files) {
+            if (!file.isFolder()) {
+                // A file sharing the path of a folder takes precedence over the synthesised folder
+                FolderNode node = index.folders.get(file.getFileName());
+                if (Objects.nonNull(node) && node.level == file.getLevel()) {
+                    node.isShadowed = true;
+                }
+                resolvedFiles.add(file);
+            } else if (!index.hasContents(file.getFileName())) {
+                resolvedFiles.add(file);
+            }
+        }
+
+        final Map<String,Object> folderInfo = Collections.singletonMap(ConfigurationConstants.KEY_ICON_REF,
+                                                                       System.getProperty(
+                                                                               CNS_NTAK_PEARL_ZIP_ICON_FOLDER, ""));
+        for (Map.Entry<String,FolderNode> folder : index.folders.entrySet()) {
+            FolderNode node = folder.getValue();
+            if (node.hasContents && !node.isShadowed) {
+                resolvedFiles.add(createFolder(resolvedFiles.size(), node.level, folder.getKey(), folderInfo));
+            }
+        }
+
+        return resolvedFiles;
+    }
+
+    static FileInfo createFolder(int index, int level, String folderName, Map<String,Object> folderInfo) {
+        return new FileInfo(index,
+                            level,
+                            folderName,
+                            -1,
+                            0,
+                            0,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null,
+                            0,
+                            null,
+                            true,
+                            false,
+                            folderInfo);
+    }
+
+    private static class FolderNode {
+        private final int level;
+        private boolean hasContents;
+        private boolean isShadowed;
+
+        FolderNode(int level, boolean hasContents) {
+            this.level = level;
+            this.hasContents = hasContents;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Publishes the decompressed contents of an archive entry as a sequence of buffers. Nothing is read ahead of
+ *  demand: each buffer requested is read from the entry on the executor just before it is delivered, so a slow
+ *  subscriber throttles the read rather than having the contents queue up in memory. Only a single byte beyond a full
+ *  buffer is read ahead, so that the end of the entry is signalled along with its last buffer, without further demand.
+ *  <br/><br/>
+ *  The publisher is cold. Each subscriber reads the entry from the start through its own stream, which is opened on
+ *  the first request and closed on completion, failure or cancellation. Buffers are not reused once delivered, and
+ *  all but the last hold a full chunk.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jEntryPublisher implements Flow.Publisher<ByteBuffer> {
+
+    private final EntryOpener opener;
+    private final Executor executor;
+    private final int chunkSize;
+
+    Zip4jEntryPublisher(EntryOpener opener, Executor executor, int chunkSize) {
+        this.opener = opener;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        final EntrySubscription subscription = new EntrySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    @FunctionalInterface
+    interface EntryOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     *  Signals to the subscriber are made by a single drain loop at a time, which is scheduled whenever demand,
+     *  cancellation or an error arrives and is not already running. Requests made from within onNext are picked up by
+     *  the running loop.
+     */
+    private class EntrySubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean isCancelled;
+        private volatile Throwable error;
+        private PushbackInputStream stream;
+        private boolean isDone;
+
+        private EntrySubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException(String.format("Non-positive number of buffers requested: %d",
+                                                                   n));
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE :
+                        current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch(RejectedExecutionException e) {
+                    error = e;
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int pending = pendingDrains.get();
+            do {
+                drain();
+                pending = pendingDrains.addAndGet(-pending);
+            } while (pending != 0);
+        }
+
+        private void drain() {
+            if (isDone) {
+                return;
+            }
+            if (isCancelled) {
+                finish();
+                return;
+            }
+
+            boolean isComplete = false;
+            try {
+                if (Objects.nonNull(error)) {
+                    throw error;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                if (Objects.isNull(stream)) {
+                    stream = new PushbackInputStream(opener.open(), 1);
+                }
+
+                while (demand.get() > 0 && !isCancelled && Objects.isNull(error)) {
+                    final byte[] chunk = new byte[chunkSize];
+                    final int read = stream.readNBytes(chunk, 0, chunkSize);
+                    // The end of the entry completes without further demand, so is checked ahead of the last buffer
+                    isComplete = read < chunkSize || isAtEnd();
+                    if (read > 0) {
+                        demand.decrementAndGet();
+                        subscriber.onNext(ByteBuffer.wrap(chunk, 0, read));
+                    }
+                    if (isComplete) {
+                        break;
+                    }
+                }
+
+                if (isCancelled) {
+                    finish();
+                    return;
+                } else if (Objects.nonNull(error)) {
+                    throw error;
+                }
+            } catch(Throwable e) {
+                finish();
+                subscriber.onError(e);
+                return;
+            }
+
+            // Terminated ahead of the signal, so that nothing is signalled after it, should it throw
+            if (isComplete) {
+                finish();
+                subscriber.onComplete();
+            }
+        }
+
+        private boolean isAtEnd() throws IOException {
+            final int next = stream.read();
+            if (next < 0) {
+                return true;
+            }
+            stream.unread(next);
+            return false;
+        }
+
+        private void finish() {
+            isDone = true;
+            if (Objects.nonNull(stream)) {
+                try {
+                    stream.close();
+                } catch(IOException e) {
+                    // The subscription is over, so there is no one left to notify
+                }
+                stream = null;
+            }
+        }
+    }
+}
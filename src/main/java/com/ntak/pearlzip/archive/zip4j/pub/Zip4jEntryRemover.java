@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.RawCentralDirectory;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.CHANNEL_POOL;
+
+/**
+ *  Removes any number of entries from an archive with a single rewrite. The entries to be kept are determined upfront
+ *  from the central directory and copied verbatim (local header, compressed data and data descriptor) into a new
+ *  archive alongside the original, which then replaces it. No entry is decompressed or decrypted, so no password is
+ *  required.
+ *  <br/><br/>
+ *  Where the removal leaves the immediate parent folder of a removed entry empty, that folder is retained as an
+ *  entry of its own, unless the folder itself matches the removal, in which case its own parent is considered.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jEntryRemover {
+
+    private Zip4jEntryRemover() {}
+
+    /**
+     *  Removes the entries whose (raw) names match the predicate. The archive is left untouched if no entry matches.
+     *  @return the names of the removed entries, in central directory order
+     *  @throws ZipException if the archive is split or not a valid zip archive
+     */
+    static List<String> remove(Path archivePath, Predicate<String> isRemoved) throws IOException {
+        return remove(archivePath, isRemoved, true);
+    }
+
+    /**
+     *  Removes the entries whose (raw) names match the predicate. The archive is left untouched if no entry matches.
+     *  @param retainParentFolders whether to retain the parent folders emptied by the removal, which is not required
+     *  where the removed entries are about to be replaced
+     *  @return the names of the removed entries, in central directory order
+     *  @throws ZipException if the archive is split or not a valid zip archive
+     */
+    static List<String> remove(Path archivePath, Predicate<String> isRemoved, boolean retainParentFolders) throws IOException {
+        final Path tempArchive;
+        final List<String> removed = new ArrayList<>();
+        try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath)) {
+            final FileChannel source = lease.channel();
+            final RawCentralDirectory centralDirectory = Zip4jCentralDirectoryReader.readRaw(source);
+            if (centralDirectory.location().isSplitArchive()) {
+                throw new ZipException("Zip file format does not allow updating split/spanned files");
+            }
+
+            final String[] names = centralDirectory.names();
+            final boolean[] isRemovedEntry = new boolean[names.length];
+            final Set<String> removedNames = new HashSet<>();
+            final Set<String> occupiedFolders = new HashSet<>();
+            for (int i = 0; i < names.length; i++) {
+                if (isRemoved.test(names[i])) {
+                    isRemovedEntry[i] = true;
+                    removed.add(names[i]);
+                    removedNames.add(names[i]);
+                } else {
+                    // Every folder above a surviving entry (and a surviving folder itself) remains in the listing
+                    for (int separator = names[i].indexOf('/'); separator >= 0;
+                         separator = names[i].indexOf('/', separator + 1)) {
+                        occupiedFolders.add(names[i].substring(0, separator + 1));
+                    }
+                }
+            }
+            if (removed.isEmpty()) {
+                return removed;
+            }
+
+            // Keep immediate parent folders emptied by the removal. A parent matched by the predicate (whether or
+            // not it has an entry of its own) is itself removed, so its parent is considered in turn.
+            final Set<String> retainedFolders = new LinkedHashSet<>();
+            final Set<String> visitedFolders = new HashSet<>();
+            for (String name : retainParentFolders ? removed : Collections.<String>emptyList()) {
+                for (String parent = getParent(name); Objects.nonNull(parent) && !occupiedFolders.contains(parent)
+                        && visitedFolders.add(parent); parent = getParent(parent)) {
+                    if (!removedNames.contains(parent) && !isRemoved.test(parent)) {
+                        retainedFolders.add(parent);
+                        break;
+                    }
+                }
+            }
+
+            final long[] entryEnds = computeEntryEnds(centralDirectory);
+            tempArchive = Zip4jUtil.createTempArchive(archivePath);
+            try (FileChannel target = FileChannel.open(tempArchive, StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE)) {
+                Zip4jZipWriter writer = new Zip4jZipWriter(target, 0, new byte[0], 0,
+                                                           centralDirectory.location().comment());
+                final long[] localHeaderOffsets = centralDirectory.localHeaderOffsets();
+                for (int i = 0; i < names.length; i++) {
+                    if (!isRemovedEntry[i]) {
+                        writer.copyEntry(source, localHeaderOffsets[i], entryEnds[i] - localHeaderOffsets[i],
+                                         centralDirectory.getRecord(i));
+                    }
+                }
+                final long now = System.currentTimeMillis();
+                for (String folder : retainedFolders) {
+                    writer.writeEntry(Zip4jCompressionPipeline.createFolderEntry(folder, now), (c, p) -> 0);
+                }
+                writer.finish();
+            } catch(IOException | RuntimeException e) {
+                Files.deleteIfExists(tempArchive);
+                throw e;
+            }
+        }
+
+        Zip4jUtil.replaceFile(tempArchive, archivePath);
+        return removed;
+    }
+
+    /**
+     *  @return the folder holding the entry, with its trailing separator, or null for a top level entry
+     */
+    private static String getParent(String name) {
+        final int separator = name.lastIndexOf('/', name.length() - 2);
+        return separator < 0 ? null : name.substring(0, separator + 1);
+    }
+
+    /**
+     *  The end of each entry is taken as the start of the entry following it in the archive, or otherwise the start of
+     *  the central directory, so that data descriptors are carried over with the data.
+     */
+    static long[] computeEntryEnds(RawCentralDirectory centralDirectory) {
+        final long[] localHeaderOffsets = centralDirectory.localHeaderOffsets();
+        final long[] sortedOffsets = localHeaderOffsets.clone();
+        Arrays.sort(sortedOffsets);
+
+        final long[] entryEnds = new long[localHeaderOffsets.length];
+        for (int i = 0; i < localHeaderOffsets.length; i++) {
+            int next = Arrays.binarySearch(sortedOffsets, localHeaderOffsets[i]);
+            while (next < sortedOffsets.length && sortedOffsets[next] <= localHeaderOffsets[i]) {
+                next++;
+            }
+            entryEnds[i] = next < sortedOffsets.length ? sortedOffsets[next] : centralDirectory.location().offset();
+        }
+        return entryEnds;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.RawCentralDirectory;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.AesDecrypter;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.AesEncrypter;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.ZipCryptoKeys;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.AesVersion;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+import static com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.*;
+
+/**
+ *  Changes the encryption of the entries of an archive in a single streaming pass, without decompressing them. The
+ *  compressed data of each affected entry is read from the archive, decrypted (where encrypted), encrypted under the
+ *  target scheme (where required) and written to a new archive alongside the original, which then replaces it.
+ *  Unaffected entries are copied verbatim. Should any entry fail (e.g. on an incorrect password), the original
+ *  archive is left untouched.
+ *  <br/><br/>
+ *  Three modes are supported: encryption of the unencrypted entries (folders excepted, as with Zip4j), a change of
+ *  password of the encrypted entries (retaining their encryption method and AES key strength) and decryption of the
+ *  encrypted entries. The CRC-32 of an AE-2 entry is not recorded, so where one is decrypted, or re-encrypted with
+ *  ZipCrypto, its data is inflated once (but not recompressed) to compute the CRC.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jEntryTranscoder {
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+    private static final int FLAG_STRONG_ENCRYPTION = 0x40;
+    private static final int AES_EXTRA_DATA_SIZE = 7;
+    private static final int METHOD_AES = CompressionMethod.AES_INTERNAL_ONLY.getCode();
+
+    private final Mode mode;
+    private final char[] password;
+    private final char[] newPassword;
+    private final EncryptionMethod encryptionMethod;
+    private final AesKeyStrength aesKeyStrength;
+
+    private Zip4jEntryTranscoder(Mode mode, char[] password, char[] newPassword, EncryptionMethod encryptionMethod,
+            AesKeyStrength aesKeyStrength) {
+        this.mode = mode;
+        this.password = password;
+        this.newPassword = newPassword;
+        this.encryptionMethod = encryptionMethod;
+        this.aesKeyStrength = aesKeyStrength;
+    }
+
+    /**
+     *  Encrypts the unencrypted entries with the given method (AES or ZipCrypto). AES entries are written as AE-2,
+     *  as Zip4j does by default.
+     */
+    static Zip4jEntryTranscoder encrypting(char[] password, EncryptionMethod encryptionMethod,
+            AesKeyStrength aesKeyStrength) throws ZipException {
+        if (encryptionMethod != EncryptionMethod.AES && encryptionMethod != EncryptionMethod.ZIP_STANDARD) {
+            throw new ZipException(String.format("Encryption method %s is not supported", encryptionMethod));
+        }
+        requirePassword(password);
+        return new Zip4jEntryTranscoder(Mode.ENCRYPT, null, password, encryptionMethod, aesKeyStrength);
+    }
+
+    /**
+     *  Re-encrypts the encrypted entries under the new password.
+     */
+    static Zip4jEntryTranscoder changingPassword(char[] password, char[] newPassword) throws ZipException {
+        requirePassword(password);
+        requirePassword(newPassword);
+        return new Zip4jEntryTranscoder(Mode.CHANGE_PASSWORD, password, newPassword, null, null);
+    }
+
+    /**
+     *  Decrypts the encrypted entries.
+     */
+    static Zip4jEntryTranscoder decrypting(char[] password) throws ZipException {
+        requirePassword(password);
+        return new Zip4jEntryTranscoder(Mode.DECRYPT, password, null, EncryptionMethod.NONE, null);
+    }
+
+    private static void requirePassword(char[] password) throws ZipException {
+        if (Objects.isNull(password) || password.length == 0) {
+            throw new ZipException("A password is required to change the encryption of an archive");
+        }
+    }
+
+    /**
+     *  Transcodes the entries of the archive, notifying the consumer of the name of each entry as it is written.
+     *  @return the names of the transcoded entries, in central directory order
+     *  @throws ZipException if the archive is split, not a valid zip archive, uses an unsupported encryption scheme
+     *  or the password is incorrect
+     */
+    List<String> transcode(Path archivePath, Consumer<String> onEntry) throws IOException {
+        final Path tempArchive;
+        final List<String> transcoded = new ArrayList<>();
+        try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath)) {
+            final FileChannel source = lease.channel();
+            final RawCentralDirectory centralDirectory = Zip4jCentralDirectoryReader.readRaw(source);
+            if (centralDirectory.location().isSplitArchive()) {
+                throw new ZipException("Zip file format does not allow updating split/spanned files");
+            }
+
+            final long[] entryEnds = Zip4jEntryRemover.computeEntryEnds(centralDirectory);
+            final long[] localHeaderOffsets = centralDirectory.localHeaderOffsets();
+            tempArchive = Zip4jUtil.createTempArchive(archivePath);
+            try (FileChannel target = FileChannel.open(tempArchive, StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE)) {
+                Zip4jZipWriter writer = new Zip4jZipWriter(target, 0, new byte[0], 0,
+                                                           centralDirectory.location().comment());
+                for (int i = 0; i < centralDirectory.size(); i++) {
+                    final byte[] record = centralDirectory.getRecord(i);
+                    final SourceEntry entry = SourceEntry.parse(record, centralDirectory.names()[i]);
+                    if (isTranscoded(entry)) {
+                        transcodeEntry(source, localHeaderOffsets[i], entry, writer);
+                        transcoded.add(entry.name());
+                    } else {
+                        writer.copyEntry(source, localHeaderOffsets[i], entryEnds[i] - localHeaderOffsets[i], record);
+                    }
+                    onEntry.accept(entry.name());
+                }
+                writer.finish();
+            } catch(IOException | RuntimeException e) {
+                Files.deleteIfExists(tempArchive);
+                throw e;
+            }
+        }
+
+        Zip4jUtil.replaceFile(tempArchive, archivePath);
+        return transcoded;
+    }
+
+    private boolean isTranscoded(SourceEntry entry) {
+        return switch(mode) {
+            case ENCRYPT -> !entry.isEncrypted() && !entry.name().endsWith("/");
+            case CHANGE_PASSWORD, DECRYPT -> entry.isEncrypted();
+        };
+    }
+
+    private void transcodeEntry(FileChannel source, long localHeaderOffset, SourceEntry entry,
+            Zip4jZipWriter writer) throws IOException {
+        final ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_LENGTH)
+                                                 .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(source, localHeader, localHeaderOffset);
+        if (localHeader.getInt(0) != SIG_LOCAL_FILE_HEADER) {
+            throw new ZipException(String.format("Local file header not found for entry %s", entry.name()));
+        }
+        final long dataOffset = localHeaderOffset + LOCAL_HEADER_LENGTH + Short.toUnsignedInt(localHeader.getShort(26))
+                + Short.toUnsignedInt(localHeader.getShort(28));
+        final long compressedOffset = dataOffset + entry.getEncryptionHeaderLength();
+        final long compressedSize = entry.packedSize() - entry.getEncryptionHeaderLength()
+                - entry.getEncryptionTrailerLength();
+        if (compressedSize < 0) {
+            throw new ZipException(String.format("Entry %s is shorter than its encryption header", entry.name()));
+        }
+
+        // Target encryption, with the AES parameters where applicable
+        final EncryptionMethod targetMethod = Objects.nonNull(encryptionMethod) ? encryptionMethod :
+                entry.getEncryptionMethod();
+        final AesKeyStrength targetStrength = Objects.nonNull(aesKeyStrength) ? aesKeyStrength : entry.aesKeyStrength();
+        final AesVersion targetVersion = mode == Mode.CHANGE_PASSWORD && Objects.nonNull(entry.aesVersion()) ?
+                entry.aesVersion() : AesVersion.TWO;
+
+        long crc = entry.crc();
+        if (entry.isCrcUnknown() && (targetMethod != EncryptionMethod.AES || targetVersion != AesVersion.TWO)) {
+            crc = computeCrc(source, dataOffset, compressedSize, entry);
+        }
+
+        // The name and comment are carried over as held, along with the language encoding flag
+        final Zip4jZipWriter.Entry target = new Zip4jZipWriter.Entry(entry.name(), entry.rawName())
+                .setVersionMadeBy(entry.versionMadeBy())
+                .setDosTime(entry.dosTime())
+                .setRawSize(entry.rawSize())
+                .setExternalAttributes(entry.externalAttributes())
+                .setRawComment(entry.comment());
+        final int flags = entry.flags() & ~(Zip4jZipWriter.FLAG_ENCRYPTED | FLAG_DATA_DESCRIPTOR |
+                FLAG_STRONG_ENCRYPTION);
+
+        // The encryption header is generated upfront, as the local header precedes it
+        final byte[] encryptionHeader;
+        final AesEncrypter aesEncrypter;
+        final ZipCryptoKeys zipCryptoKeys;
+        try {
+            aesEncrypter = targetMethod == EncryptionMethod.AES ? new AesEncrypter(newPassword, targetStrength) : null;
+            zipCryptoKeys = targetMethod == EncryptionMethod.ZIP_STANDARD ? new ZipCryptoKeys(newPassword) : null;
+        } catch(GeneralSecurityException e) {
+            throw new ZipException(e.getMessage(), e);
+        }
+        if (Objects.nonNull(aesEncrypter)) {
+            encryptionHeader = aesEncrypter.getHeader();
+            target.setFlags(flags | Zip4jZipWriter.FLAG_ENCRYPTED)
+                  .setMethod(METHOD_AES)
+                  .setVersionNeeded(Zip4jZipWriter.VERSION_AES)
+                  .setCrc(targetVersion == AesVersion.TWO ? 0 : crc)
+                  .setExtra(concat(entry.extra(), createAesExtra(targetVersion, targetStrength,
+                                                                 entry.compressionMethod())))
+                  .setPackedSize(encryptionHeader.length + compressedSize + AES_AUTHENTICATION_CODE_LENGTH);
+        } else {
+            encryptionHeader = Objects.nonNull(zipCryptoKeys) ?
+                    Zip4jCryptoUtil.createZipCryptoHeader(zipCryptoKeys, (byte)(crc >>> 24)) : new byte[0];
+            target.setFlags(Objects.nonNull(zipCryptoKeys) ? flags | Zip4jZipWriter.FLAG_ENCRYPTED : flags)
+                  .setMethod(entry.compressionMethod())
+                  .setVersionNeeded(entry.method() == METHOD_AES ? Zip4jZipWriter.VERSION_DEFAULT :
+                                            entry.versionNeeded())
+                  .setCrc(crc)
+                  .setExtra(entry.extra())
+                  .setPackedSize(encryptionHeader.length + compressedSize);
+        }
+
+        final Decryption decryption = openDecryption(source, dataOffset, entry);
+        writer.writeEntry(target, (channel, position) -> {
+            long written = write(channel, ByteBuffer.wrap(encryptionHeader), position);
+            final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            try {
+                for (long offset = 0; offset < compressedSize; ) {
+                    final int length = (int)Math.min(buffer.length, compressedSize - offset);
+                    readFully(source, ByteBuffer.wrap(buffer, 0, length), compressedOffset + offset);
+                    decryption.decrypt(buffer, 0, length);
+                    if (Objects.nonNull(aesEncrypter)) {
+                        aesEncrypter.encrypt(buffer, 0, length);
+                    } else if (Objects.nonNull(zipCryptoKeys)) {
+                        for (int i = 0; i < length; i++) {
+                            buffer[i] = zipCryptoKeys.encrypt(buffer[i]);
+                        }
+                    }
+                    written += write(channel, ByteBuffer.wrap(buffer, 0, length), position + written);
+                    offset += length;
+                }
+            } catch(GeneralSecurityException e) {
+                throw new ZipException(e.getMessage(), e);
+            }
+
+            final ByteBuffer trailer = ByteBuffer.allocate(entry.getEncryptionTrailerLength());
+            readFully(source, trailer, compressedOffset + compressedSize);
+            decryption.verify(trailer.array(), entry.name());
+            if (Objects.nonNull(aesEncrypter)) {
+                written += write(channel, ByteBuffer.wrap(aesEncrypter.getAuthenticationCode()), position + written);
+            }
+            return written;
+        });
+    }
+
+    /**
+     *  Reads and checks the encryption header of the entry against the password, returning the decryption of the
+     *  data which follows it.
+     */
+    private Decryption openDecryption(FileChannel source, long dataOffset, SourceEntry entry) throws IOException {
+        if (!entry.isEncrypted()) {
+            return Decryption.NONE;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(entry.getEncryptionHeaderLength());
+        readFully(source, header, dataOffset);
+        if (entry.getEncryptionMethod() == EncryptionMethod.ZIP_STANDARD) {
+            final ZipCryptoKeys keys = new ZipCryptoKeys(password);
+            byte check = 0;
+            for (byte b : header.array()) {
+                check = keys.decrypt(b);
+            }
+            final byte expected = (entry.flags() & FLAG_DATA_DESCRIPTOR) != 0 ? (byte)(entry.dosTime() >>> 8) :
+                    (byte)(entry.crc() >>> 24);
+            if (check != expected) {
+                throw new ZipException(String.format("Wrong password for entry %s", entry.name()),
+                                       ZipException.Type.WRONG_PASSWORD);
+            }
+            return (data, offset, length) -> {
+                for (int i = offset; i < offset + length; i++) {
+                    data[i] = keys.decrypt(data[i]);
+                }
+            };
+        }
+
+        try {
+            final int saltLength = entry.aesKeyStrength().getSaltLength();
+            final byte[] salt = new byte[saltLength];
+            final byte[] verifier = new byte[AES_PASSWORD_VERIFIER_LENGTH];
+            header.rewind()
+                  .get(salt)
+                  .get(verifier);
+            final AesDecrypter decrypter = new AesDecrypter(password, salt, entry.aesKeyStrength());
+            if (!decrypter.isPasswordValid(verifier)) {
+                throw new ZipException(String.format("Wrong password for entry %s", entry.name()),
+                                       ZipException.Type.WRONG_PASSWORD);
+            }
+            return new Decryption() {
+                @Override
+                public void decrypt(byte[] data, int offset, int length) throws GeneralSecurityException {
+                    decrypter.decrypt(data, offset, length);
+                }
+
+                @Override
+                public void verify(byte[] trailer, String name) throws ZipException {
+                    if (!decrypter.isAuthenticationCodeValid(trailer)) {
+                        throw new ZipException(String.format("Authentication code of entry %s does not match", name));
+                    }
+                }
+            };
+        } catch(GeneralSecurityException e) {
+            throw new ZipException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     *  Computes the CRC-32 of the content of an entry whose CRC is not recorded (AE-2) by decrypting and inflating it.
+     */
+    private long computeCrc(FileChannel source, long dataOffset, long compressedSize, SourceEntry entry) throws IOException {
+        final int method = entry.compressionMethod();
+        if (method != CompressionMethod.STORE.getCode() && method != CompressionMethod.DEFLATE.getCode()) {
+            throw new ZipException(String.format("Compression method %d of entry %s is not supported", method,
+                                                 entry.name()));
+        }
+
+        final Decryption decryption = openDecryption(source, dataOffset, entry);
+        final long compressedOffset = dataOffset + entry.getEncryptionHeaderLength();
+        final CRC32 crc = new CRC32();
+        final Inflater inflater = method == CompressionMethod.DEFLATE.getCode() ? new Inflater(true) : null;
+        final byte[] input = new byte[WRITE_BUFFER_SIZE];
+        final byte[] output = new byte[WRITE_BUFFER_SIZE];
+        try {
+            for (long offset = 0; offset < compressedSize; ) {
+                final int length = (int)Math.min(input.length, compressedSize - offset);
+                readFully(source, ByteBuffer.wrap(input, 0, length), compressedOffset + offset);
+                decryption.decrypt(input, 0, length);
+                offset += length;
+                if (Objects.isNull(inflater)) {
+                    crc.update(input, 0, length);
+                    continue;
+                }
+                inflater.setInput(input, 0, length);
+                while (!inflater.needsInput() && !inflater.finished()) {
+                    crc.update(output, 0, inflater.inflate(output));
+                }
+            }
+        } catch(GeneralSecurityException | DataFormatException e) {
+            throw new ZipException(String.format("Entry %s could not be read: %s", entry.name(), e.getMessage()), e);
+        } finally {
+            if (Objects.nonNull(inflater)) {
+                inflater.end();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] createAesExtra(AesVersion version, AesKeyStrength strength, int compressionMethod) {
+        return ByteBuffer.allocate(4 + AES_EXTRA_DATA_SIZE)
+                         .order(ByteOrder.LITTLE_ENDIAN)
+                         .putShort((short)Zip4jZipWriter.EXTRA_AES)
+                         .putShort((short)AES_EXTRA_DATA_SIZE)
+                         .putShort((short)version.getVersionNumber())
+                         .put((byte)'A')
+                         .put((byte)'E')
+                         .put((byte)strength.getRawCode())
+                         .putShort((short)compressionMethod)
+                         .array();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        final byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new ZipException("Archive ended unexpectedly whilst reading entry data");
+            }
+        }
+    }
+
+    private static int write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        return length;
+    }
+
+    private enum Mode {
+        ENCRYPT,
+        CHANGE_PASSWORD,
+        DECRYPT
+    }
+
+    /**
+     *  In place decryption of the compressed data of an entry, followed by the check of the trailer (if any).
+     */
+    @FunctionalInterface
+    private interface Decryption {
+        Decryption NONE = (data, offset, length) -> {};
+
+        void decrypt(byte[] data, int offset, int length) throws GeneralSecurityException;
+
+        default void verify(byte[] trailer, String name) throws ZipException {
+        }
+    }
+
+    /**
+     *  Header fields of an entry, as held in its central directory record. The compression method is the actual
+     *  method, as held in the AES extra field for AES entries. The extra fields exclude Zip64 extended information and
+     *  the AES extra field, which are regenerated. The raw name and comment are the bytes held by the record.
+     */
+    private record SourceEntry(String name, byte[] rawName, int versionMadeBy, int versionNeeded, int flags, int method,
+                               int compressionMethod, long dosTime, long crc, long packedSize, long rawSize,
+                               int externalAttributes, byte[] extra, byte[] comment, AesVersion aesVersion,
+                               AesKeyStrength aesKeyStrength) {
+
+        static SourceEntry parse(byte[] record, String name) throws ZipException {
+            final ByteBuffer buffer = ByteBuffer.wrap(record)
+                                                .order(ByteOrder.LITTLE_ENDIAN);
+            final int method = Short.toUnsignedInt(buffer.getShort(10));
+            long packedSize = Integer.toUnsignedLong(buffer.getInt(20));
+            long rawSize = Integer.toUnsignedLong(buffer.getInt(24));
+            final int nameLength = Short.toUnsignedInt(buffer.getShort(28));
+            final int extraLength = Short.toUnsignedInt(buffer.getShort(30));
+            final int commentLength = Short.toUnsignedInt(buffer.getShort(32));
+            final int extraOffset = CENTRAL_HEADER_LENGTH + nameLength;
+            final int extraEnd = extraOffset + extraLength;
+
+            final ByteArrayOutputStream retainedExtra = new ByteArrayOutputStream();
+            int compressionMethod = method;
+            AesVersion aesVersion = null;
+            AesKeyStrength aesKeyStrength = null;
+            for (int extra = extraOffset; extra + 4 <= extraEnd; ) {
+                final int headerId = Short.toUnsignedInt(buffer.getShort(extra));
+                final int dataSize = Short.toUnsignedInt(buffer.getShort(extra + 2));
+                final int data = extra + 4;
+                if (headerId == Zip4jZipWriter.EXTRA_ZIP64) {
+                    int field = data;
+                    if (rawSize == ZIP64_LIMIT && field + 8 <= data + dataSize) {
+                        rawSize = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (packedSize == ZIP64_LIMIT && field + 8 <= data + dataSize) {
+                        packedSize = buffer.getLong(field);
+                    }
+                } else if (headerId == Zip4jZipWriter.EXTRA_AES && dataSize >= AES_EXTRA_DATA_SIZE) {
+                    aesVersion = AesVersion.getFromVersionNumber(Short.toUnsignedInt(buffer.getShort(data)));
+                    aesKeyStrength = AesKeyStrength.getAesKeyStrengthFromRawCode(buffer.get(data + 4));
+                    compressionMethod = Short.toUnsignedInt(buffer.getShort(data + 5));
+                } else {
+                    retainedExtra.write(record, extra, Math.min(4 + dataSize, extraEnd - extra));
+                }
+                extra = data + dataSize;
+            }
+
+            final int flags = Short.toUnsignedInt(buffer.getShort(8));
+            if ((flags & Zip4jZipWriter.FLAG_ENCRYPTED) != 0) {
+                if ((flags & FLAG_STRONG_ENCRYPTION) != 0) {
+                    throw new ZipException(String.format("Strong encryption of entry %s is not supported", name));
+                }
+                if (method == METHOD_AES && Objects.isNull(aesKeyStrength)) {
+                    throw new ZipException(String.format("AES extra data record not found for entry %s", name));
+                }
+            }
+
+            return new SourceEntry(name,
+                                   Arrays.copyOfRange(record, CENTRAL_HEADER_LENGTH, extraOffset),
+                                   Short.toUnsignedInt(buffer.getShort(4)),
+                                   Short.toUnsignedInt(buffer.getShort(6)),
+                                   flags,
+                                   method,
+                                   compressionMethod,
+                                   Integer.toUnsignedLong(buffer.getInt(12)),
+                                   Integer.toUnsignedLong(buffer.getInt(16)),
+                                   packedSize,
+                                   rawSize,
+                                   buffer.getInt(38),
+                                   retainedExtra.toByteArray(),
+                                   Arrays.copyOfRange(record, extraEnd, extraEnd + commentLength),
+                                   aesVersion,
+                                   aesKeyStrength);
+        }
+
+        boolean isEncrypted() {
+            return (flags & Zip4jZipWriter.FLAG_ENCRYPTED) != 0;
+        }
+
+        EncryptionMethod getEncryptionMethod() {
+            if (!isEncrypted()) {
+                return EncryptionMethod.NONE;
+            }
+            return method == METHOD_AES ? EncryptionMethod.AES : EncryptionMethod.ZIP_STANDARD;
+        }
+
+        /**
+         *  @return true, if the CRC is not recorded, as for AE-2 entries with content
+         */
+        boolean isCrcUnknown() {
+            return aesVersion == AesVersion.TWO && crc == 0 && rawSize > 0;
+        }
+
+        int getEncryptionHeaderLength() {
+            return switch(getEncryptionMethod()) {
+                case AES -> aesKeyStrength.getSaltLength() + AES_PASSWORD_VERIFIER_LENGTH;
+                case ZIP_STANDARD -> ZIP_CRYPTO_HEADER_LENGTH;
+                default -> 0;
+            };
+        }
+
+        int getEncryptionTrailerLength() {
+            return getEncryptionMethod() == EncryptionMethod.AES ? AES_AUTHENTICATION_CODE_LENGTH : 0;
+        }
+    }
+}
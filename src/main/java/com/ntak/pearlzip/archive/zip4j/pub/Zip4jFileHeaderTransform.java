@@ -6,40 +6,54 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 
 import com.ntak.pearlzip.archive.pub.FileInfo;
 import com.ntak.pearlzip.archive.pub.TransformEntry;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
 import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.Zip64ExtendedInfo;
 
-import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
-
-import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.SSV;
-import static java.time.Instant.ofEpochMilli;
+import java.util.stream.IntStream;
 
 /**
  *  Transforms the Zip4j FileHeader information into normalised PearlZip FileInfo POJOs.
+ *  <br/><br/>
+ *  The depth of an entry is counted by a scan of its name and the timestamp is decoded straight from the MS-DOS
+ *  date and time held in the header, rather than round tripping through the epoch and the system time zone. The
+ *  indexed overload is stateless and so may be applied to headers in parallel.
  *  @author Aashutos Kakshepati
  */
 public class Zip4jFileHeaderTransform implements TransformEntry<FileHeader> {
 
+    /**
+     *  Minimum number of headers before a bulk transformation is spread across the common pool.
+     */
+    static final int PARALLEL_THRESHOLD = 10_000;
+
     private final AtomicInteger index = new AtomicInteger(0);
 
     @Override
     public Optional<FileInfo> transform(FileHeader header) {
+        return Optional.of(transform(header, index.getAndIncrement()));
+    }
+
+    /**
+     *  Transforms the header, assigning the given index to the resulting FileInfo. The index counter of this
+     *  transform is not affected.
+     */
+    public FileInfo transform(FileHeader header, int index) {
         String fileName = header.getFileName();
-        int level = SSV.split(fileName).length-1;
+        int level = Zip4jUtil.getLevel(fileName);
         long hash = header.getCrc();
-        LocalDateTime lastModifiedTime =
-                LocalDateTime.ofInstant(ofEpochMilli(header.getLastModifiedTimeEpoch()),
-                                        ZoneId.systemDefault());
+        LocalDateTime lastModifiedTime = Zip4jUtil.toLocalDateTime(header.getLastModifiedTime());
         boolean isFolder = header.isDirectory();
         boolean isEncrypted = header.isEncrypted();
         String comment = header.getFileComment();
-        int attributes = ByteBuffer.wrap(header.getExternalFileAttributes()).getInt();
+        int attributes = getAttributes(header.getExternalFileAttributes());
         long packedSize;
         long rawSize;
         Zip64ExtendedInfo z64Info;
@@ -52,13 +66,36 @@ public class Zip4jFileHeaderTransform implements TransformEntry<FileHeader> {
         }
 
         // Removal of postfix slash
-        if (fileName.endsWith("/") && isFolder) {
+        if (isFolder && fileName.endsWith("/")) {
             fileName = fileName.substring(0,fileName.length()-1);
         }
 
-        FileInfo fileInfo = new FileInfo(index.getAndIncrement(), level, fileName, hash, packedSize, rawSize, lastModifiedTime,
-                                         lastModifiedTime, lastModifiedTime, "", "", attributes,
-                                         comment, isFolder, isEncrypted, Collections.emptyMap());
-        return Optional.of(fileInfo);
+        return new FileInfo(index, level, fileName, hash, packedSize, rawSize, lastModifiedTime,
+                            lastModifiedTime, lastModifiedTime, "", "", attributes,
+                            comment, isFolder, isEncrypted, Collections.emptyMap());
+    }
+
+    /**
+     *  Transforms all headers, indexed by their position in the list. Large lists are transformed in parallel.
+     */
+    public List<FileInfo> transformAll(List<FileHeader> headers) {
+        final FileInfo[] files = new FileInfo[headers.size()];
+        IntStream indices = IntStream.range(0, files.length);
+        if (files.length >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> files[i] = transform(headers.get(i), i));
+        return Arrays.asList(files);
+    }
+
+    /**
+     *  External attributes as a big-endian integer, consistent with the raw bytes held by the header.
+     */
+    private static int getAttributes(byte[] attributes) {
+        if (Objects.isNull(attributes) || attributes.length < 4) {
+            return 0;
+        }
+        return (attributes[0] & 0xFF) << 24 | (attributes[1] & 0xFF) << 16 | (attributes[2] & 0xFF) << 8
+                | (attributes[3] & 0xFF);
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.constants.ConfigurationConstants;
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import com.ntak.pearlzip.archive.pub.ProgressMessage;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import net.lingala.zip4j.model.FileHeader;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.CNS_NTAK_PEARL_ZIP_ICON_FOLDER;
+import static com.ntak.pearlzip.archive.constants.LoggingConstants.PROGRESS;
+import static com.ntak.pearlzip.archive.pub.ArchiveService.DEFAULT_BUS;
+import static com.ntak.pearlzip.archive.util.LoggingUtil.resolveTextKey;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.LOG_ARCHIVE_Z4J_LISTING_ENTRIES;
+
+/**
+ *  Walks the central directory of an archive, yielding the listing in batches of at most a fixed size, synthesised
+ *  folders included. Implicit folders are synthesised the first time an entry beneath them is decoded, ahead of that
+ *  entry, and any that do not fit in the current batch are carried over to the next. An explicit folder entry is
+ *  yielded as read from the archive, unless its folder has already been synthesised. Entries and synthesised folders
+ *  are indexed by a single counter, in the order they are yielded.
+ *  <br/><br/>
+ *  The FileInfo listing is never materialised as a whole: only the current batch and the set of folder paths seen so
+ *  far are held. The headers walked are those of the header cache though, so the central directory itself is still
+ *  held in full whilst the listing is streamed.
+ *  <br/><br/>
+ *  Progress is reported to the communication bus as each batch is decoded.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jFileInfoSpliterator implements Spliterator<List<FileInfo>> {
+
+    private final long sessionId;
+    private final Iterator<FileHeader> headers;
+    private final int totalEntries;
+    private final int batchSize;
+    private final Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+    private final Set<String> folders = new HashSet<>();
+    private final Deque<FileInfo> pending = new ArrayDeque<>();
+    private final Map<String,Object> folderInfo = Collections.singletonMap(ConfigurationConstants.KEY_ICON_REF,
+                                                                           System.getProperty(
+                                                                                   CNS_NTAK_PEARL_ZIP_ICON_FOLDER,
+                                                                                   ""));
+    private int decodedEntries;
+    private int emittedEntries;
+
+    Zip4jFileInfoSpliterator(long sessionId, List<FileHeader> headers, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive: %d", batchSize));
+        }
+
+        this.sessionId = sessionId;
+        this.headers = headers.iterator();
+        this.totalEntries = headers.size();
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super List<FileInfo>> action) {
+        if (!headers.hasNext() && pending.isEmpty()) {
+            return false;
+        }
+
+        List<FileInfo> batch = new ArrayList<>(batchSize);
+        int batchEntries = 0;
+        while (batch.size() < batchSize) {
+            if (!pending.isEmpty()) {
+                batch.add(pending.poll());
+                continue;
+            }
+            if (!headers.hasNext()) {
+                break;
+            }
+
+            FileHeader header = headers.next();
+            batchEntries++;
+            String fileName = header.getFileName();
+            if (header.isDirectory() && fileName.endsWith("/")) {
+                fileName = fileName.substring(0, fileName.length() - 1);
+            }
+            addParentFolders(fileName, Zip4jUtil.getLevel(fileName));
+            if (!header.isDirectory() || folders.add(fileName)) {
+                pending.add(transform.transform(header, emittedEntries++));
+            }
+        }
+        decodedEntries += batchEntries;
+
+        // LOG: Listing entries (%d of %d)...
+        DEFAULT_BUS.post(new ProgressMessage(sessionId, PROGRESS,
+                                             resolveTextKey(LOG_ARCHIVE_Z4J_LISTING_ENTRIES, decodedEntries,
+                                                            totalEntries),
+                                             batchEntries, totalEntries));
+        action.accept(batch);
+        return true;
+    }
+
+    private void addParentFolders(String fileName, int level) {
+        // Parents are found nearest first, so stop at the first one already yielded
+        final List<String> parents = new ArrayList<>(level);
+        int separator = fileName.lastIndexOf('/');
+        for (int j = 1; j <= level && separator >= 0; j++) {
+            final String parent = fileName.substring(0, separator);
+            if (!folders.add(parent)) {
+                break;
+            }
+            parents.add(parent);
+            separator = fileName.lastIndexOf('/', separator - 1);
+        }
+
+        // Queue the outermost parent first
+        for (int j = parents.size(); j > 0; j--) {
+            pending.add(Zip4jDirectoryIndex.createFolder(emittedEntries++, level - j, parents.get(j - 1),
+                                                         folderInfo));
+        }
+    }
+
+    @Override
+    public Spliterator<List<FileInfo>> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (long)Math.ceil((double)(totalEntries - decodedEntries) / batchSize);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
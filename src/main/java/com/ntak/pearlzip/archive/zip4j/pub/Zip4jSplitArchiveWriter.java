@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.zip4j.pub.Zip4jCentralDirectoryReader.RawCentralDirectory;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+
+/**
+ *  Creates a split archive from an existing archive by copying the raw data of each entry (local header, compressed
+ *  and possibly encrypted data and any data descriptor) into size bounded volumes. Nothing is decompressed or
+ *  decrypted, so the cost is that of sequential I/O and no password is required. Only the local header offset and
+ *  the disk number of each central directory record are rewritten.
+ *  <br/><br/>
+ *  Volumes are named as Zip4j names them (archive.z01, archive.z02, ..., archive.zip), the first starting with the
+ *  split archive signature. Local headers are not split across volumes, and neither are the central directory and
+ *  end of central directory records, which are held by the last volume (exceeding the split size where they
+ *  cannot fit within it). Should only one volume be required, it is marked as a single segment archive.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jSplitArchiveWriter {
+
+    private static final int SIG_SPLIT_ARCHIVE = 0x08074B50;
+    private static final int SIG_SINGLE_SEGMENT_ARCHIVE = 0x30304B50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064B50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064B50;
+    private static final int SIG_END_OF_CENTRAL_DIRECTORY = 0x06054B50;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int EOCD_LENGTH = 22;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_COUNT_LIMIT = 0xFFFF;
+
+    private Zip4jSplitArchiveWriter() {}
+
+    /**
+     *  Writes the entries of the source archive to a split archive, notifying the consumer of the name of each entry
+     *  as it is copied. Existing volumes of the target are overwritten.
+     *  @param targetPath the path of the last volume of the split archive
+     *  @return the paths of the volumes written, in order
+     *  @throws ZipException if the split size is below the minimum, or the source is split or not a valid archive
+     */
+    static List<Path> split(Path sourcePath, Path targetPath, long splitSize, Consumer<String> onEntry) throws IOException {
+        if (splitSize < MIN_SPLIT_ARCHIVE_SIZE) {
+            throw new ZipException(String.format("Split length is less than the minimum allowed split length of %d "
+                                                         + "bytes", MIN_SPLIT_ARCHIVE_SIZE));
+        }
+
+        final Volumes volumes = new Volumes(targetPath, splitSize);
+        try (Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(sourcePath)) {
+            final FileChannel source = lease.channel();
+            final RawCentralDirectory centralDirectory = Zip4jCentralDirectoryReader.readRaw(source);
+            if (centralDirectory.location().isSplitArchive()) {
+                throw new ZipException("Split archives cannot be split again");
+            }
+
+            final long[] entryEnds = Zip4jEntryRemover.computeEntryEnds(centralDirectory);
+            final long[] localHeaderOffsets = centralDirectory.localHeaderOffsets();
+            final ByteArrayOutputStream records = new ByteArrayOutputStream(centralDirectory.data().length);
+            final ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_LENGTH)
+                                                     .order(ByteOrder.LITTLE_ENDIAN);
+            volumes.write(ByteBuffer.allocate(4)
+                                    .order(ByteOrder.LITTLE_ENDIAN)
+                                    .putInt(0, SIG_SPLIT_ARCHIVE));
+            for (int i = 0; i < centralDirectory.size(); i++) {
+                localHeader.clear();
+                while (localHeader.hasRemaining()) {
+                    if (source.read(localHeader, localHeaderOffsets[i] + localHeader.position()) < 0) {
+                        throw new ZipException(String.format("Local file header not found for entry %s",
+                                                             centralDirectory.names()[i]));
+                    }
+                }
+                if (localHeader.getInt(0) != SIG_LOCAL_FILE_HEADER) {
+                    throw new ZipException(String.format("Local file header not found for entry %s",
+                                                         centralDirectory.names()[i]));
+                }
+
+                // The local header is kept whole, whereas the data may span volumes
+                volumes.reserve(LOCAL_HEADER_LENGTH + Short.toUnsignedInt(localHeader.getShort(26))
+                                        + Short.toUnsignedInt(localHeader.getShort(28)));
+                records.write(Zip4jZipWriter.relocate(centralDirectory.getRecord(i), volumes.getPosition(),
+                                                      volumes.getDisk()));
+                volumes.transferFrom(source, localHeaderOffsets[i], entryEnds[i] - localHeaderOffsets[i]);
+                onEntry.accept(centralDirectory.names()[i]);
+            }
+
+            final byte[] comment = centralDirectory.location().comment();
+            volumes.reserve(records.size() + ZIP64_EOCD_LENGTH + ZIP64_LOCATOR_LENGTH + EOCD_LENGTH
+                                    + (Objects.isNull(comment) ? 0 : comment.length));
+            final long centralDirectoryOffset = volumes.getPosition();
+            volumes.write(ByteBuffer.wrap(records.toByteArray()));
+            volumes.write(createEndRecords(centralDirectory.size(), records.size(), centralDirectoryOffset,
+                                           volumes.getDisk(), comment));
+            return volumes.finish();
+        } catch(IOException | RuntimeException e) {
+            try {
+                volumes.discard();
+            } catch(IOException discardException) {
+                e.addSuppressed(discardException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     *  End of central directory record, preceded by the Zip64 end of central directory record and locator where
+     *  required. All entries and the records are on the last disk.
+     */
+    private static ByteBuffer createEndRecords(long entryCount, long centralDirectorySize, long centralDirectoryOffset,
+            int disk, byte[] comment) {
+        final byte[] archiveComment = Objects.isNull(comment) ? new byte[0] : comment;
+        final boolean isZip64 = entryCount >= ZIP64_COUNT_LIMIT || centralDirectorySize >= ZIP64_LIMIT
+                || centralDirectoryOffset >= ZIP64_LIMIT;
+        final ByteBuffer end = ByteBuffer.allocate((isZip64 ? ZIP64_EOCD_LENGTH + ZIP64_LOCATOR_LENGTH : 0)
+                                                           + EOCD_LENGTH + archiveComment.length)
+                                         .order(ByteOrder.LITTLE_ENDIAN);
+        if (isZip64) {
+            final long zip64EocdOffset = centralDirectoryOffset + centralDirectorySize;
+            end.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY)
+               .putLong(ZIP64_EOCD_LENGTH - 12)
+               .putShort((short)Zip4jZipWriter.VERSION_ZIP64)
+               .putShort((short)Zip4jZipWriter.VERSION_ZIP64)
+               .putInt(disk)
+               .putInt(disk)
+               .putLong(entryCount)
+               .putLong(entryCount)
+               .putLong(centralDirectorySize)
+               .putLong(centralDirectoryOffset);
+            end.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR)
+               .putInt(disk)
+               .putLong(zip64EocdOffset)
+               .putInt(disk + 1);
+        }
+        end.putInt(SIG_END_OF_CENTRAL_DIRECTORY)
+           .putShort((short)disk)
+           .putShort((short)disk)
+           .putShort((short)Math.min(entryCount, ZIP64_COUNT_LIMIT))
+           .putShort((short)Math.min(entryCount, ZIP64_COUNT_LIMIT))
+           .putInt((int)Math.min(centralDirectorySize, ZIP64_LIMIT))
+           .putInt((int)Math.min(centralDirectoryOffset, ZIP64_LIMIT))
+           .putShort((short)archiveComment.length)
+           .put(archiveComment)
+           .flip();
+        return end;
+    }
+
+    /**
+     *  Sequence of volume files, written one at a time. The last volume is renamed to the target path once complete.
+     */
+    private static class Volumes {
+        private final Path targetPath;
+        private final String baseName;
+        private final long splitSize;
+        private final List<Path> paths = new ArrayList<>();
+        private FileChannel current;
+        private long position;
+
+        private Volumes(Path targetPath, long splitSize) {
+            final String fileName = targetPath.getFileName().toString();
+            final int extension = fileName.lastIndexOf('.');
+            this.targetPath = targetPath;
+            this.baseName = extension > 0 ? fileName.substring(0, extension) : fileName;
+            this.splitSize = splitSize;
+        }
+
+        private int getDisk() {
+            return paths.size() - 1;
+        }
+
+        private long getPosition() {
+            return position;
+        }
+
+        /**
+         *  Starts the next volume, unless the given number of bytes fits in the remainder of the current volume (or
+         *  the current volume is empty).
+         */
+        private void reserve(long length) throws IOException {
+            if (Objects.isNull(current) || position > 0 && position + length > splitSize) {
+                next();
+            }
+        }
+
+        /**
+         *  Writes the buffer to the current volume, without splitting it.
+         */
+        private void write(ByteBuffer buffer) throws IOException {
+            reserve(0);
+            while (buffer.hasRemaining()) {
+                position += current.write(buffer, position);
+            }
+        }
+
+        /**
+         *  Copies the given range of the source, continuing onto further volumes as each is filled.
+         */
+        private void transferFrom(FileChannel source, long offset, long length) throws IOException {
+            long copied = 0;
+            while (copied < length) {
+                if (position >= splitSize) {
+                    next();
+                }
+                final long chunk = Math.min(length - copied, splitSize - position);
+                current.position(position);
+                final long transferred = source.transferTo(offset + copied, chunk, current);
+                if (transferred <= 0) {
+                    throw new IOException(String.format("Entry data ends at %d, expected %d bytes from %d",
+                                                        offset + copied, length, offset));
+                }
+                copied += transferred;
+                position += transferred;
+            }
+        }
+
+        private void next() throws IOException {
+            close();
+            final Path path = targetPath.resolveSibling(String.format("%s.z%02d", baseName, paths.size() + 1));
+            paths.add(path);
+            current = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.WRITE);
+            position = 0;
+        }
+
+        private void close() throws IOException {
+            if (Objects.nonNull(current)) {
+                current.force(true);
+                current.close();
+                current = null;
+            }
+        }
+
+        /**
+         *  @return the paths of the volumes, the last of which is renamed to the target path
+         */
+        private List<Path> finish() throws IOException {
+            if (paths.size() == 1) {
+                current.write(ByteBuffer.allocate(4)
+                                        .order(ByteOrder.LITTLE_ENDIAN)
+                                        .putInt(0, SIG_SINGLE_SEGMENT_ARCHIVE), 0);
+            }
+            close();
+            Zip4jUtil.replaceFile(paths.get(paths.size() - 1), targetPath);
+            paths.set(paths.size() - 1, targetPath);
+            return paths;
+        }
+
+        private void discard() throws IOException {
+            close();
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
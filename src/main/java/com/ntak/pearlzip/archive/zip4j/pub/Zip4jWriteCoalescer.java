@@ -0,0 +1,453 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.ArchiveInfo;
+import com.ntak.pearlzip.archive.pub.FileInfo;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+
+/**
+ *  Per-archive queue in front of {@link Zip4jArchiveWriteService}, which coalesces rapid successive additions and
+ *  deletions (such as those fired by dragging many files, or deleting several entries, in the UI) into a single
+ *  write. Operations are held until no further operation has arrived for the window, but for no longer than the
+ *  maximum delay from the first of them, so latency is bounded under a constant stream of operations. Operations
+ *  arriving whilst a write is in progress are merged into the next write, which starts as soon as the current write
+ *  completes, should the maximum delay have elapsed.
+ *  <br/><br/>
+ *  A write applies the merged deletions in a single rewrite, followed by the merged additions in a single append.
+ *  Deleting an entry cancels any pending addition of that entry (or, for a folder, of any entry within it), and adding
+ *  an entry cancels any pending deletion of it, which the addition overwrites. Only the deletion of a folder extends
+ *  to the entries within it. Of several pending additions of the same entry, the last applies.
+ *  <br/><br/>
+ *  Operations are only merged where the properties of their archive info governing the write (encryption, password,
+ *  compression and splitting) agree. An operation differing from those pending seals the pending operations, which
+ *  are written (in order) as soon as possible, and starts a new batch. A write uses the archive info of the first
+ *  operation of its batch, and posts progress under its session.
+ *  <br/><br/>
+ *  Each operation returns a future, completed with the outcome of the write that applied it. An operation whose
+ *  entries were all cancelled by later operations is satisfied by them, so completes with true. The pending operations
+ *  of an archive may be written immediately by {@link #flush(String)}, or awaited by
+ *  {@link #await(String, long, TimeUnit)}.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jWriteCoalescer implements AutoCloseable {
+
+    private static final List<String> WRITE_PROPERTIES = List.of(KEY_ENCRYPTION_ENABLE, KEY_ENCRYPTION_METHOD,
+                                                                 KEY_ENCRYPTION_STRENGTH, KEY_ENCRYPTION_PW,
+                                                                 KEY_COMPRESSION_METHOD, KEY_COMPRESSION_POLICY,
+                                                                 KEY_ADAPTIVE_COMPRESSION,
+                                                                 KEY_CHUNKED_DEFLATE_THRESHOLD,
+                                                                 KEY_SPLIT_ARCHIVE_ENABLE, KEY_SPLIT_ARCHIVE_SIZE);
+
+    private final Zip4jArchiveWriteService service;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String,ArchiveQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     *  Coalesces with the window and maximum delay set in the settings.
+     */
+    public Zip4jWriteCoalescer(Zip4jArchiveWriteService service) {
+        this(service, getSetting(CNS_WRITE_COALESCING_WINDOW, DEFAULT_WRITE_COALESCING_WINDOW),
+             getSetting(CNS_WRITE_COALESCING_MAX_DELAY, DEFAULT_WRITE_COALESCING_MAX_DELAY), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *  @param window the period without further operations after which pending operations are written
+     *  @param maxDelay the longest period an operation is held before being written
+     */
+    public Zip4jWriteCoalescer(Zip4jArchiveWriteService service, long window, long maxDelay, TimeUnit unit) {
+        this.service = service;
+        this.windowNanos = unit.toNanos(Math.max(0, window));
+        this.maxDelayNanos = Math.max(windowNanos, unit.toNanos(maxDelay));
+        this.executor = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "pz-zip4j-write-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     *  Queues the addition of files to the archive.
+     *  @return a future completed with true, if the write added all of the files still pending
+     */
+    public CompletableFuture<Boolean> addFile(long sessionId, ArchiveInfo archiveInfo, FileInfo... files) {
+        final Operation operation = new Operation();
+        return enqueue(sessionId, archiveInfo, operation, batch -> {
+            for (FileInfo file : files) {
+                cancel(batch.deletes.remove(file.getFileName()));
+                // Reinsert so that additions are applied in the order they were last requested
+                final Pending previous = batch.adds.remove(file.getFileName());
+                batch.adds.put(file.getFileName(), new Pending(file, previous, operation));
+            }
+        }, Outcome::isAdded);
+    }
+
+    /**
+     *  Queues the deletion of a file (or a folder along with its contents) from the archive.
+     *  @return a future completed with true, if the write deleted at least one entry
+     */
+    public CompletableFuture<Boolean> deleteFile(long sessionId, ArchiveInfo archiveInfo, FileInfo file) {
+        final Operation operation = new Operation();
+        return enqueue(sessionId, archiveInfo, operation, batch -> {
+            final String folder = String.format(PATTERN_FOLDER, file.getFileName());
+            for (Iterator<Map.Entry<String,Pending>> adds = batch.adds.entrySet().iterator(); adds.hasNext(); ) {
+                final Map.Entry<String,Pending> add = adds.next();
+                if (add.getKey().equals(file.getFileName()) || file.isFolder() && add.getKey().startsWith(folder)) {
+                    cancel(add.getValue());
+                    adds.remove();
+                }
+            }
+            final Pending previous = batch.deletes.remove(file.getFileName());
+            batch.deletes.put(file.getFileName(), new Pending(file, previous, operation));
+        }, Outcome::isDeleted);
+    }
+
+    /**
+     *  Writes the pending operations of the archive without waiting for the window to elapse.
+     *  @return a future completed, once all operations queued beforehand are written, with true if all were
+     *  successful
+     */
+    public CompletableFuture<Boolean> flush(String archivePath) {
+        final CompletableFuture<Outcome> completion = new CompletableFuture<>();
+        queues.compute(getKey(archivePath), (k, queue) -> {
+            if (Objects.isNull(queue)) {
+                completion.complete(Outcome.NONE);
+                return null;
+            }
+            queue.getLast().completion.whenComplete((o, e) -> complete(completion, o, e));
+            if (Objects.nonNull(queue.pending)) {
+                // Whilst writing, the pending batch is written as soon as the current write completes
+                queue.isFlushRequested = true;
+                if (Objects.isNull(queue.writing)) {
+                    schedule(k, queue, 0);
+                }
+            }
+            return queue;
+        });
+        return completion.thenApply(Outcome::isSuccessful);
+    }
+
+    /**
+     *  Waits for the operations queued on the archive beforehand to be written, within their normal window.
+     *  @return true, if the operations were written (successfully or otherwise) before the timeout
+     */
+    public boolean await(String archivePath, long timeout, TimeUnit unit) throws InterruptedException {
+        final CompletableFuture<Outcome> completion = new CompletableFuture<>();
+        queues.compute(getKey(archivePath), (k, queue) -> {
+            if (Objects.isNull(queue)) {
+                completion.complete(Outcome.NONE);
+            } else {
+                queue.getLast().completion.whenComplete((o, e) -> complete(completion, o, e));
+            }
+            return queue;
+        });
+
+        try {
+            completion.get(timeout, unit);
+            return true;
+        } catch(ExecutionException e) {
+            return true;
+        } catch(TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     *  Writes the pending operations of all archives, waiting for them to complete, and stops the queue. Operations
+     *  queued afterwards are rejected.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        final List<CompletableFuture<Boolean>> flushes = new ArrayList<>();
+        for (String archivePath : queues.keySet()) {
+            flushes.add(flush(archivePath));
+        }
+        try {
+            CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0])).get();
+        } catch(ExecutionException e) {
+            // Failures have been reported by the service and to the callers of the operations
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     *  @param isSatisfied whether the outcome of the write satisfies the operation, unless it was cancelled
+     */
+    private CompletableFuture<Boolean> enqueue(long sessionId, ArchiveInfo archiveInfo, Operation operation,
+            Consumer<Batch> merge, Predicate<Outcome> isSatisfied) {
+        if (executor.isShutdown()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Write coalescer is closed"));
+        }
+
+        final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+        queues.compute(getKey(archiveInfo.getArchivePath()), (k, queue) -> {
+            final ArchiveQueue archiveQueue = Objects.isNull(queue) ? new ArchiveQueue() : queue;
+            final long now = System.nanoTime();
+            if (Objects.nonNull(archiveQueue.pending) && !isWrittenAlike(archiveQueue.pending.archiveInfo,
+                                                                         archiveInfo)) {
+                // Sealed batches are written as soon as possible, so any flush requested is satisfied
+                archiveQueue.sealed.add(archiveQueue.pending);
+                archiveQueue.pending = null;
+                archiveQueue.isFlushRequested = false;
+            }
+            if (Objects.isNull(archiveQueue.pending)) {
+                archiveQueue.pending = new Batch(now, sessionId, archiveInfo);
+            }
+            final Batch batch = archiveQueue.pending;
+            merge.accept(batch);
+            batch.completion.whenComplete((o, e) -> {
+                // Cancellation is only possible whilst pending, so is settled by the time the batch completes
+                if (operation.isCancelled()) {
+                    completion.complete(true);
+                } else if (Objects.isNull(e)) {
+                    completion.complete(isSatisfied.test(o));
+                } else {
+                    completion.completeExceptionally(e);
+                }
+            });
+
+            // Whilst writing, the next write is scheduled once the current write completes
+            if (Objects.isNull(archiveQueue.writing) && !archiveQueue.isFlushRequested) {
+                schedule(k, archiveQueue, archiveQueue.sealed.isEmpty() ?
+                        Math.min(windowNanos, batch.firstQueued + maxDelayNanos - now) : 0);
+            }
+            return archiveQueue;
+        });
+        return completion;
+    }
+
+    /**
+     *  (Re)schedules the write of the pending batch. Must be called within the compute of the queue.
+     */
+    private void schedule(String key, ArchiveQueue queue, long delayNanos) {
+        if (Objects.nonNull(queue.timer)) {
+            queue.timer.cancel(false);
+        }
+        queue.timer = executor.schedule(() -> write(key), Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void write(String key) {
+        final Batch[] current = new Batch[1];
+        queues.computeIfPresent(key, (k, queue) -> {
+            if (Objects.nonNull(queue.writing)) {
+                return queue;
+            }
+            if (!queue.sealed.isEmpty()) {
+                current[0] = queue.writing = queue.sealed.poll();
+                queue.timer = null;
+            } else if (Objects.nonNull(queue.pending)) {
+                current[0] = queue.writing = queue.pending;
+                queue.pending = null;
+                queue.timer = null;
+                queue.isFlushRequested = false;
+            }
+            return queue;
+        });
+        final Batch batch = current[0];
+        if (Objects.isNull(batch)) {
+            return;
+        }
+
+        Outcome outcome = null;
+        RuntimeException exception = null;
+        try {
+            final boolean isDeleted = !batch.deletes.isEmpty() && service.deleteFiles(batch.sessionId,
+                                                                                      batch.archiveInfo,
+                                                                                      getDeletion(batch.deletes
+                                                                                                       .values()));
+            final boolean isAdded = !batch.adds.isEmpty() && service.addFile(batch.sessionId, batch.archiveInfo,
+                                                                             batch.adds.values()
+                                                                                       .stream()
+                                                                                       .map(p -> p.file)
+                                                                                       .toArray(FileInfo[]::new));
+            outcome = new Outcome(batch.adds.isEmpty() || isAdded, isAdded, batch.deletes.isEmpty() || isDeleted,
+                                  isDeleted);
+        } catch(RuntimeException e) {
+            exception = e;
+        } finally {
+            queues.computeIfPresent(key, (k, queue) -> {
+                queue.writing = null;
+                if (!queue.sealed.isEmpty()) {
+                    schedule(k, queue, 0);
+                    return queue;
+                }
+                if (Objects.isNull(queue.pending)) {
+                    return null;
+                }
+                schedule(k, queue, queue.isFlushRequested ? 0 :
+                        Math.min(windowNanos, queue.pending.firstQueued + maxDelayNanos - System.nanoTime()));
+                return queue;
+            });
+        }
+
+        if (Objects.isNull(exception)) {
+            batch.completion.complete(outcome);
+        } else {
+            batch.completion.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     *  @return the predicate matching the entries to be deleted: files by name alone and folders along with the
+     *  entries within them
+     */
+    private static Predicate<String> getDeletion(Collection<Pending> deletes) {
+        final Set<String> names = new HashSet<>();
+        final Set<String> folders = new HashSet<>();
+        for (Pending delete : deletes) {
+            if (delete.file.isFolder()) {
+                folders.add(String.format(PATTERN_FOLDER, delete.file.getFileName()));
+            } else {
+                names.add(delete.file.getFileName());
+            }
+        }
+
+        return n -> {
+            if (names.contains(n)) {
+                return true;
+            }
+            // Check the entry (if a folder) and each enclosing folder of the entry
+            for (int separator = n.indexOf('/'); separator >= 0; separator = n.indexOf('/', separator + 1)) {
+                if (folders.contains(n.substring(0, separator + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     *  @return true, if the properties governing the write of entries agree, so that operations may be merged
+     */
+    private static boolean isWrittenAlike(ArchiveInfo archiveInfo, ArchiveInfo other) {
+        if (archiveInfo.getCompressionLevel() != other.getCompressionLevel()) {
+            return false;
+        }
+        for (String key : WRITE_PROPERTIES) {
+            // Passwords are held as character arrays
+            if (!Objects.deepEquals(archiveInfo.getProperty(key).orElse(null), other.getProperty(key).orElse(null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void cancel(Pending pending) {
+        if (Objects.nonNull(pending)) {
+            for (Operation operation : pending.operations) {
+                operation.pendingCount--;
+            }
+        }
+    }
+
+    private static void complete(CompletableFuture<Outcome> completion, Outcome outcome, Throwable exception) {
+        if (Objects.isNull(exception)) {
+            completion.complete(outcome);
+        } else {
+            completion.completeExceptionally(exception);
+        }
+    }
+
+    private static String getKey(String archivePath) {
+        return Paths.get(archivePath).toAbsolutePath().normalize().toString();
+    }
+
+    private static long getSetting(String key, long defaultValue) {
+        try {
+            return Long.parseLong(CURRENT_SETTINGS.getProperty(key, String.valueOf(defaultValue)));
+        } catch(NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     *  Operations of an archive: those pending, those sealed awaiting their write (in order) and those being written.
+     *  Only accessed within a compute of the map.
+     */
+    private static class ArchiveQueue {
+        private final Deque<Batch> sealed = new ArrayDeque<>();
+        private Batch pending;
+        private Batch writing;
+        private ScheduledFuture<?> timer;
+        private boolean isFlushRequested;
+
+        /**
+         *  @return the batch written last of those queued
+         */
+        private Batch getLast() {
+            if (Objects.nonNull(pending)) {
+                return pending;
+            }
+            return sealed.isEmpty() ? writing : sealed.getLast();
+        }
+    }
+
+    private static class Batch {
+        private final long firstQueued;
+        private final long sessionId;
+        private final ArchiveInfo archiveInfo;
+        private final Map<String,Pending> adds = new LinkedHashMap<>();
+        private final Map<String,Pending> deletes = new LinkedHashMap<>();
+        private final CompletableFuture<Outcome> completion = new CompletableFuture<>();
+
+        private Batch(long firstQueued, long sessionId, ArchiveInfo archiveInfo) {
+            this.firstQueued = firstQueued;
+            this.sessionId = sessionId;
+            this.archiveInfo = archiveInfo;
+        }
+    }
+
+    /**
+     *  Addition or deletion of an entry pending in a batch, along with the operations requesting it. A later request
+     *  for the same entry replaces the file, retaining the earlier operations.
+     */
+    private static class Pending {
+        private final FileInfo file;
+        private final List<Operation> operations = new ArrayList<>();
+
+        private Pending(FileInfo file, Pending previous, Operation operation) {
+            this.file = file;
+            if (Objects.nonNull(previous)) {
+                operations.addAll(previous.operations);
+            }
+            if (!operations.contains(operation)) {
+                operations.add(operation);
+                operation.pendingCount++;
+            }
+        }
+    }
+
+    /**
+     *  Addition or deletion requested of the coalescer, which is cancelled once none of its entries remain pending.
+     *  Only accessed within a compute of the map, until its batch completes.
+     */
+    private static class Operation {
+        private int pendingCount;
+
+        private boolean isCancelled() {
+            return pendingCount == 0;
+        }
+    }
+
+    private record Outcome(boolean isAdditionSuccessful, boolean isAdded, boolean isDeletionSuccessful,
+                           boolean isDeleted) {
+        private static final Outcome NONE = new Outcome(true, false, true, false);
+
+        private boolean isSuccessful() {
+            return isAdditionSuccessful && isDeletionSuccessful;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jHeaderCache.ArchiveKey;
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ *  Journal of the tail of an archive (the central directory onwards), taken before entries are appended in place.
+ *  Appending overwrites the central directory of the archive, so until the new central directory has been written
+ *  the archive is not readable. Should the append be interrupted, the journal restores the original tail, leaving
+ *  the archive as it was before the append.
+ *  <br/><br/>
+ *  The journal is written and synced in full before the archive is modified. It is held alongside the archive
+ *  (with the suffix .pzj) and deleted once the append completes. A journal which is incomplete or corrupt can only
+ *  result from an interruption before the archive was modified and is discarded. The tail is copied to and from the
+ *  journal in fixed-size chunks, so its size is not bound by the heap.
+ *  <br/><br/>
+ *  An outstanding journal is only acted upon by {@link #recover(Path)} once no writer holds the archive: writers in
+ *  this process hold its {@link ArchiveLock}, and the writer of a journal (in any process) holds a lock on the
+ *  journal file until the append is committed or rolled back.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jCentralDirectoryJournal implements AutoCloseable {
+
+    public static final String JOURNAL_SUFFIX = ".pzj";
+
+    private static final int MAGIC = 0x4A5A5031; // PZJ1
+    private static final int HEADER_LENGTH = 4 + 8 + 8 + 8;
+    private static final int COPY_CHUNK_SIZE = 1024 * 1024;
+    private static final Map<String,LockState> LOCKS = new HashMap<>();
+
+    private final Path archivePath;
+    private final ArchiveLock archiveLock;
+    private final FileChannel journal;
+    private boolean isCommitted;
+    private boolean isClosed;
+
+    private Zip4jCentralDirectoryJournal(Path archivePath, ArchiveLock archiveLock, FileChannel journal) {
+        this.archivePath = archivePath;
+        this.archiveLock = archiveLock;
+        this.journal = journal;
+    }
+
+    /**
+     *  Journals the archive from the given offset to its end, prior to that region being overwritten. The archive
+     *  is held until the journal is closed.
+     *  @throws ZipException if another process is appending to the archive
+     */
+    public static Zip4jCentralDirectoryJournal begin(Path archivePath, FileChannel archive, long offset) throws IOException {
+        final ArchiveLock archiveLock = lock(archivePath);
+        FileChannel journal = null;
+        try {
+            journal = FileChannel.open(getJournalPath(archivePath), StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Released on closing the channel
+            if (Objects.isNull(journal.tryLock())) {
+                throw new ZipException(String.format("Archive %s is being appended to by another process",
+                                                     archivePath));
+            }
+            journal.truncate(0);
+
+            final long size = archive.size();
+            final CRC32 crc = new CRC32();
+            final ByteBuffer buffer = ByteBuffer.allocate((int)Math.max(1, Math.min(COPY_CHUNK_SIZE, size - offset)));
+            for (long position = offset; position < size; position += buffer.limit()) {
+                buffer.clear()
+                      .limit((int)Math.min(buffer.capacity(), size - position));
+                while (buffer.hasRemaining()) {
+                    if (archive.read(buffer, position + buffer.position()) < 0) {
+                        throw new ZipException("Archive ended whilst journalling the central directory");
+                    }
+                }
+                crc.update(buffer.flip());
+                writeFully(journal, buffer.rewind(), HEADER_LENGTH + position - offset);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                                          .putInt(MAGIC)
+                                          .putLong(offset)
+                                          .putLong(size)
+                                          .putLong(crc.getValue())
+                                          .flip();
+            writeFully(journal, header, 0);
+            journal.force(true);
+            return new Zip4jCentralDirectoryJournal(archivePath, archiveLock, journal);
+        } catch(IOException | RuntimeException e) {
+            if (Objects.nonNull(journal)) {
+                journal.close();
+            }
+            archiveLock.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Marks the append as complete, discarding the journal. The archive must have been synced beforehand.
+     */
+    public void commit() throws IOException {
+        Files.deleteIfExists(getJournalPath(archivePath));
+        isCommitted = true;
+    }
+
+    /**
+     *  Rolls the archive back, unless the append was committed, and releases the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            if (!isCommitted) {
+                restore(journal, archivePath);
+                Files.deleteIfExists(getJournalPath(archivePath));
+            }
+        } finally {
+            try {
+                journal.close();
+            } finally {
+                archiveLock.close();
+            }
+        }
+    }
+
+    /**
+     *  Holds the archive against writers in this process, waiting for any current writer to release it. Holds are
+     *  reentrant, so a writer holding the archive may journal and recover it.
+     */
+    public static ArchiveLock lock(Path archivePath) {
+        final String key = ArchiveKey.canonicalPath(archivePath);
+        final LockState state = reference(key);
+        state.lock.lock();
+        return new ArchiveLock(key, state);
+    }
+
+    /**
+     *  @return the hold on the archive, or null if it is held by another thread
+     */
+    private static ArchiveLock tryLock(Path archivePath) {
+        final String key = ArchiveKey.canonicalPath(archivePath);
+        final LockState state = reference(key);
+        if (!state.lock.tryLock()) {
+            dereference(key, state);
+            return null;
+        }
+        return new ArchiveLock(key, state);
+    }
+
+    /**
+     *  Restores the tail of the archive from an outstanding journal, if any, and discards the journal. Nothing is
+     *  done whilst the archive is held by another thread, or the journal by its writer.
+     *  @return true, if the archive was restored
+     */
+    public static boolean recover(Path archivePath) throws IOException {
+        final Path journalPath = getJournalPath(archivePath);
+        if (!Files.exists(journalPath)) {
+            return false;
+        }
+
+        final ArchiveLock archiveLock = tryLock(archivePath);
+        if (Objects.isNull(archiveLock)) {
+            return false;
+        }
+        try (archiveLock; FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ,
+                                                                  StandardOpenOption.WRITE)) {
+            final FileLock journalLock;
+            try {
+                journalLock = journal.tryLock();
+            } catch(OverlappingFileLockException e) {
+                // Journalled by this thread, which is yet to commit or roll back
+                return false;
+            }
+            if (Objects.isNull(journalLock)) {
+                return false;
+            }
+
+            final boolean isRestored = restore(journal, archivePath);
+            Files.delete(journalPath);
+            return isRestored;
+        } catch(NoSuchFileException e) {
+            // Committed or recovered concurrently
+            return false;
+        }
+    }
+
+    public static Path getJournalPath(Path archivePath) {
+        return archivePath.resolveSibling(archivePath.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     *  Copies the tail held by the journal back into the archive, provided the journal is complete and intact.
+     *  @return true, if the archive was restored
+     */
+    private static boolean restore(FileChannel journal, Path archivePath) throws IOException {
+        final long length = journal.size() - HEADER_LENGTH;
+        if (length < 0 || !Files.exists(archivePath)) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining()) {
+            if (journal.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        final int magic = header.getInt();
+        final long offset = header.getLong();
+        final long size = header.getLong();
+        final long expectedCrc = header.getLong();
+        if (magic != MAGIC || size - offset != length) {
+            return false;
+        }
+
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate((int)Math.max(1, Math.min(COPY_CHUNK_SIZE, length)));
+        for (long position = 0; position < length; position += buffer.limit()) {
+            buffer.clear()
+                  .limit((int)Math.min(buffer.capacity(), length - position));
+            while (buffer.hasRemaining()) {
+                if (journal.read(buffer, HEADER_LENGTH + position + buffer.position()) < 0) {
+                    return false;
+                }
+            }
+            crc.update(buffer.flip());
+        }
+        if (crc.getValue() != expectedCrc) {
+            return false;
+        }
+
+        try (FileChannel archive = FileChannel.open(archivePath, StandardOpenOption.WRITE)) {
+            archive.position(offset);
+            for (long position = 0; position < length; ) {
+                position += journal.transferTo(HEADER_LENGTH + position,
+                                               Math.min(COPY_CHUNK_SIZE, length - position), archive);
+            }
+            archive.truncate(size);
+            archive.force(true);
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    private static LockState reference(String key) {
+        synchronized(LOCKS) {
+            final LockState state = LOCKS.computeIfAbsent(key, k -> new LockState());
+            state.references++;
+            return state;
+        }
+    }
+
+    private static void dereference(String key, LockState state) {
+        synchronized(LOCKS) {
+            if (--state.references == 0) {
+                LOCKS.remove(key, state);
+            }
+        }
+    }
+
+    private static class LockState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int references;
+    }
+
+    /**
+     *  Hold on an archive by a writer in this process, released on closing.
+     */
+    public static final class ArchiveLock implements AutoCloseable {
+        private final String key;
+        private final LockState state;
+        private final AtomicBoolean isReleased = new AtomicBoolean();
+
+        private ArchiveLock(String key, LockState state) {
+            this.key = key;
+            this.state = state;
+        }
+
+        @Override
+        public void close() {
+            if (isReleased.compareAndSet(false, true)) {
+                state.lock.unlock();
+                dereference(key, state);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+
+/**
+ *  Unbuffered input stream reading a file channel through positional reads from a given offset. The position of the
+ *  channel itself is never modified, so several streams may read the same channel concurrently.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jChannelInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final Closeable resource;
+    private long position;
+
+    /**
+     *  @param channel the channel to read from
+     *  @param position the offset to start reading from
+     *  @param closeChannel whether closing this stream also closes the channel
+     */
+    public Zip4jChannelInputStream(FileChannel channel, long position, boolean closeChannel) {
+        this(channel, position, closeChannel ? channel : null);
+    }
+
+    /**
+     *  @param channel the channel to read from
+     *  @param position the offset to start reading from
+     *  @param resource the resource closed along with this stream (such as the lease of the channel), or null
+     */
+    public Zip4jChannelInputStream(FileChannel channel, long position, Closeable resource) {
+        this.channel = channel;
+        this.position = position;
+        this.resource = resource;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, channel.size() - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.max(0, Math.min(Integer.MAX_VALUE, channel.size() - position));
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (Objects.nonNull(resource)) {
+            resource.close();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jHeaderCache.ArchiveKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+
+/**
+ *  Process-wide pool of read-only file channels over archives, keyed by the canonical path of the archive. A single
+ *  channel is opened per archive and leased to any number of concurrent readers, who must read it through positional
+ *  reads only (which leave the position of the channel untouched), and must not close it. The channel is reference
+ *  counted by its leases and closed once it has been idle (without leases) for the idle timeout.
+ *  <br/><br/>
+ *  The number of channels open at once is capped. Should the cap be reached, the least recently released idle channel
+ *  is closed to make way, and where none is idle, the lease waits for one to become so, failing after the acquire
+ *  timeout. A channel is replaced on being leased once the archive has been replaced on disk (its file key has
+ *  changed), or once it has been closed (e.g. by the interruption of a thread reading it), and channels over an
+ *  archive about to be replaced are released by {@link #invalidate(Path)}. Replaced channels are closed once their
+ *  last lease is released.
+ *  <br/><br/>
+ *  Channels are opened outside the monitor of the pool, so that a slow open holds up neither other leases nor
+ *  releases. A slot is reserved for the channel whilst it is opened. Should a channel over the same archive be
+ *  published meanwhile, that channel is leased instead and the one just opened is closed.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jChannelPool {
+    private final Map<String,Handle> handles = new HashMap<>();
+    private final AtomicLong openedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private int openChannelCount;
+    private int waitingCount;
+    private ScheduledExecutorService sweeper;
+    private ScheduledFuture<?> sweep;
+
+    /**
+     *  Leases the channel over the archive, opening it if required. The lease must be closed once reading is
+     *  complete.
+     *  @throws IOException if the archive cannot be opened, or no channel could be freed within the acquire timeout
+     */
+    public Lease acquire(Path archivePath) throws IOException {
+        final String key = ArchiveKey.canonicalPath(archivePath);
+        final Object fileKey = Files.readAttributes(archivePath, BasicFileAttributes.class).fileKey();
+        synchronized(this) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getSetting(
+                    CNS_CHANNEL_POOL_ACQUIRE_TIMEOUT, DEFAULT_CHANNEL_POOL_ACQUIRE_TIMEOUT));
+            while (true) {
+                final Handle handle = handles.get(key);
+                if (Objects.nonNull(handle)) {
+                    if (handle.channel.isOpen() && Objects.equals(handle.fileKey, fileKey)) {
+                        handle.leaseCount++;
+                        return new Lease(handle);
+                    }
+                    retire(handle);
+                }
+
+                if (openChannelCount < getSetting(CNS_CHANNEL_POOL_CAPACITY, DEFAULT_CHANNEL_POOL_CAPACITY)
+                        || evictLeastRecentlyReleased()) {
+                    break;
+                }
+
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException(String.format("No channel could be opened over %s within the limit of "
+                                                                + "%d open channels", archivePath, openChannelCount));
+                }
+                waitingCount++;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(String.format("Interrupted whilst waiting for a channel over %s",
+                                                        archivePath), e);
+                } finally {
+                    waitingCount--;
+                }
+            }
+            // Reserves the slot of the channel, which is opened outside the monitor
+            openChannelCount++;
+        }
+
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(archivePath, StandardOpenOption.READ);
+        } catch(IOException | RuntimeException e) {
+            synchronized(this) {
+                openChannelCount--;
+                notifyAll();
+            }
+            throw e;
+        }
+
+        synchronized(this) {
+            final Handle current = handles.get(key);
+            if (Objects.nonNull(current)) {
+                if (current.channel.isOpen() && Objects.equals(current.fileKey, fileKey)) {
+                    current.leaseCount++;
+                    closeChannel(channel);
+                    openChannelCount--;
+                    notifyAll();
+                    return new Lease(current);
+                }
+                retire(current);
+            }
+
+            final Handle handle = new Handle(key, fileKey, channel);
+            handle.leaseCount = 1;
+            handles.put(key, handle);
+            openedCount.incrementAndGet();
+            return new Lease(handle);
+        }
+    }
+
+    /**
+     *  Releases the channel over the archive, which is closed immediately if idle and otherwise once its leases are
+     *  released. Later leases open a new channel.
+     */
+    public synchronized void invalidate(Path archivePath) {
+        final Handle handle = handles.get(ArchiveKey.canonicalPath(archivePath));
+        if (Objects.nonNull(handle)) {
+            retire(handle);
+        }
+    }
+
+    /**
+     *  Releases all channels, as {@link #invalidate(Path)}.
+     */
+    public synchronized void clear() {
+        for (Handle handle : new ArrayList<>(handles.values())) {
+            retire(handle);
+        }
+    }
+
+    /**
+     *  @return the number of channels opened since the pool was created
+     */
+    public long getOpenedCount() {
+        return openedCount.get();
+    }
+
+    /**
+     *  @return the number of idle channels closed on timing out or to make way for others
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     *  @return the number of channels currently open, whether leased or idle
+     */
+    public synchronized int getOpenChannelCount() {
+        return openChannelCount;
+    }
+
+    /**
+     *  @return the number of leases currently waiting for a channel to be freed
+     */
+    public synchronized int getWaitingCount() {
+        return waitingCount;
+    }
+
+    private synchronized void release(Handle handle) {
+        if (--handle.leaseCount > 0) {
+            return;
+        }
+
+        if (handle.isRetired) {
+            close(handle);
+        } else {
+            handle.releasedAt = System.nanoTime();
+            scheduleSweep(TimeUnit.MILLISECONDS.toNanos(getSetting(CNS_CHANNEL_POOL_IDLE_TIMEOUT,
+                                                                   DEFAULT_CHANNEL_POOL_IDLE_TIMEOUT)));
+        }
+        notifyAll();
+    }
+
+    /**
+     *  Removes the handle from the pool, closing it if idle.
+     */
+    private void retire(Handle handle) {
+        handles.remove(handle.key, handle);
+        handle.isRetired = true;
+        if (handle.leaseCount == 0) {
+            close(handle);
+            notifyAll();
+        }
+    }
+
+    private boolean evictLeastRecentlyReleased() {
+        Handle eldest = null;
+        for (Handle handle : handles.values()) {
+            if (handle.leaseCount == 0 && (Objects.isNull(eldest) || handle.releasedAt < eldest.releasedAt)) {
+                eldest = handle;
+            }
+        }
+        if (Objects.isNull(eldest)) {
+            return false;
+        }
+        handles.remove(eldest.key);
+        close(eldest);
+        evictedCount.incrementAndGet();
+        return true;
+    }
+
+    private void close(Handle handle) {
+        closeChannel(handle.channel);
+        openChannelCount--;
+    }
+
+    private static void closeChannel(FileChannel channel) {
+        try {
+            channel.close();
+        } catch(IOException e) {
+            // The channel is read-only, so nothing is lost on failing to close it
+        }
+    }
+
+    private synchronized void evictIdle() {
+        sweep = null;
+        final long idleTimeout = TimeUnit.MILLISECONDS.toNanos(getSetting(CNS_CHANNEL_POOL_IDLE_TIMEOUT,
+                                                                          DEFAULT_CHANNEL_POOL_IDLE_TIMEOUT));
+        final long now = System.nanoTime();
+        long nextExpiry = Long.MAX_VALUE;
+        final Iterator<Handle> iterator = handles.values().iterator();
+        while (iterator.hasNext()) {
+            final Handle handle = iterator.next();
+            if (handle.leaseCount > 0) {
+                continue;
+            }
+            if (now - handle.releasedAt >= idleTimeout) {
+                iterator.remove();
+                close(handle);
+                evictedCount.incrementAndGet();
+            } else {
+                nextExpiry = Math.min(nextExpiry, handle.releasedAt + idleTimeout - now);
+            }
+        }
+        if (nextExpiry != Long.MAX_VALUE) {
+            scheduleSweep(nextExpiry);
+        }
+        notifyAll();
+    }
+
+    private void scheduleSweep(long delayNanos) {
+        if (Objects.nonNull(sweep)) {
+            // The idle timeout may have been shortened since the sweep was scheduled
+            if (sweep.getDelay(TimeUnit.NANOSECONDS) <= delayNanos) {
+                return;
+            }
+            sweep.cancel(false);
+        }
+        if (Objects.isNull(sweeper)) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pz-zip4j-channel-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        sweep = sweeper.schedule(this::evictIdle, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static long getSetting(String key, long defaultValue) {
+        try {
+            return Long.parseLong(CURRENT_SETTINGS.getProperty(key, String.valueOf(defaultValue)));
+        } catch(NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class Handle {
+        private final String key;
+        private final Object fileKey;
+        private final FileChannel channel;
+        private int leaseCount;
+        private long releasedAt;
+        private boolean isRetired;
+
+        private Handle(String key, Object fileKey, FileChannel channel) {
+            this.key = key;
+            this.fileKey = fileKey;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     *  Lease of the channel over an archive. Closing the lease releases the channel back to the pool.
+     */
+    public class Lease implements Closeable {
+        private final Handle handle;
+        private final AtomicBoolean isReleased = new AtomicBoolean();
+
+        private Lease(Handle handle) {
+            this.handle = handle;
+        }
+
+        /**
+         *  @return the channel, to be read through positional reads only and not closed
+         */
+        public FileChannel channel() {
+            return handle.channel;
+        }
+
+        @Override
+        public void close() {
+            if (isReleased.compareAndSet(false, true)) {
+                release(handle);
+            }
+        }
+    }
+}
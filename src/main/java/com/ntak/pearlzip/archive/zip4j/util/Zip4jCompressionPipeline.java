@@ -0,0 +1,515 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.AesEncrypter;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCryptoUtil.ZipCryptoKeys;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter.Entry;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesVersion;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+import net.lingala.zip4j.util.BitUtils;
+import net.lingala.zip4j.util.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
+
+/**
+ *  Parallel compression pipeline for the creation of zip entries. Worker threads read, compress and (if enabled)
+ *  encrypt source files into spill buffers, while the calling thread acts as the single writer, appending the
+ *  prepared entries to a {@link Zip4jZipWriter} in submission order. The number of entries prepared ahead of the
+ *  writer is bounded, which in turn bounds the heap held by the spill buffers.
+ *  <br/><br/>
+ *  Entries are written as Zip4j would write them for the same {@link ZipParameters}: raw DEFLATE or STORE data,
+ *  WinZip AES (AE-1 or AE-2) or ZipCrypto encryption, UTF-8 names and the file attributes of the source. A source
+ *  that fails to be prepared is reported to the listener and skipped, leaving the archive intact.
+ *  <br/><br/>
+ *  Sources at or above the chunked deflate threshold are additionally deflated in parallel blocks (as pigz does), so
+ *  that a single very large entry is not compressed on one core. Each block is deflated with the preceding 32 KB of
+ *  the source as its preset dictionary and, other than the last, ends on a byte boundary by a sync flush, so that
+ *  the blocks join into a single DEFLATE stream. The CRC-32 of the entry is combined from those of the blocks.
+ *  <br/><br/>
+ *  In adaptive mode, each source to be deflated is first sampled: a few KB from its head and middle are deflated at
+ *  the configured level and, should the sample not shrink below {@link
+ *  com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants#MAX_COMPRESSION_SAMPLE_RATIO} of its size, the source is
+ *  stored instead. Already compressed payloads (images, video, nested archives) are so written without spending CPU
+ *  on deflating them for no gain. The decision taken for each entry is recorded as a {@link Decision}.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jCompressionPipeline {
+
+    private static final int AES_EXTRA_DATA_SIZE = 7;
+    private static final int VERSION_MADE_BY = (FileUtils.isWindows() ? 0 : 3) << 8 | Zip4jZipWriter.VERSION_AES;
+    private static final int FOLDER_ATTRIBUTES = FileUtils.isWindows() ? 0x10 : 040755 << 16 | 0x10;
+
+    private final char[] password;
+    private final int parallelism;
+    private final long chunkedDeflateThreshold;
+    private final boolean isAdaptive;
+    private final List<Decision> decisions = new ArrayList<>();
+
+    public Zip4jCompressionPipeline(char[] password, int parallelism) {
+        this(password, parallelism, Long.MAX_VALUE);
+    }
+
+    /**
+     *  @param chunkedDeflateThreshold the minimum size of a source to be deflated in parallel blocks
+     */
+    public Zip4jCompressionPipeline(char[] password, int parallelism, long chunkedDeflateThreshold) {
+        this(password, parallelism, chunkedDeflateThreshold, false);
+    }
+
+    /**
+     *  @param chunkedDeflateThreshold the minimum size of a source to be deflated in parallel blocks
+     *  @param isAdaptive whether to sample sources to be deflated, storing those that do not compress
+     */
+    public Zip4jCompressionPipeline(char[] password, int parallelism, long chunkedDeflateThreshold,
+            boolean isAdaptive) {
+        this.password = password;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkedDeflateThreshold = Math.max(CHUNKED_DEFLATE_BLOCK_SIZE, chunkedDeflateThreshold);
+        this.isAdaptive = isAdaptive;
+    }
+
+    /**
+     *  @return the compression decisions taken for the entries written so far in adaptive mode, in write order
+     */
+    public List<Decision> getDecisions() {
+        return Collections.unmodifiableList(decisions);
+    }
+
+    /**
+     *  Prepares the sources in parallel and writes them through the writer in the order given. The listener is
+     *  notified on the calling thread as each source is written or fails.
+     *  @throws IOException if writing to the archive fails, in which case the remaining sources are abandoned
+     */
+    public void write(Zip4jZipWriter writer, List<Source> sources, Listener listener) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism,
+                                                                               Math.max(1, sources.size())));
+        // Blocks are deflated on a separate pool, as the workers preparing large sources wait upon them
+        final ExecutorService blockExecutor = parallelism > 1 && sources.stream()
+                                                                        .anyMatch(this::isChunked) ?
+                Executors.newFixedThreadPool(parallelism) : null;
+        final Deque<Future<Prepared>> inFlight = new ArrayDeque<>();
+        final int window = parallelism * 2;
+        int next = 0;
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                while (next < sources.size() && inFlight.size() < window) {
+                    final Source source = sources.get(next++);
+                    inFlight.add(executor.submit(() -> prepare(source, blockExecutor)));
+                }
+
+                final Source source = sources.get(i);
+                final Prepared prepared;
+                try {
+                    prepared = inFlight.remove().get();
+                } catch(ExecutionException e) {
+                    listener.onFailed(source, e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+                    continue;
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ZipException("Interrupted whilst compressing entries", e);
+                }
+
+                try (Zip4jSpillBuffer data = prepared.data()) {
+                    writer.writeEntry(prepared.entry(), data::transferTo);
+                }
+                if (Objects.nonNull(prepared.decision())) {
+                    decisions.add(prepared.decision());
+                }
+                listener.onWritten(source, prepared.entry());
+            }
+        } finally {
+            executor.shutdownNow();
+            if (Objects.nonNull(blockExecutor)) {
+                blockExecutor.shutdownNow();
+            }
+            for (Future<Prepared> pending : inFlight) {
+                release(pending);
+            }
+        }
+    }
+
+    /**
+     *  Reads, compresses and encrypts a source into a spill buffer, producing the header fields of its entry.
+     *  @param blockExecutor the executor deflating blocks of large sources, or null to deflate all sources whole
+     */
+    Prepared prepare(Source source, ExecutorService blockExecutor) throws IOException, GeneralSecurityException {
+        final ZipParameters parameters = source.parameters();
+        final File file = source.file();
+        final String name = parameters.getFileNameInZip();
+        final boolean isDirectory = file.isDirectory() || FileUtils.isZipEntryDirectory(name);
+        final Decision decision = isAdaptive && !isDirectory && file.length() > 0 &&
+                parameters.getCompressionMethod() == CompressionMethod.DEFLATE ?
+                sample(file, name, parameters.getCompressionLevel().getLevel()) : null;
+        final CompressionMethod method = isDirectory || file.length() == 0 ||
+                Objects.nonNull(decision) && decision.isStored() ? CompressionMethod.STORE :
+                parameters.getCompressionMethod();
+        final EncryptionMethod encryption = !isDirectory && parameters.isEncryptFiles() ?
+                parameters.getEncryptionMethod() : EncryptionMethod.NONE;
+        if (encryption == EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG) {
+            throw new ZipException("Strong encryption is not supported");
+        }
+
+        final long lastModified = parameters.getLastModifiedFileTime() > 0 ? parameters.getLastModifiedFileTime() :
+                file.lastModified();
+        final Entry entry = new Entry(name).setVersionMadeBy(VERSION_MADE_BY)
+                                           .setDosTime(Zip4jUtil.toDosTime(lastModified))
+                                           .setComment(parameters.getFileComment())
+                                           .setExternalAttributes(getExternalAttributes(file));
+
+        final Zip4jSpillBuffer data = new Zip4jSpillBuffer(SPILL_THRESHOLD);
+        try {
+            AesEncrypter aesEncrypter = null;
+            ZipCryptoKeys zipCryptoKeys = null;
+            long expectedCrc = 0;
+            if (encryption == EncryptionMethod.AES) {
+                aesEncrypter = new AesEncrypter(password, parameters.getAesKeyStrength());
+                data.write(aesEncrypter.getHeader());
+            } else if (encryption == EncryptionMethod.ZIP_STANDARD) {
+                // The CRC is part of the ZipCrypto header and so must be known before the data is encrypted
+                expectedCrc = computeCrc(file);
+                zipCryptoKeys = new ZipCryptoKeys(password);
+                data.write(Zip4jCryptoUtil.createZipCryptoHeader(zipCryptoKeys, (byte)(expectedCrc >>> 24)));
+            }
+
+            long crc = 0;
+            long rawSize = 0;
+            if (!isDirectory && Objects.nonNull(blockExecutor) && method == CompressionMethod.DEFLATE &&
+                    isChunked(source)) {
+                rawSize = file.length();
+                crc = deflateInBlocks(file, rawSize, parameters.getCompressionLevel().getLevel(), blockExecutor, data,
+                                      aesEncrypter, zipCryptoKeys);
+            } else if (!isDirectory) {
+                final CRC32 checksum = new CRC32();
+                final byte[] input = new byte[WRITE_BUFFER_SIZE];
+                final byte[] output = new byte[WRITE_BUFFER_SIZE];
+                final Deflater deflater = method == CompressionMethod.DEFLATE ?
+                        new Deflater(parameters.getCompressionLevel().getLevel(), true) : null;
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    int read;
+                    while ((read = inputStream.read(input)) != -1) {
+                        checksum.update(input, 0, read);
+                        rawSize += read;
+                        if (Objects.isNull(deflater)) {
+                            emit(input, read, data, aesEncrypter, zipCryptoKeys);
+                            continue;
+                        }
+                        deflater.setInput(input, 0, read);
+                        while (!deflater.needsInput()) {
+                            emit(output, deflater.deflate(output), data, aesEncrypter, zipCryptoKeys);
+                        }
+                    }
+                    if (Objects.nonNull(deflater)) {
+                        deflater.finish();
+                        while (!deflater.finished()) {
+                            emit(output, deflater.deflate(output), data, aesEncrypter, zipCryptoKeys);
+                        }
+                    }
+                } finally {
+                    if (Objects.nonNull(deflater)) {
+                        deflater.end();
+                    }
+                }
+                crc = checksum.getValue();
+            }
+
+            int flags = Zip4jZipWriter.FLAG_UTF8;
+            if (encryption == EncryptionMethod.AES) {
+                data.write(aesEncrypter.getAuthenticationCode());
+                final AesVersion aesVersion = parameters.getAesVersion();
+                flags |= Zip4jZipWriter.FLAG_ENCRYPTED;
+                entry.setMethod(CompressionMethod.AES_INTERNAL_ONLY.getCode())
+                     .setVersionNeeded(Zip4jZipWriter.VERSION_AES)
+                     .setCrc(aesVersion == AesVersion.TWO ? 0 : crc)
+                     .setExtra(ByteBuffer.allocate(4 + AES_EXTRA_DATA_SIZE)
+                                         .order(ByteOrder.LITTLE_ENDIAN)
+                                         .putShort((short)Zip4jZipWriter.EXTRA_AES)
+                                         .putShort((short)AES_EXTRA_DATA_SIZE)
+                                         .putShort((short)aesVersion.getVersionNumber())
+                                         .put((byte)'A')
+                                         .put((byte)'E')
+                                         .put((byte)parameters.getAesKeyStrength().getRawCode())
+                                         .putShort((short)method.getCode())
+                                         .array());
+            } else {
+                if (encryption == EncryptionMethod.ZIP_STANDARD) {
+                    if (crc != expectedCrc) {
+                        throw new ZipException(String.format("File %s changed whilst being added", file));
+                    }
+                    flags |= Zip4jZipWriter.FLAG_ENCRYPTED;
+                }
+                entry.setMethod(method.getCode())
+                     .setVersionNeeded(Zip4jZipWriter.VERSION_DEFAULT)
+                     .setCrc(crc);
+            }
+            entry.setFlags(flags)
+                 .setRawSize(rawSize)
+                 .setPackedSize(data.size());
+
+            return new Prepared(entry, data, decision);
+        } catch(IOException | GeneralSecurityException | RuntimeException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Entry of a folder which has no source, such as a parent folder retained after its last child is removed.
+     */
+    public static Entry createFolderEntry(String name, long lastModified) {
+        return new Entry(name).setVersionMadeBy(VERSION_MADE_BY)
+                              .setVersionNeeded(Zip4jZipWriter.VERSION_DEFAULT)
+                              .setFlags(Zip4jZipWriter.FLAG_UTF8)
+                              .setMethod(CompressionMethod.STORE.getCode())
+                              .setDosTime(Zip4jUtil.toDosTime(lastModified))
+                              .setExternalAttributes(FOLDER_ATTRIBUTES);
+    }
+
+    /**
+     *  Trial deflates the head and middle of the source (or the whole of a small source), deciding to store it if
+     *  the sample does not compress sufficiently.
+     */
+    private static Decision sample(File file, String name, int level) throws IOException {
+        final long length = file.length();
+        final byte[] input = new byte[(int)Math.min(length, 2L * COMPRESSION_SAMPLE_SIZE)];
+        final int headLength = Math.min(input.length, COMPRESSION_SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readFully(channel, ByteBuffer.wrap(input, 0, headLength), 0, file);
+            // A small source is sampled whole, otherwise the second sample is centred on its middle
+            readFully(channel, ByteBuffer.wrap(input, headLength, input.length - headLength),
+                      length <= input.length ? headLength : length / 2 - COMPRESSION_SAMPLE_SIZE / 2, file);
+        }
+
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            final byte[] output = new byte[WRITE_BUFFER_SIZE];
+            long packedSize = 0;
+            while (!deflater.finished()) {
+                packedSize += deflater.deflate(output);
+            }
+            return new Decision(name, input.length, packedSize, length,
+                                packedSize > input.length * MAX_COMPRESSION_SAMPLE_RATIO);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset, File file) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position() - start) < 0) {
+                throw new ZipException(String.format("File %s changed whilst being added", file));
+            }
+        }
+    }
+
+    private boolean isChunked(Source source) {
+        return source.file().isFile() && source.file().length() >= chunkedDeflateThreshold;
+    }
+
+    /**
+     *  Deflates the source in blocks on the block executor, emitting the compressed blocks in order. The number of
+     *  blocks in flight is bounded, so memory use does not grow with the size of the source.
+     *  @return the CRC-32 of the source
+     */
+    private long deflateInBlocks(File file, long length, int level, ExecutorService blockExecutor,
+            Zip4jSpillBuffer data, AesEncrypter aesEncrypter, ZipCryptoKeys zipCryptoKeys) throws IOException,
+            GeneralSecurityException {
+        final long blockCount = (length + CHUNKED_DEFLATE_BLOCK_SIZE - 1) / CHUNKED_DEFLATE_BLOCK_SIZE;
+        final Deque<Future<DeflatedBlock>> inFlight = new ArrayDeque<>();
+        long crc = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long next = 0;
+            for (long i = 0; i < blockCount; i++) {
+                while (next < blockCount && inFlight.size() < parallelism * 2) {
+                    final long start = next * CHUNKED_DEFLATE_BLOCK_SIZE;
+                    final int blockLength = (int)Math.min(CHUNKED_DEFLATE_BLOCK_SIZE, length - start);
+                    final boolean isLast = ++next == blockCount;
+                    inFlight.add(blockExecutor.submit(() -> deflateBlock(channel, start, blockLength, isLast,
+                                                                         level)));
+                }
+
+                final DeflatedBlock block;
+                try {
+                    block = inFlight.remove().get();
+                } catch(ExecutionException e) {
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    throw new ZipException(e.getCause().getMessage(), e);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ZipException("Interrupted whilst compressing entries", e);
+                }
+                crc = i == 0 ? block.crc() : Zip4jUtil.combineCrc(crc, block.crc(), block.rawLength());
+                emit(block.data(), block.length(), data, aesEncrypter, zipCryptoKeys);
+            }
+
+            if (channel.size() != length) {
+                throw new ZipException(String.format("File %s changed whilst being added", file));
+            }
+        } finally {
+            for (Future<DeflatedBlock> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        return crc;
+    }
+
+    /**
+     *  Deflates a block of the source, primed with the preceding 32 KB as the dictionary. All but the last block are
+     *  sync flushed rather than finished, leaving the stream open and byte aligned for the next block.
+     */
+    private static DeflatedBlock deflateBlock(FileChannel channel, long start, int length, boolean isLast,
+            int level) throws IOException {
+        final int dictionaryLength = (int)Math.min(DEFLATE_DICTIONARY_SIZE, start);
+        final byte[] input = new byte[dictionaryLength + length];
+        final ByteBuffer buffer = ByteBuffer.wrap(input);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start - dictionaryLength + buffer.position()) < 0) {
+                throw new ZipException("File changed whilst being added");
+            }
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(input, dictionaryLength, length);
+
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(input, 0, dictionaryLength);
+            }
+            deflater.setInput(input, dictionaryLength, length);
+
+            byte[] output = new byte[length + (length >> 4) + 64];
+            int size = 0;
+            if (isLast) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (size == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    size += deflater.deflate(output, size, output.length - size);
+                }
+            } else {
+                // A full output buffer may leave the flush incomplete, so it is repeated until space remains
+                do {
+                    if (size == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    size += deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+                } while (size == output.length);
+            }
+            return new DeflatedBlock(output, size, crc.getValue(), length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void emit(byte[] buffer, int length, Zip4jSpillBuffer data, AesEncrypter aesEncrypter,
+            ZipCryptoKeys zipCryptoKeys) throws IOException, GeneralSecurityException {
+        if (length <= 0) {
+            return;
+        }
+        if (Objects.nonNull(aesEncrypter)) {
+            aesEncrypter.encrypt(buffer, 0, length);
+        } else if (Objects.nonNull(zipCryptoKeys)) {
+            for (int i = 0; i < length; i++) {
+                buffer[i] = zipCryptoKeys.encrypt(buffer[i]);
+            }
+        }
+        data.write(buffer, 0, length);
+    }
+
+    private static long computeCrc(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     *  File attributes of the source, consistent with Zip4j (the symbolic link attribute is not retained).
+     */
+    private static int getExternalAttributes(File file) {
+        byte[] attributes = FileUtils.getFileAttributes(file);
+        attributes[3] = BitUtils.unsetBit(attributes[3], 5);
+        return ByteBuffer.wrap(attributes)
+                         .order(ByteOrder.LITTLE_ENDIAN)
+                         .getInt();
+    }
+
+    private static void release(Future<Prepared> pending) {
+        if (!pending.cancel(true) && pending.isDone()) {
+            try {
+                pending.get().data().close();
+            } catch(Exception e) {
+                // Failed or cancelled, so no buffer is held
+            }
+        }
+    }
+
+    /**
+     *  A file to be added, with the parameters of its entry (name, compression, encryption, comment, timestamp).
+     */
+    public record Source(File file, ZipParameters parameters) {
+    }
+
+    record Prepared(Entry entry, Zip4jSpillBuffer data, Decision decision) {
+    }
+
+    /**
+     *  Outcome of sampling a source in adaptive mode: the sizes of the sample before and after its trial deflate, the
+     *  size of the source and whether it is stored rather than deflated.
+     */
+    public record Decision(String name, long sampleSize, long packedSampleSize, long size, boolean isStored) {
+
+        public double getSampleRatio() {
+            return sampleSize <= 0 ? 1 : (double)packedSampleSize / sampleSize;
+        }
+    }
+
+    private record DeflatedBlock(byte[] data, int length, long crc, int rawLength) {
+    }
+
+    public interface Listener {
+        void onWritten(Source source, Entry entry);
+
+        void onFailed(Source source, Exception exception);
+    }
+}
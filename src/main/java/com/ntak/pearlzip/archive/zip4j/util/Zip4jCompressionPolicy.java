@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionLevel;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.CNS_COMPRESSION_POLICY;
+
+/**
+ *  Ordered rules which set the compression method, compression level and encryption of each entry added to an
+ *  archive, in place of the uniform settings of the archive. The first rule matching an entry applies, and the
+ *  settings it does not specify are left as those of the archive. An entry matching no rule is left as is.
+ *  <br/><br/>
+ *  Rules are read from the settings, one per key of the form configuration.zip4j.compression-policy.&lt;n&gt; and
+ *  ordered by n. Each rule is a list of semicolon separated attributes, for example:
+ *  <pre>
+ *  configuration.zip4j.compression-policy.1=glob=**.log;method=DEFLATE;level=9
+ *  configuration.zip4j.compression-policy.2=extension=exe,dll,so;level=1
+ *  configuration.zip4j.compression-policy.3=min-size=1073741824;method=STORE
+ *  </pre>
+ *  The conditions, all of which must hold for a rule to match, are glob (over the entry name, as
+ *  {@link Zip4jUtil#toGlobPattern(String)}), extension (a comma separated list, case insensitive), min-size
+ *  (inclusive) and max-size (exclusive). The settings are method (STORE or DEFLATE), level (0 to 9) and encryption
+ *  (NONE, AES or ZIP_STANDARD).
+ *  <br/><br/>
+ *  Rules are compiled once, upfront. Conditions are tested cheapest first: the size range, then the extension
+ *  against a hash set and then the glob, which is only evaluated once the literal suffix it requires is present.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jCompressionPolicy {
+
+    public static final Zip4jCompressionPolicy EMPTY = new Zip4jCompressionPolicy(Collections.emptyList());
+
+    private final List<Rule> rules;
+
+    private Zip4jCompressionPolicy(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     *  Compiles the rules held in the properties under configuration.zip4j.compression-policy.&lt;n&gt;.
+     *  @throws IllegalArgumentException if a rule is malformed
+     */
+    public static Zip4jCompressionPolicy fromProperties(Properties properties) {
+        final String prefix = String.format("%s.", CNS_COMPRESSION_POLICY);
+        final SortedMap<Integer,String> definitions = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                try {
+                    definitions.put(Integer.parseInt(key.substring(prefix.length())), properties.getProperty(key));
+                } catch(NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("Compression policy rule %s is not numbered",
+                                                                     key), e);
+                }
+            }
+        }
+        return compile(new ArrayList<>(definitions.values()));
+    }
+
+    /**
+     *  Compiles the rules given, in order of precedence.
+     *  @throws IllegalArgumentException if a rule is malformed
+     */
+    public static Zip4jCompressionPolicy compile(List<String> definitions) {
+        if (definitions.isEmpty()) {
+            return EMPTY;
+        }
+
+        final List<Rule> rules = new ArrayList<>(definitions.size());
+        for (String definition : definitions) {
+            rules.add(Rule.parse(definition));
+        }
+        return new Zip4jCompressionPolicy(List.copyOf(rules));
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     *  Applies the settings of the first rule matching the entry to its parameters.
+     *  @return true, if a rule matched
+     */
+    public boolean apply(ZipParameters parameters, String name, long size) {
+        if (rules.isEmpty()) {
+            return false;
+        }
+
+        final String extension = getExtension(name);
+        for (Rule rule : rules) {
+            if (rule.matches(name, extension, size)) {
+                rule.apply(parameters);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  @return the lower case extension of the final path component of the name, or an empty string if it has none
+     */
+    private static String getExtension(String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot < 0 || dot < name.lastIndexOf('/') ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private record Rule(long minSize, long maxSize, Set<String> extensions, Pattern glob, String globSuffix,
+                        CompressionMethod method, CompressionLevel level, EncryptionMethod encryption) {
+
+        private static Rule parse(String definition) {
+            long minSize = 0;
+            long maxSize = Long.MAX_VALUE;
+            Set<String> extensions = null;
+            Pattern glob = null;
+            String globSuffix = "";
+            CompressionMethod method = null;
+            CompressionLevel level = null;
+            EncryptionMethod encryption = null;
+
+            for (String attribute : definition.split(";")) {
+                if (attribute.isBlank()) {
+                    continue;
+                }
+                final int separator = attribute.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException(String.format("Compression policy attribute %s has no value",
+                                                                     attribute.trim()));
+                }
+                final String key = attribute.substring(0, separator).trim();
+                final String value = attribute.substring(separator + 1).trim();
+                try {
+                    switch (key) {
+                        case "glob" -> {
+                            glob = Zip4jUtil.toGlobPattern(value);
+                            globSuffix = value.substring(Math.max(value.lastIndexOf('*'), value.lastIndexOf('?')) + 1);
+                        }
+                        case "extension" -> {
+                            extensions = new HashSet<>();
+                            for (String extension : value.split(",")) {
+                                extensions.add(extension.trim().replaceFirst("^\\.", "").toLowerCase(Locale.ROOT));
+                            }
+                        }
+                        case "min-size" -> minSize = Long.parseLong(value);
+                        case "max-size" -> maxSize = Long.parseLong(value);
+                        case "method" -> {
+                            method = CompressionMethod.valueOf(value.toUpperCase(Locale.ROOT));
+                            if (method == CompressionMethod.AES_INTERNAL_ONLY) {
+                                throw new IllegalArgumentException(value);
+                            }
+                        }
+                        case "level" -> {
+                            final int code = Integer.parseInt(value);
+                            level = Arrays.stream(CompressionLevel.values())
+                                          .filter(l -> l.getLevel() == code)
+                                          .findFirst()
+                                          .orElseThrow(() -> new IllegalArgumentException(value));
+                        }
+                        case "encryption" -> {
+                            encryption = EncryptionMethod.valueOf(value.toUpperCase(Locale.ROOT));
+                            if (encryption == EncryptionMethod.ZIP_STANDARD_VARIANT_STRONG) {
+                                throw new IllegalArgumentException(value);
+                            }
+                        }
+                        default -> throw new IllegalArgumentException(String.format(
+                                "Compression policy attribute %s is not recognised", key));
+                    }
+                } catch(IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("Compression policy rule %s is malformed: %s",
+                                                                     definition, e.getMessage()), e);
+                }
+            }
+
+            return new Rule(minSize, maxSize, Objects.isNull(extensions) ? null : Set.copyOf(extensions), glob,
+                            globSuffix, method, level, encryption);
+        }
+
+        private boolean matches(String name, String extension, long size) {
+            return size >= minSize && size < maxSize
+                    && (Objects.isNull(extensions) || extensions.contains(extension))
+                    && (Objects.isNull(glob) || name.endsWith(globSuffix) && glob.matcher(name).matches());
+        }
+
+        private void apply(ZipParameters parameters) {
+            if (Objects.nonNull(method)) {
+                parameters.setCompressionMethod(method);
+            }
+            if (Objects.nonNull(level)) {
+                parameters.setCompressionLevel(level);
+            }
+            if (Objects.nonNull(encryption)) {
+                parameters.setEncryptFiles(encryption != EncryptionMethod.NONE);
+                parameters.setEncryptionMethod(encryption);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ *  Cryptographic primitives of the WinZip AES and traditional PKWARE (ZipCrypto) encryption schemes, as applied by
+ *  Zip4j. Passwords are encoded as UTF-8 for both schemes, consistent with Zip4j.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jCryptoUtil {
+
+    public static final int AES_PBKDF2_ITERATIONS = 1000;
+    public static final int AES_PASSWORD_VERIFIER_LENGTH = 2;
+    public static final int AES_AUTHENTICATION_CODE_LENGTH = 10;
+    public static final int ZIP_CRYPTO_HEADER_LENGTH = 12;
+
+    private static final int[] CRC_TABLE = new int[256];
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static {
+        for (int i = 0; i < CRC_TABLE.length; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xEDB88320 : crc >>> 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     *  Derives the AES key material for the given password and salt using PBKDF2-HMAC-SHA1. The result holds the
+     *  encryption key, followed by the HMAC key and finally the 2-byte password verifier.
+     */
+    public static byte[] deriveAesKeyMaterial(char[] password, byte[] salt, AesKeyStrength strength) throws GeneralSecurityException {
+        final int length = strength.getKeyLength() + strength.getMacLength() + AES_PASSWORD_VERIFIER_LENGTH;
+        PBEKeySpec keySpec = new PBEKeySpec(password, salt, AES_PBKDF2_ITERATIONS, length * 8);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1")
+                                   .generateSecret(keySpec)
+                                   .getEncoded();
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+
+    /**
+     *  Checks a password against the salt and password verifier stored at the start of the data of an AES encrypted
+     *  entry. A match is a strong indication that the password is correct, with a 1 in 65536 chance of a false
+     *  positive.
+     */
+    public static boolean isAesPasswordValid(char[] password, byte[] salt, byte[] verifier, AesKeyStrength strength) throws GeneralSecurityException {
+        byte[] keyMaterial = deriveAesKeyMaterial(password, salt, strength);
+        try {
+            final int offset = strength.getKeyLength() + strength.getMacLength();
+            return MessageDigest.isEqual(Arrays.copyOfRange(keyMaterial, offset,
+                                                            offset + AES_PASSWORD_VERIFIER_LENGTH),
+                                         verifier);
+        } finally {
+            Arrays.fill(keyMaterial, (byte)0);
+        }
+    }
+
+    /**
+     *  Checks a password against the 12-byte encryption header of a ZipCrypto entry. The last byte of the decrypted
+     *  header must match either the high order byte of the CRC or, for entries written with a data descriptor, the
+     *  high order byte of the DOS time. A match carries a 1 in 256 chance of a false positive.
+     */
+    public static boolean isZipCryptoPasswordValid(char[] password, byte[] header, long crc, long dosTime) {
+        ZipCryptoKeys keys = new ZipCryptoKeys(password);
+        byte check = 0;
+        for (byte b : header) {
+            check = keys.decrypt(b);
+        }
+        return check == (byte)(crc >>> 24) || check == (byte)(dosTime >>> 8);
+    }
+
+    /**
+     *  Generates the encrypted 12-byte header of a ZipCrypto entry, the last byte of which is the given check byte
+     *  (the high order byte of the CRC, or of the DOS time for entries written with a data descriptor).
+     */
+    public static byte[] createZipCryptoHeader(ZipCryptoKeys keys, byte check) {
+        byte[] header = new byte[ZIP_CRYPTO_HEADER_LENGTH];
+        RANDOM.nextBytes(header);
+        header[ZIP_CRYPTO_HEADER_LENGTH - 1] = check;
+        for (int i = 0; i < header.length; i++) {
+            header[i] = keys.encrypt(header[i]);
+        }
+        return header;
+    }
+
+    static int updateCrc(int crc, byte b) {
+        return (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xFF];
+    }
+
+    /**
+     *  Key state of the traditional PKWARE stream cipher.
+     */
+    public static class ZipCryptoKeys {
+        private int key0 = 0x12345678;
+        private int key1 = 0x23456789;
+        private int key2 = 0x34567890;
+
+        public ZipCryptoKeys(char[] password) {
+            ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+            while (encoded.hasRemaining()) {
+                update(encoded.get());
+            }
+            if (encoded.hasArray()) {
+                Arrays.fill(encoded.array(), (byte)0);
+            }
+        }
+
+        public byte decrypt(byte cipherText) {
+            byte plainText = (byte)(cipherText ^ keyStream());
+            update(plainText);
+            return plainText;
+        }
+
+        public byte encrypt(byte plainText) {
+            byte cipherText = (byte)(plainText ^ keyStream());
+            update(plainText);
+            return cipherText;
+        }
+
+        private int keyStream() {
+            final int temp = key2 | 2;
+            return ((temp * (temp ^ 1)) >>> 8) & 0xFF;
+        }
+
+        private void update(byte b) {
+            key0 = updateCrc(key0, b);
+            key1 = (key1 + (key0 & 0xFF)) * 134775813 + 1;
+            key2 = updateCrc(key2, (byte)(key1 >>> 24));
+        }
+    }
+
+    /**
+     *  AES in counter mode (little-endian counter starting at 1) with HMAC-SHA1 over the cipher text, as applied by
+     *  the WinZip AES scheme.
+     */
+    private abstract static class AesCipher {
+        private final Cipher cipher;
+        private final Mac mac;
+        private final byte[] passwordVerifier;
+        private final byte[] counter = new byte[16];
+        private final byte[] keyStream = new byte[16];
+        private int keyStreamPosition = keyStream.length;
+
+        /**
+         *  @param keyMaterial the derived key material, which is cleared once the keys have been initialised
+         */
+        private AesCipher(byte[] keyMaterial, AesKeyStrength strength) throws GeneralSecurityException {
+            try {
+                cipher = Cipher.getInstance("AES/ECB/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyMaterial, 0, strength.getKeyLength(), "AES"));
+                mac = Mac.getInstance("HmacSHA1");
+                mac.init(new SecretKeySpec(keyMaterial, strength.getKeyLength(), strength.getMacLength(), "HmacSHA1"));
+
+                final int verifierOffset = strength.getKeyLength() + strength.getMacLength();
+                passwordVerifier = Arrays.copyOfRange(keyMaterial, verifierOffset,
+                                                      verifierOffset + AES_PASSWORD_VERIFIER_LENGTH);
+            } finally {
+                Arrays.fill(keyMaterial, (byte)0);
+            }
+        }
+
+        byte[] getPasswordVerifier() {
+            return passwordVerifier;
+        }
+
+        void applyKeyStream(byte[] data, int offset, int length) throws GeneralSecurityException {
+            for (int i = offset; i < offset + length; i++) {
+                if (keyStreamPosition == keyStream.length) {
+                    for (int j = 0; j < counter.length; j++) {
+                        if (++counter[j] != 0) {
+                            break;
+                        }
+                    }
+                    cipher.update(counter, 0, counter.length, keyStream, 0);
+                    keyStreamPosition = 0;
+                }
+                data[i] ^= keyStream[keyStreamPosition++];
+            }
+        }
+
+        void authenticate(byte[] cipherText, int offset, int length) {
+            mac.update(cipherText, offset, length);
+        }
+
+        byte[] computeAuthenticationCode() {
+            return Arrays.copyOf(mac.doFinal(), AES_AUTHENTICATION_CODE_LENGTH);
+        }
+    }
+
+    /**
+     *  Encrypts entry data with the WinZip AES scheme. The salt and password verifier preceding the data are
+     *  generated on construction and the authentication code following it is available once all data is encrypted.
+     */
+    public static class AesEncrypter extends AesCipher {
+        private final byte[] header;
+
+        public AesEncrypter(char[] password, AesKeyStrength strength) throws GeneralSecurityException {
+            this(password, generateSalt(strength), strength);
+        }
+
+        private AesEncrypter(char[] password, byte[] salt, AesKeyStrength strength) throws GeneralSecurityException {
+            super(deriveAesKeyMaterial(password, salt, strength), strength);
+            header = Arrays.copyOf(salt, salt.length + AES_PASSWORD_VERIFIER_LENGTH);
+            System.arraycopy(getPasswordVerifier(), 0, header, salt.length, AES_PASSWORD_VERIFIER_LENGTH);
+        }
+
+        private static byte[] generateSalt(AesKeyStrength strength) {
+            byte[] salt = new byte[strength.getSaltLength()];
+            RANDOM.nextBytes(salt);
+            return salt;
+        }
+
+        /**
+         *  @return the salt followed by the password verifier
+         */
+        public byte[] getHeader() {
+            return header.clone();
+        }
+
+        /**
+         *  Encrypts the given data in place.
+         */
+        public void encrypt(byte[] data, int offset, int length) throws GeneralSecurityException {
+            applyKeyStream(data, offset, length);
+            authenticate(data, offset, length);
+        }
+
+        public byte[] getAuthenticationCode() {
+            return computeAuthenticationCode();
+        }
+    }
+
+    /**
+     *  Decrypts entry data of the WinZip AES scheme, given the salt preceding the data. The password verifier and
+     *  the authentication code following the data should be checked against those expected of the password.
+     */
+    public static class AesDecrypter extends AesCipher {
+
+        public AesDecrypter(char[] password, byte[] salt, AesKeyStrength strength) throws GeneralSecurityException {
+            super(deriveAesKeyMaterial(password, salt, strength), strength);
+        }
+
+        public boolean isPasswordValid(byte[] verifier) {
+            return MessageDigest.isEqual(getPasswordVerifier(), verifier);
+        }
+
+        /**
+         *  Decrypts the given data in place.
+         */
+        public void decrypt(byte[] data, int offset, int length) throws GeneralSecurityException {
+            authenticate(data, offset, length);
+            applyKeyStream(data, offset, length);
+        }
+
+        /**
+         *  @return true, if the authentication code matches the data decrypted, which must be complete
+         */
+        public boolean isAuthenticationCodeValid(byte[] authenticationCode) {
+            return MessageDigest.isEqual(computeAuthenticationCode(), authenticationCode);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jInflateIndex.Checkpoint;
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+/**
+ *  Read-only, seekable view over the contents of a single archive entry. How a position is reached depends on how
+ *  the entry is held:
+ *  <ul>
+ *      <li>Stored entries are read directly from the archive, through positional reads.</li>
+ *      <li>Deflated entries are inflated from the nearest checkpoint of their inflate index preceding the position,
+ *      or from the current position where nearer. Checkpoints are added to the index as the entry is inflated.</li>
+ *      <li>Otherwise (e.g. encrypted entries), the entry is read through a stream, which is reopened to seek
+ *      backwards.</li>
+ *  </ul>
+ *  The CRC-32 of stored and deflated entries is not verified, since their contents are rarely read in full.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jEntryChannel implements SeekableByteChannel {
+
+    private final EntrySource source;
+    private final long size;
+    private long position;
+    private boolean isOpen = true;
+
+    private Zip4jEntryChannel(EntrySource source, long size) {
+        this.source = source;
+        this.size = size;
+    }
+
+    /**
+     *  View over a stored entry, whose data starts at the given offset. The lease is released along with the view.
+     */
+    public static Zip4jEntryChannel ofStored(Zip4jChannelPool.Lease lease, long dataOffset, long size) {
+        return new Zip4jEntryChannel(new StoredSource(lease, dataOffset), size);
+    }
+
+    /**
+     *  View over a deflated entry, whose data starts at the given offset. The lease is released along with the view.
+     */
+    public static Zip4jEntryChannel ofDeflated(Zip4jChannelPool.Lease lease, long dataOffset, long compressedSize,
+            long size, Zip4jInflateIndex index) {
+        return new Zip4jEntryChannel(new DeflatedSource(lease, dataOffset, compressedSize, index), size);
+    }
+
+    /**
+     *  View over an entry read through streams of its contents, each opened from the start of the entry.
+     */
+    public static Zip4jEntryChannel ofStream(StreamOpener opener, long size) {
+        return new Zip4jEntryChannel(new StreamSource(opener), size);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        final int length = (int)Math.min(dst.remaining(), size - position);
+        final ByteBuffer target = dst.slice(dst.position(), length);
+        source.read(position, target);
+        if (target.position() == 0) {
+            throw new ZipException(String.format("Entry data ends at %d, before its size of %d", position, size));
+        }
+        dst.position(dst.position() + target.position());
+        position += target.position();
+        return target.position();
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException(String.format("Negative position: %d", newPosition));
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isOpen) {
+            isOpen = false;
+            source.close();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @FunctionalInterface
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     *  Contents of an entry, read from a position within it.
+     */
+    private interface EntrySource {
+        /**
+         *  Reads at least one byte into the buffer, unless the contents end before the position.
+         */
+        void read(long position, ByteBuffer dst) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private record StoredSource(Zip4jChannelPool.Lease lease, long dataOffset) implements EntrySource {
+        @Override
+        public void read(long position, ByteBuffer dst) throws IOException {
+            lease.channel().read(dst, dataOffset + position);
+        }
+
+        @Override
+        public void close() {
+            lease.close();
+        }
+    }
+
+    private static class DeflatedSource implements EntrySource {
+        private final Zip4jChannelPool.Lease lease;
+        private final FileChannel channel;
+        private final long dataOffset;
+        private final long compressedSize;
+        private final Zip4jInflateIndex index;
+        private final byte[] buffer = new byte[Zip4jInflater.WINDOW_SIZE];
+        private Zip4jInflater inflater;
+
+        private DeflatedSource(Zip4jChannelPool.Lease lease, long dataOffset, long compressedSize,
+                Zip4jInflateIndex index) {
+            this.lease = lease;
+            this.channel = lease.channel();
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.index = index;
+        }
+
+        @Override
+        public void read(long position, ByteBuffer dst) throws IOException {
+            final Checkpoint checkpoint = index.getCheckpoint(position);
+            if (Objects.isNull(inflater) || position < inflater.getOutputPosition()
+                    || Objects.nonNull(checkpoint) && checkpoint.outputOffset() > inflater.getOutputPosition()) {
+                inflater = Objects.isNull(checkpoint) ?
+                        new Zip4jInflater(channel, dataOffset, compressedSize, index) :
+                        Zip4jInflater.resume(channel, dataOffset, compressedSize, index, checkpoint);
+            }
+
+            while (inflater.getOutputPosition() < position) {
+                final int skipped = (int)Math.min(buffer.length, position - inflater.getOutputPosition());
+                if (inflater.read(buffer, 0, skipped) < 0) {
+                    return;
+                }
+            }
+
+            final int read;
+            if (dst.hasArray()) {
+                read = inflater.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (read > 0) {
+                    dst.position(dst.position() + read);
+                }
+            } else {
+                read = inflater.read(buffer, 0, Math.min(buffer.length, dst.remaining()));
+                if (read > 0) {
+                    dst.put(buffer, 0, read);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            lease.close();
+        }
+    }
+
+    private static class StreamSource implements EntrySource {
+        private final StreamOpener opener;
+        private final byte[] buffer = new byte[Zip4jInflater.WINDOW_SIZE];
+        private InputStream stream;
+        private long streamPosition;
+
+        private StreamSource(StreamOpener opener) {
+            this.opener = opener;
+        }
+
+        @Override
+        public void read(long position, ByteBuffer dst) throws IOException {
+            if (Objects.isNull(stream) || position < streamPosition) {
+                close();
+                stream = opener.open();
+                streamPosition = 0;
+            }
+
+            while (streamPosition < position) {
+                final int skipped = stream.read(buffer, 0, (int)Math.min(buffer.length, position - streamPosition));
+                if (skipped < 0) {
+                    return;
+                }
+                streamPosition += skipped;
+            }
+
+            final int read = stream.read(buffer, 0, Math.min(buffer.length, dst.remaining()));
+            if (read > 0) {
+                dst.put(buffer, 0, read);
+                streamPosition += read;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (Objects.nonNull(stream)) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.CNS_HEADER_CACHE_CAPACITY;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.DEFAULT_HEADER_CACHE_CAPACITY;
+
+/**
+ *  Process-wide cache of the parsed central directory of zip archives. Entries are keyed by the canonical path of the
+ *  archive and are validated against its size, last modified time and file key (inode) on every lookup, so a changed
+ *  archive is transparently re-read. Eviction is least recently used, bounded by the total number of headers held.
+ *  The most recently loaded archive is always retained, even if it alone exceeds the capacity.
+ *  <br/><br/>
+ *  Cached {@link FileHeader} instances are shared between callers and must be treated as read-only.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jHeaderCache {
+    private final LinkedHashMap<String,CachedArchive> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private long cachedHeaderCount;
+
+    public List<FileHeader> getFileHeaders(String archivePath) throws IOException {
+        return getArchive(archivePath).headers();
+    }
+
+    public CachedArchive getArchive(String archivePath) throws IOException {
+        final Path path = Paths.get(archivePath);
+
+        // Non-existent archives are handled as empty by Zip4j and are not worth caching
+        if (!Files.exists(path)) {
+            return new CachedArchive(null, Collections.emptyList(), false);
+        }
+
+        final ArchiveKey key = ArchiveKey.of(path);
+        synchronized(this) {
+            CachedArchive cachedArchive = cache.get(key.canonicalPath());
+            if (Objects.nonNull(cachedArchive) && cachedArchive.key().equals(key)) {
+                hitCount.incrementAndGet();
+                return cachedArchive;
+            }
+        }
+
+        // Parse outside the lock so that slow archives do not block lookups of other archives
+        missCount.incrementAndGet();
+        CachedArchive loadedArchive = load(path, key);
+        synchronized(this) {
+            CachedArchive previous = cache.put(key.canonicalPath(), loadedArchive);
+            if (Objects.nonNull(previous)) {
+                cachedHeaderCount -= previous.headers().size();
+            }
+            cachedHeaderCount += loadedArchive.headers().size();
+            evictToCapacity();
+        }
+
+        return loadedArchive;
+    }
+
+    public void invalidate(String archivePath) {
+        final String canonicalPath = ArchiveKey.canonicalPath(Paths.get(archivePath));
+        synchronized(this) {
+            CachedArchive previous = cache.remove(canonicalPath);
+            if (Objects.nonNull(previous)) {
+                cachedHeaderCount -= previous.headers().size();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        cachedHeaderCount = 0;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public synchronized int getCachedArchiveCount() {
+        return cache.size();
+    }
+
+    public synchronized long getCachedHeaderCount() {
+        return cachedHeaderCount;
+    }
+
+    private void evictToCapacity() {
+        final long capacity = getCapacity();
+        Iterator<Map.Entry<String,CachedArchive>> iterator = cache.entrySet().iterator();
+        while (cachedHeaderCount > capacity && cache.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String,CachedArchive> eldest = iterator.next();
+            iterator.remove();
+            cachedHeaderCount -= eldest.getValue().headers().size();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private static long getCapacity() {
+        try {
+            return Long.parseLong(CURRENT_SETTINGS.getProperty(CNS_HEADER_CACHE_CAPACITY,
+                                                               String.valueOf(DEFAULT_HEADER_CACHE_CAPACITY)));
+        } catch(NumberFormatException e) {
+            return DEFAULT_HEADER_CACHE_CAPACITY;
+        }
+    }
+
+    private static CachedArchive load(Path path, ArchiveKey key) throws IOException {
+        try (ZipFile archive = new ZipFile(path.toFile())) {
+            List<FileHeader> headers = new ArrayList<>(archive.getFileHeaders());
+            decodeLegacyNames(path, headers);
+            return new CachedArchive(key, Collections.unmodifiableList(headers), archive.isSplitArchive());
+        }
+    }
+
+    /**
+     *  Zip4j decodes the names and comments of all entries as UTF-8, regardless of the language encoding flag. The
+     *  headers of entries without the flag are read again with Cp437 (see {@link Zip4jUtil#getEntryCharset(int)}),
+     *  where any of them is not plain ASCII, so that names agree with those read from the central directory directly.
+     */
+    private static void decodeLegacyNames(Path path, List<FileHeader> headers) throws IOException {
+        final boolean isLegacy = headers.stream()
+                                        .anyMatch(h -> !h.isFileNameUTF8Encoded()
+                                                && (!isAscii(h.getFileName()) || !isAscii(h.getFileComment())));
+        if (!isLegacy) {
+            return;
+        }
+
+        try (ZipFile archive = new ZipFile(path.toFile())) {
+            archive.setCharset(Zip4jUtil.getEntryCharset(0));
+            final List<FileHeader> legacyHeaders = archive.getFileHeaders();
+            for (int i = 0; i < headers.size(); i++) {
+                if (!headers.get(i).isFileNameUTF8Encoded()) {
+                    headers.set(i, legacyHeaders.get(i));
+                }
+            }
+        }
+    }
+
+    private static boolean isAscii(String text) {
+        return Objects.isNull(text) || text.chars().allMatch(c -> c < 0x80);
+    }
+
+    /**
+     *  Identity of an archive on disk at a given point in time.
+     */
+    public record ArchiveKey(String canonicalPath, long size, long lastModified, Object fileKey) {
+        static ArchiveKey of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new ArchiveKey(canonicalPath(path), attributes.size(),
+                                  attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.fileKey());
+        }
+
+        static String canonicalPath(Path path) {
+            try {
+                return path.toRealPath().toString();
+            } catch(IOException e) {
+                return path.toAbsolutePath().normalize().toString();
+            }
+        }
+    }
+
+    /**
+     *  Parsed central directory of an archive, along with the sorted index of its entry names.
+     */
+    public record CachedArchive(ArchiveKey key, List<FileHeader> headers, boolean splitArchive,
+            Zip4jNameIndex nameIndex) {
+        public CachedArchive(ArchiveKey key, List<FileHeader> headers, boolean splitArchive) {
+            this(key, headers, splitArchive, new Zip4jNameIndex(headers));
+        }
+
+        /**
+         *  Looks up a header by name, mirroring the separator leniency of Zip4j's own header lookup.
+         */
+        public FileHeader getFileHeader(String fileName) {
+            FileHeader header = getFileHeaderWithExactMatch(fileName);
+            if (Objects.isNull(header)) {
+                header = getFileHeaderWithExactMatch(fileName.replace('\\', '/'));
+            }
+            if (Objects.isNull(header)) {
+                header = getFileHeaderWithExactMatch(fileName.replace('/', '\\'));
+            }
+            return header;
+        }
+
+        private FileHeader getFileHeaderWithExactMatch(String fileName) {
+            final int ordinal = nameIndex.find(fileName);
+            return ordinal < 0 ? null : headers.get(ordinal);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *  Sparse index of the checkpoints at which the inflation of a deflated entry may resume, so that reading from an
+ *  arbitrary position inflates at most the interval between checkpoints. The index is filled in as the entry is
+ *  inflated, a checkpoint being taken at the first block boundary at least one interval beyond the last, and may be
+ *  shared by concurrent readers of the entry.
+ *  <br/><br/>
+ *  The 32 KB history held by each checkpoint is kept deflated, which for most entries reduces it several-fold.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jInflateIndex {
+
+    private final long interval;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     *  @param interval the minimum number of inflated bytes between checkpoints
+     */
+    public Zip4jInflateIndex(long interval) {
+        this.interval = Math.max(Zip4jInflater.WINDOW_SIZE, interval);
+    }
+
+    /**
+     *  @return the checkpoint nearest to, but not beyond, the position, or null if there is none
+     */
+    public synchronized Checkpoint getCheckpoint(long position) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint floor = null;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final Checkpoint checkpoint = checkpoints.get(middle);
+            if (checkpoint.outputOffset() <= position) {
+                floor = checkpoint;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return floor;
+    }
+
+    public synchronized int size() {
+        return checkpoints.size();
+    }
+
+    synchronized boolean isCheckpointDue(long position) {
+        final long last = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).outputOffset();
+        return position >= last + interval;
+    }
+
+    synchronized void addCheckpoint(Checkpoint checkpoint) {
+        // Readers resuming from earlier checkpoints offer only those beyond the last once due
+        if (isCheckpointDue(checkpoint.outputOffset())) {
+            checkpoints.add(checkpoint);
+        }
+    }
+
+    /**
+     *  State of the inflation at the start of a block.
+     *  @param bitOffset the offset of the block within the deflated data, in bits
+     *  @param outputOffset the number of bytes inflated before the block
+     *  @param window the deflated history preceding the block
+     *  @param windowLength the length of the history
+     */
+    public record Checkpoint(long bitOffset, long outputOffset, byte[] window, int windowLength) {
+
+        static Checkpoint of(long bitOffset, long outputOffset, byte[] history) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(history);
+                deflater.finish();
+                final ByteArrayOutputStream packed = new ByteArrayOutputStream(history.length / 2);
+                final byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    packed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return new Checkpoint(bitOffset, outputOffset, packed.toByteArray(), history.length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        byte[] getWindow() {
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(window);
+                final byte[] history = new byte[windowLength];
+                int inflated = 0;
+                while (inflated < windowLength) {
+                    final int count = inflater.inflate(history, inflated, windowLength - inflated);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Checkpoint history is truncated");
+                    }
+                    inflated += count;
+                }
+                return history;
+            } catch(DataFormatException e) {
+                throw new IllegalStateException("Checkpoint history is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
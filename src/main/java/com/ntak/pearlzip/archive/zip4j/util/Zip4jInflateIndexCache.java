@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jHeaderCache.ArchiveKey;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.CNS_INFLATE_INDEX_CACHE_CAPACITY;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.DEFAULT_INFLATE_INDEX_CACHE_CAPACITY;
+
+/**
+ *  Process-wide cache of the inflate indexes of deflated entries, so that the checkpoints found by one reader of an
+ *  entry serve later readers. Indexes are keyed by the identity of the archive, as held by the header cache, and the
+ *  offset of the local header of the entry, so those of a changed archive are never matched and age out. Eviction is
+ *  least recently used, bounded by the number of indexes held.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jInflateIndexCache {
+    private final LinkedHashMap<EntryKey,Zip4jInflateIndex> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public synchronized Zip4jInflateIndex getIndex(ArchiveKey archiveKey, long localHeaderOffset, long interval) {
+        final Zip4jInflateIndex index = cache.computeIfAbsent(new EntryKey(archiveKey, localHeaderOffset),
+                                                              k -> new Zip4jInflateIndex(interval));
+        evictToCapacity();
+        return index;
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int getCachedIndexCount() {
+        return cache.size();
+    }
+
+    private void evictToCapacity() {
+        final long capacity = getCapacity();
+        Iterator<Map.Entry<EntryKey,Zip4jInflateIndex>> iterator = cache.entrySet().iterator();
+        while (cache.size() > capacity && cache.size() > 1 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static long getCapacity() {
+        try {
+            return Long.parseLong(CURRENT_SETTINGS.getProperty(CNS_INFLATE_INDEX_CACHE_CAPACITY,
+                                                               String.valueOf(DEFAULT_INFLATE_INDEX_CACHE_CAPACITY)));
+        } catch(NumberFormatException e) {
+            return DEFAULT_INFLATE_INDEX_CACHE_CAPACITY;
+        }
+    }
+
+    private record EntryKey(ArchiveKey archiveKey, long localHeaderOffset) {}
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jInflateIndex.Checkpoint;
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ *  Inflates raw deflate data (RFC 1951) read from a file channel through positional reads. Unlike
+ *  {@link java.util.zip.Inflater}, its state at the start of each block (the bit offset within the compressed data,
+ *  the number of bytes output and the last 32 KB output) can be saved as a checkpoint, from which inflation may later
+ *  resume without inflating the data preceding it. Checkpoints are offered to an index as the data is inflated.
+ *  <br/><br/>
+ *  Huffman codes are decoded through a single lookup table indexed by the longest code of the block. The CRC-32 of
+ *  the output is not computed.
+ *  @author Aashutos Kakshepati
+ */
+class Zip4jInflater {
+
+    static final int WINDOW_SIZE = 32768;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int INPUT_BUFFER_SIZE = 65536;
+    private static final int MAX_BITS = 15;
+    private static final int MAX_CODE_LENGTH_BITS = 7; // Code length codes have lengths of 3 bits
+    private static final int MAX_PADDING = 8; // Bytes of look ahead past the end of the data tolerated
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+                                              67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+                                               5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+                                                513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385,
+                                                24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+                                                 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LENGTH_CODE;
+    private static final Huffman FIXED_DISTANCE_CODE;
+
+    static {
+        final int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        try {
+            FIXED_LENGTH_CODE = new Huffman(MAX_BITS).build(lengths, 0, lengths.length);
+            Arrays.fill(lengths, 0, 30, 5);
+            FIXED_DISTANCE_CODE = new Huffman(MAX_BITS).build(lengths, 0, 30);
+        } catch(ZipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private enum State { HEADER, STORED, HUFFMAN, DONE }
+
+    private final FileChannel channel;
+    private final long start;
+    private final long length;
+    private final Zip4jInflateIndex index;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private final Huffman dynamicLengthCode = new Huffman(MAX_BITS);
+    private final Huffman dynamicDistanceCode = new Huffman(MAX_BITS);
+    private final Huffman dynamicCodeLengthCode = new Huffman(MAX_CODE_LENGTH_BITS);
+
+    private long inputPosition;
+    private int padding;
+    private long bitBuffer;
+    private int bitCount;
+
+    private long output;
+    private State state = State.HEADER;
+    private boolean isFinalBlock;
+    private int storedRemaining;
+    private Huffman lengthCode;
+    private Huffman distanceCode;
+    private int copyLength;
+    private int copyDistance;
+
+    /**
+     *  @param start the offset of the deflated data within the channel
+     *  @param length the length of the deflated data
+     *  @param index the index offered checkpoints as the data is inflated, or null
+     */
+    Zip4jInflater(FileChannel channel, long start, long length, Zip4jInflateIndex index) {
+        this.channel = channel;
+        this.start = start;
+        this.length = length;
+        this.index = index;
+        input.limit(0);
+    }
+
+    /**
+     *  Resumes inflation from the start of the block at which the checkpoint was taken.
+     */
+    static Zip4jInflater resume(FileChannel channel, long start, long length, Zip4jInflateIndex index,
+            Checkpoint checkpoint) throws IOException {
+        final Zip4jInflater inflater = new Zip4jInflater(channel, start, length, index);
+        inflater.inputPosition = checkpoint.bitOffset() >>> 3;
+        inflater.output = checkpoint.outputOffset();
+        final byte[] history = checkpoint.getWindow();
+        for (int i = 0; i < history.length; i++) {
+            inflater.window[(int)((inflater.output - history.length + i) & WINDOW_MASK)] = history[i];
+        }
+        final int skipped = (int)(checkpoint.bitOffset() & 7);
+        if (skipped > 0) {
+            inflater.needBits(skipped);
+            inflater.dropBits(skipped);
+        }
+        return inflater;
+    }
+
+    /**
+     *  @return the number of bytes output, including those preceding the checkpoint resumed from
+     */
+    long getOutputPosition() {
+        return output;
+    }
+
+    /**
+     *  Inflates into the array until it is filled or the end of the data is reached.
+     *  @return the number of bytes inflated, or -1 if the end of the data had already been reached
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        int produced = 0;
+        while (produced < len) {
+            if (copyLength > 0) {
+                final int count = Math.min(copyLength, len - produced);
+                for (int i = 0; i < count; i++) {
+                    final byte value = window[(int)((output - copyDistance) & WINDOW_MASK)];
+                    window[(int)(output++ & WINDOW_MASK)] = value;
+                    b[off + produced++] = value;
+                }
+                copyLength -= count;
+                continue;
+            }
+
+            switch (state) {
+                case HEADER -> readBlockHeader();
+                case STORED -> {
+                    final int count = Math.min(storedRemaining, len - produced);
+                    readStored(b, off + produced, count);
+                    produced += count;
+                    storedRemaining -= count;
+                    if (storedRemaining == 0) {
+                        state = State.HEADER;
+                    }
+                }
+                case HUFFMAN -> {
+                    final int symbol = decode(lengthCode);
+                    if (symbol < 256) {
+                        window[(int)(output++ & WINDOW_MASK)] = (byte)symbol;
+                        b[off + produced++] = (byte)symbol;
+                    } else if (symbol == 256) {
+                        state = State.HEADER;
+                    } else {
+                        readMatch(symbol - 257);
+                    }
+                }
+                case DONE -> {
+                    return produced == 0 ? -1 : produced;
+                }
+            }
+        }
+        return produced;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if (isFinalBlock) {
+            if (getBitOffset() > length * 8) {
+                throw new ZipException("Deflated data ends unexpectedly");
+            }
+            state = State.DONE;
+            return;
+        }
+        if (Objects.nonNull(index) && index.isCheckpointDue(output)) {
+            index.addCheckpoint(Checkpoint.of(getBitOffset(), output, getHistory()));
+        }
+
+        isFinalBlock = getBits(1) == 1;
+        switch (getBits(2)) {
+            case 0 -> {
+                dropBits(bitCount & 7);
+                final int storedLength = getBits(16);
+                if ((~getBits(16) & 0xFFFF) != storedLength) {
+                    throw new ZipException("Stored block length does not match its complement");
+                }
+                storedRemaining = storedLength;
+                state = storedLength == 0 ? State.HEADER : State.STORED;
+            }
+            case 1 -> {
+                lengthCode = FIXED_LENGTH_CODE;
+                distanceCode = FIXED_DISTANCE_CODE;
+                state = State.HUFFMAN;
+            }
+            case 2 -> {
+                readDynamicCodes();
+                lengthCode = dynamicLengthCode;
+                distanceCode = dynamicDistanceCode;
+                state = State.HUFFMAN;
+            }
+            default -> throw new ZipException("Invalid deflate block type");
+        }
+    }
+
+    private void readDynamicCodes() throws IOException {
+        final int lengthCount = getBits(5) + 257;
+        final int distanceCount = getBits(5) + 1;
+        final int codeLengthCount = getBits(4) + 4;
+        if (lengthCount > 286 || distanceCount > 30) {
+            throw new ZipException("Invalid deflate code counts");
+        }
+
+        final int[] lengths = new int[lengthCount + distanceCount];
+        for (int i = 0; i < codeLengthCount; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = getBits(3);
+        }
+        final Huffman codeLengthCode = dynamicCodeLengthCode.build(lengths, 0, 19);
+        Arrays.fill(lengths, 0, 19, 0);
+
+        int i = 0;
+        while (i < lengths.length) {
+            final int symbol = decode(codeLengthCode);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int value = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Repeated code length has no predecessor");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + getBits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + getBits(3);
+            } else {
+                repeat = 11 + getBits(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw new ZipException("Repeated code lengths exceed the code counts");
+            }
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Deflate block has no end of block code");
+        }
+
+        dynamicLengthCode.build(lengths, 0, lengthCount);
+        dynamicDistanceCode.build(lengths, lengthCount, distanceCount);
+    }
+
+    private void readMatch(int lengthSymbol) throws IOException {
+        if (lengthSymbol >= LENGTH_BASE.length) {
+            throw new ZipException("Invalid deflate length code");
+        }
+        final int matchLength = LENGTH_BASE[lengthSymbol] + getBits(LENGTH_EXTRA[lengthSymbol]);
+        final int distanceSymbol = decode(distanceCode);
+        if (distanceSymbol >= DISTANCE_BASE.length) {
+            throw new ZipException("Invalid deflate distance code");
+        }
+        final int distance = DISTANCE_BASE[distanceSymbol] + getBits(DISTANCE_EXTRA[distanceSymbol]);
+        if (distance > output) {
+            throw new ZipException("Deflate distance refers to before the start of the data");
+        }
+        copyLength = matchLength;
+        copyDistance = distance;
+    }
+
+    private void readStored(byte[] b, int off, int len) throws IOException {
+        int copied = 0;
+        // Whole bytes may remain in the bit buffer following the block header
+        while (copied < len && bitCount >= 8) {
+            b[off + copied++] = (byte)bitBuffer;
+            dropBits(8);
+        }
+        while (copied < len) {
+            if (!input.hasRemaining() && !fill()) {
+                throw new ZipException("Deflated data ends within a stored block");
+            }
+            final int count = Math.min(len - copied, input.remaining());
+            input.get(b, off + copied, count);
+            copied += count;
+        }
+        for (int i = 0; i < len; i++) {
+            window[(int)(output++ & WINDOW_MASK)] = b[off + i];
+        }
+    }
+
+    private int decode(Huffman code) throws IOException {
+        if (code.maxLength == 0) {
+            throw new ZipException("Deflate code is empty");
+        }
+        needBits(code.maxLength);
+        final int entry = code.table[(int)(bitBuffer & ((1 << code.maxLength) - 1))];
+        final int codeLength = entry & 0xF;
+        if (codeLength == 0) {
+            throw new ZipException("Invalid deflate code");
+        }
+        dropBits(codeLength);
+        return entry >>> 4;
+    }
+
+    private int getBits(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        needBits(count);
+        final int bits = (int)(bitBuffer & ((1L << count) - 1));
+        dropBits(count);
+        return bits;
+    }
+
+    private void needBits(int count) throws IOException {
+        while (bitCount < count) {
+            int next;
+            if (input.hasRemaining() || fill()) {
+                next = input.get() & 0xFF;
+            } else if (padding++ < MAX_PADDING) {
+                // Codes near the end are looked up with more bits than they hold
+                next = 0;
+            } else {
+                throw new ZipException("Deflated data ends unexpectedly");
+            }
+            bitBuffer |= (long)next << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private void dropBits(int count) {
+        bitBuffer >>>= count;
+        bitCount -= count;
+    }
+
+    private boolean fill() throws IOException {
+        if (inputPosition >= length) {
+            return false;
+        }
+        input.clear();
+        input.limit((int)Math.min(input.capacity(), length - inputPosition));
+        while (input.hasRemaining()) {
+            if (channel.read(input, start + inputPosition + input.position()) < 0) {
+                throw new ZipException("Archive ends within deflated data");
+            }
+        }
+        input.flip();
+        inputPosition += input.limit();
+        return true;
+    }
+
+    private long getBitOffset() {
+        return (inputPosition - input.remaining() + padding) * 8 - bitCount;
+    }
+
+    /**
+     *  @return the last 32 KB output (or all output, if less), oldest first
+     */
+    private byte[] getHistory() {
+        final int historyLength = (int)Math.min(output, WINDOW_SIZE);
+        final byte[] history = new byte[historyLength];
+        for (int i = 0; i < historyLength; i++) {
+            history[i] = window[(int)((output - historyLength + i) & WINDOW_MASK)];
+        }
+        return history;
+    }
+
+    /**
+     *  Canonical Huffman code, decoded by a table of all bit sequences of the longest code length. Deflate packs
+     *  codes from the most significant bit, so each code is entered bit reversed along with every suffix.
+     */
+    private static class Huffman {
+        private final int[] table;
+        private int maxLength;
+
+        /**
+         *  @param maxBits the longest code length the code may hold
+         */
+        private Huffman(int maxBits) {
+            table = new int[1 << maxBits];
+        }
+
+        private Huffman build(int[] lengths, int offset, int count) throws ZipException {
+            final int[] lengthCounts = new int[MAX_BITS + 1];
+            for (int i = 0; i < count; i++) {
+                lengthCounts[lengths[offset + i]]++;
+            }
+            lengthCounts[0] = 0;
+
+            int left = 1;
+            maxLength = 0;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - lengthCounts[len];
+                if (left < 0) {
+                    throw new ZipException("Deflate code is over-subscribed");
+                }
+                if (lengthCounts[len] > 0) {
+                    maxLength = len;
+                }
+            }
+
+            final int[] nextCode = new int[MAX_BITS + 1];
+            int code = 0;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                code = (code + lengthCounts[len - 1]) << 1;
+                nextCode[len] = code;
+            }
+
+            // Incomplete codes leave entries unset, which are rejected on decoding
+            final int size = 1 << maxLength;
+            if (size > table.length) {
+                throw new ZipException("Deflate code is longer than supported");
+            }
+            Arrays.fill(table, 0, size, 0);
+            for (int symbol = 0; symbol < count; symbol++) {
+                final int len = lengths[offset + symbol];
+                if (len == 0) {
+                    continue;
+                }
+                final int reversed = Integer.reverse(nextCode[len]++) >>> (32 - len);
+                for (int i = reversed; i < size; i += 1 << len) {
+                    table[i] = symbol << 4 | len;
+                }
+            }
+            return this;
+        }
+    }
+}
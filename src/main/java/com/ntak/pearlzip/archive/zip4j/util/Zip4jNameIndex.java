@@ -0,0 +1,385 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import net.lingala.zip4j.model.FileHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+
+/**
+ *  Sorted index of the entry names of an archive, answering name, prefix, range and glob queries with the ordinals of
+ *  the matching headers (their positions in the central directory), so that only the entries of interest need be
+ *  transformed. Names are ordered by their UTF-8 encoding, compared as unsigned bytes, which places the contents of a
+ *  folder in a contiguous run.
+ *  <br/><br/>
+ *  Names are held front-coded: each is stored as the length of the prefix it shares with its predecessor followed by
+ *  the remaining bytes, in blocks whose first name is stored in full so that a block may be decoded independently.
+ *  Lookups binary search the first names of the blocks, then scan a single block. The index is built from the headers
+ *  on the first query and is safe for use by concurrent readers.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jNameIndex {
+
+    /**
+     *  Number of names per front-coded block.
+     */
+    static final int BLOCK_SIZE = 16;
+
+    private final List<FileHeader> headers;
+    private volatile Encoding encoding;
+
+    public Zip4jNameIndex(List<FileHeader> headers) {
+        this.headers = headers;
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    /**
+     *  @return the ordinal of the first header with the given name, or -1 if there is none
+     */
+    public int find(String fileName) {
+        final Encoding encoding = getEncoding();
+        final byte[] key = fileName.getBytes(StandardCharsets.UTF_8);
+        final int position = encoding.lowerBound(key);
+        if (position < encoding.size) {
+            final Cursor cursor = encoding.cursor(position);
+            if (Arrays.equals(cursor.name, 0, cursor.length, key, 0, key.length)) {
+                return encoding.ordinals[position];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *  @return the ordinals of the headers whose names start with the prefix, in name order
+     */
+    public int[] prefix(String prefix) {
+        final Encoding encoding = getEncoding();
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOfRange(encoding.ordinals, encoding.lowerBound(key), encoding.prefixEnd(key));
+    }
+
+    /**
+     *  @param from the least name included, or null for no lower bound
+     *  @param to the least name excluded, or null for no upper bound
+     *  @return the ordinals of the headers whose names fall within the range, in name order
+     */
+    public int[] range(String from, String to) {
+        final Encoding encoding = getEncoding();
+        final int start = Objects.isNull(from) ? 0 : encoding.lowerBound(from.getBytes(StandardCharsets.UTF_8));
+        final int end = Objects.isNull(to) ? encoding.size : encoding.lowerBound(to.getBytes(StandardCharsets.UTF_8));
+        return start < end ? Arrays.copyOfRange(encoding.ordinals, start, end) : new int[0];
+    }
+
+    /**
+     *  Matches names against a glob, as compiled by {@link Zip4jUtil#toGlobPattern(String)}. Only the names sharing
+     *  the literal prefix of the glob (the text preceding its first wildcard) are decoded and matched.
+     *  @return the ordinals of the headers whose names match the glob, in name order
+     */
+    public int[] glob(String glob) {
+        final Encoding encoding = getEncoding();
+        int wildcard = 0;
+        while (wildcard < glob.length() && glob.charAt(wildcard) != '*' && glob.charAt(wildcard) != '?') {
+            wildcard++;
+        }
+        final byte[] key = glob.substring(0, wildcard).getBytes(StandardCharsets.UTF_8);
+        final int start = encoding.lowerBound(key);
+        if (wildcard == glob.length()) {
+            // No wildcards, so the glob matches its literal only, which precedes the least name extending it
+            final int end = encoding.lowerBound(Arrays.copyOf(key, key.length + 1));
+            return Arrays.copyOfRange(encoding.ordinals, start, end);
+        }
+
+        final int end = encoding.prefixEnd(key);
+        final Matcher matcher = Zip4jUtil.toGlobPattern(glob).matcher("");
+        final int[] matches = new int[end - start];
+        int count = 0;
+        final Cursor cursor = encoding.cursor(start);
+        for (int position = start; position < end; position++, cursor.next()) {
+            if (matcher.reset(cursor.toString()).matches()) {
+                matches[count++] = encoding.ordinals[position];
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     *  Lists the direct contents of a folder (the root, if empty). Entries beneath a subfolder are skipped over by
+     *  seeking past the run of names sharing its path, so the cost is proportional to the number of children rather
+     *  than the size of the folder's subtree.
+     *  <br/><br/>
+     *  As for full listings, a subfolder with contents is yielded as an implicit folder (with no ordinal), whether or
+     *  not the archive holds an entry for it, unless an entry of the same name shadows it, whilst an empty subfolder
+     *  entry is yielded as read from the archive.
+     *  @return the children of the folder, in index order (a subfolder being placed by the names of its contents)
+     */
+    public List<Child> children(String folder) {
+        final Encoding encoding = getEncoding();
+        String folderName = folder;
+        while (folderName.endsWith("/")) {
+            folderName = folderName.substring(0, folderName.length() - 1);
+        }
+        final byte[] key = folderName.isEmpty() ? new byte[0] :
+                (folderName + "/").getBytes(StandardCharsets.UTF_8);
+
+        final List<Child> children = new ArrayList<>();
+        final int end = encoding.prefixEnd(key);
+        int position = encoding.lowerBound(key);
+        Cursor cursor = encoding.cursor(position);
+        while (position < end) {
+            // Skip the entry of the folder itself
+            if (cursor.length == key.length) {
+                position++;
+                cursor.next();
+                continue;
+            }
+
+            int separator = key.length;
+            while (separator < cursor.length && cursor.name[separator] != '/') {
+                separator++;
+            }
+            if (separator == cursor.length) {
+                children.add(new Child(cursor.toString(), encoding.ordinals[position]));
+                position++;
+                cursor.next();
+                continue;
+            }
+
+            final byte[] childKey = Arrays.copyOf(cursor.name, separator + 1);
+            final int childEnd = encoding.prefixEnd(childKey);
+            if (separator == cursor.length - 1 && childEnd == position + 1) {
+                children.add(new Child(cursor.toString(), encoding.ordinals[position]));
+            } else {
+                final String childName = new String(childKey, 0, separator, StandardCharsets.UTF_8);
+                if (find(childName) < 0) {
+                    children.add(new Child(childName, -1));
+                }
+            }
+            position = childEnd;
+            cursor = encoding.cursor(position);
+        }
+        return children;
+    }
+
+    private Encoding getEncoding() {
+        Encoding encoding = this.encoding;
+        if (Objects.isNull(encoding)) {
+            synchronized(this) {
+                encoding = this.encoding;
+                if (Objects.isNull(encoding)) {
+                    encoding = Encoding.of(headers);
+                    this.encoding = encoding;
+                }
+            }
+        }
+        return encoding;
+    }
+
+    /**
+     *  @return the least key greater than all keys prefixed by the given key, or null if there is none
+     */
+    private static byte[] successor(byte[] key) {
+        int i = key.length - 1;
+        while (i >= 0 && key[i] == (byte)0xFF) {
+            i--;
+        }
+        if (i < 0) {
+            return null;
+        }
+        final byte[] successor = Arrays.copyOf(key, i + 1);
+        successor[i]++;
+        return successor;
+    }
+
+    /**
+     *  Direct child of a folder.
+     *  @param name the name of the child, as held by its entry
+     *  @param ordinal the ordinal of the header of the child, or -1 for an implicit folder
+     */
+    public record Child(String name, int ordinal) {
+        public boolean isImplicitFolder() {
+            return ordinal < 0;
+        }
+    }
+
+    private static class Encoding {
+        private final int size;
+        private final byte[] data;
+        private final int[] blockOffsets;
+        private final int[] ordinals;
+
+        private Encoding(int size, byte[] data, int[] blockOffsets, int[] ordinals) {
+            this.size = size;
+            this.data = data;
+            this.blockOffsets = blockOffsets;
+            this.ordinals = ordinals;
+        }
+
+        static Encoding of(List<FileHeader> headers) {
+            final int size = headers.size();
+            final byte[][] names = new byte[size][];
+            final Integer[] sorted = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = headers.get(i).getFileName().getBytes(StandardCharsets.UTF_8);
+                sorted[i] = i;
+            }
+            // The sort is stable, so duplicate names are ordered as in the central directory
+            Arrays.sort(sorted, (a, b) -> Arrays.compareUnsigned(names[a], names[b]));
+
+            final ByteArrayOutputStream data = new ByteArrayOutputStream(size * 16);
+            final int[] blockOffsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            final int[] ordinals = new int[size];
+            byte[] previous = new byte[0];
+            for (int position = 0; position < size; position++) {
+                final byte[] name = names[sorted[position]];
+                int shared = 0;
+                if (position % BLOCK_SIZE == 0) {
+                    blockOffsets[position / BLOCK_SIZE] = data.size();
+                } else {
+                    final int limit = Math.min(previous.length, name.length);
+                    while (shared < limit && previous[shared] == name[shared]) {
+                        shared++;
+                    }
+                }
+                writeVarInt(data, shared);
+                writeVarInt(data, name.length - shared);
+                data.write(name, shared, name.length - shared);
+                ordinals[position] = sorted[position];
+                previous = name;
+            }
+            return new Encoding(size, data.toByteArray(), blockOffsets, ordinals);
+        }
+
+        /**
+         *  @return the position of the first name not less than the key
+         */
+        int lowerBound(byte[] key) {
+            // Find the last block whose first name is less than the key
+            int low = 0;
+            int high = blockOffsets.length - 1;
+            int block = 0;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                int offset = blockOffsets[middle];
+                offset = skipVarInt(offset);
+                final int length = readVarInt(offset);
+                offset = skipVarInt(offset);
+                if (Arrays.compareUnsigned(data, offset, offset + length, key, 0, key.length) < 0) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            final int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+            int position = block * BLOCK_SIZE;
+            final Cursor cursor = cursor(position);
+            while (position < end && Arrays.compareUnsigned(cursor.name, 0, cursor.length, key, 0, key.length) < 0) {
+                position++;
+                cursor.next();
+            }
+            return position;
+        }
+
+        /**
+         *  @return the position of the first name not prefixed by the key, beyond those that are
+         */
+        int prefixEnd(byte[] key) {
+            final byte[] successor = successor(key);
+            return Objects.isNull(successor) ? size : lowerBound(successor);
+        }
+
+        /**
+         *  @return a cursor over the names from the position onwards
+         */
+        Cursor cursor(int position) {
+            final Cursor cursor = new Cursor(this, position / BLOCK_SIZE * BLOCK_SIZE);
+            while (cursor.position < position) {
+                cursor.next();
+            }
+            return cursor;
+        }
+
+        private int readVarInt(int offset) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private int skipVarInt(int offset) {
+            while ((data[offset++] & 0x80) != 0) {
+                // Continuation byte
+            }
+            return offset;
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    /**
+     *  Sequential decoder of the names from a position, reusing a single buffer for the current name.
+     */
+    private static class Cursor {
+        private final Encoding encoding;
+        private byte[] name = new byte[64];
+        private int length;
+        private int position;
+        private int offset;
+
+        private Cursor(Encoding encoding, int position) {
+            this.encoding = encoding;
+            this.position = position;
+            if (position < encoding.size) {
+                this.offset = encoding.blockOffsets[position / BLOCK_SIZE];
+                decode();
+            }
+        }
+
+        /**
+         *  Advances to the next name, if any.
+         */
+        void next() {
+            if (++position < encoding.size) {
+                decode();
+            }
+        }
+
+        private void decode() {
+            final int shared = encoding.readVarInt(offset);
+            offset = encoding.skipVarInt(offset);
+            final int suffix = encoding.readVarInt(offset);
+            offset = encoding.skipVarInt(offset);
+            if (shared + suffix > name.length) {
+                name = Arrays.copyOf(name, Math.max(shared + suffix, name.length * 2));
+            }
+            System.arraycopy(encoding.data, offset, name, shared, suffix);
+            offset += suffix;
+            length = shared + suffix;
+        }
+
+        @Override
+        public String toString() {
+            return new String(name, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ *  Output buffer for the prepared data of an entry, held on the heap up to a threshold and spilled to a temporary
+ *  file beyond it, so that entries of any size may be prepared ahead of being written to the archive. Closing the
+ *  buffer releases the temporary file.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jSpillBuffer extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final int threshold;
+    private byte[] memory;
+    private int count;
+    private Path spillFile;
+    private OutputStream spillStream;
+    private long size;
+
+    public Zip4jSpillBuffer(int threshold) {
+        this.threshold = threshold;
+        this.memory = new byte[Math.min(INITIAL_CAPACITY, threshold)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (Objects.isNull(spillStream) && count + len > threshold) {
+            spillFile = Files.createTempFile("pz-spill", ".tmp");
+            spillStream = new BufferedOutputStream(Files.newOutputStream(spillFile), INITIAL_CAPACITY * 8);
+            spillStream.write(memory, 0, count);
+            memory = null;
+        }
+
+        if (Objects.nonNull(spillStream)) {
+            spillStream.write(b, off, len);
+        } else {
+            if (count + len > memory.length) {
+                memory = Arrays.copyOf(memory, Math.min(threshold, Math.max(count + len, memory.length * 2)));
+            }
+            System.arraycopy(b, off, memory, count, len);
+            count += len;
+        }
+        size += len;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isSpilled() {
+        return Objects.nonNull(spillFile);
+    }
+
+    /**
+     *  Writes the contents of the buffer to the target channel at the given position.
+     *  @return the number of bytes written
+     */
+    public long transferTo(FileChannel target, long position) throws IOException {
+        if (Objects.isNull(spillStream)) {
+            ByteBuffer buffer = ByteBuffer.wrap(memory, 0, count);
+            while (buffer.hasRemaining()) {
+                target.write(buffer, position + buffer.position());
+            }
+            return count;
+        }
+
+        spillStream.flush();
+        try (FileChannel source = FileChannel.open(spillFile, StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < size) {
+                transferred += target.transferFrom(source.position(transferred), position + transferred,
+                                                   size - transferred);
+            }
+            return transferred;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        memory = null;
+        if (Objects.nonNull(spillStream)) {
+            try {
+                spillStream.close();
+            } finally {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+}
@@ -5,14 +5,36 @@
 package com.ntak.pearlzip.archive.zip4j.util;
 
 import com.ntak.pearlzip.archive.pub.ArchiveInfo;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.FileHeader;
 import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.model.enums.AesKeyStrength;
 import net.lingala.zip4j.model.enums.CompressionLevel;
 import net.lingala.zip4j.model.enums.CompressionMethod;
 import net.lingala.zip4j.model.enums.EncryptionMethod;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
 import static net.lingala.zip4j.model.enums.AesKeyStrength.KEY_STRENGTH_256;
 import static net.lingala.zip4j.model.enums.CompressionMethod.DEFLATE;
@@ -23,6 +45,8 @@ import static net.lingala.zip4j.model.enums.EncryptionMethod.AES;
  *  @author Aashutos Kakshepati
  */
 public class Zip4jUtil {
+    private static final Charset CHARSET_CP437 = Charset.forName("Cp437");
+
     public static void initializeZipParameters(ZipParameters parameters, ArchiveInfo archiveInfo) {
         if (archiveInfo.<Boolean>getProperty(KEY_ENCRYPTION_ENABLE).orElse(false)) {
             parameters.setEncryptFiles(true);
@@ -40,6 +64,266 @@ public class Zip4jUtil {
         );
     }
 
+    /**
+     *  Number of worker threads used by operations that process entries in parallel, as configured in the settings
+     *  and defaulting to the number of available processors.
+     */
+    public static int getParallelism() {
+        try {
+            return Math.max(1, Integer.parseInt(CURRENT_SETTINGS.getProperty(CNS_PARALLELISM,
+                                                                             String.valueOf(Runtime.getRuntime()
+                                                                                                   .availableProcessors()))));
+        } catch(NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     *  Minimum number of inflated bytes between the checkpoints of the inflate index of an entry, as configured in
+     *  the settings.
+     */
+    public static long getInflateCheckpointInterval() {
+        try {
+            return Long.parseLong(CURRENT_SETTINGS.getProperty(CNS_INFLATE_CHECKPOINT_INTERVAL,
+                                                               String.valueOf(DEFAULT_INFLATE_CHECKPOINT_INTERVAL)));
+        } catch(NumberFormatException e) {
+            return DEFAULT_INFLATE_CHECKPOINT_INTERVAL;
+        }
+    }
+
+    /**
+     *  Minimum size of a source file for it to be deflated in parallel blocks, as set on the archive or otherwise in
+     *  the settings. Accompanies the parameters set by {@link #initializeZipParameters(ZipParameters, ArchiveInfo)},
+     *  which cannot carry it.
+     */
+    public static long getChunkedDeflateThreshold(ArchiveInfo archiveInfo) {
+        return archiveInfo.<Long>getProperty(KEY_CHUNKED_DEFLATE_THRESHOLD).orElseGet(() -> {
+            try {
+                return Long.parseLong(CURRENT_SETTINGS.getProperty(CNS_CHUNKED_DEFLATE_THRESHOLD,
+                                                                   String.valueOf(DEFAULT_CHUNKED_DEFLATE_THRESHOLD)));
+            } catch(NumberFormatException e) {
+                return DEFAULT_CHUNKED_DEFLATE_THRESHOLD;
+            }
+        });
+    }
+
+    /**
+     *  Whether entries are sampled to decide between storing and deflating them, as set on the archive or otherwise in
+     *  the settings (off by default).
+     */
+    public static boolean isAdaptiveCompression(ArchiveInfo archiveInfo) {
+        return archiveInfo.<Boolean>getProperty(KEY_ADAPTIVE_COMPRESSION)
+                          .orElseGet(() -> Boolean.parseBoolean(CURRENT_SETTINGS.getProperty(CNS_ADAPTIVE_COMPRESSION,
+                                                                                             "false")));
+    }
+
+    /**
+     *  Per-entry compression policy, as set on the archive or otherwise compiled from the rules in the settings.
+     *  @throws IllegalArgumentException if a rule in the settings is malformed
+     */
+    public static Zip4jCompressionPolicy getCompressionPolicy(ArchiveInfo archiveInfo) {
+        return archiveInfo.<Zip4jCompressionPolicy>getProperty(KEY_COMPRESSION_POLICY)
+                          .orElseGet(() -> Zip4jCompressionPolicy.fromProperties(CURRENT_SETTINGS));
+    }
+
+    /**
+     *  Whether the CRC-32 of entries extracted without decompression is verified, as set on the archive or otherwise
+     *  in the settings (on by default).
+     */
+    public static boolean isVerifyingExtractedCrc(ArchiveInfo archiveInfo) {
+        return archiveInfo.<Boolean>getProperty(KEY_VERIFY_EXTRACTED_CRC)
+                          .orElseGet(() -> Boolean.parseBoolean(CURRENT_SETTINGS.getProperty(CNS_VERIFY_EXTRACTED_CRC,
+                                                                                             "true")));
+    }
+
+    /**
+     *  Charset of the name and comment of an entry with the given general purpose flags: UTF-8 where the language
+     *  encoding flag (bit 11) is set and otherwise IBM PC (Cp437), as the zip specification mandates.
+     */
+    public static Charset getEntryCharset(int flags) {
+        return (flags & Zip4jZipWriter.FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : CHARSET_CP437;
+    }
+
+    /**
+     *  Combines the CRC-32 of two consecutive blocks of data into the CRC-32 of their concatenation, given the
+     *  length of the second block (as zlib's crc32_combine).
+     */
+    public static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        // Operator for a single zero bit, followed by the operators for two and four zero bits
+        long[] odd = new long[32];
+        long[] even = new long[32];
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int i = 1; i < 32; i++) {
+            odd[i] = row;
+            row <<= 1;
+        }
+        squareGf2Matrix(even, odd);
+        squareGf2Matrix(odd, even);
+
+        // Apply length2 zero bytes to crc1, squaring the operator for each bit of the length
+        long crc = crc1;
+        long length = length2;
+        do {
+            squareGf2Matrix(even, odd);
+            if ((length & 1) != 0) {
+                crc = multiplyGf2Matrix(even, crc);
+            }
+            length >>>= 1;
+            if (length == 0) {
+                break;
+            }
+
+            squareGf2Matrix(odd, even);
+            if ((length & 1) != 0) {
+                crc = multiplyGf2Matrix(odd, crc);
+            }
+            length >>>= 1;
+        } while (length != 0);
+
+        return (crc ^ crc2) & 0xFFFFFFFFL;
+    }
+
+    private static long multiplyGf2Matrix(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void squareGf2Matrix(long[] square, long[] matrix) {
+        for (int i = 0; i < 32; i++) {
+            square[i] = multiplyGf2Matrix(matrix, matrix[i]);
+        }
+    }
+
+    /**
+     *  Compiles a glob over entry names: * matches within a path component, ** matches across components and ?
+     *  matches a single character other than the separator. All other characters match literally.
+     */
+    public static Pattern toGlobPattern(String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() * 2);
+        int literal = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+
+            if (literal < i) {
+                regex.append(Pattern.quote(glob.substring(literal, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^/]*");
+            }
+            literal = i + 1;
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     *  Depth of an entry within the archive, i.e. the number of separators preceding its final path component. A
+     *  trailing separator (as found on folder entries) does not add a level.
+     */
+    public static int getLevel(String fileName) {
+        if (fileName.isEmpty()) {
+            return 0;
+        }
+
+        int end = fileName.length() - 1;
+        while (end >= 0 && fileName.charAt(end) == '/') {
+            end--;
+        }
+
+        int level = -1;
+        for (int i = 0; i <= end; i++) {
+            if (fileName.charAt(i) == '/') {
+                level++;
+            }
+        }
+        return end < 0 ? level : level + 1;
+    }
+
+    /**
+     *  Decodes an MS-DOS date and time, as held in zip headers, into local date time. Out of range fields are
+     *  rolled over into the next field, consistent with the lenient calendar arithmetic used by Zip4j.
+     */
+    public static LocalDateTime toLocalDateTime(long dosTime) {
+        final int second = (int)(dosTime & 0x1F) * 2;
+        final int minute = (int)(dosTime >> 5) & 0x3F;
+        final int hour = (int)(dosTime >> 11) & 0x1F;
+        final int day = (int)(dosTime >> 16) & 0x1F;
+        final int month = (int)(dosTime >> 21) & 0x0F;
+        final int year = (int)((dosTime >> 25) & 0x7F) + 1980;
+
+        if (month >= 1 && month <= 12 && day >= 1 && day <= 28 && hour < 24 && minute < 60 && second < 60) {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        }
+
+        return LocalDateTime.of(year, 1, 1, 0, 0)
+                            .plusMonths(month - 1)
+                            .plusDays(day - 1)
+                            .plusHours(hour)
+                            .plusMinutes(minute)
+                            .plusSeconds(second);
+    }
+
+    /**
+     *  Encodes epoch milliseconds as an MS-DOS date and time in local time, consistent with Zip4j.
+     */
+    public static long toDosTime(long epochMillis) {
+        return net.lingala.zip4j.util.Zip4jUtil.epochToExtendedDosTime(epochMillis);
+    }
+
+    /**
+     *  Creates the file to which an archive is rewritten, alongside the archive, ahead of
+     *  {@link #replaceFile(Path, Path)}. Temporary files are created accessible to their owner alone, so the file takes
+     *  on the POSIX permissions of the archive, which would otherwise be lost on replacing it.
+     */
+    public static Path createTempArchive(Path archivePath) throws IOException {
+        final Path tempArchive = Files.createTempFile(archivePath.toAbsolutePath().getParent(),
+                                                      String.format("%s.", archivePath.getFileName()), ".tmp");
+        try {
+            final PosixFileAttributeView view = Files.getFileAttributeView(archivePath, PosixFileAttributeView.class);
+            if (Objects.nonNull(view)) {
+                Files.setPosixFilePermissions(tempArchive, view.readAttributes().permissions());
+            }
+        } catch(IOException | RuntimeException e) {
+            Files.deleteIfExists(tempArchive);
+            throw e;
+        }
+        return tempArchive;
+    }
+
+    /**
+     *  Replaces the target with the source file, atomically where supported by the file system, such that a rewritten
+     *  archive is never observed partially written.
+     */
+    public static void replaceFile(Path source, Path target) throws IOException {
+        // Idle pooled channels over the target would otherwise prevent its replacement on some platforms
+        CHANNEL_POOL.invalidate(target);
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static AesKeyStrength getKeyStrength(String encryptionStrength) {
         return switch (encryptionStrength) {
             case "128-bit" -> AesKeyStrength.KEY_STRENGTH_128;
@@ -47,4 +331,117 @@ public class Zip4jUtil {
             default -> KEY_STRENGTH_256;
         };
     }
+
+    /**
+     *  Opens a decompressing (and decrypting) stream over a single entry of a non-split archive. The local header is
+     *  located directly from the offset held in the central directory header, so the archive is not re-parsed.
+     *  The archive is read through a channel leased from the pool, which closing the returned stream releases.
+     */
+    public static ZipInputStream openEntryStream(Path archivePath, FileHeader header, char[] password) throws IOException {
+        final Zip4jChannelPool.Lease lease = CHANNEL_POOL.acquire(archivePath);
+        try {
+            return openEntryStream(new Zip4jChannelInputStream(lease.channel(), header.getOffsetLocalHeader(), lease),
+                                   header, password);
+        } catch(IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Opens a decompressing (and decrypting) stream over a single entry of a non-split archive, using positional
+     *  reads against the given channel. The channel may be shared by concurrent readers and is left open when the
+     *  returned stream is closed.
+     */
+    public static ZipInputStream openEntryStream(FileChannel channel, FileHeader header, char[] password) throws IOException {
+        return openEntryStream(new Zip4jChannelInputStream(channel, header.getOffsetLocalHeader(), false), header,
+                               password);
+    }
+
+    /**
+     *  Offset of the data of an entry of a non-split archive, following its local header. The local header is read
+     *  at the offset held in the central directory header, since its extra field may differ from that of the central
+     *  directory.
+     */
+    public static long getDataOffset(FileChannel channel, FileHeader header) throws IOException {
+        final ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_LENGTH)
+                                                 .order(ByteOrder.LITTLE_ENDIAN);
+        while (localHeader.hasRemaining()) {
+            if (channel.read(localHeader, header.getOffsetLocalHeader() + localHeader.position()) < 0) {
+                break;
+            }
+        }
+        if (localHeader.hasRemaining() || localHeader.getInt(0) != SIG_LOCAL_FILE_HEADER) {
+            throw new ZipException(String.format("Local file header not found for entry %s", header.getFileName()));
+        }
+        return header.getOffsetLocalHeader() + LOCAL_HEADER_LENGTH + Short.toUnsignedInt(localHeader.getShort(26))
+                + Short.toUnsignedInt(localHeader.getShort(28));
+    }
+
+    /**
+     *  Copies the data of a stored, unencrypted entry of a non-split archive to the target file with
+     *  {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so that the copy is made by
+     *  the kernel (e.g. by copy_file_range or sendfile on Linux) rather than through the heap. Where verified, the
+     *  CRC-32 is computed over the data mapped from the archive, which likewise avoids a copy onto the heap. The
+     *  target is deleted should the copy or verification fail.
+     *  @return the number of bytes copied
+     */
+    public static long transferStoredEntry(FileChannel channel, FileHeader header, Path target,
+            boolean isVerifyingCrc) throws IOException {
+        final long dataOffset = getDataOffset(channel, header);
+        final long size = header.getCompressedSize();
+        if (size != header.getUncompressedSize()) {
+            throw new ZipException(String.format("Stored entry %s has differing compressed and uncompressed sizes",
+                                                 header.getFileName()));
+        }
+
+        try {
+            try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE,
+                                                              StandardOpenOption.TRUNCATE_EXISTING,
+                                                              StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < size) {
+                    final long transferred = channel.transferTo(dataOffset + copied, size - copied, targetChannel);
+                    if (transferred <= 0) {
+                        throw new ZipException(String.format("Unexpected end of archive in entry %s",
+                                                             header.getFileName()));
+                    }
+                    copied += transferred;
+                }
+            }
+
+            if (isVerifyingCrc) {
+                final CRC32 crc = new CRC32();
+                for (long position = 0; position < size; position += MAPPED_CRC_REGION_SIZE) {
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + position,
+                                           Math.min(MAPPED_CRC_REGION_SIZE, size - position)));
+                }
+                if (crc.getValue() != header.getCrc()) {
+                    throw new ZipException(String.format("Reached end of entry, but crc verification failed for %s",
+                                                         header.getFileName()), ZipException.Type.CHECKSUM_MISMATCH);
+                }
+            }
+            return size;
+        } catch(IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     *  Whether the data of a file entry is held as is, being stored and unencrypted.
+     */
+    public static boolean isStoredUnencrypted(FileHeader header) {
+        return header.getCompressionMethod() == CompressionMethod.STORE && !header.isEncrypted()
+                && !header.isDirectory();
+    }
+
+    private static ZipInputStream openEntryStream(InputStream inputStream, FileHeader header, char[] password) throws IOException {
+        ZipInputStream entryStream = new ZipInputStream(new BufferedInputStream(inputStream), password);
+        if (Objects.isNull(entryStream.getNextEntry(header, false))) {
+            entryStream.close();
+            throw new ZipException(String.format("Local file header not found for entry %s", header.getFileName()));
+        }
+        return entryStream;
+    }
 }
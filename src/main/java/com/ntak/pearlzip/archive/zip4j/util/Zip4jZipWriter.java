@@ -0,0 +1,446 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.util;
+
+import net.lingala.zip4j.exception.ZipException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.LOCAL_HEADER_LENGTH;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.SIG_LOCAL_FILE_HEADER;
+
+/**
+ *  Sequential writer of zip entries onto a file channel, from a given position. Each entry is written with a complete
+ *  local header (sizes and CRC are known upfront, so no data descriptor is required) and its central directory record
+ *  is retained until {@link #finish()}, which writes the central directory and the end of central directory record.
+ *  The raw central directory of entries already present ahead of the start position may be supplied, so that entries
+ *  can be appended to an existing archive. Entries may also be copied verbatim from another archive, in which case
+ *  only the local header offset of their central directory record is rewritten. Zip64 extended information and
+ *  records are written where required.
+ *  <br/><br/>
+ *  Instances are not thread safe; entries are expected to be written from a single thread.
+ *  @author Aashutos Kakshepati
+ */
+public class Zip4jZipWriter {
+
+    public static final int FLAG_ENCRYPTED = 0x1;
+    public static final int FLAG_UTF8 = 0x800;
+    public static final int EXTRA_ZIP64 = 0x0001;
+    public static final int EXTRA_AES = 0x9901;
+
+    public static final int VERSION_DEFAULT = 20;
+    public static final int VERSION_ZIP64 = 45;
+    public static final int VERSION_AES = 51;
+
+    private static final int SIG_CENTRAL_DIRECTORY = 0x02014B50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064B50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064B50;
+    private static final int SIG_END_OF_CENTRAL_DIRECTORY = 0x06054B50;
+
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int EOCD_LENGTH = 22;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_COUNT_LIMIT = 0xFFFF;
+
+    private final FileChannel channel;
+    private final byte[] existingCentralDirectory;
+    private final long existingEntryCount;
+    private final byte[] comment;
+    private final List<Entry> entries = new ArrayList<>();
+    private final ByteArrayOutputStream copiedCentralDirectory = new ByteArrayOutputStream();
+    private long copiedEntryCount;
+    private long position;
+
+    public Zip4jZipWriter(FileChannel channel, long position) {
+        this(channel, position, new byte[0], 0, new byte[0]);
+    }
+
+    /**
+     *  @param centralDirectory the raw central directory records of the entries preceding the start position
+     *  @param entryCount the number of entries held by the given central directory
+     *  @param comment the archive comment
+     */
+    public Zip4jZipWriter(FileChannel channel, long position, byte[] centralDirectory, long entryCount, byte[] comment) {
+        this.channel = channel;
+        this.position = position;
+        this.existingCentralDirectory = centralDirectory;
+        this.existingEntryCount = entryCount;
+        this.comment = Objects.isNull(comment) ? new byte[0] : comment;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     *  Writes the local header of the entry followed by its data, which must amount to the packed size of the entry.
+     *  The position only advances once the entry is written in full, so an entry which fails is overwritten by the
+     *  next entry (or the central directory).
+     */
+    public void writeEntry(Entry entry, EntryData data) throws IOException {
+        final byte[] name = entry.rawName;
+        final boolean isZip64 = entry.rawSize >= ZIP64_LIMIT || entry.packedSize >= ZIP64_LIMIT;
+        final int zip64Length = isZip64 ? 20 : 0;
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_LENGTH + name.length + zip64Length + entry.extra.length)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SIG_LOCAL_FILE_HEADER)
+              .putShort((short)(isZip64 ? Math.max(VERSION_ZIP64, entry.versionNeeded) : entry.versionNeeded))
+              .putShort((short)entry.flags)
+              .putShort((short)entry.method)
+              .putInt((int)entry.dosTime)
+              .putInt((int)entry.crc)
+              .putInt((int)(isZip64 ? ZIP64_LIMIT : entry.packedSize))
+              .putInt((int)(isZip64 ? ZIP64_LIMIT : entry.rawSize))
+              .putShort((short)name.length)
+              .putShort((short)(zip64Length + entry.extra.length))
+              .put(name);
+        if (isZip64) {
+            header.putShort((short)EXTRA_ZIP64)
+                  .putShort((short)16)
+                  .putLong(entry.rawSize)
+                  .putLong(entry.packedSize);
+        }
+        header.put(entry.extra)
+              .flip();
+        final long dataOffset = position + write(header, position);
+
+        final long written = data.transferTo(channel, dataOffset);
+        if (written != entry.packedSize) {
+            throw new IOException(String.format("Data of entry %s was %d bytes, expected %d", entry.name, written,
+                                                entry.packedSize));
+        }
+        entry.localHeaderOffset = position;
+        position = dataOffset + written;
+        entries.add(entry);
+    }
+
+    /**
+     *  Copies an entry from another archive as is: its local header, data and any data descriptor, held in the given
+     *  range of the source. The central directory record of the entry is retained, pointing at the new location.
+     */
+    public void copyEntry(FileChannel source, long offset, long length, byte[] centralDirectoryRecord) throws IOException {
+        final byte[] record = relocate(centralDirectoryRecord, position, 0);
+        long copied = 0;
+        channel.position(position);
+        while (copied < length) {
+            final long transferred = source.transferTo(offset + copied, length - copied, channel);
+            if (transferred <= 0) {
+                throw new IOException(String.format("Entry data ends at %d, expected %d bytes from %d",
+                                                    offset + copied, length, offset));
+            }
+            copied += transferred;
+        }
+        position += copied;
+        copiedCentralDirectory.write(record);
+        copiedEntryCount++;
+    }
+
+    /**
+     *  Rewrites the local header offset and the disk number held by a copy of a central directory record, the offset
+     *  being written to the Zip64 extended information where the record holds it there.
+     */
+    public static byte[] relocate(byte[] centralDirectoryRecord, long localHeaderOffset, int diskNumber) throws ZipException {
+        final ByteBuffer record = ByteBuffer.wrap(centralDirectoryRecord.clone())
+                                            .order(ByteOrder.LITTLE_ENDIAN);
+        if (diskNumber >= ZIP64_COUNT_LIMIT || Short.toUnsignedInt(record.getShort(34)) == ZIP64_COUNT_LIMIT) {
+            throw new ZipException("Relocation of an entry to disk 65535 onwards is not supported");
+        }
+        record.putShort(34, (short)diskNumber);
+
+        if (Integer.toUnsignedLong(record.getInt(42)) != ZIP64_LIMIT) {
+            if (localHeaderOffset >= ZIP64_LIMIT) {
+                throw new ZipException("Relocation of an entry beyond 4 GB requires Zip64 extended information");
+            }
+            record.putInt(42, (int)localHeaderOffset);
+            return record.array();
+        }
+
+        final int extraOffset = CENTRAL_HEADER_LENGTH + Short.toUnsignedInt(record.getShort(28));
+        final int extraEnd = extraOffset + Short.toUnsignedInt(record.getShort(30));
+        int extra = extraOffset;
+        while (extra + 4 <= extraEnd) {
+            final int dataSize = Short.toUnsignedInt(record.getShort(extra + 2));
+            if (Short.toUnsignedInt(record.getShort(extra)) == EXTRA_ZIP64) {
+                // Values are only present for the fields saturated in the fixed length header, in this order
+                int field = extra + 4;
+                field += Integer.toUnsignedLong(record.getInt(24)) == ZIP64_LIMIT ? 8 : 0;
+                field += Integer.toUnsignedLong(record.getInt(20)) == ZIP64_LIMIT ? 8 : 0;
+                if (field + 8 <= extra + 4 + dataSize) {
+                    record.putLong(field, localHeaderOffset);
+                    return record.array();
+                }
+            }
+            extra += 4 + dataSize;
+        }
+        throw new ZipException("Zip64 extended information not found for local header offset");
+    }
+
+    /**
+     *  Writes the central directory, followed by the Zip64 end of central directory record and locator (where
+     *  required) and the end of central directory record. The channel is truncated to the end of the archive.
+     */
+    public void finish() throws IOException {
+        final long centralDirectoryOffset = position;
+        position += write(ByteBuffer.wrap(existingCentralDirectory), position);
+        position += write(ByteBuffer.wrap(copiedCentralDirectory.toByteArray()), position);
+
+        for (Entry entry : entries) {
+            final byte[] name = entry.rawName;
+            final byte[] entryComment = entry.comment;
+            final boolean isRawZip64 = entry.rawSize >= ZIP64_LIMIT;
+            final boolean isPackedZip64 = entry.packedSize >= ZIP64_LIMIT;
+            final boolean isOffsetZip64 = entry.localHeaderOffset >= ZIP64_LIMIT;
+            final int zip64Data = (isRawZip64 ? 8 : 0) + (isPackedZip64 ? 8 : 0) + (isOffsetZip64 ? 8 : 0);
+            final int zip64Length = zip64Data > 0 ? 4 + zip64Data : 0;
+
+            ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_LENGTH + name.length + zip64Length
+                                                            + entry.extra.length + entryComment.length)
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(SIG_CENTRAL_DIRECTORY)
+                  .putShort((short)entry.versionMadeBy)
+                  .putShort((short)(zip64Length > 0 ? Math.max(VERSION_ZIP64, entry.versionNeeded) :
+                          entry.versionNeeded))
+                  .putShort((short)entry.flags)
+                  .putShort((short)entry.method)
+                  .putInt((int)entry.dosTime)
+                  .putInt((int)entry.crc)
+                  .putInt((int)(isPackedZip64 ? ZIP64_LIMIT : entry.packedSize))
+                  .putInt((int)(isRawZip64 ? ZIP64_LIMIT : entry.rawSize))
+                  .putShort((short)name.length)
+                  .putShort((short)(zip64Length + entry.extra.length))
+                  .putShort((short)entryComment.length)
+                  .putShort((short)0)
+                  .putShort((short)0)
+                  .putInt(entry.externalAttributes)
+                  .putInt((int)(isOffsetZip64 ? ZIP64_LIMIT : entry.localHeaderOffset))
+                  .put(name);
+            if (zip64Length > 0) {
+                record.putShort((short)EXTRA_ZIP64)
+                      .putShort((short)zip64Data);
+                if (isRawZip64) {
+                    record.putLong(entry.rawSize);
+                }
+                if (isPackedZip64) {
+                    record.putLong(entry.packedSize);
+                }
+                if (isOffsetZip64) {
+                    record.putLong(entry.localHeaderOffset);
+                }
+            }
+            record.put(entry.extra)
+                  .put(entryComment)
+                  .flip();
+            position += write(record, position);
+        }
+
+        final long entryCount = existingEntryCount + copiedEntryCount + entries.size();
+        final long centralDirectorySize = position - centralDirectoryOffset;
+        final boolean isZip64 = entryCount >= ZIP64_COUNT_LIMIT || centralDirectorySize >= ZIP64_LIMIT
+                || centralDirectoryOffset >= ZIP64_LIMIT;
+
+        ByteBuffer end = ByteBuffer.allocate((isZip64 ? ZIP64_EOCD_LENGTH + ZIP64_LOCATOR_LENGTH : 0) + EOCD_LENGTH
+                                                     + comment.length)
+                                   .order(ByteOrder.LITTLE_ENDIAN);
+        if (isZip64) {
+            final long zip64EocdOffset = position;
+            end.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY)
+               .putLong(ZIP64_EOCD_LENGTH - 12)
+               .putShort((short)VERSION_ZIP64)
+               .putShort((short)VERSION_ZIP64)
+               .putInt(0)
+               .putInt(0)
+               .putLong(entryCount)
+               .putLong(entryCount)
+               .putLong(centralDirectorySize)
+               .putLong(centralDirectoryOffset);
+            end.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR)
+               .putInt(0)
+               .putLong(zip64EocdOffset)
+               .putInt(1);
+        }
+        end.putInt(SIG_END_OF_CENTRAL_DIRECTORY)
+           .putShort((short)0)
+           .putShort((short)0)
+           .putShort((short)Math.min(entryCount, ZIP64_COUNT_LIMIT))
+           .putShort((short)Math.min(entryCount, ZIP64_COUNT_LIMIT))
+           .putInt((int)Math.min(centralDirectorySize, ZIP64_LIMIT))
+           .putInt((int)Math.min(centralDirectoryOffset, ZIP64_LIMIT))
+           .putShort((short)comment.length)
+           .put(comment)
+           .flip();
+        position += write(end, position);
+
+        channel.truncate(position);
+        channel.force(true);
+    }
+
+    private int write(ByteBuffer buffer, long offset) throws IOException {
+        final int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + length - buffer.remaining());
+        }
+        return length;
+    }
+
+    /**
+     *  Source of the (packed and, where applicable, encrypted) data of an entry.
+     */
+    @FunctionalInterface
+    public interface EntryData {
+        /**
+         *  Writes the data to the target channel at the given position.
+         *  @return the number of bytes written
+         */
+        long transferTo(FileChannel target, long position) throws IOException;
+    }
+
+    /**
+     *  Header fields of an entry, as written to both its local header and central directory record. The compression
+     *  method is that of the header (99 for AES entries, the actual method being held in the AES extra field). The
+     *  name and comment of a new entry are encoded as UTF-8, with the language encoding flag set, whereas those of an
+     *  entry carried over from another archive are written as they were held, alongside its original flags.
+     */
+    public static class Entry {
+        private final String name;
+        private final byte[] rawName;
+        private int versionMadeBy = VERSION_DEFAULT;
+        private int versionNeeded = VERSION_DEFAULT;
+        private int flags = FLAG_UTF8;
+        private int method;
+        private long dosTime;
+        private long crc;
+        private long packedSize;
+        private long rawSize;
+        private int externalAttributes;
+        private byte[] extra = new byte[0];
+        private byte[] comment = new byte[0];
+        private long localHeaderOffset = -1;
+
+        public Entry(String name) {
+            this(name, name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         *  @param rawName the name as held in the headers of the entry, written as is (the language encoding flag is
+         *  to be set accordingly)
+         */
+        public Entry(String name, byte[] rawName) {
+            this.name = name;
+            this.rawName = rawName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Entry setVersionMadeBy(int versionMadeBy) {
+            this.versionMadeBy = versionMadeBy;
+            return this;
+        }
+
+        public Entry setVersionNeeded(int versionNeeded) {
+            this.versionNeeded = versionNeeded;
+            return this;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public Entry setFlags(int flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public Entry setMethod(int method) {
+            this.method = method;
+            return this;
+        }
+
+        public Entry setDosTime(long dosTime) {
+            this.dosTime = dosTime;
+            return this;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public Entry setCrc(long crc) {
+            this.crc = crc;
+            return this;
+        }
+
+        public long getPackedSize() {
+            return packedSize;
+        }
+
+        public Entry setPackedSize(long packedSize) {
+            this.packedSize = packedSize;
+            return this;
+        }
+
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        public Entry setRawSize(long rawSize) {
+            this.rawSize = rawSize;
+            return this;
+        }
+
+        /**
+         *  @param externalAttributes the external attributes, as held little-endian in the header
+         */
+        public Entry setExternalAttributes(int externalAttributes) {
+            this.externalAttributes = externalAttributes;
+            return this;
+        }
+
+        /**
+         *  @param extra extra fields (other than Zip64 extended information) written to both headers of the entry
+         */
+        public Entry setExtra(byte[] extra) {
+            this.extra = extra;
+            return this;
+        }
+
+        public Entry setComment(String comment) {
+            this.comment = Objects.isNull(comment) ? new byte[0] : comment.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+
+        /**
+         *  @param comment the comment as held in the central directory record of the entry, written as is
+         */
+        public Entry setRawComment(byte[] comment) {
+            this.comment = comment;
+            return this;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+}
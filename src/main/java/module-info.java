@@ -18,6 +18,8 @@ module pearl.zip.archive.zip4j {
     requires org.apache.logging.log4j.core;
 
     requires zip4j;
+    // Cp437, the charset of entry names without the language encoding flag
+    requires jdk.charsets;
 
     requires javafx.graphics;
     requires javafx.fxml;
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.ArchiveInfo;
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import com.ntak.pearlzip.ui.constants.internal.InternalContextCache;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.ZipParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.KEY_FILE_PATH;
+import static com.ntak.pearlzip.ui.constants.ZipConstants.CK_POST_PZAX_COMPLETION_CALLBACK;
+
+/**
+ *  Compares adding many small files to an archive one Zip4j call at a time, which rewrites the central directory on
+ *  each call, against the single pass batch of the write service. Run with the benchmark profile
+ *  (mvn -P benchmark verify -Dbenchmark.include=Zip4jAddFiles). Adding 100,000 files one at a time takes a very long
+ *  time; restrict the run with -p fileCount=10000 if required.
+ *  @author Aashutos Kakshepati
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class Zip4jAddFilesBenchmark {
+
+    @Param({"10000", "100000"})
+    public int fileCount;
+
+    private Path tempDirectory;
+    private Path archive;
+    private FileInfo[] files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        InternalContextCache.INTERNAL_CONFIGURATION_CACHE.setAdditionalConfig(CK_POST_PZAX_COMPLETION_CALLBACK,
+                                                                              (Runnable)()->{});
+        tempDirectory = Files.createTempDirectory("pz-benchmark");
+        Path sourceDirectory = Files.createDirectories(tempDirectory.resolve("source"));
+        files = new FileInfo[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            Path file = Files.writeString(sourceDirectory.resolve(String.format("file%d.txt", i)), String.valueOf(i));
+            files[i] = new FileInfo(i, 1, String.format("folder%d/file%d.txt", i % 50, i), 0L, 0L, 0L,
+                                    LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(), "", "", 0, "",
+                                    false, false, Collections.singletonMap(KEY_FILE_PATH, file.toString()));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createArchive() throws IOException {
+        archive = tempDirectory.resolve("archive.zip");
+        Files.deleteIfExists(archive);
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.setArchivePath(archive.toString());
+        new Zip4jArchiveWriteService().createArchive(System.currentTimeMillis(), archiveInfo);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDirectory)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void addFileLoop() throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            for (FileInfo file : files) {
+                ZipParameters parameters = new ZipParameters();
+                parameters.setFileNameInZip(file.getFileName());
+                zipFile.addFile(file.getAdditionalInfoMap().get(KEY_FILE_PATH).toString(), parameters);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean addFileBatch() {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.setArchivePath(archive.toString());
+        return new Zip4jArchiveWriteService().addFile(System.currentTimeMillis(), archiveInfo, files);
+    }
+}
@@ -7,17 +7,48 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 import com.ntak.pearlzip.archive.pub.ArchiveInfo;
 import com.ntak.pearlzip.archive.pub.FileInfo;
 import com.ntak.pearlzip.ui.constants.internal.InternalContextCache;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jChannelPool;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jInflateIndex;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jNameIndex;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.AesKeyStrength;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
 import org.junit.jupiter.api.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static com.ntak.pearlzip.archive.constants.ArchiveConstants.CURRENT_SETTINGS;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
 import static com.ntak.pearlzip.ui.constants.ZipConstants.CK_POST_PZAX_COMPLETION_CALLBACK;
 import static net.lingala.zip4j.model.enums.AesKeyStrength.KEY_STRENGTH_256;
@@ -32,16 +63,40 @@ public abstract class Zip4jArchiveReadServiceTestCore {
     private Path unencryptedArchive = Paths.get("src","test","resources","unencryptedArchive.zip");
     private Path encryptedArchive = Paths.get("src","test","resources","encryptedArchive.zip");
     private Path faultyArchive = Paths.get("src","test","resources","faultyArchive.zip");
+    private Path zipCryptoArchive = Paths.get("src","test","resources","zipCryptoArchive.zip");
+
+    private static final Charset CP437 = Charset.forName("Cp437");
+    private static final String CP437_ENTRY_NAME = "caf\u00e9.txt";
+    private static final String CP437_ENTRY_COMMENT = "r\u00e9sum\u00e9";
 
     /*
         Test cases:
         + List files from archive (zip)
         + List files from encrypted archive (zip)
         + List file returns empty list when opening non-existent archive
+        + List files decodes the central directory identically to Zip4j, including Cp437 names without the language
+          encoding flag
+        + Generate metadata of encrypted archive records per-entry setup and key strength
+        + Stream files in batches from archive (zip)
         + Extract non-existent file
         + Extract file from archive (zip)
+        + Extract all files from archive in bulk (zip)
+        + Extract file twice reuses the cached central directory
+        + Extract stored entries without decompression, verifying the CRC-32 optionally
+        + Read entry through a stream, channel and publisher without extracting it
+        + Publishing an entry of a whole number of buffers completes with the demand for those buffers
+        + Read stored, deflated and encrypted entries at random positions through a seekable channel
+        + Pooled channel is shared by leases, replaced with the archive and evicted at the cap or once idle
+        + Name index answers prefix, range and glob queries and lists the children of a folder lazily
+        + Verify correct and incorrect password of AES encrypted archive
+        + Verify correct and incorrect password of ZipCrypto encrypted archive
         + Test file success (zip)
         + Test file failure (broken archive)
+        + Deep test of encrypted archive verifies every entry
+        + Deep test reports a corrupted entry
+        + Test archive in deep test mode fails on a corrupted entry
+        + Test archive in deep test mode reports encrypted entries without a password as requiring one
+        + Test archive reports completion in both quick and deep test modes
      */
 
     @BeforeAll
@@ -132,6 +187,144 @@ public abstract class Zip4jArchiveReadServiceTestCore {
         Assertions.assertEquals(0, files.size(), "Files were unexpectedly returned");
     }
 
+    @Test
+    @DisplayName("Test: List files decodes the central directory identically to Zip4j")
+    public void testListFiles_CentralDirectory_MatchesZip4j() throws IOException {
+        final Path cp437Archive = createCp437Archive(tempDirectory.resolve("cp437Archive.zip"));
+        for (Path archive : Arrays.asList(unencryptedArchive, encryptedArchive, cp437Archive)) {
+            Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+            // Zip4j headers, with names without the language encoding flag decoded as Cp437
+            List<FileInfo> expectations = HEADER_CACHE.getFileHeaders(archive.toString())
+                                                      .stream()
+                                                      .map(h -> transform.transform(h).orElseThrow())
+                                                      .collect(Collectors.toList());
+            List<FileInfo> files = Zip4jCentralDirectoryReader.read(archive)
+                                                              .orElseThrow()
+                                                              .entries();
+
+            Assertions.assertEquals(expectations.size(), files.size(), "The expected number of files was not read");
+            for (int i = 0; i < files.size(); i++) {
+                FileInfo expected = expectations.get(i);
+                FileInfo actual = files.get(i);
+                Assertions.assertEquals(expected.getFileName(), actual.getFileName(), "File name differs");
+                Assertions.assertEquals(expected.getLevel(), actual.getLevel(), "Level differs");
+                Assertions.assertEquals(expected.getCrcHash(), actual.getCrcHash(), "CRC differs");
+                Assertions.assertEquals(expected.getPackedSize(), actual.getPackedSize(), "Packed size differs");
+                Assertions.assertEquals(expected.getRawSize(), actual.getRawSize(), "Raw size differs");
+                Assertions.assertEquals(expected.getLastWriteTime(), actual.getLastWriteTime(),
+                                        "Last write time differs");
+                Assertions.assertEquals(expected.getAttributes(), actual.getAttributes(), "Attributes differ");
+                Assertions.assertEquals(expected.getComments(), actual.getComments(), "Comment differs");
+                Assertions.assertEquals(expected.isFolder(), actual.isFolder(), "Folder flag differs");
+                Assertions.assertEquals(expected.isEncrypted(), actual.isEncrypted(), "Encryption flag differs");
+            }
+        }
+
+        // Names and comments without the language encoding flag are Cp437
+        final List<FileInfo> files = Zip4jCentralDirectoryReader.read(cp437Archive)
+                                                                .orElseThrow()
+                                                                .entries();
+        Assertions.assertEquals(CP437_ENTRY_NAME, files.get(0).getFileName(), "Cp437 name was not decoded");
+        Assertions.assertEquals(CP437_ENTRY_COMMENT, files.get(0).getComments(), "Cp437 comment was not decoded");
+        try (FileChannel channel = FileChannel.open(cp437Archive)) {
+            Assertions.assertArrayEquals(new String[]{CP437_ENTRY_NAME},
+                                         Zip4jCentralDirectoryReader.readRaw(channel).names(),
+                                         "Cp437 name was not decoded from the raw central directory");
+        }
+
+        // Read by its decoded name
+        final ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchivePath(cp437Archive.toString());
+        archiveInfo.setArchiveFormat("zip");
+        try (InputStream entryStream = service.openEntry(archiveInfo, CP437_ENTRY_NAME)) {
+            Assertions.assertEquals("cp437", new String(entryStream.readAllBytes(), StandardCharsets.US_ASCII),
+                                    "Entry contents differ");
+        }
+    }
+
+    /**
+     *  Creates an archive of a single entry, whose name and comment are encoded as Cp437 without the language
+     *  encoding flag, as legacy archivers do.
+     */
+    private static Path createCp437Archive(Path archive) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive), CP437)) {
+            ZipEntry entry = new ZipEntry(CP437_ENTRY_NAME);
+            entry.setComment(CP437_ENTRY_COMMENT);
+            out.putNextEntry(entry);
+            out.write("cp437".getBytes(StandardCharsets.US_ASCII));
+            out.closeEntry();
+        }
+        return archive;
+    }
+
+    @Test
+    @DisplayName("Test: Generate metadata of an encrypted archive records the setup of each entry")
+    public void testGenerateArchiveMetaData_EncryptedArchive_EntryMetadata() throws IOException {
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(encryptedArchive.toAbsolutePath().toString());
+        Assertions.assertEquals(AES, archiveInfo.<EncryptionMethod>getProperty(KEY_ENCRYPTION_METHOD).orElseThrow(),
+                                "Encryption method was not AES");
+        Assertions.assertEquals(KEY_STRENGTH_256,
+                                archiveInfo.<AesKeyStrength>getProperty(KEY_ENCRYPTION_STRENGTH).orElseThrow(),
+                                "Key strength was not read from the archive");
+
+        Zip4jArchiveMetadata metadata =
+                archiveInfo.<Zip4jArchiveMetadata>getProperty(KEY_ENTRY_METADATA).orElseThrow();
+        try (ZipFile zipFile = new ZipFile(encryptedArchive.toFile())) {
+            List<FileHeader> headers = zipFile.getFileHeaders();
+            Assertions.assertEquals(headers.size(), metadata.size(), "The expected number of entries was not recorded");
+            long totalRawSize = 0;
+            for (int i = 0; i < headers.size(); i++) {
+                FileHeader header = headers.get(i);
+                Assertions.assertEquals(header.isEncrypted() ? header.getEncryptionMethod() : EncryptionMethod.NONE,
+                                        metadata.getEncryptionMethod(i), "Encryption method differs");
+                if (header.isEncrypted()) {
+                    Assertions.assertEquals(header.getAesExtraDataRecord().getCompressionMethod(),
+                                            metadata.getCompressionMethod(i), "Compression method differs");
+                    Assertions.assertEquals(KEY_STRENGTH_256, metadata.getAesKeyStrength(i), "Key strength differs");
+                }
+                Assertions.assertEquals(header.getCompressedSize(), metadata.getPackedSize(i), "Packed size differs");
+                Assertions.assertEquals(header.getUncompressedSize(), metadata.getRawSize(i), "Raw size differs");
+                totalRawSize += header.getUncompressedSize();
+            }
+            Assertions.assertEquals(totalRawSize, metadata.getTotalRawSize(), "Total raw size differs");
+            Assertions.assertEquals(headers.size(), metadata.getEncryptionMethodHistogram()
+                                                            .values()
+                                                            .stream()
+                                                            .mapToInt(Integer::intValue)
+                                                            .sum(), "Histogram does not cover every entry");
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Stream files in batches from an unencrypted archive")
+    public void testStreamFiles_UnencryptedArchive_Success() {
+        List<String> expectations = Arrays.asList("level2","level2/level2-file","level2/UP-MOVE");
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchivePath(unencryptedArchive.toAbsolutePath().toString());
+        archiveInfo.setArchiveFormat("zip");
+
+        List<List<FileInfo>> batches = service.streamFiles(sessionId, archiveInfo, 2)
+                                              .collect(Collectors.toList());
+        List<String> files = batches.stream()
+                                    .flatMap(List::stream)
+                                    .map(FileInfo::getFileName)
+                                    .collect(Collectors.toList());
+        Assertions.assertEquals(2, batches.size(), "The expected number of batches was not read");
+        Assertions.assertEquals(expectations.size(), files.size(), "The expected number of files was not read");
+        Assertions.assertTrue(files.containsAll(expectations), "All filenames are accounted for in expectations");
+
+        // Synthesised folders count towards the batch size and share the index sequence of the entries
+        batches = service.streamFiles(sessionId, archiveInfo, 1)
+                         .collect(Collectors.toList());
+        Assertions.assertTrue(batches.stream().allMatch(b -> b.size() == 1), "Batch size exceeded");
+        Assertions.assertEquals(List.of(0, 1, 2), batches.stream()
+                                                         .flatMap(List::stream)
+                                                         .map(FileInfo::getIndex)
+                                                         .collect(Collectors.toList()),
+                                "Indices are not unique and sequential");
+    }
+
     ///// EXTRACT FILES /////
 
     @Test
@@ -169,6 +362,500 @@ public abstract class Zip4jArchiveReadServiceTestCore {
                               "Extraction of file was unexpectedly successful");
     }
 
+    @Test
+    @DisplayName("Test: Extract all files from an archive in bulk successfully")
+    public void testExtractFiles_BulkExtraction_Success() throws IOException {
+        Path destination = Files.createTempDirectory(tempDirectory, "bulk");
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchivePath(unencryptedArchive.toAbsolutePath().toString());
+        archiveInfo.setArchiveFormat("zip");
+        List<FileInfo> files = service.listFiles(sessionId, archiveInfo);
+
+        Zip4jBatchResult result = service.extractFiles(sessionId, destination, archiveInfo, files);
+
+        Assertions.assertTrue(result.isSuccessful(), String.format("Bulk extraction failed: %s", result.failures()));
+        Assertions.assertEquals(files.size(), result.entryResults().size(), "Not all entries were reported");
+        for (FileInfo file : files) {
+            Assertions.assertTrue(Files.exists(destination.resolve(file.getFileName())),
+                                  String.format("Entry %s was not extracted", file.getFileName()));
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Extract stored entries without decompression, verifying the CRC-32 optionally")
+    public void testExtractFiles_StoredEntries_Success() throws IOException {
+        Path archive = tempDirectory.resolve("stored.zip");
+        byte[] content = new byte[300000];
+        new Random(42).nextBytes(content);
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setCompressionMethod(CompressionMethod.STORE);
+            parameters.setFileNameInZip("media/stored-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+            parameters.setFileNameInZip("corrupted-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+        }
+
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+        Path destination = Files.createTempDirectory(tempDirectory, "stored");
+        Zip4jBatchResult result = service.extractFiles(sessionId, destination, archiveInfo,
+                                                       service.listFiles(sessionId, archiveInfo));
+        Assertions.assertTrue(result.isSuccessful(), String.format("Extraction failed: %s", result.failures()));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(destination.resolve("media/stored-file")),
+                                     "Stored entry was not extracted intact");
+
+        // Flip a byte of the stored contents of the second entry
+        long localHeaderOffset;
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            localHeaderOffset = zipFile.getFileHeader("corrupted-file").getOffsetLocalHeader();
+        }
+        byte[] contents = Files.readAllBytes(archive);
+        ByteBuffer localHeader = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = (int)localHeaderOffset + LOCAL_HEADER_LENGTH + localHeader.getShort((int)localHeaderOffset + 26)
+                + localHeader.getShort((int)localHeaderOffset + 28);
+        contents[offset + 1000] ^= 0xFF;
+        Files.write(archive, contents);
+
+        FileInfo fileInfo = new FileInfo(1, 0, "corrupted-file", 0L, 0L, 0L,
+                                         LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                         "", "", 0, "", false, false, Collections.emptyMap());
+        Path target = destination.resolve("corrupted-file");
+        Assertions.assertFalse(service.extractFile(sessionId, target, archiveInfo, fileInfo),
+                               "Corrupted entry passed verification");
+        Assertions.assertFalse(Files.exists(target), "Corrupted entry was retained");
+
+        archiveInfo.addProperty(KEY_VERIFY_EXTRACTED_CRC, false);
+        Assertions.assertTrue(service.extractFile(sessionId, target, archiveInfo, fileInfo),
+                              "Extraction without verification was not successful");
+        Assertions.assertEquals(content.length, Files.size(target), "Entry was not extracted in full");
+    }
+
+    @Test
+    @DisplayName("Test: Extract files twice from an unchanged archive reuses cached headers")
+    public void testExtractFiles_RepeatedExtraction_CacheHit() {
+        Path destination = Paths.get(tempDirectory.toAbsolutePath().toString(), "cached-level2-file");
+        FileInfo fileInfo = new FileInfo(1, 1, "level2/level2-file", 0L, 0L, 0L,
+                                         LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                         "", "", 0, "", false, false, Collections.emptyMap());
+        long sessionId = System.currentTimeMillis();
+        String archivePath = unencryptedArchive.toAbsolutePath().toString();
+        service.extractFile(sessionId, destination, archivePath, fileInfo);
+        long hits = HEADER_CACHE.getHitCount();
+        long misses = HEADER_CACHE.getMissCount();
+
+        Assertions.assertTrue(service.extractFile(sessionId, destination, archivePath, fileInfo),
+                              "Extraction of file was not successful");
+        Assertions.assertEquals(hits + 1, HEADER_CACHE.getHitCount(), "Cached headers were not reused");
+        Assertions.assertEquals(misses, HEADER_CACHE.getMissCount(), "Archive was unexpectedly re-read");
+    }
+
+    ///// VERIFY PASSWORD /////
+
+    @Test
+    @DisplayName("Test: Read an entry through a stream, channel and publisher without extracting it")
+    public void testOpenEntry_Success() throws Exception {
+        Path archive = tempDirectory.resolve("streamed.zip");
+        byte[] content = new byte[3 * ENTRY_PUBLISHER_CHUNK_SIZE + 100];
+        new Random(7).nextBytes(content);
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setFileNameInZip("media/streamed-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+        }
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+
+        try (InputStream entryStream = service.openEntry(archiveInfo, "media/streamed-file")) {
+            Assertions.assertArrayEquals(content, entryStream.readAllBytes(), "Streamed entry was not read intact");
+        }
+        try (ReadableByteChannel entryChannel = service.openEntryChannel(archiveInfo, "media/streamed-file")) {
+            Assertions.assertArrayEquals(content, Channels.newInputStream(entryChannel).readAllBytes(),
+                                         "Entry channel was not read intact");
+        }
+        ZipException notFound = Assertions.assertThrows(ZipException.class,
+                                                        () -> service.openEntry(archiveInfo, "media/missing-file"));
+        Assertions.assertEquals(ZipException.Type.FILE_NOT_FOUND, notFound.getType(), "Unexpected failure type");
+
+        // Request one buffer at a time, checking nothing is delivered ahead of demand
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ByteArrayOutputStream published = new ByteArrayOutputStream();
+            BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+            service.publishEntry(archiveInfo, "media/streamed-file", executor)
+                   .subscribe(new Flow.Subscriber<>() {
+                       @Override
+                       public void onSubscribe(Flow.Subscription subscription) {
+                           signals.add(subscription);
+                       }
+
+                       @Override
+                       public void onNext(ByteBuffer item) {
+                           signals.add(item);
+                       }
+
+                       @Override
+                       public void onError(Throwable throwable) {
+                           signals.add(throwable);
+                       }
+
+                       @Override
+                       public void onComplete() {
+                           signals.add(Boolean.TRUE);
+                       }
+                   });
+            Flow.Subscription subscription = (Flow.Subscription)signals.take();
+            Assertions.assertNull(signals.poll(100, TimeUnit.MILLISECONDS), "Buffer delivered without demand");
+
+            // The end of the entry is signalled along with the last buffer, which is short
+            int buffers = 0;
+            Object signal;
+            do {
+                subscription.request(1);
+                signal = signals.poll(5, TimeUnit.SECONDS);
+                if (signal instanceof ByteBuffer buffer) {
+                    buffers++;
+                    published.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    Object next = signals.poll(20, TimeUnit.MILLISECONDS);
+                    Assertions.assertTrue(Objects.isNull(next) || buffer.remaining() < ENTRY_PUBLISHER_CHUNK_SIZE,
+                                          "Buffer delivered without demand");
+                    signal = Objects.isNull(next) ? signal : next;
+                }
+            } while (signal instanceof ByteBuffer);
+            Assertions.assertEquals(Boolean.TRUE, signal, "Publisher did not complete");
+            Assertions.assertEquals(4, buffers, "Unexpected number of buffers published");
+            Assertions.assertArrayEquals(content, published.toByteArray(), "Published entry was not read intact");
+
+            service.publishEntry(archiveInfo, "media/missing-file", executor)
+                   .subscribe(new Flow.Subscriber<>() {
+                       @Override
+                       public void onSubscribe(Flow.Subscription subscription) {
+                           subscription.request(1);
+                       }
+
+                       @Override
+                       public void onNext(ByteBuffer item) {
+                           signals.add(item);
+                       }
+
+                       @Override
+                       public void onError(Throwable throwable) {
+                           signals.add(throwable);
+                       }
+
+                       @Override
+                       public void onComplete() {
+                           signals.add(Boolean.TRUE);
+                       }
+                   });
+            Assertions.assertTrue(signals.poll(5, TimeUnit.SECONDS) instanceof ZipException,
+                                  "Missing entry was not signalled as an error");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Publishing an entry of a whole number of buffers completes with the demand for those buffers")
+    public void testPublishEntry_WholeBuffers_Completes() throws Exception {
+        Path archive = tempDirectory.resolve("published.zip");
+        byte[] content = new byte[2 * ENTRY_PUBLISHER_CHUNK_SIZE];
+        new Random(11).nextBytes(content);
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setFileNameInZip("media/published-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+        }
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+            service.publishEntry(archiveInfo, "media/published-file", executor)
+                   .subscribe(new Flow.Subscriber<>() {
+                       @Override
+                       public void onSubscribe(Flow.Subscription subscription) {
+                           subscription.request(2);
+                       }
+
+                       @Override
+                       public void onNext(ByteBuffer item) {
+                           signals.add(item);
+                       }
+
+                       @Override
+                       public void onError(Throwable throwable) {
+                           signals.add(throwable);
+                       }
+
+                       @Override
+                       public void onComplete() {
+                           signals.add(Boolean.TRUE);
+                       }
+                   });
+
+            ByteArrayOutputStream published = new ByteArrayOutputStream();
+            for (int i = 0; i < 2; i++) {
+                ByteBuffer buffer = (ByteBuffer)signals.poll(5, TimeUnit.SECONDS);
+                Assertions.assertNotNull(buffer, "Buffer was not published");
+                published.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            Assertions.assertEquals(Boolean.TRUE, signals.poll(5, TimeUnit.SECONDS),
+                                    "Publisher did not complete without further demand");
+            Assertions.assertNull(signals.poll(100, TimeUnit.MILLISECONDS), "Signalled after completion");
+            Assertions.assertArrayEquals(content, published.toByteArray(), "Published entry was not read intact");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Read stored, deflated and encrypted entries at random positions through a seekable channel")
+    public void testOpenSeekableEntry_Success() throws IOException {
+        Path archive = tempDirectory.resolve("seekable.zip");
+        Random random = new Random(11);
+        String[] words = {"parquet ", "footer ", "index ", "column ", "row-group ", "page "};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 * DEFAULT_INFLATE_CHECKPOINT_INTERVAL) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(1000));
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), "pAsSw0Rd".toCharArray())) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setFileNameInZip("deflated-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+            parameters.setCompressionMethod(CompressionMethod.STORE);
+            parameters.setFileNameInZip("stored-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+            parameters.setCompressionMethod(CompressionMethod.DEFLATE);
+            parameters.setEncryptFiles(true);
+            parameters.setEncryptionMethod(AES);
+            parameters.setFileNameInZip("encrypted-file");
+            zipFile.addStream(new ByteArrayInputStream(content), parameters);
+        }
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "pAsSw0Rd".toCharArray());
+
+        for (String entry : List.of("deflated-file", "stored-file", "encrypted-file")) {
+            try (SeekableByteChannel channel = service.openSeekableEntry(archiveInfo, entry)) {
+                Assertions.assertEquals(content.length, channel.size(), "Unexpected entry size");
+                // Read the tail first, then jump backwards and forwards
+                List<Integer> positions = new ArrayList<>(List.of(content.length - 1000, 0));
+                for (int i = 0; i < 10; i++) {
+                    positions.add(random.nextInt(content.length - 5000));
+                }
+                for (int position : positions) {
+                    ByteBuffer buffer = ByteBuffer.allocate(Math.min(5000, content.length - position));
+                    channel.position(position);
+                    while (buffer.hasRemaining()) {
+                        Assertions.assertTrue(channel.read(buffer) > 0, "Entry ended early");
+                    }
+                    Assertions.assertArrayEquals(Arrays.copyOfRange(content, position, position + buffer.capacity()),
+                                                 buffer.array(),
+                                                 String.format("Unexpected contents of %s at %d", entry, position));
+                }
+                channel.position(content.length);
+                Assertions.assertEquals(-1, channel.read(ByteBuffer.allocate(1)), "Read beyond the end of the entry");
+                Assertions.assertThrows(NonWritableChannelException.class,
+                                        () -> channel.write(ByteBuffer.allocate(1)));
+            }
+        }
+
+        // Checkpoints found by the first channel are kept for later channels over the entry
+        Zip4jInflateIndex index = INFLATE_INDEX_CACHE.getIndex(HEADER_CACHE.getArchive(archiveInfo.getArchivePath())
+                                                                           .key(),
+                                                               HEADER_CACHE.getArchive(archiveInfo.getArchivePath())
+                                                                           .getFileHeader("deflated-file")
+                                                                           .getOffsetLocalHeader(),
+                                                               DEFAULT_INFLATE_CHECKPOINT_INTERVAL);
+        Assertions.assertTrue(index.size() >= 2, "Checkpoints were not retained");
+        Assertions.assertThrows(ZipException.class, () -> service.openSeekableEntry(archiveInfo, "missing-file"));
+    }
+
+    @Test
+    @DisplayName("Test: Pooled channel is shared by leases, replaced with the archive and evicted at the cap or once idle")
+    public void testChannelPool_Success() throws Exception {
+        List<Path> archives = new ArrayList<>();
+        for (String name : List.of("pool-a.zip", "pool-b.zip", "pool-c.zip")) {
+            Path archive = tempDirectory.resolve(name);
+            try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+                ZipParameters parameters = new ZipParameters();
+                parameters.setFileNameInZip(name);
+                zipFile.addStream(new ByteArrayInputStream(name.getBytes(StandardCharsets.UTF_8)), parameters);
+            }
+            archives.add(archive);
+        }
+
+        Zip4jChannelPool pool = new Zip4jChannelPool();
+        CURRENT_SETTINGS.setProperty(CNS_CHANNEL_POOL_CAPACITY, "1");
+        CURRENT_SETTINGS.setProperty(CNS_CHANNEL_POOL_ACQUIRE_TIMEOUT, "5000");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FileChannel channelA;
+            try (Zip4jChannelPool.Lease first = pool.acquire(archives.get(0));
+                 Zip4jChannelPool.Lease second = pool.acquire(archives.get(0))) {
+                channelA = first.channel();
+                Assertions.assertSame(channelA, second.channel(), "Leases of an archive do not share its channel");
+            }
+            Assertions.assertTrue(channelA.isOpen(), "Idle channel was closed before its timeout");
+            Assertions.assertEquals(1, pool.getOpenedCount(), "Unexpected number of channels opened");
+
+            // At the cap, the idle channel makes way, whereas a leased channel is waited upon
+            Zip4jChannelPool.Lease leaseB = pool.acquire(archives.get(1));
+            Assertions.assertFalse(channelA.isOpen(), "Idle channel was not evicted at the cap");
+            Assertions.assertEquals(1, pool.getEvictedCount(), "Unexpected number of channels evicted");
+            Future<Zip4jChannelPool.Lease> leaseC = executor.submit(() -> pool.acquire(archives.get(2)));
+            for (int i = 0; i < 500 && pool.getWaitingCount() == 0; i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(1, pool.getWaitingCount(), "Lease is not waiting at the cap");
+            leaseB.close();
+            Zip4jChannelPool.Lease lease = leaseC.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(1, pool.getOpenChannelCount(), "Cap on open channels exceeded");
+
+            // A replaced archive is read through a new channel, the old closing once released
+            Path replacement = tempDirectory.resolve("pool-replacement.zip");
+            Files.copy(archives.get(0), replacement);
+            Files.move(replacement, archives.get(2), StandardCopyOption.REPLACE_EXISTING);
+            lease.close();
+            try (Zip4jChannelPool.Lease replaced = pool.acquire(archives.get(2))) {
+                Assertions.assertNotSame(lease.channel(), replaced.channel(), "Channel of the replaced archive reused");
+                Assertions.assertFalse(lease.channel().isOpen(), "Channel of the replaced archive was not closed");
+            }
+
+            CURRENT_SETTINGS.setProperty(CNS_CHANNEL_POOL_ACQUIRE_TIMEOUT, "100");
+            try (Zip4jChannelPool.Lease held = pool.acquire(archives.get(1))) {
+                Assertions.assertThrows(IOException.class, () -> pool.acquire(archives.get(0)),
+                                        "Lease beyond the cap did not time out");
+            }
+
+            CURRENT_SETTINGS.setProperty(CNS_CHANNEL_POOL_IDLE_TIMEOUT, "50");
+            try (Zip4jChannelPool.Lease idle = pool.acquire(archives.get(0))) {
+                Assertions.assertTrue(idle.channel().isOpen(), "Leased channel is not open");
+            }
+            for (int i = 0; i < 500 && pool.getOpenChannelCount() > 0; i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(0, pool.getOpenChannelCount(), "Idle channel was not closed on timing out");
+        } finally {
+            executor.shutdownNow();
+            pool.clear();
+            CURRENT_SETTINGS.remove(CNS_CHANNEL_POOL_CAPACITY);
+            CURRENT_SETTINGS.remove(CNS_CHANNEL_POOL_ACQUIRE_TIMEOUT);
+            CURRENT_SETTINGS.remove(CNS_CHANNEL_POOL_IDLE_TIMEOUT);
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Name index answers prefix, range and glob queries and lists the children of a folder lazily")
+    public void testListChildren_NameIndex_Success() throws IOException {
+        Path archive = tempDirectory.resolve("name-index.zip");
+        List<String> names = new ArrayList<>();
+        for (int month = 1; month <= 12; month++) {
+            for (int day = 1; day <= 5; day++) {
+                names.add(String.format("logs/2024/%02d/day-%02d.log", month, day));
+            }
+        }
+        names.addAll(List.of("logs/2024/summary.log", "logs/2023/old.log", "logs/2024.txt", "logs/readme",
+                             "root.txt", "empty/", "explicit/", "explicit/child.txt", "shadow",
+                             "shadow/inner.txt"));
+        Collections.shuffle(names, new Random(5));
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipParameters parameters = new ZipParameters();
+            for (String name : names) {
+                parameters.setFileNameInZip(name);
+                zipFile.addStream(new ByteArrayInputStream(name.getBytes(StandardCharsets.UTF_8)), parameters);
+            }
+        }
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+        List<FileHeader> headers = HEADER_CACHE.getArchive(archiveInfo.getArchivePath()).headers();
+        Zip4jNameIndex index = HEADER_CACHE.getArchive(archiveInfo.getArchivePath()).nameIndex();
+
+        Assertions.assertEquals(names.size(), index.size(), "Unexpected index size");
+        Assertions.assertEquals("logs/readme", headers.get(index.find("logs/readme")).getFileName(),
+                                "Unexpected header found");
+        Assertions.assertEquals(-1, index.find("logs/2024"), "Implicit folder found as an entry");
+
+        List<String> expected = names.stream()
+                                     .filter(n -> n.startsWith("logs/2024/"))
+                                     .sorted()
+                                     .collect(Collectors.toList());
+        Assertions.assertEquals(expected, Arrays.stream(index.prefix("logs/2024/"))
+                                                .mapToObj(i -> headers.get(i).getFileName())
+                                                .collect(Collectors.toList()), "Unexpected prefix matches");
+        Assertions.assertEquals(expected.subList(0, 10), Arrays.stream(index.range("logs/2024/01/", "logs/2024/03/"))
+                                                               .mapToObj(i -> headers.get(i).getFileName())
+                                                               .collect(Collectors.toList()),
+                                "Unexpected range matches");
+        Assertions.assertEquals(expected, Arrays.stream(index.glob("logs/2024/**"))
+                                                .mapToObj(i -> headers.get(i).getFileName())
+                                                .collect(Collectors.toList()), "Unexpected glob matches");
+        Assertions.assertEquals(List.of("logs/2024/summary.log"), Arrays.stream(index.glob("logs/2024/*.log"))
+                                                                        .mapToObj(i -> headers.get(i).getFileName())
+                                                                        .collect(Collectors.toList()),
+                                "Wildcard matched across folders");
+        Assertions.assertEquals(12, index.glob("logs/2024/??/day-03.log").length, "Unexpected glob matches");
+        Assertions.assertEquals(1, index.glob("logs/2024.txt").length, "Literal glob did not match exactly");
+
+        // Children agree with the top level of the full listing
+        List<FileInfo> roots = service.listChildren(sessionId, archiveInfo, "");
+        Assertions.assertEquals(service.listFiles(sessionId, archiveInfo)
+                                       .stream()
+                                       .filter(f -> f.getLevel() == 0)
+                                       .map(f -> f.getFileName() + (f.isFolder() ? "/" : ""))
+                                       .sorted()
+                                       .collect(Collectors.toList()),
+                                roots.stream()
+                                     .map(f -> f.getFileName() + (f.isFolder() ? "/" : ""))
+                                     .sorted()
+                                     .collect(Collectors.toList()),
+                                "Children of the root differ from the listing");
+        Assertions.assertEquals(List.of("empty/", "explicit/", "logs/", "root.txt", "shadow"),
+                                roots.stream()
+                                     .map(f -> f.getFileName() + (f.isFolder() ? "/" : ""))
+                                     .sorted()
+                                     .collect(Collectors.toList()), "Unexpected children of the root");
+
+        List<FileInfo> logs = service.listChildren(sessionId, archiveInfo, "logs/");
+        Assertions.assertEquals(List.of("logs/2023/", "logs/2024.txt", "logs/2024/", "logs/readme"),
+                                logs.stream()
+                                    .map(f -> f.getFileName() + (f.isFolder() ? "/" : ""))
+                                    .collect(Collectors.toList()), "Unexpected children of a folder");
+        for (int i = 0; i < logs.size(); i++) {
+            Assertions.assertEquals(i, logs.get(i).getIndex(), "Unexpected index of child");
+            Assertions.assertEquals(1, logs.get(i).getLevel(), "Unexpected level of child");
+        }
+        Assertions.assertEquals(13, service.listChildren(sessionId, archiveInfo, "logs/2024").size(),
+                                "Unexpected children of a nested folder");
+        Assertions.assertTrue(service.listChildren(sessionId, archiveInfo, "missing").isEmpty(),
+                              "Children listed for a missing folder");
+    }
+
+    @Test
+    @DisplayName("Test: Verify password of an AES encrypted archive")
+    public void testVerifyPassword_AesArchive_Success() {
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(encryptedArchive.toAbsolutePath().toString());
+
+        Assertions.assertTrue(service.verifyPassword(sessionId, archiveInfo, "Pa$$w0rD".toCharArray()),
+                              "Correct password was rejected");
+        Assertions.assertFalse(service.verifyPassword(sessionId, archiveInfo, "password".toCharArray()),
+                               "Incorrect password was accepted");
+    }
+
+    @Test
+    @DisplayName("Test: Verify password of a ZipCrypto encrypted archive")
+    public void testVerifyPassword_ZipCryptoArchive_Success() {
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(zipCryptoArchive.toAbsolutePath().toString());
+
+        Assertions.assertTrue(service.verifyPassword(sessionId, archiveInfo, "Pa$$w0rD".toCharArray()),
+                              "Correct password was rejected");
+        Assertions.assertFalse(service.verifyPassword(sessionId, archiveInfo, "password".toCharArray()),
+                               "Incorrect password was accepted");
+    }
+
     ///// TEST FILES /////
 
     @Test
@@ -184,4 +871,122 @@ public abstract class Zip4jArchiveReadServiceTestCore {
         long sessionId = System.currentTimeMillis();
         assertFalse(service.testArchive(sessionId, faultyArchive.toAbsolutePath().toString()), "Archive valid unexpectedly");
     }
+
+    @Test
+    @DisplayName("Test: Deep test of an encrypted archive verifies every entry")
+    public void testDeepTestArchive_EncryptedArchive_Success() {
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(encryptedArchive.toAbsolutePath().toString());
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "Pa$$w0rD".toCharArray());
+
+        Zip4jBatchResult result = service.deepTestArchive(sessionId, archiveInfo);
+        Assertions.assertTrue(result.isSuccessful(), String.format("Deep test failed: %s", result.failures()));
+        Assertions.assertEquals(3, result.entryResults().size(), "Not all entries were verified");
+    }
+
+    @Test
+    @DisplayName("Test: Deep test reports a corrupted entry")
+    public void testDeepTestArchive_CorruptedEntry_Failure() throws IOException {
+        Path archive = createCorruptedArchive(tempDirectory.resolve("corrupted.zip"));
+
+        long sessionId = System.currentTimeMillis();
+        ArchiveInfo archiveInfo = service.generateArchiveMetaData(archive.toAbsolutePath().toString());
+        Zip4jBatchResult result = service.deepTestArchive(sessionId, archiveInfo);
+
+        Assertions.assertFalse(result.isSuccessful(), "Corrupted archive passed the deep test");
+        Assertions.assertTrue(result.entryResults().get("intact-file"), "Intact entry failed verification");
+        Assertions.assertFalse(result.entryResults().get("corrupted-file"), "Corrupted entry passed verification");
+        Assertions.assertTrue(result.failures().containsKey("corrupted-file"), "Failure was not reported");
+    }
+
+    @Test
+    @DisplayName("Test: Test archive in deep test mode fails on a corrupted entry")
+    public void testTestArchive_DeepTestCorruptedEntry_False() throws IOException {
+        Path archive = createCorruptedArchive(tempDirectory.resolve("deep-test-corrupted.zip"));
+        CURRENT_SETTINGS.setProperty(CNS_DEEP_TEST, "true");
+        try {
+            long sessionId = System.currentTimeMillis();
+            Assertions.assertTrue(service.testArchive(sessionId, unencryptedArchive.toAbsolutePath().toString()),
+                                  "Intact archive failed the deep test");
+            Assertions.assertFalse(service.testArchive(sessionId, archive.toAbsolutePath().toString()),
+                                   "Corrupted archive passed the deep test");
+        } finally {
+            CURRENT_SETTINGS.remove(CNS_DEEP_TEST);
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Test archive in deep test mode reports encrypted entries without a password as requiring one")
+    public void testTestArchive_DeepTestEncryptedArchive_PasswordRequired() {
+        CURRENT_SETTINGS.setProperty(CNS_DEEP_TEST, "true");
+        try {
+            long sessionId = System.currentTimeMillis();
+            Assertions.assertTrue(service.testArchive(sessionId, encryptedArchive.toAbsolutePath().toString()),
+                                  "Encrypted archive without a password was reported as corrupt");
+
+            ArchiveInfo archiveInfo = service.generateArchiveMetaData(encryptedArchive.toAbsolutePath().toString());
+            Zip4jBatchResult result = service.deepTestArchive(sessionId, archiveInfo);
+            Assertions.assertTrue(result.failures().isEmpty(), "Encrypted entries were reported as failures");
+            Assertions.assertFalse(result.passwordRequired().isEmpty(), "Encrypted entries were not reported");
+
+            archiveInfo.addProperty(KEY_ENCRYPTION_PW, "Pa$$w0rD".toCharArray());
+            Assertions.assertTrue(service.testArchive(sessionId, archiveInfo),
+                                  "Encrypted archive failed the deep test with its password");
+            archiveInfo.addProperty(KEY_ENCRYPTION_PW, "wrong".toCharArray());
+            Assertions.assertFalse(service.testArchive(sessionId, archiveInfo),
+                                   "Encrypted archive passed the deep test with a wrong password");
+        } finally {
+            CURRENT_SETTINGS.remove(CNS_DEEP_TEST);
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Test archive reports completion in both quick and deep test modes")
+    public void testTestArchive_Completion_Posted() throws IOException {
+        Path archive = createCorruptedArchive(tempDirectory.resolve("completion-corrupted.zip"));
+        List<Long> completions = new ArrayList<>();
+        Zip4jArchiveReadService recordingService = new Zip4jArchiveReadService() {
+            @Override
+            void postCompletion(long sessionId) {
+                completions.add(sessionId);
+                super.postCompletion(sessionId);
+            }
+        };
+
+        recordingService.testArchive(1, unencryptedArchive.toAbsolutePath().toString());
+        recordingService.testArchive(2, faultyArchive.toAbsolutePath().toString());
+        CURRENT_SETTINGS.setProperty(CNS_DEEP_TEST, "true");
+        try {
+            recordingService.testArchive(3, unencryptedArchive.toAbsolutePath().toString());
+            recordingService.testArchive(4, archive.toAbsolutePath().toString());
+            recordingService.testArchive(5, faultyArchive.toAbsolutePath().toString());
+        } finally {
+            CURRENT_SETTINGS.remove(CNS_DEEP_TEST);
+        }
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L, 5L), completions, "Completion was not reported once per test");
+    }
+
+    private static Path createCorruptedArchive(Path archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setCompressionMethod(CompressionMethod.STORE);
+            for (String entry : Arrays.asList("intact-file", "corrupted-file")) {
+                parameters.setFileNameInZip(entry);
+                zipFile.addStream(new ByteArrayInputStream(entry.getBytes(StandardCharsets.UTF_8)), parameters);
+            }
+        }
+
+        // Flip the first byte of the stored contents of the second entry
+        long localHeaderOffset;
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            localHeaderOffset = zipFile.getFileHeader("corrupted-file").getOffsetLocalHeader();
+        }
+        byte[] contents = Files.readAllBytes(archive);
+        ByteBuffer localHeader = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = (int)localHeaderOffset + LOCAL_HEADER_LENGTH + localHeader.getShort((int)localHeaderOffset + 26)
+                + localHeader.getShort((int)localHeaderOffset + 28);
+        contents[offset] ^= 0xFF;
+        Files.write(archive, contents);
+        return archive;
+    }
 }
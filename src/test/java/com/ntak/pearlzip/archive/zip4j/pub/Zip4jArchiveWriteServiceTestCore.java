@@ -6,22 +6,52 @@ package com.ntak.pearlzip.archive.zip4j.pub;
 
 import com.ntak.pearlzip.archive.pub.ArchiveInfo;
 import com.ntak.pearlzip.archive.pub.FileInfo;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCentralDirectoryJournal;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPolicy;
 import com.ntak.pearlzip.ui.constants.internal.InternalContextCache;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
 import org.junit.jupiter.api.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.KEY_FILE_PATH;
 import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.*;
 import static com.ntak.pearlzip.ui.constants.ZipConstants.CK_POST_PZAX_COMPLETION_CALLBACK;
 import static net.lingala.zip4j.model.enums.AesKeyStrength.KEY_STRENGTH_256;
 import static net.lingala.zip4j.model.enums.EncryptionMethod.AES;
+import static net.lingala.zip4j.model.enums.EncryptionMethod.ZIP_STANDARD;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public abstract class Zip4jArchiveWriteServiceTestCore {
@@ -89,6 +119,27 @@ public abstract class Zip4jArchiveWriteServiceTestCore {
      *  + Create Archive
      *  + Create encrypted archive and add a file to the archive
      *  + Create encrypted archive and delete a file to the archive
+     *  + Add many files in a single batch, replacing an existing entry and skipping a missing source
+     *  + Add many files in a single batch to an encrypted archive
+     *  + Add many files in a single batch to a ZipCrypto encrypted archive
+     *  + Bulk delete by names, glob and predicate, retaining emptied parent folders
+     *  + Deleting entries retains the permissions of the archive
+     *  + Append leaves existing entries untouched and an interrupted append is rolled back from the journal
+     *  + A journal is not recovered whilst the archive or journal is held by a writer, nor on listing the archive
+     *  + A corrupt journal is discarded without modifying the archive
+     *  + Encrypt, change password and decrypt an archive without recompressing, with AES and ZipCrypto
+     *  + Change of password with an incorrect password leaves the archive unchanged
+     *  + Encrypting or decrypting without a password fails without modifying the archive
+     *  + Encrypting and decrypting an archive retains Cp437 names and comments without the language encoding flag
+     *  + Encrypting an archive retains its permissions
+     *  + Split an encrypted archive into volumes by copying its raw entries
+     *  + Compression policy applies the first matching rule to each entry, rejecting malformed rules
+     *  + Coalesce successive additions and deletions into a single write, cancelling additions deleted whilst pending
+     *  + A coalesced deletion cancelled by the addition of the same entry is satisfied
+     *  + Coalesced additions with different encryption settings are written separately
+     *  + A coalesced deletion of a file leaves the entries within a folder of the same name
+     *  + Synchronise an archive, adding only new and changed files and removing vanished entries
+     *  + Synchronise an archive of Cp437 names without the language encoding flag, removing only vanished entries
      */
 
     @Test
@@ -203,6 +254,895 @@ public abstract class Zip4jArchiveWriteServiceTestCore {
         Assertions.assertTrue(Files.exists(archive), "Archive was not created");
     }
 
+    @Test
+    @DisplayName("Test: Add many files to an archive in a single batch")
+    public void testAdd_Batch_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempBatchArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Files.writeString(file, "original");
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, fileInfo),
+                              "Initial file was not added");
+
+        Files.writeString(file, "replacement");
+        List<FileInfo> files = new ArrayList<>(batchFiles(250));
+        files.add(fileInfo);
+        files.add(new FileInfo(0, 0, "missing.txt", 0L, 0L, 0L,
+                               LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                               "", "", 0, "", false, false,
+                               Collections.singletonMap(KEY_FILE_PATH,
+                                                        tempDirectory.resolve("missing.txt").toString())));
+        Assertions.assertFalse(service.addFile(System.currentTimeMillis(), archiveInfo, files.toArray(new FileInfo[0])),
+                               "Missing source was not reported");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Assertions.assertEquals(251, zipFile.getFileHeaders().size(), "The expected number of entries was not written");
+            Assertions.assertNull(zipFile.getFileHeader("missing.txt"), "Missing source was added");
+            try (InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader("tempFile.txt"))) {
+                Assertions.assertEquals("replacement", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8),
+                                        "Existing entry was not replaced");
+            }
+            for (int i = 0; i < 250; i++) {
+                try (InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader(String.format("batch/file%d.txt", i)))) {
+                    Assertions.assertEquals(String.valueOf(i).repeat(i), new String(inputStream.readAllBytes(),
+                                                                                     StandardCharsets.UTF_8),
+                                            "Entry content differs");
+                }
+            }
+        }
+        Assertions.assertTrue(readService.testArchive(System.currentTimeMillis(), archive.toString()),
+                              "Archive not valid");
+    }
+
+    @Test
+    @DisplayName("Test: Add many files to an encrypted archive in a single batch")
+    public void testAdd_EncryptedBatch_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempEncryptedBatchArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(50).toArray(new FileInfo[0])),
+                              "Batch was not added");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), "SomePa$$W0rD".toCharArray())) {
+            Assertions.assertEquals(50, zipFile.getFileHeaders().size(), "The expected number of entries was not written");
+            for (int i = 0; i < 50; i++) {
+                FileHeader header = zipFile.getFileHeader(String.format("batch/file%d.txt", i));
+                Assertions.assertTrue(header.isEncrypted(), "Entry was not encrypted");
+                try (InputStream inputStream = zipFile.getInputStream(header)) {
+                    Assertions.assertEquals(String.valueOf(i).repeat(i), new String(inputStream.readAllBytes(),
+                                                                                     StandardCharsets.UTF_8),
+                                            "Entry content differs");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Add many files to a ZipCrypto encrypted archive in a single batch")
+    public void testAdd_ZipCryptoBatch_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, ZIP_STANDARD);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempZipCryptoBatchArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(50).toArray(new FileInfo[0])),
+                              "Batch was not added");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), "SomePa$$W0rD".toCharArray())) {
+            Assertions.assertEquals(50, zipFile.getFileHeaders().size(), "The expected number of entries was not written");
+            for (int i = 0; i < 50; i++) {
+                FileHeader header = zipFile.getFileHeader(String.format("batch/file%d.txt", i));
+                Assertions.assertEquals(ZIP_STANDARD, header.getEncryptionMethod(), "Entry was not encrypted");
+                try (InputStream inputStream = zipFile.getInputStream(header)) {
+                    Assertions.assertEquals(String.valueOf(i).repeat(i), new String(inputStream.readAllBytes(),
+                                                                                     StandardCharsets.UTF_8),
+                                            "Entry content differs");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Bulk delete by names, glob and predicate in a single rewrite, retaining emptied parent folders")
+    public void testDeleteFiles_Bulk_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempBulkDeleteArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        // batch/file0..99.txt, plus copies under nested/a/ and other/
+        List<FileInfo> files = batchFiles(100);
+        for (int i = 0; i < 100; i++) {
+            Map<String,Object> attributes = files.get(i).getAdditionalInfoMap();
+            files.add(new FileInfo(100 + i, 2, String.format("nested/a/file%d.txt", i), 0L, 0L, 0L,
+                                   LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                   "", "", 0, "", false, false, attributes));
+            files.add(new FileInfo(200 + i, 1, String.format("other/file%d.log", i), 0L, 0L, 0L,
+                                   LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                   "", "", 0, "", false, false, attributes));
+        }
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, files.toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        // Names: a folder and a single file
+        Assertions.assertTrue(service.deleteFiles(System.currentTimeMillis(), archiveInfo,
+                                                  List.of("nested/a", "other/file0.log")),
+                              "Entries were not deleted by name");
+        // Glob: odd numbered batch files ending in 1
+        Assertions.assertTrue(service.deleteFiles(System.currentTimeMillis(), archiveInfo, "batch/file*1.txt"),
+                              "Entries were not deleted by glob");
+        // Predicate: prefix
+        Assertions.assertTrue(service.deleteFiles(System.currentTimeMillis(), archiveInfo,
+                                                  n -> n.startsWith("other/file9")),
+                              "Entries were not deleted by predicate");
+        Assertions.assertFalse(service.deleteFiles(System.currentTimeMillis(), archiveInfo, "missing/**"),
+                               "Deletion reported without a match");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), "SomePa$$W0rD".toCharArray())) {
+            List<String> names = zipFile.getFileHeaders()
+                                        .stream()
+                                        .map(FileHeader::getFileName)
+                                        .collect(Collectors.toList());
+            Assertions.assertEquals(90 + 1 + 88, names.size(), "The expected number of entries did not remain");
+            Assertions.assertTrue(names.contains("nested/"), "Emptied parent folder was not retained");
+            Assertions.assertFalse(names.stream().anyMatch(n -> n.startsWith("nested/a")), "Folder was not deleted");
+            Assertions.assertFalse(names.contains("batch/file21.txt"), "Glob match was not deleted");
+            Assertions.assertTrue(names.contains("batch/file12.txt"), "Glob non-match was deleted");
+            Assertions.assertFalse(names.contains("other/file95.log"), "Prefix match was not deleted");
+
+            for (int i : new int[]{0, 12, 50, 99}) {
+                try (InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader(String.format("batch/file%d.txt", i)))) {
+                    Assertions.assertEquals(String.valueOf(i).repeat(i), new String(inputStream.readAllBytes(),
+                                                                                     StandardCharsets.UTF_8),
+                                            "Entry content differs");
+                }
+            }
+        }
+        Assertions.assertTrue(readService.testArchive(System.currentTimeMillis(), archiveInfo.getArchivePath()),
+                              "Archive not valid");
+    }
+
+    @Test
+    @DisplayName("Test: Deleting entries retains the permissions of the archive")
+    public void testDeleteFiles_Permissions_Retained() throws IOException {
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"),
+                               "POSIX permissions are not supported");
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempDeletePermissionsArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(3).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(archive, permissions);
+        Assertions.assertTrue(service.deleteFiles(System.currentTimeMillis(), archiveInfo, List.of("batch/file1.txt")),
+                              "Entry was not deleted");
+        Assertions.assertEquals(List.of("batch/file0.txt", "batch/file2.txt"), getEntryNames(archive),
+                                "Entries were not as expected");
+        Assertions.assertEquals(permissions, Files.getPosixFilePermissions(archive), "Permissions were not retained");
+    }
+
+    @Test
+    @DisplayName("Test: Append leaves existing entries untouched and an interrupted append is rolled back")
+    public void testAdd_AppendJournal_Success() throws IOException, InterruptedException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempAppendArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        List<FileInfo> files = batchFiles(20);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              files.subList(0, 10).toArray(new FileInfo[0])),
+                              "Files were not added");
+        final byte[] original = Files.readAllBytes(archive);
+        final long centralDirectoryOffset;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            centralDirectoryOffset = Zip4jCentralDirectoryReader.locate(channel).offset();
+        }
+
+        // Appending keeps the existing entries byte for byte
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              files.subList(10, 20).toArray(new FileInfo[0])),
+                              "Files were not appended");
+        Assertions.assertArrayEquals(Arrays.copyOf(original, (int)centralDirectoryOffset),
+                                     Arrays.copyOf(Files.readAllBytes(archive), (int)centralDirectoryOffset),
+                                     "Existing entries were rewritten");
+        Assertions.assertFalse(Files.exists(Zip4jCentralDirectoryJournal.getJournalPath(archive)),
+                               "Journal was not discarded");
+        // Batch files and their implied parent folder
+        Assertions.assertEquals(21, readService.listFiles(System.currentTimeMillis(), archiveInfo).size(),
+                                "File count was not as expected");
+
+        // Simulate an append interrupted after overwriting the central directory, whose writer is no longer running
+        final byte[] appended = Files.readAllBytes(archive);
+        final Path journalPath = Zip4jCentralDirectoryJournal.getJournalPath(archive);
+        final byte[] journalled;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long offset = Zip4jCentralDirectoryReader.locate(channel).offset();
+            try (Zip4jCentralDirectoryJournal journal = Zip4jCentralDirectoryJournal.begin(archive, channel, offset)) {
+                journalled = Files.readAllBytes(journalPath);
+            }
+            channel.truncate(offset);
+            channel.write(ByteBuffer.wrap(new byte[4096]), offset);
+        }
+        Files.write(journalPath, journalled);
+
+        // Not recovered whilst another thread holds the archive...
+        final CountDownLatch isHeld = new CountDownLatch(1);
+        final CountDownLatch isReleased = new CountDownLatch(1);
+        final CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try (Zip4jCentralDirectoryJournal.ArchiveLock lock = Zip4jCentralDirectoryJournal.lock(archive)) {
+                isHeld.countDown();
+                isReleased.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertTrue(isHeld.await(10, TimeUnit.SECONDS), "Archive was not held");
+        Assertions.assertFalse(Zip4jCentralDirectoryJournal.recover(archive),
+                               "Journal was recovered whilst the archive was held");
+        isReleased.countDown();
+        writer.join();
+        // ...or the journal is held by its writer
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            Assertions.assertFalse(Zip4jCentralDirectoryJournal.recover(archive),
+                                   "Journal was recovered whilst held by its writer");
+        }
+        // Nor by listing the archive
+        readService.listFiles(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(Files.exists(journalPath), "Journal was discarded before the archive was released");
+
+        Assertions.assertTrue(Zip4jCentralDirectoryJournal.recover(archive), "Interrupted append was not rolled back");
+        Assertions.assertEquals(21, readService.listFiles(System.currentTimeMillis(), archiveInfo).size(),
+                                "Archive was not readable once rolled back");
+        Assertions.assertArrayEquals(appended, Files.readAllBytes(archive), "Archive was not restored");
+        Assertions.assertFalse(Files.exists(Zip4jCentralDirectoryJournal.getJournalPath(archive)),
+                               "Journal was not discarded");
+    }
+
+    @Test
+    @DisplayName("Test: A corrupt journal is discarded without modifying the archive")
+    public void testAdd_CorruptJournal_Discarded() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempCorruptJournalArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(5).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        final byte[] original = Files.readAllBytes(archive);
+        final Path journal = Files.write(Zip4jCentralDirectoryJournal.getJournalPath(archive), new byte[]{1, 2, 3});
+        Assertions.assertFalse(Zip4jCentralDirectoryJournal.recover(archive), "Corrupt journal was applied");
+        Assertions.assertFalse(Files.exists(journal), "Journal was not discarded");
+        Assertions.assertArrayEquals(original, Files.readAllBytes(archive), "Archive was modified");
+    }
+
+    @Test
+    @DisplayName("Test: Encrypt, change password and decrypt an archive without recompressing")
+    public void testTranscodeArchive_Success() throws IOException {
+        for (EncryptionMethod encryptionMethod : new EncryptionMethod[]{AES, ZIP_STANDARD}) {
+            ArchiveInfo archiveInfo = new ArchiveInfo();
+            archiveInfo.setArchiveFormat("zip");
+            final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                        .toString(), String.format("tempTranscode%s.zip",
+                                                                                   encryptionMethod));
+            archiveInfo.setArchivePath(archive.toString());
+            service.createArchive(System.currentTimeMillis(), archiveInfo);
+            Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                                  batchFiles(50).toArray(new FileInfo[0])),
+                                  "Files were not added");
+            final Map<String,Long> packedSizes = getPackedSizes(archive, null);
+
+            // Encrypt
+            archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+            archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, encryptionMethod);
+            archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+            Assertions.assertTrue(service.encryptArchive(System.currentTimeMillis(), archiveInfo),
+                                  "Archive was not encrypted");
+            assertTranscodedContent(archive, "SomePa$$W0rD".toCharArray(), encryptionMethod, packedSizes);
+
+            // Change password
+            Assertions.assertTrue(service.changePassword(System.currentTimeMillis(), archiveInfo,
+                                                         "An0therPa$$W0rD".toCharArray()),
+                                  "Password was not changed");
+            assertTranscodedContent(archive, "An0therPa$$W0rD".toCharArray(), encryptionMethod, packedSizes);
+            Assertions.assertFalse(readService.verifyPassword(System.currentTimeMillis(), archiveInfo,
+                                                              "SomePa$$W0rD".toCharArray()),
+                                   "Previous password is still valid");
+
+            // Decrypt
+            Assertions.assertTrue(service.decryptArchive(System.currentTimeMillis(), archiveInfo),
+                                  "Archive was not decrypted");
+            assertTranscodedContent(archive, null, EncryptionMethod.NONE, packedSizes);
+            Assertions.assertTrue(readService.testArchive(System.currentTimeMillis(), archiveInfo.getArchivePath()),
+                                  "Archive not valid");
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Change of password with an incorrect password leaves the archive unchanged")
+    public void testTranscodeArchive_WrongPassword_Fail() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempTranscodeWrongPassword.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(5).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        final byte[] original = Files.readAllBytes(archive);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "WrongPa$$W0rD".toCharArray());
+        Assertions.assertFalse(service.changePassword(System.currentTimeMillis(), archiveInfo,
+                                                      "An0therPa$$W0rD".toCharArray()),
+                               "Password was changed with an incorrect password");
+        Assertions.assertArrayEquals(original, Files.readAllBytes(archive), "Archive was modified");
+    }
+
+    @Test
+    @DisplayName("Test: Encrypting an archive without a password fails without modifying the archive")
+    public void testEncryptArchive_NoPassword_Failure() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempTranscodeNoPassword.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(5).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        final byte[] original = Files.readAllBytes(archive);
+        Assertions.assertFalse(service.encryptArchive(System.currentTimeMillis(), archiveInfo),
+                               "Archive was encrypted without a password");
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, new char[0]);
+        Assertions.assertFalse(service.decryptArchive(System.currentTimeMillis(), archiveInfo),
+                               "Archive was decrypted with an empty password");
+        Assertions.assertArrayEquals(original, Files.readAllBytes(archive), "Archive was modified");
+    }
+
+    @Test
+    @DisplayName("Test: Encrypting an archive retains its permissions")
+    public void testEncryptArchive_Permissions_Retained() throws IOException {
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"),
+                               "POSIX permissions are not supported");
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempTranscodePermissions.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              batchFiles(3).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(archive, permissions);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        Assertions.assertTrue(service.encryptArchive(System.currentTimeMillis(), archiveInfo),
+                              "Archive was not encrypted");
+        Assertions.assertEquals(permissions, Files.getPosixFilePermissions(archive), "Permissions were not retained");
+    }
+
+    @Test
+    @DisplayName("Test: Encrypting and decrypting an archive retains Cp437 names and comments as held")
+    public void testTranscodeArchive_Cp437Names_Retained() throws IOException {
+        final Charset cp437 = Charset.forName("Cp437");
+        final Path archive = tempDirectory.resolve("tempTranscodeCp437.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive), cp437)) {
+            final ZipEntry entry = new ZipEntry("caf\u00e9.txt");
+            entry.setComment("r\u00e9sum\u00e9");
+            out.putNextEntry(entry);
+            out.write("cp437".getBytes(StandardCharsets.US_ASCII));
+            out.closeEntry();
+        }
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.setArchivePath(archive.toString());
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+
+        // Without the language encoding flag, the name and comment only decode as expected from Cp437
+        Assertions.assertTrue(service.encryptArchive(System.currentTimeMillis(), archiveInfo),
+                              "Archive was not encrypted");
+        Assertions.assertTrue(service.decryptArchive(System.currentTimeMillis(), archiveInfo),
+                              "Archive was not decrypted");
+        try (FileChannel channel = FileChannel.open(archive)) {
+            final ByteBuffer record = ByteBuffer.wrap(Zip4jCentralDirectoryReader.readRaw(channel).getRecord(0));
+            final byte[] name = "caf\u00e9.txt".getBytes(cp437);
+            Assertions.assertEquals(0, record.get(9) & 0x08, "Language encoding flag was set");
+            Assertions.assertArrayEquals(name, Arrays.copyOfRange(record.array(), 46, 46 + name.length),
+                                         "Entry name was re-encoded");
+        }
+        try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(archive.toFile(), cp437)) {
+            final ZipEntry entry = zipFile.getEntry("caf\u00e9.txt");
+            Assertions.assertNotNull(entry, "Entry name was not retained");
+            Assertions.assertEquals("r\u00e9sum\u00e9", entry.getComment(), "Entry comment was not retained");
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                Assertions.assertEquals("cp437", new String(inputStream.readAllBytes(), StandardCharsets.US_ASCII),
+                                        "Entry content differs");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Split an encrypted archive into volumes by copying its raw entries")
+    public void testCreateSplitArchive_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        archiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        archiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        archiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempSplitSourceArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        // Incompressible content, so that the archive spans several volumes
+        final Path splitDirectory = Files.createDirectories(tempDirectory.resolve("split"));
+        final Random random = new Random(42);
+        final List<FileInfo> files = new ArrayList<>();
+        final Map<String,byte[]> contents = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            final byte[] content = new byte[30000 + i * 1000];
+            random.nextBytes(content);
+            final String name = String.format("split/file%d.bin", i);
+            contents.put(name, content);
+            files.add(new FileInfo(i, 1, name, 0L, 0L, 0L,
+                                   LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                   "", "", 0, "", false, false,
+                                   Collections.singletonMap(KEY_FILE_PATH,
+                                                            Files.write(splitDirectory.resolve(String.format("file%d.bin", i)),
+                                                                        content).toAbsolutePath().toString())));
+        }
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, files.toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        for (long splitSize : new long[]{MIN_SPLIT_ARCHIVE_SIZE, DEFAULT_SPLIT_ARCHIVE_SIZE}) {
+            final Path targetDirectory = Files.createDirectories(tempDirectory.resolve(String.format("volumes%d",
+                                                                                                     splitSize)));
+            final ArchiveInfo splitArchiveInfo = new ArchiveInfo();
+            splitArchiveInfo.setArchivePath(targetDirectory.resolve("tempSplitArchive.zip").toString());
+            splitArchiveInfo.addProperty(KEY_SPLIT_ARCHIVE_ENABLE, true);
+            splitArchiveInfo.addProperty(KEY_SPLIT_ARCHIVE_SIZE, splitSize);
+            Assertions.assertTrue(service.createSplitArchive(System.currentTimeMillis(), archiveInfo,
+                                                             splitArchiveInfo),
+                                  "Split archive was not created");
+
+            final Path firstVolume = targetDirectory.resolve("tempSplitArchive.z01");
+            final boolean isSplit = splitSize == MIN_SPLIT_ARCHIVE_SIZE;
+            Assertions.assertEquals(isSplit, Files.exists(firstVolume), "Volumes were not created as expected");
+            if (isSplit) {
+                Assertions.assertTrue(Files.exists(targetDirectory.resolve("tempSplitArchive.z05")),
+                                      "Archive was not split into the expected number of volumes");
+                Assertions.assertTrue(Files.size(firstVolume) <= splitSize, "Volume exceeds the split size");
+            }
+
+            try (ZipFile zipFile = new ZipFile(splitArchiveInfo.getArchivePath(), "SomePa$$W0rD".toCharArray())) {
+                Assertions.assertEquals(isSplit, zipFile.isSplitArchive(), "Split archive state differs");
+                Assertions.assertEquals(contents.size(), zipFile.getFileHeaders().size(), "Entry count differs");
+                for (Map.Entry<String,byte[]> content : contents.entrySet()) {
+                    try (InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader(content.getKey()))) {
+                        Assertions.assertArrayEquals(content.getValue(), inputStream.readAllBytes(),
+                                                     String.format("Entry %s differs", content.getKey()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Compression policy applies the first matching rule to each entry")
+    public void testAdd_CompressionPolicy_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.addProperty(KEY_COMPRESSION_POLICY,
+                                Zip4jCompressionPolicy.compile(List.of("glob=**.log;method=DEFLATE;level=9",
+                                                                       "extension=EXE,.dll;method=STORE",
+                                                                       "min-size=100000;method=STORE")));
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempPolicyArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+
+        final Path policyDirectory = Files.createDirectories(tempDirectory.resolve("policy"));
+        final Map<String,Integer> sizes = Map.of("logs/large.log", 200000, "bin/tool.exe", 5000,
+                                                 "data/large.txt", 200000, "notes.txt", 5000);
+        final List<FileInfo> files = new ArrayList<>();
+        for (Map.Entry<String,Integer> size : sizes.entrySet()) {
+            final Path file = Files.writeString(policyDirectory.resolve(size.getKey().replace('/', '-')),
+                                                "policy ".repeat(size.getValue() / 7));
+            files.add(new FileInfo(files.size(), 1, size.getKey(), 0L, 0L, 0L,
+                                   LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                   "", "", 0, "", false, false,
+                                   Collections.singletonMap(KEY_FILE_PATH, file.toAbsolutePath().toString())));
+        }
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, files.toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Assertions.assertEquals(CompressionMethod.DEFLATE,
+                                    zipFile.getFileHeader("logs/large.log").getCompressionMethod(),
+                                    "First matching rule was not applied");
+            Assertions.assertEquals(CompressionMethod.STORE,
+                                    zipFile.getFileHeader("bin/tool.exe").getCompressionMethod(),
+                                    "Extension rule was not applied");
+            Assertions.assertEquals(CompressionMethod.STORE,
+                                    zipFile.getFileHeader("data/large.txt").getCompressionMethod(),
+                                    "Size rule was not applied");
+            Assertions.assertEquals(CompressionMethod.DEFLATE,
+                                    zipFile.getFileHeader("notes.txt").getCompressionMethod(),
+                                    "Archive settings were not retained");
+        }
+
+        for (String rule : new String[]{"level=12", "colour=red", "min-size", "method=LZMA"}) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                                    () -> Zip4jCompressionPolicy.compile(List.of(rule)),
+                                    String.format("Malformed rule %s was accepted", rule));
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Coalesce successive additions and deletions into a single write")
+    public void testWriteCoalescer_Success() throws Exception {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempCoalescedArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        final List<FileInfo> files = batchFiles(10);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, files.get(0)),
+                              "File was not added");
+
+        // A window long enough that nothing is written until flushed
+        try (Zip4jWriteCoalescer coalescer = new Zip4jWriteCoalescer(service, 1, 1, TimeUnit.HOURS)) {
+            final List<CompletableFuture<Boolean>> additions = new ArrayList<>();
+            for (FileInfo file : files.subList(1, 10)) {
+                additions.add(coalescer.addFile(System.currentTimeMillis(), archiveInfo, file));
+            }
+            final CompletableFuture<Boolean> deletion = coalescer.deleteFile(System.currentTimeMillis(), archiveInfo,
+                                                                             files.get(0));
+            // Cancels the pending addition of file 5
+            coalescer.deleteFile(System.currentTimeMillis(), archiveInfo, files.get(5));
+
+            Assertions.assertFalse(coalescer.await(archiveInfo.getArchivePath(), 200, TimeUnit.MILLISECONDS),
+                                   "Operations were written before the window elapsed");
+            Assertions.assertEquals(List.of("batch/file0.txt"), getEntryNames(archive),
+                                    "Archive was modified before the flush");
+
+            Assertions.assertTrue(coalescer.flush(archiveInfo.getArchivePath()).get(10, TimeUnit.SECONDS),
+                                  "Flush was not successful");
+            Assertions.assertTrue(deletion.get(), "Deletion was not successful");
+            for (CompletableFuture<Boolean> addition : additions) {
+                Assertions.assertTrue(addition.get(), "Addition was not successful");
+            }
+            Assertions.assertTrue(coalescer.await(archiveInfo.getArchivePath(), 0, TimeUnit.MILLISECONDS),
+                                  "Operations remain pending after the flush");
+        }
+
+        // Deletions are applied first, retaining the folder they leave empty
+        Assertions.assertEquals(List.of("batch/", "batch/file1.txt", "batch/file2.txt", "batch/file3.txt", "batch/file4.txt",
+                                        "batch/file6.txt", "batch/file7.txt", "batch/file8.txt", "batch/file9.txt"),
+                                getEntryNames(archive), "Entries were not as expected");
+    }
+
+    @Test
+    @DisplayName("Test: A coalesced deletion cancelled by the addition of the same entry is satisfied")
+    public void testWriteCoalescer_DeletionCancelled_Satisfied() throws Exception {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempCoalescedCancelledArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        final List<FileInfo> files = batchFiles(2);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, files.get(0)),
+                              "File was not added");
+
+        try (Zip4jWriteCoalescer coalescer = new Zip4jWriteCoalescer(service, 1, 1, TimeUnit.HOURS)) {
+            // Deletion of a new entry, cancelled before it is written
+            final CompletableFuture<Boolean> deletion = coalescer.deleteFile(System.currentTimeMillis(), archiveInfo,
+                                                                             files.get(1));
+            final CompletableFuture<Boolean> addition = coalescer.addFile(System.currentTimeMillis(), archiveInfo,
+                                                                          files.get(1));
+
+            Assertions.assertTrue(coalescer.flush(archiveInfo.getArchivePath()).get(10, TimeUnit.SECONDS),
+                                  "Flush was not successful");
+            Assertions.assertTrue(deletion.get(), "Cancelled deletion was not satisfied");
+            Assertions.assertTrue(addition.get(), "Addition was not successful");
+        }
+
+        Assertions.assertEquals(List.of("batch/file0.txt", "batch/file1.txt"), getEntryNames(archive),
+                                "Entries were not as expected");
+    }
+
+    @Test
+    @DisplayName("Test: Coalesced additions with different encryption settings are written separately")
+    public void testWriteCoalescer_DifferentEncryption_NotMerged() throws Exception {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempCoalescedEncryptionArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        final List<FileInfo> files = batchFiles(2);
+
+        ArchiveInfo encryptedArchiveInfo = new ArchiveInfo();
+        encryptedArchiveInfo.setArchiveFormat("zip");
+        encryptedArchiveInfo.setArchivePath(archive.toString());
+        encryptedArchiveInfo.addProperty(KEY_ENCRYPTION_ENABLE, true);
+        encryptedArchiveInfo.addProperty(KEY_ENCRYPTION_METHOD, AES);
+        encryptedArchiveInfo.addProperty(KEY_ENCRYPTION_STRENGTH, KEY_STRENGTH_256);
+        encryptedArchiveInfo.addProperty(KEY_ENCRYPTION_PW, "SomePa$$W0rD".toCharArray());
+
+        try (Zip4jWriteCoalescer coalescer = new Zip4jWriteCoalescer(service, 1, 1, TimeUnit.HOURS)) {
+            final CompletableFuture<Boolean> addition = coalescer.addFile(System.currentTimeMillis(), archiveInfo,
+                                                                          files.get(0));
+            final CompletableFuture<Boolean> encryptedAddition =
+                    coalescer.addFile(System.currentTimeMillis(), encryptedArchiveInfo, files.get(1));
+
+            Assertions.assertTrue(coalescer.flush(archiveInfo.getArchivePath()).get(10, TimeUnit.SECONDS),
+                                  "Flush was not successful");
+            Assertions.assertTrue(addition.get(), "Addition was not successful");
+            Assertions.assertTrue(encryptedAddition.get(), "Encrypted addition was not successful");
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Assertions.assertFalse(zipFile.getFileHeader("batch/file0.txt").isEncrypted(),
+                                   "Unencrypted addition was encrypted");
+            Assertions.assertEquals(AES, zipFile.getFileHeader("batch/file1.txt").getEncryptionMethod(),
+                                    "Encrypted addition was not encrypted");
+        }
+    }
+
+    @Test
+    @DisplayName("Test: A coalesced deletion of a file leaves the entries within a folder of the same name")
+    public void testWriteCoalescer_DeleteFile_FolderContentsRetained() throws Exception {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempCoalescedFileDeletionArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        final List<FileInfo> files = batchFiles(2);
+        // A file named as the folder holding the batch files
+        final FileInfo file = new FileInfo(0, 0, "batch", 0L, 0L, 0L,
+                                           LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                           "", "", 0, "", false, false,
+                                           files.get(0).getAdditionalInfoMap());
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo, file, files.get(0),
+                                              files.get(1)),
+                              "Files were not added");
+
+        try (Zip4jWriteCoalescer coalescer = new Zip4jWriteCoalescer(service, 1, 1, TimeUnit.HOURS)) {
+            final CompletableFuture<Boolean> deletion = coalescer.deleteFile(System.currentTimeMillis(), archiveInfo,
+                                                                             file);
+            Assertions.assertTrue(coalescer.flush(archiveInfo.getArchivePath()).get(10, TimeUnit.SECONDS),
+                                  "Flush was not successful");
+            Assertions.assertTrue(deletion.get(), "Deletion was not successful");
+        }
+
+        final List<String> names = getEntryNames(archive);
+        Assertions.assertFalse(names.contains("batch"), "File was not deleted");
+        Assertions.assertTrue(names.containsAll(List.of("batch/file0.txt", "batch/file1.txt")),
+                              "Entries within the folder of the same name were deleted");
+    }
+
+    @Test
+    @DisplayName("Test: Synchronise an archive, adding only new and changed files and removing vanished entries")
+    public void testSyncFiles_Success() throws IOException {
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        final Path archive = Paths.get(tempDirectory.toAbsolutePath()
+                                                    .toString(), "tempSyncArchive.zip");
+        archiveInfo.setArchivePath(archive.toString());
+        service.createArchive(System.currentTimeMillis(), archiveInfo);
+        final List<FileInfo> files = batchFiles(11);
+        Assertions.assertTrue(service.addFile(System.currentTimeMillis(), archiveInfo,
+                                              files.subList(0, 10).toArray(new FileInfo[0])),
+                              "Files were not added");
+
+        // Nothing has changed, so the archive is not rewritten
+        final byte[] original = Files.readAllBytes(archive);
+        Assertions.assertTrue(service.syncFiles(System.currentTimeMillis(), archiveInfo,
+                                                files.subList(0, 10).toArray(new FileInfo[0])),
+                              "Archive was not synchronised");
+        Assertions.assertArrayEquals(original, Files.readAllBytes(archive), "Unchanged archive was rewritten");
+
+        // File 3 changes content, file 4 is touched, file 9 vanishes and file 10 is new
+        final Path batchDirectory = tempDirectory.resolve("batch");
+        Files.writeString(batchDirectory.resolve("file3.txt"), "changed");
+        Files.setLastModifiedTime(batchDirectory.resolve("file4.txt"),
+                                  FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+        final List<FileInfo> syncedFiles = new ArrayList<>(files.subList(0, 9));
+        syncedFiles.add(files.get(10));
+        archiveInfo.addProperty(KEY_SYNC_REMOVE_VANISHED, true);
+        Assertions.assertTrue(service.syncFiles(System.currentTimeMillis(), archiveInfo,
+                                                syncedFiles.toArray(new FileInfo[0])),
+                              "Archive was not synchronised");
+
+        // Unchanged entries are retained in place, whereas changed and new entries are appended
+        List<String> names = getEntryNamesInOrder(archive);
+        Assertions.assertEquals(List.of("batch/file0.txt", "batch/file1.txt", "batch/file2.txt", "batch/file5.txt",
+                                        "batch/file6.txt", "batch/file7.txt", "batch/file8.txt", "batch/file3.txt",
+                                        "batch/file4.txt", "batch/file10.txt"), names,
+                                "Entries were not synchronised as expected");
+        try (ZipFile zipFile = new ZipFile(archive.toFile());
+             InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader("batch/file3.txt"))) {
+            Assertions.assertEquals("changed", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8),
+                                    "Changed entry was not updated");
+        }
+
+        // Comparing by CRC-32, a touched file is unchanged
+        Files.setLastModifiedTime(batchDirectory.resolve("file5.txt"),
+                                  FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+        archiveInfo.addProperty(KEY_SYNC_COMPARE_CRC, true);
+        final byte[] synced = Files.readAllBytes(archive);
+        Assertions.assertTrue(service.syncFiles(System.currentTimeMillis(), archiveInfo,
+                                                syncedFiles.toArray(new FileInfo[0])),
+                              "Archive was not synchronised");
+        Assertions.assertArrayEquals(synced, Files.readAllBytes(archive), "Touched file was added again");
+    }
+
+    @Test
+    @DisplayName("Test: Synchronise an archive of Cp437 names, removing only vanished entries")
+    public void testSyncFiles_Cp437Names_Retained() throws IOException {
+        final Charset cp437 = Charset.forName("Cp437");
+        final Path syncDirectory = Files.createDirectories(tempDirectory.resolve("cp437"));
+        final FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() / 2000 * 2000);
+        final List<FileInfo> files = new ArrayList<>();
+        final Path archive = tempDirectory.resolve("tempCp437SyncArchive.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive), cp437)) {
+            for (String name : List.of("caf\u00e9.txt", "na\u00efve.txt")) {
+                final Path file = Files.writeString(syncDirectory.resolve(String.format("file%d.txt", files.size())),
+                                                    name);
+                Files.setLastModifiedTime(file, lastModified);
+                files.add(new FileInfo(files.size(), 0, name, 0L, 0L, 0L,
+                                       LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                       "", "", 0, "", false, false,
+                                       Collections.singletonMap(KEY_FILE_PATH, file.toAbsolutePath().toString())));
+
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setTime(lastModified.toMillis());
+                out.putNextEntry(entry);
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        ArchiveInfo archiveInfo = new ArchiveInfo();
+        archiveInfo.setArchiveFormat("zip");
+        archiveInfo.setArchivePath(archive.toString());
+        archiveInfo.addProperty(KEY_SYNC_REMOVE_VANISHED, true);
+
+        // The entries are matched by their Cp437 names, so nothing is removed or rewritten
+        final byte[] original = Files.readAllBytes(archive);
+        Assertions.assertTrue(service.syncFiles(System.currentTimeMillis(), archiveInfo,
+                                                files.toArray(new FileInfo[0])),
+                              "Archive was not synchronised");
+        Assertions.assertArrayEquals(original, Files.readAllBytes(archive), "Unchanged archive was rewritten");
+
+        // Only the vanished entry is removed
+        Assertions.assertTrue(service.syncFiles(System.currentTimeMillis(), archiveInfo, files.get(0)),
+                              "Archive was not synchronised");
+        try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(archive.toFile(), cp437)) {
+            Assertions.assertEquals(List.of("caf\u00e9.txt"),
+                                    zipFile.stream()
+                                           .map(ZipEntry::getName)
+                                           .collect(Collectors.toList()),
+                                    "Entries were not synchronised as expected");
+        }
+    }
+
+    private static List<String> getEntryNamesInOrder(Path archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            return zipFile.getFileHeaders()
+                          .stream()
+                          .map(FileHeader::getFileName)
+                          .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> getEntryNames(Path archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            return zipFile.getFileHeaders()
+                          .stream()
+                          .map(FileHeader::getFileName)
+                          .sorted()
+                          .collect(Collectors.toList());
+        }
+    }
+
+    private static Map<String,Long> getPackedSizes(Path archive, char[] password) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), password)) {
+            return zipFile.getFileHeaders()
+                          .stream()
+                          .collect(Collectors.toMap(FileHeader::getFileName, FileHeader::getCompressedSize));
+        }
+    }
+
+    private static void assertTranscodedContent(Path archive, char[] password, EncryptionMethod encryptionMethod,
+            Map<String,Long> packedSizes) throws IOException {
+        final long overhead = switch(encryptionMethod) {
+            case AES -> KEY_STRENGTH_256.getSaltLength() + 2 + 10;
+            case ZIP_STANDARD -> 12;
+            default -> 0;
+        };
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), password)) {
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                Assertions.assertEquals(encryptionMethod, header.getEncryptionMethod(),
+                                        String.format("Encryption of %s differs", header.getFileName()));
+                Assertions.assertEquals(packedSizes.get(header.getFileName()) + overhead,
+                                        header.getCompressedSize(),
+                                        String.format("Entry %s was recompressed", header.getFileName()));
+            }
+            for (int i : new int[]{0, 1, 25, 49}) {
+                try (InputStream inputStream = zipFile.getInputStream(zipFile.getFileHeader(String.format("batch/file%d.txt", i)))) {
+                    Assertions.assertEquals(String.valueOf(i).repeat(i), new String(inputStream.readAllBytes(),
+                                                                                     StandardCharsets.UTF_8),
+                                            "Entry content differs");
+                }
+            }
+        }
+    }
+
+    private static List<FileInfo> batchFiles(int count) throws IOException {
+        Path batchDirectory = Files.createDirectories(tempDirectory.resolve("batch"));
+        List<FileInfo> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Path batchFile = Files.writeString(batchDirectory.resolve(String.format("file%d.txt", i)),
+                                               String.valueOf(i).repeat(i));
+            files.add(new FileInfo(i, 1, String.format("batch/file%d.txt", i), 0L, 0L, 0L,
+                                   LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now(),
+                                   "", "", 0, "", false, false,
+                                   Collections.singletonMap(KEY_FILE_PATH, batchFile.toAbsolutePath().toString())));
+        }
+        return files;
+    }
+
     @Test
     @DisplayName("Test: Add nested empty directory to archive")
     public void testAdd_NestedEmptyDirectory_Success() throws IOException {
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ *  Compares the latency of listing a large archive through Zip4j's header model against the memory mapped central
+ *  directory reader. Run with the benchmark profile (mvn -P benchmark verify -Dbenchmark.include=Zip4jCentralDirectory)
+ *  and add -prof gc to the JMH arguments to compare the allocation rate.
+ *  @author Aashutos Kakshepati
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Zip4jCentralDirectoryReaderBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entryCount;
+
+    private Path archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        archive = Files.createTempFile("pz-benchmark", ".zip");
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < entryCount; i++) {
+                outputStream.putNextEntry(new ZipEntry(String.format("folder%d/sub-folder%d/file%d.txt", i % 50,
+                                                                     i % 7, i)));
+                outputStream.write(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                outputStream.closeEntry();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public void zip4jFileHeaders(Blackhole blackhole) throws IOException {
+        Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                blackhole.consume(transform.transform(header));
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedCentralDirectory(Blackhole blackhole) throws IOException {
+        for (FileInfo fileInfo : Zip4jCentralDirectoryReader.read(archive)
+                                                            .orElseThrow()
+                                                            .entries()) {
+            blackhole.consume(fileInfo);
+        }
+    }
+}
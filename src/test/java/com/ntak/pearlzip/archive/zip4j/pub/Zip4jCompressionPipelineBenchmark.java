@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline.Source;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
+import net.lingala.zip4j.io.outputstream.ZipOutputStream;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionLevel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ *  Measures the throughput of archive creation with Zip4j's sequential ZipOutputStream against the parallel
+ *  compression pipeline, at a single thread and at the number of available processors. The source set is 64 files of
+ *  1 MB of moderately compressible data (about 64 MB per operation). Run with the benchmark profile
+ *  (mvn -P benchmark verify -Dbenchmark.include=Zip4jCompressionPipeline).
+ *  @author Aashutos Kakshepati
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Zip4jCompressionPipelineBenchmark {
+
+    private static final int FILE_COUNT = 64;
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private Path tempDirectory;
+    private Path archive;
+    private List<Source> sources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("pz-benchmark");
+        archive = tempDirectory.resolve("archive.zip");
+        Path sourceDirectory = Files.createDirectories(tempDirectory.resolve("source"));
+        Random random = new Random(FILE_COUNT);
+        sources = new ArrayList<>(FILE_COUNT);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            byte[] content = new byte[FILE_SIZE];
+            for (int j = 0; j < content.length; j++) {
+                content[j] = (byte)('a' + random.nextInt(16));
+            }
+            Path file = Files.write(sourceDirectory.resolve(String.format("file%d.txt", i)), content);
+
+            ZipParameters parameters = new ZipParameters();
+            parameters.setCompressionLevel(CompressionLevel.NORMAL);
+            parameters.setFileNameInZip(String.format("folder%d/file%d.txt", i % 8, i));
+            sources.add(new Source(file.toFile(), parameters));
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDirectory)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long zipOutputStream() throws IOException {
+        final byte[] buffer = new byte[65536];
+        try (ZipOutputStream outputStream =
+                     new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive.toFile())))) {
+            for (Source source : sources) {
+                outputStream.putNextEntry(source.parameters());
+                try (InputStream inputStream = new FileInputStream(source.file())) {
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, read);
+                    }
+                }
+                outputStream.closeEntry();
+            }
+        }
+        return Files.size(archive);
+    }
+
+    @Benchmark
+    public long compressionPipeline() throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Zip4jZipWriter writer = new Zip4jZipWriter(channel, 0);
+            new Zip4jCompressionPipeline(null, parallelism).write(writer, sources,
+                                                                 new Zip4jCompressionPipeline.Listener() {
+                @Override
+                public void onWritten(Source source, Zip4jZipWriter.Entry entry) {
+                }
+
+                @Override
+                public void onFailed(Source source, Exception exception) {
+                    throw new IllegalStateException(exception);
+                }
+            });
+            writer.finish();
+        }
+        return Files.size(archive);
+    }
+}
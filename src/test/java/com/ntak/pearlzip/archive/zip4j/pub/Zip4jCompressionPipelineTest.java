@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jCompressionPipeline.Source;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jUtil;
+import com.ntak.pearlzip.archive.zip4j.util.Zip4jZipWriter;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionLevel;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class Zip4jCompressionPipelineTest {
+
+    private static final char[] PASSWORD = "SomePa$$W0rD".toCharArray();
+    private static final int LARGE_FILE_SIZE = 5 * 1024 * 1024 + 12345;
+
+    private static Path tempDirectory;
+    private static Path largeFile;
+    private static byte[] largeContent;
+
+    /*
+        Test cases:
+        + Combined CRC-32 of two blocks matches the CRC-32 of the whole
+        + Large entries deflated in parallel blocks are read back intact, unencrypted and encrypted
+        + Chunked deflate produces the same content as whole file deflate
+        + Adaptive compression stores incompressible sources and deflates compressible sources
+     */
+
+    @BeforeAll
+    public static void setUpOnce() throws IOException {
+        tempDirectory = Files.createTempDirectory("pz-pipeline");
+        largeContent = new byte[LARGE_FILE_SIZE];
+        Random random = new Random(LARGE_FILE_SIZE);
+        for (int i = 0; i < largeContent.length; i++) {
+            largeContent[i] = (byte)(i % 64 == 0 ? random.nextInt() : 'a' + random.nextInt(8));
+        }
+        largeFile = Files.write(tempDirectory.resolve("large.bin"), largeContent);
+    }
+
+    @AfterAll
+    public static void tearDownLast() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDirectory)) {
+            paths.sorted(Comparator.reverseOrder())
+                 .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Combined CRC-32 of two blocks matches the CRC-32 of the whole")
+    public void testCombineCrc_MatchesWhole() {
+        for (int split : new int[]{0, 1, 32768, 1024 * 1024, LARGE_FILE_SIZE - 1, LARGE_FILE_SIZE}) {
+            CRC32 first = new CRC32();
+            first.update(largeContent, 0, split);
+            CRC32 second = new CRC32();
+            second.update(largeContent, split, LARGE_FILE_SIZE - split);
+            CRC32 whole = new CRC32();
+            whole.update(largeContent);
+
+            Assertions.assertEquals(whole.getValue(),
+                                    Zip4jUtil.combineCrc(first.getValue(), second.getValue(), LARGE_FILE_SIZE - split),
+                                    String.format("Combined CRC differs when split at %d", split));
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Large entries deflated in parallel blocks are read back intact")
+    public void testWrite_ChunkedDeflate_Success() throws IOException {
+        for (EncryptionMethod encryptionMethod : new EncryptionMethod[]{EncryptionMethod.NONE, EncryptionMethod.AES,
+                EncryptionMethod.ZIP_STANDARD}) {
+            Path archive = tempDirectory.resolve(String.format("chunked-%s.zip", encryptionMethod));
+            List<Zip4jZipWriter.Entry> entries = write(archive, new Zip4jCompressionPipeline(PASSWORD, 4, 1),
+                                                       encryptionMethod);
+
+            Assertions.assertEquals(1, entries.size(), "Entry was not written");
+            Assertions.assertTrue(entries.get(0).getPackedSize() < LARGE_FILE_SIZE, "Entry was not compressed");
+            assertContent(archive);
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Chunked deflate produces the same content as whole file deflate")
+    public void testWrite_ChunkedMatchesWhole_Success() throws IOException {
+        Path chunkedArchive = tempDirectory.resolve("chunked.zip");
+        Path wholeArchive = tempDirectory.resolve("whole.zip");
+        Zip4jZipWriter.Entry chunked = write(chunkedArchive, new Zip4jCompressionPipeline(null, 4, 1),
+                                             EncryptionMethod.NONE).get(0);
+        Zip4jZipWriter.Entry whole = write(wholeArchive, new Zip4jCompressionPipeline(null, 4),
+                                           EncryptionMethod.NONE).get(0);
+
+        Assertions.assertEquals(whole.getCrc(), chunked.getCrc(), "CRC differs");
+        Assertions.assertEquals(whole.getRawSize(), chunked.getRawSize(), "Raw size differs");
+        assertContent(chunkedArchive);
+        assertContent(wholeArchive);
+    }
+
+    @Test
+    @DisplayName("Test: Adaptive compression stores incompressible sources and deflates compressible sources")
+    public void testWrite_AdaptiveCompression_Success() throws IOException {
+        byte[] randomContent = new byte[200000];
+        new Random(42).nextBytes(randomContent);
+        Path randomFile = Files.write(tempDirectory.resolve("random.bin"), randomContent);
+        Path smallFile = Files.write(tempDirectory.resolve("small.txt"), "text ".repeat(100).getBytes());
+
+        for (EncryptionMethod encryptionMethod : new EncryptionMethod[]{EncryptionMethod.NONE, EncryptionMethod.AES}) {
+            Path archive = tempDirectory.resolve(String.format("adaptive-%s.zip", encryptionMethod));
+            Zip4jCompressionPipeline pipeline = new Zip4jCompressionPipeline(PASSWORD, 2, Long.MAX_VALUE, true);
+            List<Zip4jZipWriter.Entry> entries = write(archive, pipeline, encryptionMethod, largeFile, randomFile,
+                                                       smallFile);
+
+            Assertions.assertEquals(3, entries.size(), "Entries were not written");
+            Assertions.assertEquals(List.of(false, true, false),
+                                    pipeline.getDecisions()
+                                            .stream()
+                                            .map(Zip4jCompressionPipeline.Decision::isStored)
+                                            .toList(),
+                                    "Compression decisions differ");
+            Assertions.assertTrue(pipeline.getDecisions().get(1).getSampleRatio() > 0.95,
+                                  "Random content was compressible");
+
+            try (ZipFile zipFile = new ZipFile(archive.toFile(), PASSWORD)) {
+                Assertions.assertEquals(CompressionMethod.DEFLATE,
+                                        getCompressionMethod(zipFile.getFileHeader("folder/large.bin")),
+                                        "Compressible entry was not deflated");
+                FileHeader header = zipFile.getFileHeader("folder/random.bin");
+                Assertions.assertEquals(CompressionMethod.STORE, getCompressionMethod(header),
+                                        "Incompressible entry was not stored");
+                try (InputStream inputStream = zipFile.getInputStream(header)) {
+                    Assertions.assertArrayEquals(randomContent, inputStream.readAllBytes(), "Stored content differs");
+                }
+            }
+            assertContent(archive);
+        }
+    }
+
+    private static List<Zip4jZipWriter.Entry> write(Path archive, Zip4jCompressionPipeline pipeline,
+            EncryptionMethod encryptionMethod) throws IOException {
+        return write(archive, pipeline, encryptionMethod, largeFile);
+    }
+
+    private static List<Zip4jZipWriter.Entry> write(Path archive, Zip4jCompressionPipeline pipeline,
+            EncryptionMethod encryptionMethod, Path... files) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (Path file : files) {
+            ZipParameters parameters = new ZipParameters();
+            parameters.setCompressionLevel(CompressionLevel.NORMAL);
+            parameters.setFileNameInZip(String.format("folder/%s", file.getFileName()));
+            if (encryptionMethod != EncryptionMethod.NONE) {
+                parameters.setEncryptFiles(true);
+                parameters.setEncryptionMethod(encryptionMethod);
+            }
+            sources.add(new Source(file.toFile(), parameters));
+        }
+
+        List<Zip4jZipWriter.Entry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Zip4jZipWriter writer = new Zip4jZipWriter(channel, 0);
+            pipeline.write(writer, sources,
+                           new Zip4jCompressionPipeline.Listener() {
+                               @Override
+                               public void onWritten(Source source, Zip4jZipWriter.Entry entry) {
+                                   entries.add(entry);
+                               }
+
+                               @Override
+                               public void onFailed(Source source, Exception exception) {
+                                   Assertions.fail(exception);
+                               }
+                           });
+            writer.finish();
+        }
+        return entries;
+    }
+
+    private static CompressionMethod getCompressionMethod(FileHeader header) {
+        return header.getCompressionMethod() == CompressionMethod.AES_INTERNAL_ONLY ?
+                header.getAesExtraDataRecord().getCompressionMethod() : header.getCompressionMethod();
+    }
+
+    private static void assertContent(Path archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive.toFile(), PASSWORD)) {
+            FileHeader header = zipFile.getFileHeader("folder/large.bin");
+            try (InputStream inputStream = zipFile.getInputStream(header)) {
+                Assertions.assertTrue(Arrays.equals(largeContent, inputStream.readAllBytes()),
+                                      String.format("Entry content of %s differs", archive.getFileName()));
+            }
+        }
+    }
+}
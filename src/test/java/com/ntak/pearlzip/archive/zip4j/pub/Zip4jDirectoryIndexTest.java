@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.constants.ConfigurationConstants;
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.ntak.pearlzip.archive.constants.ConfigurationConstants.CNS_NTAK_PEARL_ZIP_ICON_FOLDER;
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.SSV;
+
+public class Zip4jDirectoryIndexTest {
+
+    /*
+        Test cases:
+        + Deep tree resolves identically to the legacy directory synthesis
+        + Wide tree resolves identically to the legacy directory synthesis
+        + Each implicit folder is synthesised exactly once
+     */
+
+    @Test
+    @DisplayName("Test: Deep tree listing matches the legacy directory synthesis")
+    public void testResolve_DeepTree_MatchesGolden() {
+        List<String> entries = new ArrayList<>();
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            path.append(String.format("deep%d/", i));
+            if (i % 4 == 0) {
+                entries.add(path.toString());
+            }
+            if (i % 3 == 0) {
+                entries.add(path + "file.txt");
+            }
+        }
+        entries.add(path + "empty/");
+        entries.add("root-file.txt");
+
+        assertMatchesGolden(entries);
+    }
+
+    @Test
+    @DisplayName("Test: Wide tree listing matches the legacy directory synthesis")
+    public void testResolve_WideTree_MatchesGolden() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                entries.add(String.format("wide%d/", i));
+            }
+            for (int j = 0; j < 20; j++) {
+                entries.add(String.format("wide%d/sub%d/file%d.bin", i, j % 5, j));
+            }
+        }
+        entries.add("wide1/file-shadowing-folder");
+        entries.add("wide1/file-shadowing-folder/child");
+        entries.add("empty-folder/");
+        Collections.shuffle(entries, new Random(92L));
+
+        assertMatchesGolden(entries);
+    }
+
+    @Test
+    @DisplayName("Test: Implicit folders are synthesised exactly once")
+    public void testResolve_ImplicitFolders_Unique() {
+        List<FileInfo> files = toFileInfo(Arrays.asList("a/b/c/file1", "a/b/c/file2", "a/b/file3", "a/d/file4"));
+        List<FileInfo> resolved = Zip4jDirectoryIndex.resolve(files);
+
+        List<String> names = resolved.stream()
+                                     .map(FileInfo::getFileName)
+                                     .collect(Collectors.toList());
+        Assertions.assertEquals(new HashSet<>(names).size(), names.size(), "Duplicate entries were resolved");
+        Assertions.assertTrue(names.containsAll(Arrays.asList("a", "a/b", "a/b/c", "a/d")),
+                              "Implicit folders were not synthesised");
+        Assertions.assertEquals(files.size() + 4, resolved.size(), "Unexpected number of entries resolved");
+    }
+
+    private static void assertMatchesGolden(List<String> entries) {
+        List<FileInfo> files = toFileInfo(entries);
+
+        Set<String> expected = summarise(legacyResolve(files));
+        List<FileInfo> resolved = Zip4jDirectoryIndex.resolve(files);
+        Set<String> actual = summarise(resolved);
+
+        Assertions.assertEquals(expected, actual, "Listing differs from the legacy directory synthesis");
+        Assertions.assertEquals(expected.size(), resolved.size(), "Entries were resolved more than once");
+    }
+
+    private static Set<String> summarise(Collection<FileInfo> files) {
+        return files.stream()
+                    .map(f -> String.format("%d|%s|%b", f.getLevel(), f.getFileName(), f.isFolder()))
+                    .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static List<FileInfo> toFileInfo(List<String> entries) {
+        List<FileInfo> files = new ArrayList<>();
+        for (String entry : entries) {
+            boolean isFolder = entry.endsWith("/");
+            String fileName = isFolder ? entry.substring(0, entry.length() - 1) : entry;
+            files.add(new FileInfo(files.size(), SSV.split(entry).length - 1, fileName, 0, 0, 0, null, null, null,
+                                   "", "", 0, "", isFolder, false, Collections.emptyMap()));
+        }
+        return files;
+    }
+
+    /**
+     *  Directory synthesis as previously performed by Zip4jArchiveReadService.listFiles.
+     */
+    private static Set<FileInfo> legacyResolve(List<FileInfo> files) {
+        HashSet<FileInfo> setFiles =
+                files.stream()
+                     .filter(f -> !f.isFolder() || (f.isFolder() && files.stream()
+                                                                         .noneMatch(g -> g.getFileName()
+                                                                                          .contains(f.getFileName()) && g.getLevel() > f.getLevel())))
+                     .collect(Collectors.toCollection(HashSet::new));
+        for (FileInfo file : files) {
+            final int level = file.getLevel();
+            Path parent = Paths.get(file.getFileName());
+            for (int j = 1; j <= level; j++) {
+                parent = parent.getParent();
+                setFiles.add(legacyFolder(setFiles.size(), level - j, parent.toString()));
+            }
+
+            if (file.isFolder()) {
+                setFiles.add(legacyFolder(setFiles.size(), level, file.getFileName()));
+            }
+        }
+        return setFiles;
+    }
+
+    private static FileInfo legacyFolder(int index, int level, String fileName) {
+        return new FileInfo(index, level, fileName, -1, 0, 0, null, null, null, null, null, 0, null, true, false,
+                            Collections.singletonMap(ConfigurationConstants.KEY_ICON_REF,
+                                                     System.getProperty(CNS_NTAK_PEARL_ZIP_ICON_FOLDER, "")));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.SSV;
+import static java.time.Instant.ofEpochMilli;
+
+/**
+ *  Compares the cost per entry of transforming Zip4j headers into FileInfo, between the former transformation (regex
+ *  split depth count, epoch and time zone round trip and ByteBuffer attribute decoding) and the current one. Run with
+ *  the benchmark profile (mvn -P benchmark verify -Dbenchmark.include=Zip4jFileHeaderTransform) and add -prof gc to
+ *  the JMH arguments to compare the allocation per operation.
+ *  @author Aashutos Kakshepati
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Zip4jFileHeaderTransformBenchmark {
+
+    @Param({"100000"})
+    public int entryCount;
+
+    private Path archive;
+    private List<FileHeader> headers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        archive = Files.createTempFile("pz-benchmark", ".zip");
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < entryCount; i++) {
+                outputStream.putNextEntry(new ZipEntry(String.format("folder%d/sub-folder%d/file%d.txt", i % 50,
+                                                                     i % 7, i)));
+                outputStream.write(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                outputStream.closeEntry();
+            }
+        }
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            headers = zipFile.getFileHeaders();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public void formerTransform(Blackhole blackhole) {
+        int index = 0;
+        for (FileHeader header : headers) {
+            String fileName = header.getFileName();
+            int level = SSV.split(fileName).length-1;
+            LocalDateTime lastModifiedTime = LocalDateTime.ofInstant(ofEpochMilli(header.getLastModifiedTimeEpoch()),
+                                                                     ZoneId.systemDefault());
+            int attributes = ByteBuffer.wrap(header.getExternalFileAttributes()).getInt();
+            blackhole.consume(Optional.of(new FileInfo(index++, level, fileName, header.getCrc(),
+                                                       header.getCompressedSize(), header.getUncompressedSize(),
+                                                       lastModifiedTime, lastModifiedTime, lastModifiedTime, "", "",
+                                                       attributes, header.getFileComment(), header.isDirectory(),
+                                                       header.isEncrypted(), Collections.emptyMap())));
+        }
+    }
+
+    @Benchmark
+    public void transform(Blackhole blackhole) {
+        Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+        for (int i = 0; i < headers.size(); i++) {
+            blackhole.consume(transform.transform(headers.get(i), i));
+        }
+    }
+
+    @Benchmark
+    public void transformAll(Blackhole blackhole) {
+        blackhole.consume(new Zip4jFileHeaderTransform().transformAll(headers));
+    }
+}
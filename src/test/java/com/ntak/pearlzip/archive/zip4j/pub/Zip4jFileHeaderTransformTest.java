@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2021 92AK
+ */
+
+package com.ntak.pearlzip.archive.zip4j.pub;
+
+import com.ntak.pearlzip.archive.pub.FileInfo;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.ntak.pearlzip.archive.zip4j.constants.Zip4jConstants.SSV;
+import static java.time.Instant.ofEpochMilli;
+
+public class Zip4jFileHeaderTransformTest {
+
+    /*
+        Test cases:
+        + Transform matches the former epoch and regex based transformation
+        + Transform all in parallel indexes entries by position
+     */
+
+    @Test
+    @DisplayName("Test: Transform matches the former epoch and regex based transformation")
+    public void testTransform_Fixtures_MatchesFormerTransform() throws IOException {
+        for (Path archive : Arrays.asList(Paths.get("src","test","resources","unencryptedArchive.zip"),
+                                          Paths.get("src","test","resources","encryptedArchive.zip"))) {
+            Zip4jFileHeaderTransform transform = new Zip4jFileHeaderTransform();
+            try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+                for (FileHeader header : zipFile.getFileHeaders()) {
+                    FileInfo fileInfo = transform.transform(header).orElseThrow();
+                    Assertions.assertEquals(SSV.split(header.getFileName()).length-1, fileInfo.getLevel(),
+                                            "Level differs");
+                    Assertions.assertEquals(LocalDateTime.ofInstant(ofEpochMilli(header.getLastModifiedTimeEpoch()),
+                                                                    ZoneId.systemDefault()),
+                                            fileInfo.getLastWriteTime(), "Last write time differs");
+                    Assertions.assertEquals(ByteBuffer.wrap(header.getExternalFileAttributes()).getInt(),
+                                            fileInfo.getAttributes(), "Attributes differ");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test: Transform all in parallel indexes entries by position")
+    public void testTransformAll_LargeArchive_IndexedByPosition() throws IOException {
+        Path archive = Files.createTempFile("pz-transform", ".zip");
+        try {
+            try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archive))) {
+                for (int i = 0; i < Zip4jFileHeaderTransform.PARALLEL_THRESHOLD + 1; i++) {
+                    outputStream.putNextEntry(new ZipEntry(String.format("folder%d/file%d.txt", i % 10, i)));
+                    outputStream.write(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                    outputStream.closeEntry();
+                }
+            }
+
+            try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+                List<FileHeader> headers = zipFile.getFileHeaders();
+                List<FileInfo> files = new Zip4jFileHeaderTransform().transformAll(headers);
+                Assertions.assertEquals(headers.size(), files.size(), "The expected number of files was not read");
+                for (int i = 0; i < files.size(); i++) {
+                    Assertions.assertEquals(i, files.get(i).getIndex(), "Index differs");
+                    Assertions.assertEquals(headers.get(i).getFileName(), files.get(i).getFileName(),
+                                            "File name differs");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+}